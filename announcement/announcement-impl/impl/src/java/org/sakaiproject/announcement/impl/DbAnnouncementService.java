@@ -175,6 +175,9 @@ public class DbAnnouncementService extends BaseAnnouncementService
 
 			super.init();
 
+			// write messages as binary blobs rather than xml as they are saved
+			((DbStorage) m_storage).setBinaryEntities(serverConfigurationService.getBoolean("announcement.storage.binary", false));
+
 			log.info("init(): tables: {} {} locks-in-db: {}", m_cTableName, m_rTableName, m_locksInDb);
 
 			// convert draft?
@@ -230,6 +233,9 @@ public class DbAnnouncementService extends BaseAnnouncementService
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, m_locksInDb, "channel", "message", user, sqlService);
 
+			// the message selection filter's date and pubview restrictions are answered by indexed columns
+			setResourceTableFilterField(FILTER_DATE, "MESSAGE_DATE");
+			setResourceTableFilterField(FILTER_PUBVIEW, "PUBVIEW");
 		} // DbStorage
 
 		/** Channels * */
@@ -24,6 +24,7 @@ CREATE TABLE ANNOUNCEMENT_MESSAGE (
        OWNER                VARCHAR (99) NULL,
        MESSAGE_DATE         DATETIME NOT NULL,
        XML                  LONGVARCHAR NULL,
+       BINARY_ENTITY        LONGVARBINARY NULL,
 	   MESSAGE_ORDER		INT,
        PRIMARY KEY (CHANNEL_ID, MESSAGE_ID)
 );
@@ -28,6 +28,7 @@ CREATE TABLE ANNOUNCEMENT_MESSAGE (
        OWNER                VARCHAR (99) NULL,
 	   MESSAGE_DATE         DATETIME NOT NULL,
        XML                  LONGTEXT NULL,
+       BINARY_ENTITY        LONGBLOB NULL,
 	   MESSAGE_ORDER		INT 
 );
 
@@ -0,0 +1,2 @@
+-- Holds messages written as Type1 binary blobs when announcement.storage.binary is true
+alter table ANNOUNCEMENT_MESSAGE add column BINARY_ENTITY LONGBLOB;
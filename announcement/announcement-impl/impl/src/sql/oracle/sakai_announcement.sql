@@ -28,6 +28,7 @@ CREATE TABLE ANNOUNCEMENT_MESSAGE (
        OWNER                VARCHAR2(99) NULL,
        MESSAGE_DATE         DATE NOT NULL,
        XML                  LONG NULL,
+       BINARY_ENTITY        BLOB NULL,
 	   MESSAGE_ORDER		INT
 );
 
@@ -46,6 +46,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -60,6 +61,8 @@ import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.annotation.Resource;
 
@@ -70,6 +73,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.text.StringEscapeUtils;
+import org.hibernate.Hibernate;
 import org.sakaiproject.announcement.api.AnnouncementChannel;
 import org.sakaiproject.announcement.api.AnnouncementService;
 import org.sakaiproject.assignment.api.AssignmentConstants;
@@ -166,6 +170,7 @@ import org.sakaiproject.tags.api.TagService;
 import org.sakaiproject.tasks.api.Priorities;
 import org.sakaiproject.tasks.api.Task;
 import org.sakaiproject.tasks.api.TaskService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.time.api.UserTimeService;
 import org.sakaiproject.timesheet.api.TimeSheetEntry;
@@ -242,6 +247,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
     @Setter private SiteService siteService;
     @Setter private TaggingManager taggingManager;
     @Setter private TaskService taskService;
+    @Setter private ThreadLocalManager threadLocalManager;
     @Setter private TimeService timeService;
     @Setter private ToolManager toolManager;
     @Setter private UserDirectoryService userDirectoryService;
@@ -254,6 +260,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
     private boolean allowSubmitByInstructor;
     private boolean exposeContentReviewErrorsToUI;
     private boolean createGroupsOnImport;
+    private SubmissionsZipExporter submissionsZipExporter;
 
     private static ResourceLoader rb = new ResourceLoader("assignment");
 
@@ -268,6 +275,10 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
         exposeContentReviewErrorsToUI = serverConfigurationService.getBoolean("contentreview.expose.errors.to.ui", true);
         createGroupsOnImport = serverConfigurationService.getBoolean("assignment.create.groups.on.import", true);
 
+        if (serverConfigurationService.getBoolean("assignment.zip.export.enabled", true)) {
+            submissionsZipExporter = new SubmissionsZipExporter(serverConfigurationService, sessionManager, threadLocalManager, contentHostingService);
+        }
+
         // register as an entity producer
         entityManager.registerEntityProducer(this, REFERENCE_ROOT);
 
@@ -291,6 +302,12 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
         userMessagingService.importTemplateFromResourceXmlFile("templates/dueReminder.xml", AssignmentConstants.TOOL_ID + ".duereminder");
     }
 
+    public void destroy() {
+        if (submissionsZipExporter != null) {
+            submissionsZipExporter.destroy();
+        }
+    }
+
     @Override
     public boolean isTimeSheetEnabled(String siteId) {
        return timeSheetService.isTimeSheetEnabled(siteId);
@@ -651,6 +668,12 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                                 try {
                                     Assignment a = getAssignment(refReckoner.getId());
                                     String filename = escapeInvalidCharsEntry(a.getTitle()) + "_" + date;
+                                    String export = req.getParameter("export");
+                                    if (export != null && submissionsZipExporter != null) {
+                                        // build the zip in the background, the page polls for it and downloads it when it is ready
+                                        exportSubmissionsZip(export, req, res, ref.getReference(), queryString, filename);
+                                        break;
+                                    }
                                     res.setContentType("application/zip");
                                     res.setHeader("Content-Disposition", "attachment; filename = \"" + filename + ".zip\"");
 
@@ -2282,6 +2305,56 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
 
     @Override
     public void getSubmissionsZip(OutputStream out, String reference, String query) throws IdUnusedException, PermissionException {
+        getSubmissionsZip(out, reference, query, null);
+    }
+
+    /**
+     * Handles the requests of a background submissions zip export, <code>export=start</code> starts building the zip
+     * (or finds the one already building) and <code>export=status</code> polls it, both answer with its status as JSON.
+     * <code>export=download</code> sends the built zip, in ranges if asked to.
+     */
+    private void exportSubmissionsZip(String action, HttpServletRequest req, HttpServletResponse res, String reference, String queryString, String filename) throws IOException {
+        if (!allowGradeSubmission(reference)) {
+            res.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        // the same download options find the same export
+        String query = Arrays.stream(StringUtils.defaultString(queryString).split("&"))
+                .filter(token -> !token.startsWith("export="))
+                .collect(Collectors.joining("&"));
+
+        SubmissionsZipExporter.Export export;
+        switch (action) {
+            case "start":
+                export = submissionsZipExporter.start(reference, query, filename, (out, e) -> getSubmissionsZip(out, reference, query, e));
+                if (export == null) {
+                    res.setHeader("Retry-After", "60");
+                    res.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                } else {
+                    submissionsZipExporter.writeStatus(export, res);
+                }
+                break;
+            case "status":
+            case "download":
+                export = submissionsZipExporter.get(reference, query);
+                if (export == null) {
+                    res.sendError(HttpServletResponse.SC_NOT_FOUND);
+                } else if ("status".equals(action)) {
+                    submissionsZipExporter.writeStatus(export, res);
+                } else {
+                    submissionsZipExporter.download(export, req, res);
+                }
+                break;
+            default:
+                res.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+
+    /**
+     * @param export the background export building this zip, which prefetches its attachments, or null to read them
+     *               while writing
+     */
+    private void getSubmissionsZip(OutputStream out, String reference, String query, SubmissionsZipExporter.Export export) {
         boolean withStudentSubmissionText = false;
         boolean withStudentSubmissionAttachment = false;
         boolean withGradeFile = false;
@@ -2359,103 +2432,186 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
             }
         }
 
-        byte[] rv = null;
+        // a background export reads the submissions in a short transaction of its own, and writes the zip after it
+        // ends, from what was read
+        String filterOnly = searchFilterOnly;
+        String view = viewString.length() == 0 ? AssignmentConstants.ALL : viewString;
+        String search = searchString;
+        String context = contextString;
+        SubmissionsToZip toZip = export == null
+                ? readSubmissionsToZip(reference, filterOnly, view, search, context)
+                : transactionTemplate.execute(status -> readSubmissionsToZip(reference, filterOnly, view, search, context));
+        if (toZip == null) {
+            return;
+        }
+
+        try {
+            Assignment assignment = toZip.assignment;
+            List<AssignmentSubmission> submissions = toZip.submissions;
+
+            if (assignment.getIsGroup()) {
+                StringBuilder exceptionMessage = new StringBuilder();
+
+                if (allowGradeSubmission(reference)) {
+                    Comparator<AssignmentSubmission> comparator = new AssignmentSubmissionComparator(applicationContext.getBean(AssignmentService.class), siteService, userDirectoryService);
+                    if (export != null) {
+                        submissions.sort(comparator);
+                        export.prefetch(attachmentsToZip(submissions, assignment.getTypeOfSubmission(), withStudentSubmissionAttachment, withFeedbackAttachment));
+                    }
+                    zipGroupSubmissions(reference,
+                            assignment.getTitle(),
+                            assignment.getTypeOfGrade().toString(),
+                            assignment.getTypeOfSubmission(),
+                            new SortedIterator(submissions.iterator(), comparator),
+                            out,
+                            exceptionMessage,
+                            withStudentSubmissionText,
+                            withStudentSubmissionAttachment,
+                            withGradeFile,
+                            withFeedbackText,
+                            withFeedbackComment,
+                            withFeedbackAttachment,
+                            withRubrics,
+                            gradeFileFormat,
+                            includeNotSubmitted,
+                            export);
+
+                    if (exceptionMessage.length() > 0) {
+                        // log any error messages
+                        log.warn("Encountered an issue while zipping submissions for ref = {}, exception message {}", reference, exceptionMessage);
+                    }
+                }
+            } else {
+                StringBuilder exceptionMessage = new StringBuilder();
+                Comparator<AssignmentSubmission> comparator;
+                if (assignmentUsesAnonymousGrading(assignment)){
+                    comparator = new AnonymousSubmissionComparator();
+                } else {
+                    comparator = new AssignmentSubmissionComparator(applicationContext.getBean(AssignmentService.class), siteService, userDirectoryService);
+                }
+                if (export != null) {
+                    submissions.sort(comparator);
+                    export.prefetch(attachmentsToZip(submissions, assignment.getTypeOfSubmission(), withStudentSubmissionAttachment, withFeedbackAttachment));
+                }
+                SortedIterator sortedIterator = new SortedIterator(submissions.iterator(), comparator);
+                if (allowGradeSubmission(reference)) {
+                    zipSubmissions(reference,
+                            assignment.getTitle(),
+                            assignment.getTypeOfGrade(),
+                            assignment.getTypeOfSubmission(),
+                            sortedIterator,
+                            out,
+                            exceptionMessage,
+                            withStudentSubmissionText,
+                            withStudentSubmissionAttachment,
+                            withGradeFile,
+                            withFeedbackText,
+                            withFeedbackComment,
+                            withFeedbackAttachment,
+                            withRubrics,
+                            withoutFolders,
+                            gradeFileFormat,
+                            includeNotSubmitted,
+                            assignment.getContext(),
+                            export);
+                    if (exceptionMessage.length() > 0) {
+                        log.warn("Encountered and issue while zipping submissions for ref = {}, exception message {}", reference, exceptionMessage);
+                    }
+                }
+            }
+
+        } catch (Exception e) {
+            log.warn("Cannot create submissions zip file for reference = {}", reference, e);
+        }
+    }
+
+    /** The assignment and the submissions a zip is written from. */
+    private static final class SubmissionsToZip {
+        private final Assignment assignment;
+        private final List<AssignmentSubmission> submissions;
 
+        private SubmissionsToZip(Assignment assignment, List<AssignmentSubmission> submissions) {
+            this.assignment = assignment;
+            this.submissions = submissions;
+        }
+    }
+
+    /**
+     * Reads the submissions to zip, together with the collections of them and of their assignment that writing the
+     * zip reads, so it can be written after the session that read them is gone.
+     *
+     * @return the assignment and the submissions in it to zip, or null if there is nothing to zip
+     */
+    private SubmissionsToZip readSubmissionsToZip(String reference, String searchFilterOnly, String viewString, String searchString, String contextString) {
         try {
             String id = AssignmentReferenceReckoner.reckoner().reference(reference).reckon().getId();
             Assignment assignment = getAssignment(id);
+            List<AssignmentSubmission> submissions = new ArrayList<>();
 
             if (assignment.getIsGroup()) {
                 Collection<Group> submitterGroups = getSubmitterGroupList(searchFilterOnly,
-                        viewString.length() == 0 ? AssignmentConstants.ALL : viewString,
+                        viewString,
                         searchString,
                         id,
                         contextString == null ? assignment.getContext() : contextString);
-                if (submitterGroups != null && !submitterGroups.isEmpty()) {
-                    List<AssignmentSubmission> submissions = new ArrayList<>();
-                    for (Group g : submitterGroups) {
-                        log.debug("ZIP GROUP " + g.getTitle());
-                        AssignmentSubmission sub = getSubmission(id, g.getId());
-                        log.debug("ZIP GROUP " + g.getTitle() + " SUB " + (sub == null ? "null" : sub.getId()));
-                        if (sub != null) {
-                            submissions.add(sub);
-                        }
-                    }
-                    StringBuilder exceptionMessage = new StringBuilder();
-
-                    if (allowGradeSubmission(reference)) {
-                        zipGroupSubmissions(reference,
-                                assignment.getTitle(),
-                                assignment.getTypeOfGrade().toString(),
-                                assignment.getTypeOfSubmission(),
-                                new SortedIterator(submissions.iterator(), new AssignmentSubmissionComparator(applicationContext.getBean(AssignmentService.class), siteService, userDirectoryService)),
-                                out,
-                                exceptionMessage,
-                                withStudentSubmissionText,
-                                withStudentSubmissionAttachment,
-                                withGradeFile,
-                                withFeedbackText,
-                                withFeedbackComment,
-                                withFeedbackAttachment,
-                                withRubrics,
-                                gradeFileFormat,
-                                includeNotSubmitted);
-
-                        if (exceptionMessage.length() > 0) {
-                            // log any error messages
-                            log.warn("Encountered an issue while zipping submissions for ref = {}, exception message {}", reference, exceptionMessage);
-                        }
+                if (submitterGroups == null || submitterGroups.isEmpty()) {
+                    return null;
+                }
+                for (Group g : submitterGroups) {
+                    log.debug("ZIP GROUP " + g.getTitle());
+                    AssignmentSubmission sub = getSubmission(id, g.getId());
+                    log.debug("ZIP GROUP " + g.getTitle() + " SUB " + (sub == null ? "null" : sub.getId()));
+                    if (sub != null) {
+                        submissions.add(sub);
                     }
                 }
             } else {
-
                 Map<User, AssignmentSubmission> submitters = getSubmitterMap(searchFilterOnly,
-                        viewString.length() == 0 ? AssignmentConstants.ALL : viewString,
+                        viewString,
                         searchString,
                         reference,
                         contextString == null ? assignment.getContext() : contextString);
-
-                if (!submitters.isEmpty()) {
-                    List<AssignmentSubmission> submissions = new ArrayList<AssignmentSubmission>(submitters.values());
-
-                    StringBuilder exceptionMessage = new StringBuilder();
-                    SortedIterator sortedIterator;
-                    if (assignmentUsesAnonymousGrading(assignment)){
-                        sortedIterator = new SortedIterator(submissions.iterator(), new AnonymousSubmissionComparator());
-                    } else {
-                        sortedIterator = new SortedIterator(submissions.iterator(), new AssignmentSubmissionComparator(applicationContext.getBean(AssignmentService.class), siteService, userDirectoryService));
-                    }
-                    if (allowGradeSubmission(reference)) {
-                        zipSubmissions(reference,
-                                assignment.getTitle(),
-                                assignment.getTypeOfGrade(),
-                                assignment.getTypeOfSubmission(),
-                                sortedIterator,
-                                out,
-                                exceptionMessage,
-                                withStudentSubmissionText,
-                                withStudentSubmissionAttachment,
-                                withGradeFile,
-                                withFeedbackText,
-                                withFeedbackComment,
-                                withFeedbackAttachment,
-                                withRubrics,
-                                withoutFolders,
-                                gradeFileFormat,
-                                includeNotSubmitted,
-                                assignment.getContext());
-                        if (exceptionMessage.length() > 0) {
-                            log.warn("Encountered and issue while zipping submissions for ref = {}, exception message {}", reference, exceptionMessage);
-                        }
-                    }
+                if (submitters.isEmpty()) {
+                    return null;
                 }
+                submissions.addAll(submitters.values());
             }
 
+            Hibernate.initialize(assignment.getProperties());
+            Hibernate.initialize(assignment.getGroups());
+            for (AssignmentSubmission s : submissions) {
+                Hibernate.initialize(s.getAssignment());
+                Hibernate.initialize(s.getAttachments());
+                Hibernate.initialize(s.getFeedbackAttachments());
+                Hibernate.initialize(s.getProperties());
+            }
+            return new SubmissionsToZip(assignment, submissions);
         } catch (Exception e) {
             log.warn("Cannot create submissions zip file for reference = {}", reference, e);
+            return null;
         }
     }
 
+    /**
+     * @return the attachments the zip of these submissions adds, in the order it adds them, with their content
+     *         resource ids
+     */
+    private LinkedHashMap<String, String> attachmentsToZip(List<AssignmentSubmission> submissions, Assignment.SubmissionType typeOfSubmission, boolean withStudentSubmissionAttachment, boolean withFeedbackAttachment) {
+        boolean withSubmissionAttachments = withStudentSubmissionAttachment
+                && typeOfSubmission != Assignment.SubmissionType.TEXT_ONLY_ASSIGNMENT_SUBMISSION
+                && typeOfSubmission != Assignment.SubmissionType.NON_ELECTRONIC_ASSIGNMENT_SUBMISSION;
+        LinkedHashMap<String, String> attachments = new LinkedHashMap<>();
+        for (AssignmentSubmission s : submissions) {
+            if (withSubmissionAttachments) {
+                s.getAttachments().forEach(r -> attachments.putIfAbsent(r, removeReferencePrefix(r)));
+            }
+            if (withFeedbackAttachment) {
+                s.getFeedbackAttachments().forEach(r -> attachments.putIfAbsent(r, removeReferencePrefix(r)));
+            }
+        }
+        return attachments;
+    }
+
     @Override
     public String assignmentReference(String context, String id) {
         return AssignmentReferenceReckoner.reckoner().context(context).id(id).reckon().getReference();
@@ -3495,7 +3651,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
     }
 
     // TODO zipSubmissions and zipGroupSubmissions should be combined
-    private void zipSubmissions(String assignmentReference, String assignmentTitle, Assignment.GradeType gradeType, Assignment.SubmissionType typeOfSubmission, Iterator submissions, OutputStream outputStream, StringBuilder exceptionMessage, boolean withStudentSubmissionText, boolean withStudentSubmissionAttachment, boolean withGradeFile, boolean withFeedbackText, boolean withFeedbackComment, boolean withFeedbackAttachment, boolean withRubrics, boolean withoutFolders, String gradeFileFormat, boolean includeNotSubmitted, String siteId) {
+    private void zipSubmissions(String assignmentReference, String assignmentTitle, Assignment.GradeType gradeType, Assignment.SubmissionType typeOfSubmission, Iterator submissions, OutputStream outputStream, StringBuilder exceptionMessage, boolean withStudentSubmissionText, boolean withStudentSubmissionAttachment, boolean withGradeFile, boolean withFeedbackText, boolean withFeedbackComment, boolean withFeedbackAttachment, boolean withRubrics, boolean withoutFolders, String gradeFileFormat, boolean includeNotSubmitted, String siteId, SubmissionsZipExporter.Export export) {
         ZipOutputStream out = null;
 
         boolean isAdditionalNotesEnabled = false;
@@ -3695,7 +3851,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                                     }
 
                                     // add all submission attachment into the submission attachment folder
-                                    zipAttachments(out, submittersName, sSubAttachmentFolder, s.getAttachments());
+                                    zipAttachments(out, submittersName, sSubAttachmentFolder, s.getAttachments(), export);
                                     out.closeEntry();
                                 }
 
@@ -3718,7 +3874,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                                     }
 
                                     // add all feedback attachment folder
-                                    zipAttachments(out, submittersName, feedbackSubAttachmentFolder, s.getFeedbackAttachments());
+                                    zipAttachments(out, submittersName, feedbackSubAttachmentFolder, s.getFeedbackAttachments(), export);
                                 }
 
                                 String assignmentId = s.getAssignment().getId();
@@ -3824,7 +3980,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
     }
 
     // TODO zipSubmissions and zipGroupSubmissions should be combined
-    protected void zipGroupSubmissions(String assignmentReference, String assignmentTitle, String gradeTypeString, Assignment.SubmissionType typeOfSubmission, Iterator submissions, OutputStream outputStream, StringBuilder exceptionMessage, boolean withStudentSubmissionText, boolean withStudentSubmissionAttachment, boolean withGradeFile, boolean withFeedbackText, boolean withFeedbackComment, boolean withFeedbackAttachment, boolean withRubrics, String gradeFileFormat, boolean includeNotSubmitted) {
+    protected void zipGroupSubmissions(String assignmentReference, String assignmentTitle, String gradeTypeString, Assignment.SubmissionType typeOfSubmission, Iterator submissions, OutputStream outputStream, StringBuilder exceptionMessage, boolean withStudentSubmissionText, boolean withStudentSubmissionAttachment, boolean withGradeFile, boolean withFeedbackText, boolean withFeedbackComment, boolean withFeedbackAttachment, boolean withRubrics, String gradeFileFormat, boolean includeNotSubmitted, SubmissionsZipExporter.Export export) {
         ZipOutputStream out = null;
         try {
             out = new ZipOutputStream(outputStream);
@@ -3931,7 +4087,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                                 final ZipEntry sSubAttachmentFolderEntry = new ZipEntry(sSubAttachmentFolder);
                                 out.putNextEntry(sSubAttachmentFolderEntry);
                                 // add all submission attachment into the submission attachment folder
-                                zipAttachments(out, submittersName.toString(), sSubAttachmentFolder, s.getAttachments());
+                                zipAttachments(out, submittersName.toString(), sSubAttachmentFolder, s.getAttachments(), export);
                                 out.closeEntry();
                             }
 
@@ -3948,7 +4104,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                             	final ZipEntry feedbackSubAttachmentFolderEntry = new ZipEntry(feedbackSubAttachmentFolder);
                                 out.putNextEntry(feedbackSubAttachmentFolderEntry);
                                 // add all feedback attachment folder
-                                zipAttachments(out, submittersName.toString(), feedbackSubAttachmentFolder, s.getFeedbackAttachments());
+                                zipAttachments(out, submittersName.toString(), feedbackSubAttachmentFolder, s.getFeedbackAttachments(), export);
                                 out.closeEntry();
                             }
 
@@ -4050,7 +4206,7 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
     }
 
     // TODO refactor this
-    private void zipAttachments(ZipOutputStream out, String submittersName, String sSubAttachmentFolder, Collection<String> attachments) {
+    private void zipAttachments(ZipOutputStream out, String submittersName, String sSubAttachmentFolder, Collection<String> attachments, SubmissionsZipExporter.Export export) {
         int attachedUrlCount = 0;
         InputStream content = null;
         Map<String, Integer> done = new HashMap<>();
@@ -4076,6 +4232,27 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                     attachedUrlCount++;
                 }
 
+                String candidateName = sSubAttachmentFolder + displayName;
+                String realName = null;
+                Integer already = done.get(candidateName);
+                if (already == null) {
+                    realName = candidateName;
+                    done.put(candidateName, 1);
+                } else {
+                    String fileName = org.springframework.util.StringUtils.stripFilenameExtension(candidateName);
+                    String fileExt = org.springframework.util.StringUtils.getFilenameExtension(candidateName);
+                    realName = org.springframework.util.StringUtils.hasText(fileExt)
+                            ?  fileName + "+" + already + "." + fileExt
+                            :  fileName + "+" + already;
+                    done.put(candidateName, already + 1);
+                }
+
+                if (export != null) {
+                    // read ahead by the export, stored as it is if already compressed
+                    export.zipAttachment(out, realName, r, resource);
+                    continue;
+                }
+
                 // buffered stream input
                 content = resource.streamContent();
                 byte data[] = new byte[1024 * 10];
@@ -4083,21 +4260,6 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                 try {
                     bContent = new BufferedInputStream(content, data.length);
 
-                    String candidateName = sSubAttachmentFolder + displayName;
-                    String realName = null;
-                    Integer already = done.get(candidateName);
-                    if (already == null) {
-                        realName = candidateName;
-                        done.put(candidateName, 1);
-                    } else {
-                        String fileName = org.springframework.util.StringUtils.stripFilenameExtension(candidateName);
-                        String fileExt = org.springframework.util.StringUtils.getFilenameExtension(candidateName);
-                        realName = org.springframework.util.StringUtils.hasText(fileExt)
-                                ?  fileName + "+" + already + "." + fileExt
-                                :  fileName + "+" + already;
-                        done.put(candidateName, already + 1);
-                    }
-
                     ZipEntry attachmentEntry = new ZipEntry(realName);
                     out.putNextEntry(attachmentEntry);
                     int bCount = -1;
@@ -4144,6 +4306,9 @@ public class AssignmentServiceImpl implements AssignmentService, EntityTransferr
                         log.warn(":zipAttachments: problem closing Inputstream content " + ioException);
                     }
                 }
+                if (export != null) {
+                    export.attachmentDone(r);
+                }
             }
         } // for
     }
@@ -0,0 +1,616 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.assignment.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.content.api.ContentResource;
+import org.sakaiproject.exception.ServerOverloadException;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the "download all" submission archives in the background, so that a large assignment does not hold a request
+ * thread for as long as it takes to zip every submission, and a browser retry or a proxy time out does not start it
+ * over.
+ * <p>
+ * An export is identified by the user, the assignment and the download options, so asking again for the same archive
+ * while it is building returns that export. Asking again once it is built or failed builds it over, so that the archive
+ * has the submissions and grades as they are now. At most <code>assignment.zip.export.concurrency</code> exports build at
+ * once on each node, the rest wait in a queue of <code>assignment.zip.export.queue</code>. While an export builds, the
+ * attachments coming next are read from content hosting into temporary files by a pool of
+ * <code>assignment.zip.export.prefetch</code> threads. Attachments in formats that are already compressed are stored
+ * rather than deflated again. A built archive is kept in <code>assignment.zip.export.dir</code> for
+ * <code>assignment.zip.export.expiry</code> minutes and can be downloaded in ranges.
+ * </p>
+ * Exports live on the node that builds them, so polling and downloading rely on the session staying on that node.
+ */
+@Slf4j
+class SubmissionsZipExporter {
+
+    enum Status { QUEUED, RUNNING, READY, FAILED }
+
+    /** Writes the archive of an export, reading its attachments through {@link Export#zipAttachment}. */
+    @FunctionalInterface
+    interface ZipWriter {
+        void write(OutputStream out, Export export) throws Exception;
+    }
+
+    static final String DEFAULT_STORED_EXTENSIONS = "7z,aac,avi,bz2,docx,epub,flac,gif,gz,heic,jpeg,jpg,m4a,m4v,mkv,mov,mp3,mp4,odp,ods,odt,ogg,pdf,png,pptx,rar,webm,webp,xlsx,xz,zip";
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final SessionManager sessionManager;
+    private final ThreadLocalManager threadLocalManager;
+    private final ContentHostingService contentHostingService;
+
+    private final Path directory;
+    private final long expiry;
+    private final int window;
+    private final Set<String> storedExtensions;
+
+    private final ThreadPoolExecutor builders;
+    private final ExecutorService prefetchers;
+    private final ScheduledExecutorService cleaner;
+    private final Map<String, Export> exports = new ConcurrentHashMap<>();
+    private final AtomicLong builds = new AtomicLong();
+
+    SubmissionsZipExporter(ServerConfigurationService serverConfigurationService, SessionManager sessionManager, ThreadLocalManager threadLocalManager, ContentHostingService contentHostingService) {
+        this.sessionManager = sessionManager;
+        this.threadLocalManager = threadLocalManager;
+        this.contentHostingService = contentHostingService;
+
+        String dir = serverConfigurationService.getString("assignment.zip.export.dir", null);
+        directory = StringUtils.isNotBlank(dir) ? Paths.get(dir) : Paths.get(System.getProperty("java.io.tmpdir"), "assignment-zip-exports");
+        expiry = TimeUnit.MINUTES.toMillis(Math.max(1, serverConfigurationService.getInt("assignment.zip.export.expiry", 60)));
+        int concurrency = Math.max(1, serverConfigurationService.getInt("assignment.zip.export.concurrency", 2));
+        int queue = Math.max(1, serverConfigurationService.getInt("assignment.zip.export.queue", 20));
+        int prefetch = Math.max(1, serverConfigurationService.getInt("assignment.zip.export.prefetch", 4));
+        window = 2 * prefetch;
+        storedExtensions = Arrays.stream(serverConfigurationService.getString("assignment.zip.export.stored", DEFAULT_STORED_EXTENSIONS).split(","))
+                .map(e -> e.trim().toLowerCase(Locale.ROOT))
+                .filter(StringUtils::isNotEmpty)
+                .collect(Collectors.toSet());
+
+        builders = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queue), threads("assignment-zip-export"));
+        prefetchers = Executors.newFixedThreadPool(prefetch, threads("assignment-zip-prefetch"));
+        cleaner = Executors.newSingleThreadScheduledExecutor(threads("assignment-zip-cleaner"));
+
+        try {
+            Files.createDirectories(directory);
+            // archives left by a previous run can no longer be looked up
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{zip,part,tmp}")) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not prepare the submissions zip export directory {}", directory, e);
+        }
+        cleaner.scheduleWithFixedDelay(this::removeExpired, 1, 1, TimeUnit.MINUTES);
+        log.info("Submissions zip exports build in {}, {} at a time, with {} prefetch threads, kept for {} minutes",
+                directory, concurrency, prefetch, TimeUnit.MILLISECONDS.toMinutes(expiry));
+    }
+
+    void destroy() {
+        cleaner.shutdownNow();
+        builders.shutdownNow();
+        prefetchers.shutdownNow();
+        exports.values().forEach(Export::delete);
+        exports.clear();
+    }
+
+    /**
+     * Starts building an archive for the current user, unless it is already building. An archive built before is
+     * replaced.
+     * @return the export, or null if this node is already building as many exports as it can queue
+     */
+    Export start(String reference, String query, String filename, ZipWriter writer) {
+        String id = id(sessionManager.getCurrentSessionUserId(), reference, query);
+        Export export = exports.compute(id, (k, current) -> {
+            if (current != null && (current.status == Status.QUEUED || current.status == Status.RUNNING)) {
+                return current;
+            }
+            if (current != null) {
+                current.delete();
+            }
+            return new Export(k, filename, writer);
+        });
+        if (export.status == Status.QUEUED && export.queued.compareAndSet(false, true)) {
+            try {
+                builders.execute(export::build);
+            } catch (RejectedExecutionException e) {
+                log.warn("Too many submissions zip exports queued, could not start {}", reference);
+                exports.remove(id, export);
+                return null;
+            }
+        }
+        return export;
+    }
+
+    /** @return the current user's export of an archive, or null if there is none */
+    Export get(String reference, String query) {
+        return exports.get(id(sessionManager.getCurrentSessionUserId(), reference, query));
+    }
+
+    /** Writes the status of an export as JSON, for the page polling it. */
+    void writeStatus(Export export, HttpServletResponse res) throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("id", export.id);
+        status.put("status", export.status);
+        status.put("progress", export.getProgress());
+        if (export.status == Status.READY) {
+            status.put("size", export.size);
+            status.put("expires", export.expires);
+        }
+        res.setContentType("application/json");
+        res.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        res.setHeader("Cache-Control", "no-store");
+        JSON.writeValue(res.getOutputStream(), status);
+    }
+
+    /** Sends a built archive, or the part of it asked for in a <code>Range</code> header. */
+    void download(Export export, HttpServletRequest req, HttpServletResponse res) throws IOException {
+        if (export.status != Status.READY || !Files.exists(export.file)) {
+            res.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long length = export.size;
+        // each build has its own tag, so a download resumed across a rebuild starts over
+        String etag = "\"" + export.tag + "\"";
+        long[] range = null;
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null || ifRange.equals(etag)) {
+            range = parseRange(req.getHeader("Range"), length);
+        }
+        res.setHeader("Accept-Ranges", "bytes");
+        res.setHeader("ETag", etag);
+        if (range != null && range.length == 0) {
+            res.setHeader("Content-Range", "bytes */" + length);
+            res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        long start = range == null ? 0 : range[0];
+        long end = range == null ? length - 1 : range[1];
+        if (range != null) {
+            res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            res.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        res.setContentType("application/zip");
+        res.setHeader("Content-Disposition", "attachment; filename = \"" + export.filename + ".zip\"");
+        res.setContentLengthLong(end - start + 1);
+
+        try (FileChannel channel = FileChannel.open(export.file, StandardOpenOption.READ)) {
+            OutputStream out = res.getOutputStream();
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, Channels.newChannel(out));
+                if (sent <= 0) break;
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Parses a single range <code>Range</code> header.
+     * @return the first and last byte of the range, an empty array if the range can't be satisfied, or null to send the
+     *         whole content, when there is no range or it is malformed or has several ranges
+     */
+    static long[] parseRange(String header, long length) {
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) return null;
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.isEmpty()) {
+                // the last bytes
+                if (last.isEmpty()) return null;
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return new long[0];
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = length - 1;
+                if (!last.isEmpty()) {
+                    long lastByte = Long.parseLong(last);
+                    if (lastByte < start) return null;
+                    end = Math.min(lastByte, end);
+                }
+            }
+            if (start >= length || start > end) return new long[0];
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** @return true if an entry of this name is a format that is already compressed */
+    boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && dot > name.lastIndexOf('/') && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Adds a file to an archive. Formats that are already compressed are stored, the size and checksum a stored entry
+     * needs up front were taken while the file was copied.
+     */
+    void writeEntry(ZipOutputStream out, String name, Prefetched content) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (isStored(name)) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.size);
+            entry.setCompressedSize(content.size);
+            entry.setCrc(content.crc);
+        }
+        out.putNextEntry(entry);
+        Files.copy(content.file, out);
+        out.closeEntry();
+    }
+
+    /** Copies content into a temporary file, taking its size and checksum. */
+    Prefetched copy(InputStream in) throws IOException {
+        Path file = Files.createTempFile(directory, "attachment", ".tmp");
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new Prefetched(file, size, crc.getValue());
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        exports.values().removeIf(export -> {
+            if (export.expires > 0 && export.expires < now) {
+                export.delete();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static String id(String userId, String reference, String query) {
+        return DigestUtils.sha256Hex(userId + "\n" + reference + "\n" + StringUtils.defaultString(query));
+    }
+
+    private static ThreadFactory threads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** An attachment copied to a temporary file */
+    static final class Prefetched {
+        final Path file;
+        final long size;
+        final long crc;
+
+        Prefetched(Path file, long size, long crc) {
+            this.file = file;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    /** One archive, building or built. */
+    final class Export {
+        @Getter private final String id;
+        private final String tag;
+        private final String filename;
+        private final String userId;
+        private final String userEid;
+        private final ZipWriter writer;
+        private final Path file;
+        private final AtomicInteger zipped = new AtomicInteger();
+        private final AtomicBoolean queued = new AtomicBoolean();
+
+        @Getter private volatile Status status = Status.QUEUED;
+        private volatile int planned;
+        private volatile long size;
+        private volatile long expires;
+
+        // only used by the thread building the archive
+        private List<String> plan = new ArrayList<>();
+        private Map<String, String> resources = new HashMap<>();
+        private Map<String, Integer> positions = new HashMap<>();
+        private final Map<String, Future<Prefetched>> prefetched = new HashMap<>();
+        private int scheduled;
+
+        private Export(String id, String filename, ZipWriter writer) {
+            this.id = id;
+            this.tag = id + "-" + builds.incrementAndGet();
+            this.filename = filename;
+            this.writer = writer;
+            Session session = sessionManager.getCurrentSession();
+            this.userId = session.getUserId();
+            this.userEid = session.getUserEid();
+            this.file = directory.resolve(tag + ".zip");
+        }
+
+        /** @return how far the archive is built, in percent of the attachments to zip */
+        int getProgress() {
+            if (status == Status.READY) return 100;
+            int total = planned;
+            return total == 0 ? 0 : Math.min(99, zipped.get() * 100 / total);
+        }
+
+        /**
+         * Plans the attachments the archive will add, in the order it adds them, and starts reading the first ones.
+         * @param attachments the attachment references and their content resource ids
+         */
+        void prefetch(LinkedHashMap<String, String> attachments) {
+            plan = new ArrayList<>(attachments.keySet());
+            resources = attachments;
+            positions = new HashMap<>();
+            for (int i = 0; i < plan.size(); i++) {
+                positions.put(plan.get(i), i);
+            }
+            planned = plan.size();
+            schedule(window);
+        }
+
+        /** Adds an attachment to the archive, from its prefetched copy if there is one. */
+        void zipAttachment(ZipOutputStream out, String name, String reference, ContentResource resource) throws IOException, ServerOverloadException {
+            Prefetched content = take(reference, resource);
+            try {
+                writeEntry(out, name, content);
+            } finally {
+                Files.deleteIfExists(content.file);
+            }
+        }
+
+        /** Counts an attachment the archive is done with, whether it was added or not. */
+        void attachmentDone(String reference) {
+            zipped.incrementAndGet();
+            discard(prefetched.remove(reference));
+        }
+
+        private Prefetched take(String reference, ContentResource resource) throws IOException, ServerOverloadException {
+            Integer position = positions.get(reference);
+            if (position != null) {
+                // the attachments planned before this one were skipped
+                prefetched.entrySet().removeIf(e -> {
+                    if (positions.get(e.getKey()) < position) {
+                        discard(e.getValue());
+                        return true;
+                    }
+                    return false;
+                });
+                schedule(position + 1 + window);
+            }
+            Future<Prefetched> future = prefetched.remove(reference);
+            if (future != null) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while prefetching " + reference);
+                } catch (ExecutionException e) {
+                    log.debug("Could not prefetch {}, reading it again", reference, e.getCause());
+                }
+            }
+            try (InputStream in = resource.streamContent()) {
+                return copy(in);
+            }
+        }
+
+        private void schedule(int upTo) {
+            for (; scheduled < Math.min(upTo, plan.size()); scheduled++) {
+                String reference = plan.get(scheduled);
+                String resourceId = resources.get(reference);
+                prefetched.computeIfAbsent(reference, r -> prefetchers.submit(() -> fetch(resourceId)));
+            }
+        }
+
+        private Prefetched fetch(String resourceId) throws Exception {
+            try {
+                Session session = sessionManager.getCurrentSession();
+                session.setUserId(userId);
+                session.setUserEid(userEid);
+                ContentResource resource = contentHostingService.getResource(resourceId);
+                Prefetched content;
+                try (InputStream in = resource.streamContent()) {
+                    content = copy(in);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    // discarded while it was copied
+                    Files.deleteIfExists(content.file);
+                }
+                return content;
+            } finally {
+                // the pool thread must not keep this user's session for the next export
+                threadLocalManager.clear();
+            }
+        }
+
+        private void discard(Future<Prefetched> future) {
+            if (future == null) return;
+            if (!future.cancel(true) && !future.isCancelled()) {
+                try {
+                    Files.deleteIfExists(future.get().file);
+                } catch (Exception e) {
+                    // nothing was copied
+                }
+            }
+        }
+
+        private void build() {
+            status = Status.RUNNING;
+            Session session = sessionManager.getCurrentSession();
+            session.setUserId(userId);
+            session.setUserEid(userEid);
+
+            Path part = directory.resolve(tag + ".part");
+            try {
+                TrackedOutputStream out = new TrackedOutputStream(new BufferedOutputStream(Files.newOutputStream(part)));
+                try {
+                    writer.write(out, this);
+                } finally {
+                    out.close();
+                }
+                // the zip code reports write errors in its messages, they must not leave a truncated archive
+                if (out.failure != null) throw out.failure;
+                Files.move(part, file, StandardCopyOption.REPLACE_EXISTING);
+                size = Files.size(file);
+                status = Status.READY;
+                log.debug("Built submissions zip {} of {} bytes", id, size);
+            } catch (Exception e) {
+                log.warn("Could not build the submissions zip {} for user {}", id, userId, e);
+                status = Status.FAILED;
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException ioe) {
+                    log.warn("Could not delete {}", part, ioe);
+                }
+            } finally {
+                prefetched.values().forEach(this::discard);
+                prefetched.clear();
+                expires = System.currentTimeMillis() + expiry;
+                threadLocalManager.clear();
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete the submissions zip {}", file, e);
+            }
+        }
+    }
+
+    /** Remembers the first write error, which the zip code would otherwise only log. */
+    private static final class TrackedOutputStream extends FilterOutputStream {
+        private IOException failure;
+
+        TrackedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw failed(e);
+            }
+        }
+
+        private IOException failed(IOException e) {
+            if (failure == null) failure = e;
+            return e;
+        }
+    }
+}
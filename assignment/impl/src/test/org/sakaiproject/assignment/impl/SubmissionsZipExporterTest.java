@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.assignment.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Unit tests of the background submissions zip export.
+ */
+public class SubmissionsZipExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String REFERENCE = "/assignment/a/site/assignment";
+
+    private ThreadLocalManager threadLocalManager;
+    private SubmissionsZipExporter exporter;
+
+    @Before
+    public void setUp() throws IOException {
+        ServerConfigurationService scs = mock(ServerConfigurationService.class);
+        when(scs.getString("assignment.zip.export.dir", null)).thenReturn(folder.newFolder("exports").getPath());
+        when(scs.getString("assignment.zip.export.stored", SubmissionsZipExporter.DEFAULT_STORED_EXTENSIONS)).thenReturn(SubmissionsZipExporter.DEFAULT_STORED_EXTENSIONS);
+        SessionManager sessionManager = mock(SessionManager.class);
+        Session session = mock(Session.class);
+        when(session.getUserId()).thenReturn("instructor");
+        when(sessionManager.getCurrentSession()).thenReturn(session);
+        when(sessionManager.getCurrentSessionUserId()).thenReturn("instructor");
+        threadLocalManager = mock(ThreadLocalManager.class);
+        exporter = new SubmissionsZipExporter(scs, sessionManager, threadLocalManager, mock(ContentHostingService.class));
+    }
+
+    @After
+    public void tearDown() {
+        exporter.destroy();
+    }
+
+    @Test
+    public void testParseRange() {
+        assertNull(SubmissionsZipExporter.parseRange(null, 1000));
+        assertArrayEquals(new long[] {0, 99}, SubmissionsZipExporter.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] {900, 999}, SubmissionsZipExporter.parseRange("bytes=900-", 1000));
+        assertArrayEquals(new long[] {900, 999}, SubmissionsZipExporter.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] {0, 999}, SubmissionsZipExporter.parseRange("bytes=0-5000", 1000));
+        // a resumed download past the end can't be satisfied
+        assertEquals(0, SubmissionsZipExporter.parseRange("bytes=1000-", 1000).length);
+        // malformed and multiple ranges send the whole archive
+        assertNull(SubmissionsZipExporter.parseRange("bytes=500-100", 1000));
+        assertNull(SubmissionsZipExporter.parseRange("bytes=0-1,5-6", 1000));
+        assertNull(SubmissionsZipExporter.parseRange("items=0-1", 1000));
+    }
+
+    @Test
+    public void testStartRebuildsAFinishedExport() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        AtomicInteger builds = new AtomicInteger();
+        SubmissionsZipExporter.ZipWriter writer = (out, export) -> {
+            building.await(10, TimeUnit.SECONDS);
+            out.write(builds.incrementAndGet());
+        };
+
+        SubmissionsZipExporter.Export first = exporter.start(REFERENCE, "gradeFile=true", "submissions", writer);
+        // asked again while it builds
+        assertSame(first, exporter.start(REFERENCE, "gradeFile=true", "submissions", writer));
+        building.countDown();
+        awaitReady(first);
+        // the builder thread does not keep the session it set up
+        verify(threadLocalManager, timeout(10000)).clear();
+
+        // asked again once built, after grading for instance
+        SubmissionsZipExporter.Export second = exporter.start(REFERENCE, "gradeFile=true", "submissions", writer);
+        assertNotSame(first, second);
+        awaitReady(second);
+        assertEquals(2, builds.get());
+        assertSame(second, exporter.get(REFERENCE, "gradeFile=true"));
+    }
+
+    private void awaitReady(SubmissionsZipExporter.Export export) throws InterruptedException {
+        for (int i = 0; i < 200 && export.getStatus() != SubmissionsZipExporter.Status.READY; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(SubmissionsZipExporter.Status.READY, export.getStatus());
+    }
+
+    @Test
+    public void testStoredEntries() throws IOException {
+        assertTrue(exporter.isStored("student/attachments/lecture.MP4"));
+        assertTrue(exporter.isStored("student/attachments/essay.docx"));
+        assertFalse(exporter.isStored("student/attachments/notes.txt"));
+        assertFalse(exporter.isStored("student.pdf/notes"));
+
+        byte[] video = new byte[100_000];
+        for (int i = 0; i < video.length; i++) {
+            video[i] = (byte) (i * 31);
+        }
+        byte[] text = "Submitted text".getBytes(StandardCharsets.UTF_8);
+
+        File zip = folder.newFile("submissions.zip");
+        try (OutputStream out = Files.newOutputStream(zip.toPath()); ZipOutputStream zipOut = new ZipOutputStream(out)) {
+            SubmissionsZipExporter.Prefetched prefetched = exporter.copy(new ByteArrayInputStream(video));
+            assertEquals(video.length, prefetched.size);
+            exporter.writeEntry(zipOut, "student/lecture.mp4", prefetched);
+            exporter.writeEntry(zipOut, "student/notes.txt", exporter.copy(new ByteArrayInputStream(text)));
+        }
+
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("student/lecture.mp4");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals(video, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+            entry = zipFile.getEntry("student/notes.txt");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertArrayEquals(text, IOUtils.toByteArray(zipFile.getInputStream(entry)));
+        }
+    }
+}
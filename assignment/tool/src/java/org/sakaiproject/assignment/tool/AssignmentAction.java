@@ -6132,6 +6132,7 @@ public class AssignmentAction extends PagedResourceActionII {
         context.put("releaseGrades", state.getAttribute(UPLOAD_ALL_RELEASE_GRADES));
         context.put("withoutFolders", state.getAttribute(UPLOAD_ALL_WITHOUT_FOLDERS));
         context.put("enableFlatDownload", serverConfigurationService.getBoolean("assignment.download.flat", false));
+        context.put("zipExportEnabled", serverConfigurationService.getBoolean("assignment.zip.export.enabled", true));
         context.put("contextString", state.getAttribute(STATE_CONTEXT_STRING));
 
         String maxFileSizeMB = serverConfigurationService.getString("content.upload.max", "1");
@@ -635,7 +635,7 @@ ASN.handleEnterKeyPress = function(ev)
     }
 };
 
-ASN.invokeDownloadUrl = function(accessPointUrl, actionString, alertMessage, param0, param1, param2, param3, clickedElement)
+ASN.invokeDownloadUrl = function(accessPointUrl, actionString, alertMessage, param0, param1, param2, param3, clickedElement, zipExport)
 {
     var extraInfoArray = [];
     if (document.getElementById('studentSubmissionText') && document.getElementById('studentSubmissionText').checked)
@@ -682,7 +682,8 @@ ASN.invokeDownloadUrl = function(accessPointUrl, actionString, alertMessage, par
     }
     else
     {
-        SPNR.disableControlsAndSpin( clickedElement, null );
+        // a zip built in the background can be cancelled while it builds
+        SPNR.disableControlsAndSpin( clickedElement, zipExport ? ['cancelButton'] : null );
 
         if (document.getElementById('withoutFolders') && document.getElementById('withoutFolders').checked)
         {
@@ -698,6 +699,15 @@ ASN.invokeDownloadUrl = function(accessPointUrl, actionString, alertMessage, par
         accessPointUrl = accessPointUrl.substring(0, accessPointUrl.length-1);
         // attach the assignment reference
         accessPointUrl = accessPointUrl + "&contextString=" + param0 + "&viewString=" + param1 + "&searchString=" + param2 + "&searchFilterOnly=" + param3;
+        if (zipExport)
+        {
+            ASN.exportSubmissionsZip(accessPointUrl, downloadUrl => {
+                document.getElementById('downloadUrl').value=downloadUrl;
+                document.getElementById('uploadAllForm').action=actionString;
+                setTimeout("ASN.submitForm( 'uploadAllForm', null, null, null )", 1500);
+            });
+            return;
+        }
         window.location.href=accessPointUrl;
         document.getElementById('downloadUrl').value=accessPointUrl; 
         document.getElementById('uploadAllForm').action=actionString; 
@@ -705,6 +715,39 @@ ASN.invokeDownloadUrl = function(accessPointUrl, actionString, alertMessage, par
     }
 };
 
+/* Builds the submissions zip in the background rather than in the request, showing how far it is, then downloads it */
+ASN.exportSubmissionsZip = function(url, onDownload)
+{
+    const status = document.getElementById('zipExportStatus');
+    const showStatus = (message, className) => {
+        status.textContent = message;
+        status.className = className;
+        status.style.display = 'block';
+    };
+    const poll = action => {
+        fetch(url + "&export=" + action, { credentials: "same-origin", cache: "no-store" })
+            .then(response => {
+                if (!response.ok) throw response.status;
+                return response.json();
+            })
+            .then(data => {
+                if (data.status === "READY") {
+                    status.style.display = 'none';
+                    const downloadUrl = url + "&export=download";
+                    window.location.href = downloadUrl;
+                    onDownload && onDownload(downloadUrl);
+                } else if (data.status === "FAILED") {
+                    showStatus(status.dataset.failed, 'sak-banner-error');
+                } else {
+                    showStatus(status.dataset.preparing.replace("{0}", data.progress), 'sak-banner-info');
+                    setTimeout(() => poll("status"), 2000);
+                }
+            })
+            .catch(error => showStatus(error === 503 ? status.dataset.busy : status.dataset.failed, 'sak-banner-error'));
+    };
+    poll("start");
+};
+
 /* Enables the submit/resubmit button. If checkForFile is true, then it disables the submit/resubmit button if the clonableUpload button has no value*/
 ASN.enableSubmitUnlessNoFile = function(checkForFile)
 {
@@ -138,6 +138,9 @@ public class DbCalendarService
 			}
 
 			super.init();
+
+			// write events as binary blobs rather than xml as they are saved
+			((DbStorage) m_storage).setBinaryEntities(serverConfigurationService.getBoolean("calendar.storage.binary", false));
 			
 			log.info("init(): tables: {} {} locks-in-db: {}", m_cTableName, m_rTableName, m_locksInDb);
 		}
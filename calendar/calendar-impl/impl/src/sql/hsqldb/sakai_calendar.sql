@@ -22,7 +22,8 @@ CREATE TABLE CALENDAR_EVENT
 	EVENT_END DATETIME NOT NULL,
 	RANGE_START INTEGER NOT NULL,
 	RANGE_END INTEGER NOT NULL,
-    XML LONGVARCHAR
+    XML LONGVARCHAR,
+    BINARY_ENTITY LONGVARBINARY
 );
 
 CREATE INDEX CALENDAR_EVENT_INDEX ON CALENDAR_EVENT
@@ -26,7 +26,8 @@ CREATE TABLE CALENDAR_EVENT
 	EVENT_END DATETIME NOT NULL,
 	RANGE_START INTEGER NOT NULL,
 	RANGE_END INTEGER NOT NULL,
-    XML LONGTEXT
+    XML LONGTEXT,
+    BINARY_ENTITY LONGBLOB
 );
 
 CREATE UNIQUE INDEX EVENT_INDEX ON CALENDAR_EVENT
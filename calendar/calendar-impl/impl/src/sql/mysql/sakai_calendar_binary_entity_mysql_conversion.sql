@@ -0,0 +1,2 @@
+-- Holds events written as Type1 binary blobs when calendar.storage.binary is true
+alter table CALENDAR_EVENT add column BINARY_ENTITY LONGBLOB;
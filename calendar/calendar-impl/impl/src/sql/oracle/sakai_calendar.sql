@@ -26,7 +26,8 @@ CREATE TABLE CALENDAR_EVENT
 	EVENT_END DATE NOT NULL,
 	RANGE_START INTEGER NOT NULL,
 	RANGE_END INTEGER NOT NULL,
-    XML LONG
+    XML LONG,
+    BINARY_ENTITY BLOB
 );
 
 CREATE UNIQUE INDEX EVENT_INDEX ON CALENDAR_EVENT
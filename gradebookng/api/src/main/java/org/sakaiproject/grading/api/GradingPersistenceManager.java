@@ -30,6 +30,7 @@ import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradebookAssignment;
 import org.sakaiproject.grading.api.model.GradebookProperty;
 import org.sakaiproject.grading.api.model.GradeMapping;
+import org.sakaiproject.grading.api.model.GradeSnapshot;
 import org.sakaiproject.grading.api.model.GradingEvent;
 import org.sakaiproject.grading.api.model.GradingScale;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
@@ -117,6 +118,7 @@ public interface GradingPersistenceManager {
                 List<Long> gradableObjectIds, List<String> studentUids);
     List<AssignmentGradeRecord> getAssignmentGradeRecordsForGradebookAndStudents(Long gradebookId, Collection<String> studentIds);
     List<AssignmentGradeRecord> getAssignmentGradeRecordsForAssignmentAndStudents(GradebookAssignment assignment, Collection<String> studentIds);
+    List<String> getStudentIdsOrderedByPointsEarned(Long assignmentId, Collection<String> studentIds);
 
     GradingEvent saveGradingEvent(GradingEvent ge);
     List<GradingEvent> getGradingEventsForAssignment(Long assignmentId, String studentId);
@@ -125,4 +127,9 @@ public interface GradingPersistenceManager {
 
     Optional<GradebookProperty> getGradebookProperty(String name);
     GradebookProperty saveGradebookProperty(GradebookProperty property);
+
+    List<GradeSnapshot> getGradeSnapshots(Long gradebookId);
+    List<GradeSnapshot> getGradeSnapshots(Long gradebookId, Collection<String> studentIds);
+    List<Long> getGradebookIdsWithGradeSnapshots();
+    int updateGradeSnapshots(Collection<GradeSnapshot> snapshots);
 }
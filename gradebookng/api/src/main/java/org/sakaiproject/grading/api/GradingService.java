@@ -424,6 +424,19 @@ public interface GradingService extends EntityProducer {
      */
     public List<GradeDefinition> getGradesForStudentsForItem(String gradebookUid, String siteId, Long assignmentId, List<String> studentIds);
 
+    /**
+     * Order students by their grade for a gradebook item, without loading the grades themselves. Only students the
+     * current user is able to grade for the item, and who have a grade for it, are returned.
+     *
+     * @param gradebookUid
+     * @param siteId
+     * @param assignmentId
+     * @param studentIds the students to order
+     * @return the ids of the given students that have a grade for the item, lowest grade first
+     * @throws SecurityException if the current user is not authorized to grade in the site
+     */
+    public List<String> getStudentsOrderedByGrade(String gradebookUid, String siteId, Long assignmentId, Collection<String> studentIds);
+
     /**
      * This method gets grades for multiple gradebook items with emphasis on performance. This is particularly useful for reporting tools
      *
@@ -638,6 +651,16 @@ public interface GradingService extends EntityProducer {
     Map<String, Map<Long, CategoryScoreData>> calculateAllCategoryScoresForStudents(Long gradebookId,
             List<String> studentUuids, boolean includeNonReleasedItems, Integer categoryType);
 
+    /**
+     * Check the stored course grade and category score snapshots of a gradebook against its grade records, replacing
+     * any that no longer match. Snapshots are kept up to date as grades and items change, so this only finds
+     * something to do if a change was made outside the grading service.
+     *
+     * @param gradebookId the gradebook id
+     * @return the number of snapshots replaced
+     */
+    int rebuildGradeSnapshots(Long gradebookId);
+
     /**
      * Get the course grade for a student
      *
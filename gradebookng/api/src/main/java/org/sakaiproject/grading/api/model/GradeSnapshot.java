@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.api.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.sakaiproject.springframework.data.PersistableEntity;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * The calculated course grade totals and category scores of one student in one gradebook, as they were when last
+ * computed from the student's grade records. A snapshot is created when the student is first graded. Whenever
+ * anything it was computed from changes its version is bumped and its computed date cleared, in the same transaction
+ * as the change, and it is computed again the next time it is read. The computed values are only stored if the
+ * version is still the one read before computing them.
+ */
+@Entity
+@Table(name = "GB_GRADE_SNAPSHOT_T",
+    uniqueConstraints = @UniqueConstraint(name = "GB_GRADE_SNAPSHOT_GB_STU", columnNames = { "GRADEBOOK_ID", "STUDENT_ID" })
+)
+@Getter @Setter
+@ToString(onlyExplicitlyIncluded = true)
+public class GradeSnapshot implements PersistableEntity<Long>, Serializable {
+
+    @Id
+    @Column(name = "ID")
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = "gb_grade_snapshot_id_sequence")
+    @SequenceGenerator(name = "gb_grade_snapshot_id_sequence", sequenceName = "GB_GRADE_SNAPSHOT_S")
+    @ToString.Include
+    private Long id;
+
+    @Column(name = "VERSION", nullable = false)
+    @ToString.Include
+    private Integer version = 0;
+
+    @Column(name = "GRADEBOOK_ID", nullable = false)
+    @ToString.Include
+    private Long gradebookId;
+
+    @Column(name = "STUDENT_ID", nullable = false)
+    @ToString.Include
+    private String studentId;
+
+    /** Null if the gradebook does not calculate a course grade from points */
+    @Column(name = "TOTAL_POINTS_POSSIBLE")
+    private Double totalPointsPossible;
+
+    @Column(name = "POINTS_EARNED")
+    private Double pointsEarned;
+
+    @Column(name = "LITERAL_POINTS_EARNED")
+    private Double literalPointsEarned;
+
+    @Column(name = "EXTRA_POINTS_EARNED")
+    private Double extraPointsEarned;
+
+    /** Category scores including items not released to students, null if the gradebook has no categories */
+    @Column(name = "CATEGORY_SCORES")
+    @Lob
+    private String categoryScores;
+
+    /** Category scores of released items only, null if the gradebook has no categories */
+    @Column(name = "RELEASED_CATEGORY_SCORES")
+    @Lob
+    private String releasedCategoryScores;
+
+    /** Null until the snapshot has been computed, and again after anything it was computed from changes */
+    @Column(name = "COMPUTED_DATE")
+    private Date computedDate;
+}
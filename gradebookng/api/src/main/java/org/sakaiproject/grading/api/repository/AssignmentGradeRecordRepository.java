@@ -34,5 +34,6 @@ public interface AssignmentGradeRecordRepository extends SpringCrudRepository<As
     List<AssignmentGradeRecord> findByGradableObject_RemovedAndGradableObject_IdInAndStudentIdIn(Boolean removed, List<Long> gradableObjectIds, List<String> studentIds);
     List<AssignmentGradeRecord> findByGradableObject_Gradebook_IdAndGradableObject_RemovedAndStudentIdIn(Long gradebookId, Boolean removed, Collection<String> studentIds);
     List<AssignmentGradeRecord> findByGradableObjectAndStudentIdIn(GradebookAssignment assignment, Collection<String> studentIds);
+    List<String> findStudentIdByGradableObject_IdAndStudentIdInAndPointsEarnedNotNullOrderByPointsEarned(Long gradableObjectId, Collection<String> studentIds);
     int deleteByGradableObject(GradebookAssignment assignment);
 }
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.api.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.sakaiproject.grading.api.model.GradeSnapshot;
+import org.sakaiproject.springframework.data.SpringCrudRepository;
+
+public interface GradeSnapshotRepository extends SpringCrudRepository<GradeSnapshot, Long> {
+
+    List<GradeSnapshot> findByGradebookId(Long gradebookId);
+    List<GradeSnapshot> findByGradebookIdAndStudentIdIn(Long gradebookId, Collection<String> studentIds);
+    List<Long> findDistinctGradebookIds();
+    int deleteByGradebookId(Long gradebookId);
+    int invalidateByGradebookId(Long gradebookId);
+    int invalidateByGradebookIdAndStudentId(Long gradebookId, String studentId);
+    int invalidateOrCreateByGradebookIdAndStudentId(Long gradebookId, String studentId);
+    int updateComputed(GradeSnapshot snapshot);
+}
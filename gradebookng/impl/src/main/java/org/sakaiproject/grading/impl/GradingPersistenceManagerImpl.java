@@ -31,6 +31,7 @@ import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradebookAssignment;
 import org.sakaiproject.grading.api.model.GradebookProperty;
 import org.sakaiproject.grading.api.model.GradeMapping;
+import org.sakaiproject.grading.api.model.GradeSnapshot;
 import org.sakaiproject.grading.api.model.GradingEvent;
 import org.sakaiproject.grading.api.model.GradingScale;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
@@ -45,6 +46,7 @@ import org.sakaiproject.grading.api.repository.GradebookAssignmentRepository;
 import org.sakaiproject.grading.api.repository.GradebookRepository;
 import org.sakaiproject.grading.api.repository.GradebookPropertyRepository;
 import org.sakaiproject.grading.api.repository.GradeMappingRepository;
+import org.sakaiproject.grading.api.repository.GradeSnapshotRepository;
 import org.sakaiproject.grading.api.repository.GradingEventRepository;
 import org.sakaiproject.grading.api.repository.GradingScaleRepository;
 import org.sakaiproject.grading.api.repository.LetterGradePercentMappingRepository;
@@ -64,12 +66,16 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     @Autowired protected GradebookRepository gradebookRepository;
     @Autowired protected GradebookPropertyRepository gradebookPropertyRepository;
     @Autowired protected GradeMappingRepository gradeMappingRepository;
+    @Autowired protected GradeSnapshotRepository gradeSnapshotRepository;
     @Autowired protected GradingEventRepository gradingEventRepository;
     @Autowired protected GradingScaleRepository gradingScaleRepository;
     @Autowired protected LetterGradePercentMappingRepository letterGradePercentMappingRepository;
     @Autowired protected PermissionRepository permissionRepository;
 
     public Gradebook saveGradebook(Gradebook gradebook) {
+
+        // category type, drop rules and the like change how every grade is calculated
+        invalidateGradeSnapshots(gradebook);
         return gradebookRepository.save(gradebook);
     }
 
@@ -100,6 +106,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
 
         gradeMappingRepository.deleteAll(gradeMappingRepository.findByGradebook_Uid(gradebookUid));
 
+        gradeSnapshotRepository.deleteByGradebookId(gradebookId);
+
         gradebookRepository.delete(gradebook);
     }
 
@@ -156,6 +164,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public GradebookAssignment saveAssignment(GradebookAssignment assignment) {
+
+        invalidateGradeSnapshots(assignment.getGradebook());
         return gradebookAssignmentRepository.save(assignment);
     }
 
@@ -206,6 +216,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public void deleteAssignment(GradebookAssignment assignment) {
+
+        invalidateGradeSnapshots(assignment.getGradebook());
         gradebookAssignmentRepository.delete(assignment);
     }
 
@@ -218,6 +230,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public GradebookAssignment saveGradebookAssignment(GradebookAssignment assignment) {
+
+        invalidateGradeSnapshots(assignment.getGradebook());
         return gradebookAssignmentRepository.save(assignment);
     }
 
@@ -282,6 +296,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     }
 
     public Category saveCategory(Category category) {
+
+        invalidateGradeSnapshots(category.getGradebook());
         return categoryRepository.save(category);
     }
 
@@ -381,7 +397,18 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
         return assignmentGradeRecordRepository.findByGradableObjectAndStudentIdIn(assignment, studentIds);
     }
 
+    public List<String> getStudentIdsOrderedByPointsEarned(Long assignmentId, Collection<String> studentIds) {
+        return assignmentGradeRecordRepository.findStudentIdByGradableObject_IdAndStudentIdInAndPointsEarnedNotNullOrderByPointsEarned(assignmentId, studentIds);
+    }
+
     public AssignmentGradeRecord saveAssignmentGradeRecord(AssignmentGradeRecord record) {
+
+        // a new score or excusal only changes this student's totals. The snapshot row is created here, in the grade
+        // save transaction, so that readers only ever update rows whose version they have read.
+        if (record.getGradableObject() != null && record.getGradableObject().getGradebook() != null) {
+            Long gradebookId = record.getGradableObject().getGradebook().getId();
+            gradeSnapshotRepository.invalidateOrCreateByGradebookIdAndStudentId(gradebookId, record.getStudentId());
+        }
         return assignmentGradeRecordRepository.save(record);
     }
 
@@ -392,6 +419,8 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
     } 
 
     public int deleteGradeRecordsForAssignment(GradebookAssignment assignment) {
+
+        invalidateGradeSnapshots(assignment.getGradebook());
         return assignmentGradeRecordRepository.deleteByGradableObject(assignment);
     }
 
@@ -419,4 +448,33 @@ public class GradingPersistenceManagerImpl implements GradingPersistenceManager
         return gradebookPropertyRepository.save(property);
     }
 
+    public List<GradeSnapshot> getGradeSnapshots(Long gradebookId) {
+        return gradeSnapshotRepository.findByGradebookId(gradebookId);
+    }
+
+    public List<GradeSnapshot> getGradeSnapshots(Long gradebookId, Collection<String> studentIds) {
+        return gradeSnapshotRepository.findByGradebookIdAndStudentIdIn(gradebookId, studentIds);
+    }
+
+    public List<Long> getGradebookIdsWithGradeSnapshots() {
+        return gradeSnapshotRepository.findDistinctGradebookIds();
+    }
+
+    @Transactional
+    public int updateGradeSnapshots(Collection<GradeSnapshot> snapshots) {
+
+        int updated = 0;
+        for (GradeSnapshot snapshot : snapshots) {
+            updated += gradeSnapshotRepository.updateComputed(snapshot);
+        }
+        return updated;
+    }
+
+    private void invalidateGradeSnapshots(Gradebook gradebook) {
+
+        if (gradebook != null && gradebook.getId() != null) {
+            gradeSnapshotRepository.invalidateByGradebookId(gradebook.getId());
+        }
+    }
+
 }
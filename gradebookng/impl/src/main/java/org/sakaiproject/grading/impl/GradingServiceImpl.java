@@ -41,6 +41,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
@@ -94,6 +95,7 @@ import org.sakaiproject.grading.api.model.CourseGrade;
 import org.sakaiproject.grading.api.model.CourseGradeRecord;
 import org.sakaiproject.grading.api.model.GradableObject;
 import org.sakaiproject.grading.api.model.GradeMapping;
+import org.sakaiproject.grading.api.model.GradeSnapshot;
 import org.sakaiproject.grading.api.model.GradePointsMapping;
 import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradebookAssignment;
@@ -148,6 +150,8 @@ public class GradingServiceImpl implements GradingService {
     public static final String PROP_ASSIGNMENTS_DISPLAYED = "gradebook.assignments.displayed";
     public static final String PROP_ASSIGNMENT_STATS_DISPLAYED = "gradebook.stats.assignments.displayed";
     public static final String PROP_COURSE_GRADE_STATS_DISPLAYED = "gradebook.stats.coursegrade.displayed";
+    public static final String PROP_GRADE_SNAPSHOTS_ENABLED = "gradebook.snapshots.enabled";
+    public static final String PROP_GRADE_SNAPSHOTS_MAX_AGE = "gradebook.snapshots.maxAge";
 
     @Autowired private AuthzGroupService authzGroupService;
     @Autowired private EventTrackingService eventTrackingService;
@@ -967,6 +971,17 @@ public class GradingServiceImpl implements GradingService {
         final Gradebook gradebook = getGradebook(gradebookId);
         final List<Category> cates = getCategories(gradebookId);
 
+        if (isGradeSnapshotsEnabled() && isCalculatedFromPoints(gradebook)) {
+            final Map<String, GradeSnapshot> snapshots = getGradeSnapshots(gradebook, cates,
+                records.stream().map(CourseGradeRecord::getStudentId).collect(Collectors.toSet()));
+            for (CourseGradeRecord cgr : records) {
+                final GradeSnapshot snapshot = snapshots.get(cgr.getStudentId());
+                cgr.initNonpersistentFields(snapshot.getTotalPointsPossible(), snapshot.getPointsEarned(),
+                        snapshot.getLiteralPointsEarned(), snapshot.getExtraPointsEarned());
+            }
+            return records;
+        }
+
         // get all of the AssignmentGradeRecords here to avoid repeated db calls
         final Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, studentUids);
 
@@ -996,6 +1011,209 @@ public class GradingServiceImpl implements GradingService {
         return records;
     }
 
+    private boolean isGradeSnapshotsEnabled() {
+        return serverConfigurationService.getBoolean(PROP_GRADE_SNAPSHOTS_ENABLED, true);
+    }
+
+    private boolean isCalculatedFromPoints(Gradebook gradebook) {
+
+        return Objects.equals(GradingConstants.GRADE_TYPE_POINTS, gradebook.getGradeType())
+                || Objects.equals(GradingConstants.GRADE_TYPE_PERCENTAGE, gradebook.getGradeType());
+    }
+
+    /**
+     * Get the grade snapshots of some students, computing any that are missing, invalidated or older than
+     * gradebook.snapshots.maxAge seconds. The persistence manager bumps a snapshot's version whenever a grade, item,
+     * category or the gradebook's settings change, so only the students affected by a change are computed again. The
+     * version is read before the grade records, and computed values are only stored if it is unchanged, so a total
+     * computed from grade records that have since changed is never stored.
+     *
+     * @param gradebook the gradebook
+     * @param categories the gradebook's categories
+     * @param studentUids the students
+     * @return map of student uid to snapshot, one for each of the students
+     */
+    private Map<String, GradeSnapshot> getGradeSnapshots(Gradebook gradebook, List<Category> categories, Set<String> studentUids) {
+
+        final Date oldest = new Date(System.currentTimeMillis()
+                - serverConfigurationService.getInt(PROP_GRADE_SNAPSHOTS_MAX_AGE, 86400) * 1000L);
+
+        final Map<String, GradeSnapshot> snapshots = new HashMap<>();
+        final Map<String, GradeSnapshot> stale = new HashMap<>();
+        for (GradeSnapshot snapshot : gradingPersistenceManager.getGradeSnapshots(gradebook.getId(), studentUids)) {
+            if (snapshot.getComputedDate() != null && snapshot.getComputedDate().after(oldest)) {
+                snapshots.put(snapshot.getStudentId(), snapshot);
+            } else {
+                stale.put(snapshot.getStudentId(), snapshot);
+            }
+        }
+
+        final Set<String> missing = new HashSet<>(studentUids);
+        missing.removeAll(snapshots.keySet());
+        if (!missing.isEmpty()) {
+            log.debug("Computing {} of {} grade snapshots for gradebook {}", missing.size(), studentUids.size(), gradebook.getId());
+            final List<GradeSnapshot> computed = computeGradeSnapshots(gradebook, categories, missing);
+
+            // students who have never been graded have no row, the grade save creates it
+            final List<GradeSnapshot> updates = new ArrayList<>();
+            for (GradeSnapshot snapshot : computed) {
+                final GradeSnapshot row = stale.get(snapshot.getStudentId());
+                if (row != null) {
+                    snapshot.setId(row.getId());
+                    snapshot.setVersion(row.getVersion());
+                    updates.add(snapshot);
+                }
+                snapshots.put(snapshot.getStudentId(), snapshot);
+            }
+            if (!updates.isEmpty()) {
+                gradingPersistenceManager.updateGradeSnapshots(updates);
+            }
+        }
+        return snapshots;
+    }
+
+    private List<GradeSnapshot> computeGradeSnapshots(Gradebook gradebook, List<Category> categories, Collection<String> studentUids) {
+
+        final Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebook.getId(), studentUids);
+        final List<GradebookAssignment> countedAssigns = getCountedAssignments(gradebook.getId())
+            .stream().filter(a -> a.isIncludedInCalculations()).collect(Collectors.toList());
+
+        final Date now = new Date();
+        final List<GradeSnapshot> snapshots = new ArrayList<>();
+        for (String studentUid : studentUids) {
+            final List<AssignmentGradeRecord> studentGradeRecs = gradeRecMap.get(studentUid);
+
+            final GradeSnapshot snapshot = new GradeSnapshot();
+            snapshot.setGradebookId(gradebook.getId());
+            snapshot.setStudentId(studentUid);
+            snapshot.setComputedDate(now);
+
+            if (isCalculatedFromPoints(gradebook)) {
+                applyDropScores(studentGradeRecs, gradebook.getCategoryType());
+                final List<Double> totalEarned = getTotalPointsEarnedInternal(studentUid, gradebook, categories, studentGradeRecs,
+                        countedAssigns);
+                snapshot.setPointsEarned(totalEarned.get(0));
+                snapshot.setLiteralPointsEarned(totalEarned.get(1));
+                snapshot.setExtraPointsEarned(totalEarned.get(2));
+                snapshot.setTotalPointsPossible(getTotalPointsInternal(gradebook, categories, studentUid, studentGradeRecs,
+                        countedAssigns, false));
+            }
+
+            if (!categories.isEmpty()) {
+                snapshot.setCategoryScores(encodeCategoryScores(
+                        computeCategoryScores(studentUid, categories, studentGradeRecs, true, gradebook.getCategoryType())));
+                snapshot.setReleasedCategoryScores(encodeCategoryScores(
+                        computeCategoryScores(studentUid, categories, studentGradeRecs, false, gradebook.getCategoryType())));
+            }
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    private Map<Long, CategoryScoreData> computeCategoryScores(String studentUid, List<Category> categories,
+            List<AssignmentGradeRecord> gradeRecords, boolean includeNonReleasedItems, Integer categoryType) {
+
+        final Map<Long, CategoryScoreData> scores = new HashMap<>();
+        if (gradeRecords == null || gradeRecords.isEmpty()) {
+            return scores;
+        }
+
+        for (Category category : categories) {
+            if (!category.getRemoved()) {
+                calculateCategoryScore(studentUid, category.getId(), gradeRecords, includeNonReleasedItems, categoryType,
+                        category.getEqualWeightAssignments()).ifPresent(score -> scores.put(category.getId(), score));
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Category scores are stored as categoryId:score:droppedItemId,droppedItemId;...
+     */
+    static String encodeCategoryScores(Map<Long, CategoryScoreData> scores) {
+
+        return scores.entrySet().stream()
+                .map(e -> e.getKey() + ":" + e.getValue().score + ":"
+                        + e.getValue().droppedItems.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                .collect(Collectors.joining(";"));
+    }
+
+    static Map<Long, CategoryScoreData> decodeCategoryScores(String encoded) {
+
+        final Map<Long, CategoryScoreData> scores = new HashMap<>();
+        if (StringUtils.isBlank(encoded)) {
+            return scores;
+        }
+
+        for (String entry : encoded.split(";")) {
+            final String[] parts = entry.split(":", 3);
+            final List<Long> droppedItems = parts[2].isEmpty() ? new ArrayList<>()
+                    : Arrays.stream(parts[2].split(",")).map(Long::valueOf).collect(Collectors.toList());
+            scores.put(Long.valueOf(parts[0]), new CategoryScoreData(Double.parseDouble(parts[1]), droppedItems));
+        }
+        return scores;
+    }
+
+    @Override
+    @Transactional
+    public int rebuildGradeSnapshots(Long gradebookId) {
+
+        final Gradebook gradebook = getGradebook(gradebookId);
+        if (gradebook == null) {
+            throw new IllegalArgumentException("No gradebook with id " + gradebookId);
+        }
+
+        // snapshots that have not been computed since they were invalidated are computed when they are next read
+        final Map<String, GradeSnapshot> stored = gradingPersistenceManager.getGradeSnapshots(gradebookId).stream()
+            .filter(snapshot -> snapshot.getComputedDate() != null)
+            .collect(Collectors.toMap(GradeSnapshot::getStudentId, Function.identity()));
+        if (stored.isEmpty()) {
+            return 0;
+        }
+
+        final List<GradeSnapshot> changed = new ArrayList<>();
+        for (GradeSnapshot snapshot : computeGradeSnapshots(gradebook, getCategories(gradebookId), stored.keySet())) {
+            final GradeSnapshot row = stored.get(snapshot.getStudentId());
+            if (!isSameGrades(snapshot, row)) {
+                snapshot.setId(row.getId());
+                snapshot.setVersion(row.getVersion());
+                changed.add(snapshot);
+            }
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        // a snapshot invalidated while this ran is left for the next read to compute
+        final int updated = gradingPersistenceManager.updateGradeSnapshots(changed);
+        log.info("Replaced {} of {} grade snapshots in gradebook {}", updated, stored.size(), gradebook.getUid());
+        return updated;
+    }
+
+    private boolean isSameGrades(GradeSnapshot a, GradeSnapshot b) {
+
+        return Objects.equals(a.getTotalPointsPossible(), b.getTotalPointsPossible())
+                && Objects.equals(a.getPointsEarned(), b.getPointsEarned())
+                && Objects.equals(a.getLiteralPointsEarned(), b.getLiteralPointsEarned())
+                && Objects.equals(a.getExtraPointsEarned(), b.getExtraPointsEarned())
+                && isSameCategoryScores(a.getCategoryScores(), b.getCategoryScores())
+                && isSameCategoryScores(a.getReleasedCategoryScores(), b.getReleasedCategoryScores());
+    }
+
+    private boolean isSameCategoryScores(String a, String b) {
+
+        final Map<Long, CategoryScoreData> scoresA = decodeCategoryScores(a);
+        final Map<Long, CategoryScoreData> scoresB = decodeCategoryScores(b);
+        if (!scoresA.keySet().equals(scoresB.keySet())) {
+            return false;
+        }
+        return scoresA.entrySet().stream().allMatch(e -> {
+            final CategoryScoreData other = scoresB.get(e.getKey());
+            return e.getValue().score == other.score
+                    && new HashSet<>(e.getValue().droppedItems).equals(new HashSet<>(other.droppedItems));
+        });
+    }
+
     private List<CourseGradeRecord> filterAndPopulateCourseGradeRecordsByStudents(CourseGrade courseGrade, Collection<CourseGradeRecord> gradeRecords, Collection studentUids) {
 
         final List<CourseGradeRecord> filteredRecords = new ArrayList<>();
@@ -1745,6 +1963,50 @@ public class GradingServiceImpl implements GradingService {
         return studentGrades;
     }
 
+    @Override
+    public List<String> getStudentsOrderedByGrade(final String gradebookUid, final String siteId, final Long gradableObjectId,
+            final Collection<String> studentIds) {
+
+        if (gradableObjectId == null) {
+            throw new IllegalArgumentException("null gradableObjectId passed to getStudentsOrderedByGrade");
+        }
+
+        if (studentIds == null || studentIds.isEmpty()) {
+            return Collections.<String>emptyList();
+        }
+
+        final GradebookAssignment gbItem = getAssignmentWithoutStatsByID(gradebookUid, gradableObjectId);
+        if (gbItem == null) {
+            return Collections.<String>emptyList();
+        }
+
+        final Gradebook gradebook = gbItem.getGradebook();
+        if (!this.gradingAuthz.isUserAbleToGrade(siteId)) {
+            log.warn("User {} attempted to access grade information without permission in gb {} using gradebookService.getStudentsOrderedByGrade",
+                    sessionManager.getCurrentSessionUserId(), gradebook.getUid());
+            throw new GradingSecurityException();
+        }
+
+        // only order the students whose grades getGradesForStudentsForItem would return, so the order doesn't reveal
+        // anything about grades the user can't see
+        final Long categoryId = gbItem.getCategory() != null ? gbItem.getCategory().getId() : null;
+        final Map<EnrollmentRecord, String> enrRecFunctionMap = this.gradingAuthz.findMatchingEnrollmentsForItem(gradebook.getUid(), siteId,
+                categoryId, gradebook.getCategoryType(), null, isCurrentGbSite(gradebook.getUid()) ? null : gradebook.getUid());
+        final Set<String> viewableStudentIds = new HashSet<>();
+        for (final EnrollmentRecord enr : enrRecFunctionMap.keySet()) {
+            if (enr != null) {
+                viewableStudentIds.add(enr.getUser().getUserUid());
+            }
+        }
+
+        final List<String> filteredStudentIds = studentIds.stream().filter(viewableStudentIds::contains).collect(Collectors.toList());
+        if (filteredStudentIds.isEmpty()) {
+            return Collections.<String>emptyList();
+        }
+
+        return gradingPersistenceManager.getStudentIdsOrderedByPointsEarned(gradableObjectId, filteredStudentIds);
+    }
+
     @Override
     public Map<Long, List<GradeDefinition>> getGradesWithoutCommentsForStudentsForItems(final String gradebookUid, final String siteId,
             final List<Long> gradableObjectIds, final List<String> studentIds) {
@@ -3149,9 +3411,6 @@ public class GradingServiceImpl implements GradingService {
 
         log.debug("Calculating all category scores for {} students in gradebook: {}", studentUuids.size(), gradebookId);
 
-        // get all grade records for all students ONCE
-        Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, studentUuids);
-
         // Get all categories for this gradebook ONCE
         List<Category> categories = getCategories(gradebookId);
         if (categories.isEmpty()) {
@@ -3161,6 +3420,21 @@ public class GradingServiceImpl implements GradingService {
 
         Map<String, Map<Long, CategoryScoreData>> allCategoryScores = new HashMap<>();
 
+        // snapshots hold the scores for the gradebook's own category type, anything else is calculated
+        Gradebook gradebook = isGradeSnapshotsEnabled() ? getGradebook(gradebookId) : null;
+        if (gradebook != null && Objects.equals(gradebook.getCategoryType(), categoryType)) {
+            Map<String, GradeSnapshot> snapshots = getGradeSnapshots(gradebook, categories, new HashSet<>(studentUuids));
+            for (String studentUuid : studentUuids) {
+                GradeSnapshot snapshot = snapshots.get(studentUuid);
+                allCategoryScores.put(studentUuid, decodeCategoryScores(includeNonReleasedItems
+                        ? snapshot.getCategoryScores() : snapshot.getReleasedCategoryScores()));
+            }
+            return allCategoryScores;
+        }
+
+        // get all grade records for all students ONCE
+        Map<String, List<AssignmentGradeRecord>> gradeRecMap = getGradeRecordMapForStudents(gradebookId, studentUuids);
+
         // Calculate scores for each student
         for (String studentUuid : studentUuids) {
             List<AssignmentGradeRecord> studentGradeRecords = gradeRecMap.get(studentUuid);
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.impl.jobs;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.sakaiproject.grading.api.GradingPersistenceManager;
+import org.sakaiproject.grading.api.GradingService;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checks the course grade and category score snapshots of every gradebook that has any against the grade records
+ * they were computed from, and replaces those that no longer match.
+ */
+@Slf4j
+public class GradeSnapshotConsistencyJob implements Job {
+
+    @Setter private GradingPersistenceManager gradingPersistenceManager;
+    @Setter private GradingService gradingService;
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+
+        int gradebooks = 0;
+        int replaced = 0;
+        for (Long gradebookId : gradingPersistenceManager.getGradebookIdsWithGradeSnapshots()) {
+            try {
+                replaced += gradingService.rebuildGradeSnapshots(gradebookId);
+                gradebooks++;
+            } catch (Exception e) {
+                log.warn("Failed to check the grade snapshots of gradebook {}: {}", gradebookId, e.toString());
+            }
+        }
+        log.info("Checked the grade snapshots of {} gradebooks, replaced {}", gradebooks, replaced);
+    }
+}
@@ -152,6 +152,23 @@ public class AssignmentGradeRecordRepositoryImpl extends SpringCrudRepositoryImp
     }
 
 
+    @Transactional(readOnly = true)
+    public List<String> findStudentIdByGradableObject_IdAndStudentIdInAndPointsEarnedNotNullOrderByPointsEarned(Long gradableObjectId, Collection<String> studentIds) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<String> query = cb.createQuery(String.class);
+        Root<AssignmentGradeRecord> agr = query.from(AssignmentGradeRecord.class);
+        Join<AssignmentGradeRecord, GradableObject> go = agr.join("gradableObject");
+
+        Predicate studentIdPredicate = HibernateCriterionUtils.PredicateInSplitter(cb, agr.get("studentId"), studentIds);
+
+        query.select(agr.get("studentId"))
+            .where(cb.and(cb.equal(go.get("id"), gradableObjectId), cb.isNotNull(agr.get("pointsEarned")), studentIdPredicate))
+            .orderBy(cb.asc(agr.get("pointsEarned")));
+        return session.createQuery(query).list();
+    }
+
     @Transactional
     public int deleteByGradableObject(GradebookAssignment assignment) {
 
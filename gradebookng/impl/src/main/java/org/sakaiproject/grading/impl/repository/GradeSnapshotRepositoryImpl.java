@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.grading.impl.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import org.sakaiproject.grading.api.model.GradeSnapshot;
+import org.sakaiproject.grading.api.model.Gradebook;
+import org.sakaiproject.grading.api.repository.GradeSnapshotRepository;
+import org.sakaiproject.hibernate.HibernateCriterionUtils;
+import org.sakaiproject.springframework.data.SpringCrudRepositoryImpl;
+
+public class GradeSnapshotRepositoryImpl extends SpringCrudRepositoryImpl<GradeSnapshot, Long>  implements GradeSnapshotRepository {
+
+    @Transactional(readOnly = true)
+    public List<GradeSnapshot> findByGradebookId(Long gradebookId) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<GradeSnapshot> query = cb.createQuery(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = query.from(GradeSnapshot.class);
+        query.where(cb.equal(gs.get("gradebookId"), gradebookId));
+        return session.createQuery(query).list();
+    }
+
+    @Transactional(readOnly = true)
+    public List<GradeSnapshot> findByGradebookIdAndStudentIdIn(Long gradebookId, Collection<String> studentIds) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<GradeSnapshot> query = cb.createQuery(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = query.from(GradeSnapshot.class);
+
+        Predicate studentIdPredicate = HibernateCriterionUtils.PredicateInSplitter(cb, gs.get("studentId"), studentIds);
+
+        query.where(cb.and(cb.equal(gs.get("gradebookId"), gradebookId), studentIdPredicate));
+        return session.createQuery(query).list();
+    }
+
+    @Transactional(readOnly = true)
+    public List<Long> findDistinctGradebookIds() {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<GradeSnapshot> gs = query.from(GradeSnapshot.class);
+        query.select(gs.get("gradebookId")).distinct(true);
+        return session.createQuery(query).list();
+    }
+
+    @Transactional
+    public int deleteByGradebookId(Long gradebookId) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaDelete<GradeSnapshot> delete = cb.createCriteriaDelete(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = delete.from(GradeSnapshot.class);
+        delete.where(cb.equal(gs.get("gradebookId"), gradebookId));
+        return session.createQuery(delete).executeUpdate();
+    }
+
+    @Transactional
+    public int invalidateByGradebookId(Long gradebookId) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaUpdate<GradeSnapshot> update = cb.createCriteriaUpdate(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = update.from(GradeSnapshot.class);
+        update.set(gs.<Integer>get("version"), cb.sum(gs.<Integer>get("version"), 1));
+        update.set(gs.<Date>get("computedDate"), cb.nullLiteral(Date.class));
+        update.where(cb.equal(gs.get("gradebookId"), gradebookId));
+        return session.createQuery(update).executeUpdate();
+    }
+
+    @Transactional
+    public int invalidateByGradebookIdAndStudentId(Long gradebookId, String studentId) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaUpdate<GradeSnapshot> update = cb.createCriteriaUpdate(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = update.from(GradeSnapshot.class);
+        update.set(gs.<Integer>get("version"), cb.sum(gs.<Integer>get("version"), 1));
+        update.set(gs.<Date>get("computedDate"), cb.nullLiteral(Date.class));
+        update.where(cb.and(cb.equal(gs.get("gradebookId"), gradebookId), cb.equal(gs.get("studentId"), studentId)));
+        return session.createQuery(update).executeUpdate();
+    }
+
+    @Transactional
+    public int invalidateOrCreateByGradebookIdAndStudentId(Long gradebookId, String studentId) {
+
+        if (invalidateByGradebookIdAndStudentId(gradebookId, studentId) > 0) {
+            return 1;
+        }
+
+        // The student's first grade. Two of those at once would both insert, and the unique constraint would roll one of the
+        // grade saves back, so take the gradebook lock and look again. The lock is freed once the transaction completes.
+        Session session = sessionFactory.getCurrentSession();
+        Gradebook gradebook = session.get(Gradebook.class, gradebookId);
+        if (gradebook != null) {
+            session.buildLockRequest(LockOptions.UPGRADE).setLockMode(LockMode.PESSIMISTIC_WRITE).lock(gradebook);
+            if (invalidateByGradebookIdAndStudentId(gradebookId, studentId) > 0) {
+                return 1;
+            }
+        }
+
+        GradeSnapshot snapshot = new GradeSnapshot();
+        snapshot.setGradebookId(gradebookId);
+        snapshot.setStudentId(studentId);
+        save(snapshot);
+        return 0;
+    }
+
+    @Transactional
+    public int updateComputed(GradeSnapshot snapshot) {
+
+        Session session = sessionFactory.getCurrentSession();
+        CriteriaBuilder cb = session.getCriteriaBuilder();
+        CriteriaUpdate<GradeSnapshot> update = cb.createCriteriaUpdate(GradeSnapshot.class);
+        Root<GradeSnapshot> gs = update.from(GradeSnapshot.class);
+        update.set(gs.<Double>get("totalPointsPossible"), snapshot.getTotalPointsPossible());
+        update.set(gs.<Double>get("pointsEarned"), snapshot.getPointsEarned());
+        update.set(gs.<Double>get("literalPointsEarned"), snapshot.getLiteralPointsEarned());
+        update.set(gs.<Double>get("extraPointsEarned"), snapshot.getExtraPointsEarned());
+        update.set(gs.<String>get("categoryScores"), snapshot.getCategoryScores());
+        update.set(gs.<String>get("releasedCategoryScores"), snapshot.getReleasedCategoryScores());
+        update.set(gs.<Date>get("computedDate"), snapshot.getComputedDate());
+        // Only store the values if nothing has changed since they were computed
+        update.where(cb.and(cb.equal(gs.get("id"), snapshot.getId()), cb.equal(gs.get("version"), snapshot.getVersion())));
+        return session.createQuery(update).executeUpdate();
+    }
+}
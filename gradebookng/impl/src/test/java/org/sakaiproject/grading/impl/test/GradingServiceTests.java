@@ -28,6 +28,7 @@ import java.time.temporal.ChronoUnit;
 
 import org.junit.Assert;
 import org.sakaiproject.authz.api.SecurityService;
+import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.grading.api.Assignment;
 import org.sakaiproject.grading.api.CategoryDefinition;
 import org.sakaiproject.grading.api.CommentDefinition;
@@ -39,13 +40,18 @@ import org.sakaiproject.grading.api.GradingConstants;
 import org.sakaiproject.grading.api.GradingSecurityException;
 import org.sakaiproject.grading.api.GradingService;
 import org.sakaiproject.grading.api.model.CourseGrade;
+import org.sakaiproject.grading.api.model.GradeSnapshot;
 import org.sakaiproject.grading.api.model.Gradebook;
 import org.sakaiproject.grading.api.model.GradingEvent;
 import org.sakaiproject.grading.api.model.LetterGradePercentMapping;
 import org.sakaiproject.grading.api.repository.CourseGradeRepository;
+import org.sakaiproject.grading.api.repository.GradeSnapshotRepository;
 import org.sakaiproject.grading.api.repository.LetterGradePercentMappingRepository;
 import org.sakaiproject.grading.api.SortType;
 import org.sakaiproject.grading.impl.GradingServiceImpl;
+import org.sakaiproject.section.api.SectionAwareness;
+import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
+import org.sakaiproject.section.api.facade.Role;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -55,6 +61,8 @@ import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.user.api.UserNotDefinedException;
 import org.sakaiproject.util.ResourceLoader;
 
+import org.hibernate.SessionFactory;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
@@ -73,9 +81,13 @@ import org.springframework.test.util.AopTestUtils;
 public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContextTests {
 
     @Autowired private CourseGradeRepository courseGradeRepository;
+    @Autowired private GradeSnapshotRepository gradeSnapshotRepository;
     @Autowired private GradingService gradingService;
     @Autowired private LetterGradePercentMappingRepository letterGradePercentMappingRepository;
+    @Autowired private SectionAwareness sectionAwareness;
     @Autowired private SecurityService securityService;
+    @Autowired private ServerConfigurationService serverConfigurationService;
+    @Autowired private SessionFactory sessionFactory;
     @Autowired private SessionManager sessionManager;
     @Autowired private SiteService siteService;
     @Autowired private UserDirectoryService userDirectoryService;
@@ -110,6 +122,8 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         reset(sessionManager);
         reset(securityService);
         reset(userDirectoryService);
+        reset(serverConfigurationService);
+        reset(sectionAwareness);
 
         ass1 = new Assignment();
         ass1.setPoints(ass1Points);
@@ -721,6 +735,118 @@ public class GradingServiceTests extends AbstractTransactionalJUnit4SpringContex
         assertEquals("20.0", grades.get(user1).getCalculatedGrade());
     }
 
+    @Test
+    public void gradeSnapshots() {
+
+        when(serverConfigurationService.getBoolean(GradingServiceImpl.PROP_GRADE_SNAPSHOTS_ENABLED, true)).thenReturn(true);
+        when(serverConfigurationService.getInt(GradingServiceImpl.PROP_GRADE_SNAPSHOTS_MAX_AGE, 86400)).thenReturn(86400);
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        Map<String, Double> gradeMapping = new HashMap<>();
+        gradeMapping.put(user1, 3.0D);
+
+        // the grade save creates the student's snapshot, the first read computes it
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), siteId, assId, user1, "3.0", "");
+        assertNull(getGradeSnapshot(gradebook.getId(), user1).getComputedDate());
+        Map<String, CourseGradeTransferBean> grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), siteId, Arrays.asList(user1), gradeMapping);
+        assertEquals("20.0", grades.get(user1).getCalculatedGrade());
+
+        GradeSnapshot snapshot = getGradeSnapshot(gradebook.getId(), user1);
+        assertNotNull(snapshot.getComputedDate());
+        assertEquals(15D, snapshot.getTotalPointsPossible(), 0);
+        int version = snapshot.getVersion();
+
+        // a new grade invalidates the student's snapshot
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), siteId, assId, user1, "6.0", "");
+        snapshot = getGradeSnapshot(gradebook.getId(), user1);
+        assertNull(snapshot.getComputedDate());
+        assertEquals(version + 1, snapshot.getVersion().intValue());
+
+        // a total computed from the grade records before the new grade is not stored
+        GradeSnapshot stale = new GradeSnapshot();
+        stale.setId(snapshot.getId());
+        stale.setVersion(version);
+        stale.setTotalPointsPossible(15D);
+        stale.setPointsEarned(3D);
+        stale.setComputedDate(new Date());
+        assertEquals(0, gradeSnapshotRepository.updateComputed(stale));
+        assertNull(getGradeSnapshot(gradebook.getId(), user1).getComputedDate());
+
+        grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), siteId, Arrays.asList(user1), gradeMapping);
+        assertEquals("40.0", grades.get(user1).getCalculatedGrade());
+
+        // reads are served from the snapshot, and the consistency check puts it right
+        snapshot = getGradeSnapshot(gradebook.getId(), user1);
+        assertEquals(6D, snapshot.getPointsEarned(), 0);
+        snapshot.setPointsEarned(3D);
+        gradeSnapshotRepository.save(snapshot);
+        grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), siteId, Arrays.asList(user1), gradeMapping);
+        assertEquals("20.0", grades.get(user1).getCalculatedGrade());
+
+        assertEquals(1, gradingService.rebuildGradeSnapshots(gradebook.getId()));
+        assertEquals(6D, getGradeSnapshot(gradebook.getId(), user1).getPointsEarned(), 0);
+        assertEquals(0, gradingService.rebuildGradeSnapshots(gradebook.getId()));
+        grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), siteId, Arrays.asList(user1), gradeMapping);
+        assertEquals("40.0", grades.get(user1).getCalculatedGrade());
+
+        // changing an item invalidates every snapshot in the gradebook
+        Assignment assignment = gradingService.getAssignment(gradebook.getUid(), siteId, assId);
+        assignment.setName("Renamed");
+        gradingService.updateAssignment(gradebook.getUid(), siteId, assId, assignment);
+        assertNull(getGradeSnapshot(gradebook.getId(), user1).getComputedDate());
+        grades = gradingService.getCourseGradeForStudents(gradebook.getUid(), siteId, Arrays.asList(user1), gradeMapping);
+        assertEquals("40.0", grades.get(user1).getCalculatedGrade());
+    }
+
+    @Test
+    public void getStudentsOrderedByGrade() {
+
+        Gradebook gradebook = createGradebook();
+        Long assId = createAssignment1(gradebook);
+
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), siteId, assId, user1, "9.0", "");
+        gradingService.saveGradeAndCommentForStudent(gradebook.getUid(), siteId, assId, user2, "4.0", "");
+
+        String user3 = "user3";
+        List<EnrollmentRecord> enrollments = new ArrayList<>();
+        for (String studentId : List.of(user1, user2, user3)) {
+            org.sakaiproject.section.api.coursemanagement.User student = mock(org.sakaiproject.section.api.coursemanagement.User.class);
+            when(student.getUserUid()).thenReturn(studentId);
+            EnrollmentRecord enrollment = mock(EnrollmentRecord.class);
+            when(enrollment.getUser()).thenReturn(student);
+            enrollments.add(enrollment);
+        }
+        when(sectionAwareness.getSiteMembersInRole(gradebook.getUid(), Role.STUDENT)).thenReturn(enrollments);
+        when(securityService.unlock(instructorUser, GradingAuthz.PERMISSION_GRADE_ALL, "/site/" + siteId)).thenReturn(true);
+
+        // students without a grade are left out, the rest are lowest grade first
+        assertEquals(List.of(user2, user1),
+            gradingService.getStudentsOrderedByGrade(gradebook.getUid(), siteId, assId, List.of(user1, user2, user3)));
+        assertEquals(List.of(user1), gradingService.getStudentsOrderedByGrade(gradebook.getUid(), siteId, assId, List.of(user1, user3)));
+
+        // students the grader can't see are not ordered either
+        when(sectionAwareness.getSiteMembersInRole(gradebook.getUid(), Role.STUDENT)).thenReturn(enrollments.subList(0, 1));
+        assertEquals(List.of(user1),
+            gradingService.getStudentsOrderedByGrade(gradebook.getUid(), siteId, assId, List.of(user1, user2, user3)));
+
+        switchToUser1();
+        assertThrows(GradingSecurityException.class,
+            () -> gradingService.getStudentsOrderedByGrade(gradebook.getUid(), siteId, assId, List.of(user1, user2)));
+    }
+
+    private GradeSnapshot getGradeSnapshot(Long gradebookId, String studentId) {
+
+        // snapshots are invalidated and updated in bulk, which the session does not see
+        sessionFactory.getCurrentSession().flush();
+        sessionFactory.getCurrentSession().clear();
+
+        List<GradeSnapshot> snapshots = gradeSnapshotRepository.findByGradebookIdAndStudentIdIn(gradebookId, List.of(studentId));
+        assertEquals(1, snapshots.size());
+        return snapshots.get(0);
+    }
+
     @Test
     public void getGradesWithoutCommentsForStudentsForItems() {
 
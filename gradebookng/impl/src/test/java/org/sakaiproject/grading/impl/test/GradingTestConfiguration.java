@@ -17,6 +17,7 @@ package org.sakaiproject.grading.impl.test;
 
 import static org.mockito.Mockito.mock;
 
+import org.sakaiproject.api.app.scheduler.SchedulerManager;
 import org.sakaiproject.plus.api.PlusService;
 import org.sakaiproject.section.api.SectionAwareness;
 import org.sakaiproject.springframework.orm.hibernate.AdditionalHibernateMappings;
@@ -52,4 +53,9 @@ public class GradingTestConfiguration extends SakaiTestConfiguration {
     public PlusService plusService() {
         return mock(PlusService.class);
     }
+
+    @Bean(name = "org.sakaiproject.api.app.scheduler.SchedulerManager")
+    public SchedulerManager schedulerManager() {
+        return mock(SchedulerManager.class);
+    }
 }
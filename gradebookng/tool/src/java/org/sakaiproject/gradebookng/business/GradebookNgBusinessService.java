@@ -916,6 +916,151 @@ public class GradebookNgBusinessService {
 		return items;
 	}
 
+	/**
+	 * Build one page of the grade matrix. Unlike {@link #buildGradeMatrix}, which builds a row for every student and a grade for every
+	 * assignment before sorting, this puts the students in order using only what each sort needs and then builds just the rows in
+	 * the page window, with grades for just the visible assignments. Use {@link #buildGradeMatrix} or
+	 * {@link #buildGradeMatrixForImportExport} when every row is needed.
+	 *
+	 * @param assignments list of assignments in the gradebook
+	 * @param groupFilter group to filter the students on, or null for all students
+	 * @param uiSettings the settings from the UI holding the sort order
+	 * @param first index of the first student of the page
+	 * @param count maximum number of students in the page
+	 * @param visibleAssignmentIds ids of the assignments to get grades for, or null for all of them. Category averages and course
+	 *            grades are always included.
+	 * @return the page, or null if there is no gradebook
+	 */
+	public GbGradeMatrixPage buildGradeMatrixPage(final String gradebookUid, final String siteId, final List<Assignment> assignments,
+			final String groupFilter, final GradebookUiSettings uiSettings, final int first, final int count,
+			final Set<Long> visibleAssignmentIds) throws GbException {
+
+		final GradebookUiSettings settings = (uiSettings != null) ? uiSettings : new GradebookUiSettings();
+
+		final GbStopWatch stopwatch = new GbStopWatch();
+		stopwatch.start();
+		stopwatch.timeWithContext("buildGradeMatrixPage", "buildGradeMatrixPage start", stopwatch.getTime());
+
+		final Gradebook gradebook = this.getGradebook(gradebookUid, siteId);
+		if (gradebook == null) {
+			return null;
+		}
+
+		final String currentUserUuid = getCurrentUser().getId();
+
+		GbRole role;
+		try {
+			role = this.getUserRole(siteId);
+		} catch (final GbAccessDeniedException e) {
+			throw new GbException("Error getting role for current user", e);
+		}
+
+		final Site site = getSite(siteId).orElse(null);
+
+		// users come from the user directory rather than the gradebook tables, so the name and student number orders are applied
+		// to the (cached) users here. Every other sort is applied on top of this order, as sortGradeMatrix does.
+		final List<String> studentUuids = Optional.ofNullable(getGradeableUsers(gradebookUid, siteId, groupFilter)).orElseGet(ArrayList::new);
+		final List<GbUser> gbStudents = getGbUsersForUiSettings(studentUuids, settings, site);
+		stopwatch.timeWithContext("buildGradeMatrixPage", "sortUsers", stopwatch.getTime());
+
+		final List<GbStudentGradeInfo> sortKeys = new ArrayList<>(gbStudents.size());
+		for (final GbUser student : gbStudents) {
+			sortKeys.add(new GbStudentGradeInfo(student));
+		}
+
+		// the grade item sort is done by the database, students without a grade sort before the lowest grade
+		if (settings.getAssignmentSortOrder() != null) {
+			final List<String> ordered = this.gradingService.getStudentsOrderedByGrade(gradebook.getUid(), siteId,
+					settings.getAssignmentSortOrder().getAssignmentId(), studentUuids);
+			final Map<String, Integer> ranks = new HashMap<>();
+			for (int i = 0; i < ordered.size(); i++) {
+				ranks.put(ordered.get(i), i);
+			}
+
+			Comparator<GbStudentGradeInfo> comparator = Comparator.comparingInt(sg -> ranks.getOrDefault(sg.getStudentUuid(), -1));
+			if (settings.getAssignmentSortOrder().getDirection() == SortDirection.DESCENDING) {
+				comparator = Collections.reverseOrder(comparator);
+			}
+			Collections.sort(sortKeys, comparator);
+		}
+
+		// category scores are served from the stored grade snapshots, so only the averages are needed to sort
+		if (settings.getCategorySortOrder() != null) {
+			final Long categoryId = settings.getCategorySortOrder().getCategoryId();
+			final boolean includeNonReleasedItems = (role == GbRole.TA || role == GbRole.INSTRUCTOR);
+			final Map<String, Map<Long, CategoryScoreData>> categoryScores = this.gradingService.calculateAllCategoryScoresForStudents(
+					gradebook.getId(), studentUuids, includeNonReleasedItems, gradebook.getCategoryType());
+			for (final GbStudentGradeInfo sg : sortKeys) {
+				final Map<Long, CategoryScoreData> studentScores = categoryScores.get(sg.getStudentUuid());
+				final CategoryScoreData score = (studentScores != null) ? studentScores.get(categoryId) : null;
+				if (score != null) {
+					sg.addCategoryAverage(categoryId, score.score);
+				}
+			}
+
+			Comparator<GbStudentGradeInfo> comparator = new CategorySubtotalComparator(categoryId);
+			if (settings.getCategorySortOrder().getDirection() == SortDirection.DESCENDING) {
+				comparator = Collections.reverseOrder(comparator);
+			}
+			Collections.sort(sortKeys, comparator);
+		}
+
+		final Map<String, CourseGradeTransferBean> courseGrades = (settings.getCourseGradeSortOrder() != null)
+				? getCourseGrades(gradebook.getUid(), siteId, studentUuids, null) : Collections.emptyMap();
+		if (!courseGrades.isEmpty()) {
+			for (final GbStudentGradeInfo sg : sortKeys) {
+				sg.setCourseGrade(courseGrades.get(sg.getStudentUuid()));
+			}
+
+			Comparator<GbStudentGradeInfo> comparator = new CourseGradeComparator(getGradebookSettings(gradebookUid, siteId));
+			if (settings.getCourseGradeSortOrder() == SortDirection.DESCENDING) {
+				comparator = Collections.reverseOrder(comparator);
+			}
+			Collections.sort(sortKeys, comparator);
+		}
+		stopwatch.timeWithContext("buildGradeMatrixPage", "sortStudents", stopwatch.getTime());
+
+		// now build the rows of the page window only. If students have gone since the window was chosen, show the last page instead.
+		final int pageSize = Math.max(count, 0);
+		int from = Math.max(first, 0);
+		if (from >= sortKeys.size() && pageSize > 0) {
+			from = Math.max(sortKeys.size() - 1, 0) / pageSize * pageSize;
+		}
+		from = Math.min(from, sortKeys.size());
+		final int to = Math.min(from + pageSize, sortKeys.size());
+
+		final Map<String, GbUser> studentsByUuid = new HashMap<>();
+		for (final GbUser student : gbStudents) {
+			studentsByUuid.put(student.getUserUuid(), student);
+		}
+
+		final List<GbUser> pageStudents = new ArrayList<>(to - from);
+		final List<String> pageStudentUuids = new ArrayList<>(to - from);
+		for (final GbStudentGradeInfo sg : sortKeys.subList(from, to)) {
+			pageStudents.add(studentsByUuid.get(sg.getStudentUuid()));
+			pageStudentUuids.add(sg.getStudentUuid());
+		}
+
+		final List<Assignment> visibleAssignments = (visibleAssignmentIds == null) ? assignments
+				: assignments.stream().filter(a -> visibleAssignmentIds.contains(a.getId())).collect(Collectors.toList());
+
+		final Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<>();
+		if (!pageStudents.isEmpty()) {
+			putCourseGradesInMatrix(matrix, pageStudents, pageStudentUuids, gradebook, siteId, role,
+					isCourseGradeVisible(gradebookUid, siteId, currentUserUuid), settings);
+			putAssignmentsAndCategoryItemsInMatrix(matrix, pageStudents, pageStudentUuids, visibleAssignments, gradebook, siteId,
+					currentUserUuid, role, settings);
+		}
+		stopwatch.timeWithContext("buildGradeMatrixPage", "buildPage", stopwatch.getTime());
+
+		final List<GbStudentGradeInfo> rows = new ArrayList<>(pageStudents.size());
+		for (final GbUser student : pageStudents) {
+			rows.add(matrix.get(student.getUserUuid()));
+		}
+
+		return new GbGradeMatrixPage(rows, from, sortKeys.size());
+	}
+
 	public List<GbGradeComparisonItem> buildMatrixForGradeComparison(String gradebookUid, String siteId, Assignment assignment, Integer gradingType, GradebookInformation settings){
 		// Only return the list if the feature is activated
 		boolean serverPropertyOn = serverConfigService.getConfig(
@@ -1837,6 +1982,7 @@ public class GradebookNgBusinessService {
 
 		// keep a hash of all users so we don't have to hit the service each time
 		final Map<String, GbUser> users = new HashMap<>();
+		this.userDirectoryService.queueUsers(events.stream().map(GradingEvent::getGraderId).collect(Collectors.toSet()));
 
 		// filter out any events made by the current user
 		for (final GradingEvent event : events) {
@@ -2355,10 +2501,11 @@ public class GradebookNgBusinessService {
 				Group group = siteService.findGroup(gradebookUid);
 				userUuids = group.getUsersIsAllowed(GbRole.TA.getValue());
 			}
+			this.userDirectoryService.queueUsers(userUuids);
 			for (final String userUuid : userUuids) {
 				GbUser user = getUser(userUuid);
 				if (user != null) {
-					rval.add(getUser(userUuid));
+					rval.add(user);
 				}
 			}
 		} catch (final IdUnusedException e) {
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * One page of the grade matrix, sorted as requested and holding only the requested rows and grade item columns
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class GbGradeMatrixPage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The rows of this page, in sort order
+	 */
+	private final List<GbStudentGradeInfo> rows;
+
+	/**
+	 * Index of the first row of this page among all students
+	 */
+	private final int first;
+
+	/**
+	 * Number of students across all pages
+	 */
+	private final int totalStudents;
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.gradebookng.tool.actions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.sakaiproject.gradebookng.business.SortDirection;
+import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
+import org.sakaiproject.gradebookng.business.model.GbCategoryAverageSortOrder;
+import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
+import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
+
+import java.io.Serializable;
+
+/**
+ * Sorts the grade table on the server. Used when the table is split into pages, as the browser only has the students of one page.
+ */
+public class SortGradeTableAction extends InjectableAction implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public SortGradeTableAction() {
+	}
+
+	@Override
+	public ActionResponse handleEvent(final JsonNode params, final AjaxRequestTarget target) {
+		final String columnType = params.path("columnType").asText();
+		final SortDirection direction = "desc".equals(params.path("dir").asText()) ? SortDirection.DESCENDING : SortDirection.ASCENDING;
+
+		final GradebookPage gradebookPage = (GradebookPage) target.getPage();
+
+		final GradebookUiSettings settings = gradebookPage.getUiSettings();
+		switch (columnType) {
+			case "assignment":
+				settings.setAssignmentSortOrder(new GbAssignmentGradeSortOrder(params.path("id").asLong(), direction));
+				break;
+			case "category":
+				settings.setCategorySortOrder(new GbCategoryAverageSortOrder(params.path("id").asLong(), direction));
+				break;
+			case "coursegrade":
+				settings.setCourseGradeSortOrder(direction);
+				break;
+			case "studentnumber":
+				settings.setStudentNumberSortOrder(direction);
+				break;
+			case "studentname":
+				settings.setStudentSortOrder(direction);
+				break;
+			default:
+				return new ArgumentErrorResponse("Column " + columnType + " cannot be sorted");
+		}
+
+		// save settings
+		gradebookPage.setUiSettings(settings);
+
+		// refresh the page
+		target.appendJavaScript("location.reload();");
+
+		return new EmptyOkResponse();
+	}
+}
@@ -15,6 +15,7 @@
  */
 package org.sakaiproject.gradebookng.tool.model;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,7 +25,9 @@ import org.sakaiproject.assignment.api.AssignmentConstants;
 import org.sakaiproject.assignment.api.AssignmentReferenceReckoner;
 import org.sakaiproject.gradebookng.business.GbRole;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.gradebookng.business.exception.GbAccessDeniedException;
+import org.sakaiproject.gradebookng.business.model.GbGradeMatrixPage;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
 import org.sakaiproject.gradebookng.business.util.GbStopWatch;
@@ -42,6 +45,13 @@ import lombok.Getter;
 
 @EqualsAndHashCode @Getter
 public class GbGradeTableData {
+	/**
+	 * Number of students in each page of the grade table. Larger rosters are split into pages and sorted on the server, 0 shows every
+	 * student on one page.
+	 */
+	public static final String SAK_PROP_GRADE_TABLE_PAGE_SIZE = "gradebookng.gradeTable.pageSize";
+	public static final int SAK_PROP_GRADE_TABLE_PAGE_SIZE_DEFAULT = 500;
+
 	private List<Assignment> assignments;
 	private List<GbStudentGradeInfo> grades;
 	private List<CategoryDefinition> categories;
@@ -58,6 +68,9 @@ public class GbGradeTableData {
 	private boolean isStudentNumberVisible;
 	private boolean isSectionsVisible;
 	private String gradebookUid;
+	private int gradeTableFirst;
+	private int gradeTablePageSize;
+	private int totalStudents;
 
 	public GbGradeTableData(final String currentGradebookUid, final String currentSiteId, final GradebookNgBusinessService businessService,
 			final GradebookUiSettings settings, final ToolManager toolManager, final RubricsService rubricsService) {
@@ -88,11 +101,22 @@ public class GbGradeTableData {
 		stopwatch.time("getGradebookAssignments", stopwatch.getTime());
 
 		String groupFilter = (uiSettings.getGroupFilter() != null && !GbGroup.Type.ALL.equals(uiSettings.getGroupFilter().getType())) ? uiSettings.getGroupFilter().getId() : null;
-		grades = businessService.buildGradeMatrix(currentGradebookUid, currentSiteId, 
-				assignments,
-				businessService.getGradeableUsers(currentGradebookUid, currentSiteId, groupFilter),
-				settings);
-		stopwatch.time("buildGradeMatrix", stopwatch.getTime());
+		gradeTablePageSize = ServerConfigurationService.getInt(SAK_PROP_GRADE_TABLE_PAGE_SIZE, SAK_PROP_GRADE_TABLE_PAGE_SIZE_DEFAULT);
+		if (gradeTablePageSize > 0) {
+			final GbGradeMatrixPage page = businessService.buildGradeMatrixPage(currentGradebookUid, currentSiteId, assignments,
+					groupFilter, settings, settings.getGradeTableFirst(), gradeTablePageSize, null);
+			grades = (page != null) ? page.getRows() : new ArrayList<>();
+			gradeTableFirst = (page != null) ? page.getFirst() : 0;
+			totalStudents = (page != null) ? page.getTotalStudents() : 0;
+			stopwatch.time("buildGradeMatrixPage", stopwatch.getTime());
+		} else {
+			grades = businessService.buildGradeMatrix(currentGradebookUid, currentSiteId, 
+					assignments,
+					businessService.getGradeableUsers(currentGradebookUid, currentSiteId, groupFilter),
+					settings);
+			totalStudents = grades.size();
+			stopwatch.time("buildGradeMatrix", stopwatch.getTime());
+		}
 
 		categories = businessService.getGradebookCategories(currentGradebookUid, currentSiteId);
 		stopwatch.time("getGradebookCategories", stopwatch.getTime());
@@ -116,6 +140,13 @@ public class GbGradeTableData {
 
 	}
 
+	/**
+	 * @return whether only some of the students are in the table, in which case sorting has to be done on the server
+	 */
+	public boolean isPaged() {
+		return gradeTablePageSize > 0 && totalStudents > gradeTablePageSize;
+	}
+
 	public HashMap<String, Boolean> buildHasAssociatedRubricMap(final List<Assignment> assignments, final ToolManager toolManager, final RubricsService rubricsService) {
 		HashMap<String, Boolean> map = new HashMap<String, Boolean>();
 		for (Assignment assignment : assignments) {
@@ -36,6 +36,7 @@ import org.apache.wicket.model.StringResourceModel;
 import org.sakaiproject.assignment.api.AssignmentReferenceReckoner;
 import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.gradebookng.business.GbRole;
+import org.sakaiproject.gradebookng.business.SortDirection;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentNameSortOrder;
@@ -83,6 +84,9 @@ public class GbGradebookData {
 	private final boolean isStudentNumberVisible;
 	private final boolean isSectionsVisible;
 	private final String gUid;
+	private final int gradeTableFirst;
+	private final int gradeTablePageSize;
+	private final int totalStudents;
 	private final Map<Long, CategoryDefinition> categoryMap = new HashMap<>();
 
 	private final Component parent;
@@ -249,6 +253,9 @@ public class GbGradebookData {
 		this.gradebookId = gbGradeTableData.getGradebookId();
 		this.isStudentNumberVisible = gbGradeTableData.isStudentNumberVisible();
 		this.isSectionsVisible = gbGradeTableData.isSectionsVisible();
+		this.gradeTableFirst = gbGradeTableData.getGradeTableFirst();
+		this.gradeTablePageSize = gbGradeTableData.getGradeTablePageSize();
+		this.totalStudents = gbGradeTableData.getTotalStudents();
 
 		this.studentGradeInfoList = gbGradeTableData.getGrades();
 
@@ -430,10 +437,44 @@ public class GbGradebookData {
 		result.put("isSetUngradedToZeroEnabled", ServerConfigurationService.getBoolean(SAK_PROP_SHOW_SET_ZERO_SCORE, SAK_PROP_SHOW_SET_ZERO_SCORE_DEFAULT));
 		result.put("isShowDisplayCourseGradeToStudentEnabled", ServerConfigurationService.getBoolean(SAK_PROP_SHOW_COURSE_GRADE_STUDENT, SAK_PROP_SHOW_COURSE_GRADE_STUDENT_DEFAULT));
 		result.put("gUid", this.gUid);
+		result.put("gradeTableFirst", this.gradeTableFirst);
+		result.put("gradeTablePageSize", this.gradeTablePageSize);
+		result.put("gradeTableTotalStudents", this.totalStudents);
+		result.put("gradeTableSort", serializeGradeTableSort());
 
 		return result;
 	};
 
+	/**
+	 * The sort order applied on the server, used to mark the sorted column when the grade table is split into pages
+	 */
+	private Map<String, Object> serializeGradeTableSort() {
+		final Map<String, Object> result = new HashMap<>();
+
+		SortDirection direction = null;
+		if (this.uiSettings.getAssignmentSortOrder() != null) {
+			result.put("columnType", "assignment");
+			result.put("id", this.uiSettings.getAssignmentSortOrder().getAssignmentId());
+			direction = this.uiSettings.getAssignmentSortOrder().getDirection();
+		} else if (this.uiSettings.getCategorySortOrder() != null) {
+			result.put("columnType", "category");
+			result.put("id", this.uiSettings.getCategorySortOrder().getCategoryId());
+			direction = this.uiSettings.getCategorySortOrder().getDirection();
+		} else if (this.uiSettings.getCourseGradeSortOrder() != null) {
+			result.put("columnType", "coursegrade");
+			direction = this.uiSettings.getCourseGradeSortOrder();
+		} else if (this.uiSettings.getStudentNumberSortOrder() != null) {
+			result.put("columnType", "studentnumber");
+			direction = this.uiSettings.getStudentNumberSortOrder();
+		} else if (this.uiSettings.getStudentSortOrder() != null) {
+			result.put("columnType", "studentname");
+			direction = this.uiSettings.getStudentSortOrder();
+		}
+		result.put("dir", direction == SortDirection.DESCENDING ? "desc" : "asc");
+
+		return result;
+	}
+
 	private List<String[]> courseGrades() {
 		final List<String[]> result = new ArrayList<>();
 
@@ -115,6 +115,13 @@ public class GradebookUiSettings implements Serializable {
 	@Setter
 	private boolean gradeSummaryGroupedByCategory;
 
+	/**
+	 * Index of the first student shown when the grade table is split into pages. Changing the sort order goes back to the first page.
+	 */
+	@Getter
+	@Setter
+	private int gradeTableFirst;
+
 	public GradebookUiSettings() {
 		// defaults. Note there is no default for assignmentSortOrder as that
 		// requires an assignmentId which will differ between gradebooks
@@ -221,6 +228,7 @@ public class GradebookUiSettings implements Serializable {
 		this.assignmentSortOrder = null;
 		this.studentSortOrder = null;
 		studentNumberSortOrder = null;
+		this.gradeTableFirst = 0;
 	}
 
 	@Override
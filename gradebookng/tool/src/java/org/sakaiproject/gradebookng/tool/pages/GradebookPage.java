@@ -38,9 +38,11 @@ import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.ChoiceRenderer;
 import org.apache.wicket.markup.html.form.DropDownChoice;
 import org.apache.wicket.markup.html.form.Form;
+import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.markup.html.panel.EmptyPanel;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.util.string.StringValue;
 import org.sakaiproject.gradebookng.business.GbRole;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
@@ -59,6 +61,7 @@ import org.sakaiproject.gradebookng.tool.actions.QuickEntryAction;
 import org.sakaiproject.gradebookng.tool.actions.SetScoreForUngradedAction;
 import org.sakaiproject.gradebookng.tool.actions.SetStudentNameOrderAction;
 import org.sakaiproject.gradebookng.tool.actions.SetZeroScoreAction;
+import org.sakaiproject.gradebookng.tool.actions.SortGradeTableAction;
 import org.sakaiproject.gradebookng.tool.actions.ToggleCourseGradePoints;
 import org.sakaiproject.gradebookng.tool.actions.ViewAssignmentStatisticsAction;
 import org.sakaiproject.gradebookng.tool.actions.ViewCourseGradeLogAction;
@@ -367,6 +370,7 @@ public class GradebookPage extends BasePage {
 		setUngraded.setCurrentGradebookAndSite(gradebookUid, siteId);
 		this.gradeTable.addEventListener("setUngraded", setUngraded);
 		this.gradeTable.addEventListener("setStudentNameOrder", new SetStudentNameOrderAction());
+		this.gradeTable.addEventListener("sortGradeTable", new SortGradeTableAction());
 		this.gradeTable.addEventListener("toggleCourseGradePoints", new ToggleCourseGradePoints());
 		this.gradeTable.addEventListener("editSettings", new EditSettingsAction());
 		MoveAssignmentAction moveAssignmentLeft = new MoveAssignmentAction(-1);
@@ -399,6 +403,53 @@ public class GradebookPage extends BasePage {
 
 		this.tableArea.add(this.gradeTable);
 
+		// large rosters are split into pages, see GbGradeTableData
+		final WebMarkupContainer gradeTablePager = new WebMarkupContainer("gradeTablePager") {
+			@Override
+			public boolean isVisible() {
+				return getGradeTableData().isPaged();
+			}
+		};
+		gradeTablePager.add(new Link<Void>("previousStudents") {
+			@Override
+			public void onClick() {
+				final GbGradeTableData data = getGradeTableData();
+				settings.setGradeTableFirst(Math.max(data.getGradeTableFirst() - data.getGradeTablePageSize(), 0));
+				setUiSettings(settings);
+				setResponsePage(GradebookPage.class);
+			}
+
+			@Override
+			public boolean isEnabled() {
+				return getGradeTableData().getGradeTableFirst() > 0;
+			}
+		});
+		gradeTablePager.add(new Label("studentSummary", new LoadableDetachableModel<String>() {
+			@Override
+			protected String load() {
+				final GbGradeTableData data = getGradeTableData();
+				return new StringResourceModel("label.toolbar.studentsummarypaginated")
+						.setParameters(data.getGradeTableFirst() + 1, data.getGradeTableFirst() + data.getGrades().size(), data.getTotalStudents())
+						.getString();
+			}
+		}));
+		gradeTablePager.add(new Link<Void>("nextStudents") {
+			@Override
+			public void onClick() {
+				final GbGradeTableData data = getGradeTableData();
+				settings.setGradeTableFirst(data.getGradeTableFirst() + data.getGradeTablePageSize());
+				setUiSettings(settings);
+				setResponsePage(GradebookPage.class);
+			}
+
+			@Override
+			public boolean isEnabled() {
+				final GbGradeTableData data = getGradeTableData();
+				return data.getGradeTableFirst() + data.getGrades().size() < data.getTotalStudents();
+			}
+		});
+		this.tableArea.add(gradeTablePager);
+
 		final SakaiAjaxButton toggleCategoriesToolbarItem = new SakaiAjaxButton("toggleCategoriesToolbarItem") {
 			@Override
 			protected void onInitialize() {
@@ -515,6 +566,7 @@ public class GradebookPage extends BasePage {
 				// store selected group (null ok)
 				final GradebookUiSettings settings = getUiSettings();
 				settings.setGroupFilter(selected);
+				settings.setGradeTableFirst(0);
 				setUiSettings(settings);
 
 				// refresh
@@ -614,6 +666,10 @@ public class GradebookPage extends BasePage {
 		return this.exportRubricWindow;
 	}
 
+	private GbGradeTableData getGradeTableData() {
+		return (GbGradeTableData) this.gradeTable.getDefaultModelObject();
+	}
+
 	/**
 	 * Getter for the GradebookUiSettings. Used to store a few UI related settings in the PreferencesService (serialized to db)
 	 *
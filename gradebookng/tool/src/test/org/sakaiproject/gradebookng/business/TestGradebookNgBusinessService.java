@@ -15,18 +15,45 @@
  */
 package org.sakaiproject.gradebookng.business;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
+import org.sakaiproject.gradebookng.business.model.GbGradeMatrixPage;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.gradebookng.business.model.GbUser;
 import org.sakaiproject.gradebookng.business.util.FormatHelper;
+import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
+import org.sakaiproject.grading.api.Assignment;
+import org.sakaiproject.grading.api.GradingService;
+import org.sakaiproject.grading.api.model.Gradebook;
+import org.sakaiproject.user.api.User;
 import org.sakaiproject.util.ResourceLoader;
 
 public class TestGradebookNgBusinessService {
@@ -96,4 +123,90 @@ public class TestGradebookNgBusinessService {
 		Assert.assertEquals(rounded, "89%");
 	}
 
+	@Test
+	public void testBuildGradeMatrixPage() throws Exception {
+		final List<String> studentUuids = Arrays.asList("s1", "s2", "s3", "s4", "s5");
+		final GradingService gradingService = mock(GradingService.class);
+		final GradebookNgBusinessService service = mockGradeMatrix(gradingService, studentUuids);
+
+		// s2 and s4 have no grade for the item
+		when(gradingService.getStudentsOrderedByGrade(eq("site"), eq("site"), eq(10L), any())).thenReturn(Arrays.asList("s3", "s1", "s5"));
+
+		final Assignment item1 = new Assignment();
+		item1.setId(10L);
+		final Assignment item2 = new Assignment();
+		item2.setId(20L);
+
+		final GradebookUiSettings settings = new GradebookUiSettings();
+		settings.setAssignmentSortOrder(new GbAssignmentGradeSortOrder(10L, SortDirection.ASCENDING));
+
+		// students without a grade sort first, only the rows and items of the page are built
+		GbGradeMatrixPage page = service.buildGradeMatrixPage("site", "site", Arrays.asList(item1, item2), null, settings, 1, 2,
+				Collections.singleton(20L));
+		Assert.assertEquals(Arrays.asList("s4", "s3"), rowIds(page));
+		Assert.assertEquals(1, page.getFirst());
+		Assert.assertEquals(5, page.getTotalStudents());
+
+		final ArgumentCaptor<List<GbUser>> students = ArgumentCaptor.forClass(List.class);
+		final ArgumentCaptor<List<Assignment>> assignments = ArgumentCaptor.forClass(List.class);
+		verify(service).putAssignmentsAndCategoryItemsInMatrix(any(), students.capture(), any(), assignments.capture(), any(), any(), any(),
+				any(), any());
+		Assert.assertEquals(Arrays.asList("s4", "s3"), students.getValue().stream().map(GbUser::getUserUuid).collect(Collectors.toList()));
+		Assert.assertEquals(1, assignments.getValue().size());
+		Assert.assertSame(item2, assignments.getValue().get(0));
+
+		settings.setAssignmentSortOrder(new GbAssignmentGradeSortOrder(10L, SortDirection.DESCENDING));
+		page = service.buildGradeMatrixPage("site", "site", Arrays.asList(item1, item2), null, settings, 0, 2, null);
+		Assert.assertEquals(Arrays.asList("s5", "s1"), rowIds(page));
+
+		// a window past the last student shows the last page
+		page = service.buildGradeMatrixPage("site", "site", Arrays.asList(item1, item2), null, settings, 10, 2, null);
+		Assert.assertEquals(Arrays.asList("s4"), rowIds(page));
+		Assert.assertEquals(4, page.getFirst());
+	}
+
+	private GradebookNgBusinessService mockGradeMatrix(final GradingService gradingService, final List<String> studentUuids)
+			throws Exception {
+		final GradebookNgBusinessService service = spy(new GradebookNgBusinessService());
+		service.setGradingService(gradingService);
+
+		final Gradebook gradebook = new Gradebook();
+		gradebook.setId(1L);
+		gradebook.setUid("site");
+		doReturn(gradebook).when(service).getGradebook("site", "site");
+		doReturn(mockUser("instructor")).when(service).getCurrentUser();
+		doReturn(GbRole.INSTRUCTOR).when(service).getUserRole("site");
+		doReturn(Optional.empty()).when(service).getSite("site");
+		doReturn(true).when(service).isCourseGradeVisible(anyString(), anyString(), anyString());
+		doReturn(new ArrayList<>(studentUuids)).when(service).getGradeableUsers("site", "site", null);
+
+		final List<GbUser> gbUsers = studentUuids.stream().map(id -> new GbUser(mockUser(id))).collect(Collectors.toList());
+		doReturn(gbUsers).when(service).getGbUsersForUiSettings(any(), any(), any());
+
+		doNothing().when(service).putCourseGradesInMatrix(any(), any(), any(), any(), any(), any(), anyBoolean(), any());
+		doAnswer(invocation -> {
+			final Map<String, GbStudentGradeInfo> matrix = invocation.getArgument(0);
+			final List<GbUser> students = invocation.getArgument(1);
+			students.forEach(student -> matrix.putIfAbsent(student.getUserUuid(), new GbStudentGradeInfo(student)));
+			return null;
+		}).when(service).putAssignmentsAndCategoryItemsInMatrix(any(), any(), any(), any(), any(), any(), any(), any(), any());
+
+		return service;
+	}
+
+	private User mockUser(final String id) {
+		final User user = mock(User.class);
+		when(user.getId()).thenReturn(id);
+		when(user.getDisplayId()).thenReturn(id);
+		when(user.getDisplayName()).thenReturn(id);
+		when(user.getFirstName()).thenReturn(id);
+		when(user.getLastName()).thenReturn(id);
+		when(user.getSortName()).thenReturn(id);
+		return user;
+	}
+
+	private List<String> rowIds(final GbGradeMatrixPage page) {
+		return page.getRows().stream().map(GbStudentGradeInfo::getStudentUuid).collect(Collectors.toList());
+	}
+
 }
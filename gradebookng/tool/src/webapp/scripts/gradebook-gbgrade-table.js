@@ -745,6 +745,40 @@ GbGradeTable.ajax = function (params, callback) {
   GbGradeTable.domElement.trigger("gbgradetable.action", params);
 };
 
+// Large rosters are split into pages on the server, so only the server can sort them
+GbGradeTable.isPaged = function () {
+  return GbGradeTable.settings.gradeTablePageSize > 0
+    && GbGradeTable.settings.gradeTableTotalStudents > GbGradeTable.settings.gradeTablePageSize;
+};
+
+GbGradeTable.serverSortKey = function (columnDefinition) {
+  const data = columnDefinition.formatterParams?._data_;
+  if (data?.type === "assignment") {
+    return { columnType: "assignment", id: data.assignmentId };
+  }
+  if (data?.type === "category") {
+    return { columnType: "category", id: data.categoryId };
+  }
+  const columnType = columnDefinition.formatterParams?.columnType;
+  if (["studentname", "studentnumber", "coursegrade"].includes(columnType)) {
+    return { columnType: columnType };
+  }
+  return null;
+};
+
+GbGradeTable.sortOnServer = function (column) {
+  const key = GbGradeTable.serverSortKey(column.getDefinition());
+  if (!key) {
+    return;
+  }
+
+  const sort = GbGradeTable.settings.gradeTableSort;
+  const dir = (key.columnType === sort.columnType && key.id == sort.id && sort.dir === "asc") ? "desc" : "asc";
+
+  // the page is reloaded once the server has sorted the students
+  GbGradeTable.ajax(Object.assign({ action: "sortGradeTable", dir: dir }, key));
+};
+
 GbGradeTable.renderTable = function (elementId, tableData) {
   GbGradeTable.domElement = $('#' + elementId);
   GbGradeTable.students = tableData.students;
@@ -906,6 +940,11 @@ GbGradeTable.renderTable = function (elementId, tableData) {
 
   GbGradeTable.instance.on("headerClick", (e, column) => {
     if (e.target.classList.contains('gb-title')) {
+      if (GbGradeTable.isPaged()) {
+        GbGradeTable.sortOnServer(column);
+        return;
+      }
+
       const table = column.getTable();
       const field = column.getField();
       const currentSort = table.getSorters()[0];
@@ -1029,7 +1068,13 @@ GbGradeTable.renderTable = function (elementId, tableData) {
         }
       }
 
-      if (columnDefinition.formatterParams?.columnType === "studentname") {
+      if (GbGradeTable.isPaged()) {
+        const sort = GbGradeTable.settings.gradeTableSort;
+        const key = GbGradeTable.serverSortKey(columnDefinition);
+        if (key && key.columnType === sort.columnType && key.id == sort.id) {
+          columnElement.classList.add('gb-title', `gb-sorted-${sort.dir}`);
+        }
+      } else if (columnDefinition.formatterParams?.columnType === "studentname") {
         columnElement.classList.add('gb-title', 'gb-sorted-desc');
       }
 
@@ -22,7 +22,10 @@
 package org.sakaiproject.authz.api;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.SakaiException;
@@ -91,6 +94,50 @@ public interface SecurityService
 	 */
 	boolean unlock(String userId, String lock, String reference, Collection<String> authzGroupIds);
 
+	/**
+	 * Which of these users can unlock the lock for use with this resource? Use this rather than calling unlock for
+	 * each user when checking a list of users, as the checks are answered together.
+	 * 
+	 * @param userIds
+	 *        The user ids.
+	 * @param lock
+	 *        The lock id string.
+	 * @param reference
+	 *        The resource reference string.
+	 * @return A Map of user id to true if that user can unlock the lock, false otherwise.
+	 */
+	default Map<String, Boolean> unlock(Collection<String> userIds, String lock, String reference)
+	{
+		Map<String, Boolean> rv = new HashMap<String, Boolean>();
+		for (String userId : userIds)
+		{
+			rv.put(userId, unlock(userId, lock, reference));
+		}
+		return rv;
+	}
+
+	/**
+	 * Which of these locks can the specified user id unlock for use with this resource? Use this rather than calling
+	 * unlock for each lock when checking many locks, as the checks are answered together.
+	 * 
+	 * @param userId
+	 *        The user id.
+	 * @param locks
+	 *        The lock id strings.
+	 * @param reference
+	 *        The resource reference string.
+	 * @return A Map of lock to true if the user can unlock it, false otherwise.
+	 */
+	default Map<String, Boolean> unlockFunctions(String userId, Set<String> locks, String reference)
+	{
+		Map<String, Boolean> rv = new HashMap<String, Boolean>();
+		for (String lock : locks)
+		{
+			rv.put(lock, unlock(userId, lock, reference));
+		}
+		return rv;
+	}
+
 	/**
 	 * Access the List of Users who can unlock the lock for use with this resource.
 	 * 
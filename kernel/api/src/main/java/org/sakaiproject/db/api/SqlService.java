@@ -26,6 +26,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.sakaiproject.exception.ServerOverloadException;
 
@@ -103,6 +104,26 @@ public interface SqlService
 	 */
 	<T> List<T> dbRead(String sql, Object[] fields, SqlReader<T> reader);
 
+	/**
+	 * Process a query, filling in with fields, and return the results as a Stream, one per record read, without holding the whole result in memory.
+	 * The reader is applied as for dbRead(); without a reader, the first field of each record, as a String, is streamed. The stream holds its own
+	 * connection and cursor until it is closed, so it must be used in a try-with-resources block and should not be kept open across slow work.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @param <T>
+	 *        The type of objects being returned by the SqlReader.
+	 * @return A Stream of things read, one per record, which must be closed.
+	 */
+	default <T> Stream<T> dbStream(String sql, Object[] fields, SqlReader<T> reader)
+	{
+		return dbRead(sql, fields, reader).stream();
+	}
+
 	/**
 	 * Process a query, filling in with fields, and return the results as a List, one per record read. If a reader is provided, it will be called for each record to prepare the Object placed into the List. Otherwise, the first field of each record, as a
 	 * String, will be placed in the list.
@@ -270,6 +291,22 @@ public interface SqlService
 	 */
 	boolean dbWriteBatch(Connection connection, String sql, List<Object[]> fieldsList);
 
+	/**
+	 * Execute the "insert" sql in a batch, returning the auto-update field Long values, one per record inserted.
+	 * This is the batched form of dbInsert - the entire batch is sent in one prepared statement and the generated keys are read back together.
+	 *
+	 * @param connection
+	 *        The connection to use.
+	 * @param sql
+	 *        The sql statement.
+	 * @param fieldsList
+	 *        The List of array of fields for parameters.
+	 * @param autoColumn
+	 *        The name of the db column that will have auto-update - we will return the values used.
+	 * @return The auto-update values, in the order of the fieldsList, or null if the batch failed or the driver did not report a key for every record.
+	 */
+	List<Long> dbInsertBatch(Connection connection, String sql, List<Object[]> fieldsList, String autoColumn);
+
 	/**
 	 * Execute the "write" sql - no response, using a set of fields from an array and a given connection logging no errors on failure.
 	 * 
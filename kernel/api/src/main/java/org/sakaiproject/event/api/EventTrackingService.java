@@ -177,6 +177,19 @@ public interface EventTrackingService
 	 */
 	void addLocalObserver(Observer observer);
 
+	/**
+	 * Add an observer of events, notified like those added with addObserver but on a thread of its own, in the order the
+	 * events were posted. The observer must not depend on the session or thread state of the request that posted the event.
+	 * The poster only waits for the observer when a backlog of events has built up for it.
+	 * 
+	 * @param observer
+	 *        The class observing.
+	 */
+	default void addAsyncObserver(Observer observer)
+	{
+		addObserver(observer);
+	}
+
 	/**
 	 * Delete an observer of events.
 	 * 
@@ -27,6 +27,7 @@ import org.w3c.dom.Element;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -414,6 +415,25 @@ public interface UserDirectoryService extends EntityProducer
 	 */
 	List<User> getUsers(Collection<String> ids);
 
+	/**
+	 * Access a bunch of user objects, by id.
+	 *
+	 * @param ids
+	 *        The Collection (String) of user ids.
+	 * @return A Map of the user objects of the valid ids, keyed by user id.
+	 */
+	Map<String, User> getUsersById(Collection<String> ids);
+
+	/**
+	 * Queue user ids that will be looked up during the current request. The first time one of them is needed, all the
+	 * queued ids are looked up together with {@link #getUsers(Collection)}, and the users found answer {@link #getUser(String)}
+	 * for the rest of the request. Outside of a request this does nothing.
+	 *
+	 * @param ids
+	 *        The Collection (String) of user ids.
+	 */
+	void queueUsers(Collection<String> ids);
+
 	/**
 	 * Find all the users within the record range given (sorted by sort name).
 	 *
@@ -1039,6 +1039,22 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 	{
 		return m_storage.getUsersIsAllowed(function, azGroups);
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Set<String> filterUsersIsAllowed(Collection<String> userIds, String function, Collection<String> azGroups)
+	{
+		return m_storage.filterUsersIsAllowed(userIds, function, azGroups);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Set<String> getFunctionsIsAllowed(String userId, Collection<String> functions, Collection<String> azGroups)
+	{
+		return m_storage.getFunctionsIsAllowed(userId, functions, azGroups);
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -1494,6 +1510,32 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		 */
 		Set<String> getUsersIsAllowed(String function, Collection<String> azGroups);
 
+		/**
+		 * Get those of the users who are allowed to perform the function in the named AuthzGroups.
+		 * 
+		 * @param userIds
+		 *        The user ids to check.
+		 * @param function
+		 *        The function to check.
+		 * @param azGroups
+		 *        A collection of the ids of AuthzGroups to consult.
+		 * @return the Set (String) of those user ids allowed to perform the function in the named AuthzGroups.
+		 */
+		Set<String> filterUsersIsAllowed(Collection<String> userIds, String function, Collection<String> azGroups);
+
+		/**
+		 * Get those of the functions the user is allowed to perform in the named AuthzGroups.
+		 * 
+		 * @param userId
+		 *        The user id.
+		 * @param functions
+		 *        The functions to check.
+		 * @param azGroups
+		 *        A collection of the ids of AuthzGroups to consult.
+		 * @return the Set (String) of those functions the user is allowed to perform in the named AuthzGroups.
+		 */
+		Set<String> getFunctionsIsAllowed(String userId, Collection<String> functions, Collection<String> azGroups);
+
 		/**
 		 * Get the set of user ids per group of users who are allowed to perform the function in the named AuthzGroups.
 		 * 
@@ -42,6 +42,7 @@ import java.util.Vector;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sakaiproject.authz.api.AuthzGroup;
@@ -135,6 +136,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
     private Cache realmLocksCache;
 
+	/** Compiled role permissions of the realms that have been read, used to answer isAllowed without SQL (null if disabled). */
+	protected RealmPermissionIndex m_permissionIndex;
+
 	/** KNL-1325 provide a more efficent refreshAuthzGroup */
     public static final String REFRESH_MAX_TIME_PROPKEY = "authzgroup.refresh.max.time";
     public static final String REFRESH_INTERVAL_PROPKEY = "authzgroup.refresh.interval";
@@ -276,6 +280,16 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			cacheRoleNames();
 			cacheFunctionNames();
 
+			if (serverConfigurationService().getBoolean("authz.permissionIndex.enabled", false))
+			{
+				synchronized (m_functionCache)
+				{
+					m_permissionIndex = new RealmPermissionIndex(m_functionCache,
+							serverConfigurationService().getInt("authz.permissionIndex.maxRealms", 10000),
+							serverConfigurationService().getInt("authz.permissionIndex.ttlSeconds", 300) * 1000L);
+				}
+			}
+
 			m_realmRoleGRCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.realmRoleGroupCache");
 			authzUserGroupIdsCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.authzUserGroupIdsCache");
 			maintainRolesCache = m_memoryService.getCache("org.sakaiproject.authz.impl.DbAuthzGroupService.maintainRolesCache");
@@ -655,6 +669,7 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 				m_realmRoleGRCache.remove(realmId);
 				realmLocksCache.remove(realmId);
+				if (m_permissionIndex != null) m_permissionIndex.invalidate(realmId);
 			} else {
 				// This should never happen as the events we generate should always have
 				// a /realm/ prefix on the resource.
@@ -1022,6 +1037,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				m_realmRoleGRCache.put(realm.getId(), payLoad);
 			}
 
+			// compile the roles and grants for isAllowed
+			if (m_permissionIndex != null) m_permissionIndex.index(realm.getId(), realm.m_key, realm.m_roles, realm.m_userGrants);
+
 			// RealmLock handling
 			Set<RealmLock> cachedRealmLock = (Set<RealmLock>) realmLocksCache.get(realm.getId());
 
@@ -1346,6 +1364,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				}
 			}, "azg:" + azGroup.getId());
 
+			if (m_permissionIndex != null) m_permissionIndex.invalidate(azGroup.getId());
+
 		}
 
 		/**
@@ -1461,6 +1481,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				}
 			}, "azg:" + azGroup.getId());
 
+			if (m_permissionIndex != null) m_permissionIndex.invalidate(azGroup.getId());
+
 		}
 
 		/**
@@ -1515,6 +1537,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 				}
 			}, "azg:" + edit.getId());
 
+			if (m_permissionIndex != null) m_permissionIndex.invalidate(edit.getId());
+
 			// update with the provider
 			refreshAuthzGroup((BaseAuthzGroup) edit);
 		}
@@ -1935,6 +1959,8 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 					removeTx(edit);
 				}
 			}, "azgRemove:" + edit.getId());
+
+			if (m_permissionIndex != null) m_permissionIndex.invalidate(edit.getId());
 		}
 
 		/**
@@ -2156,6 +2182,12 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 			List results = null;
 
+			// realms already read can be answered from their compiled permissions
+			if (!delegatedAccess && m_permissionIndex != null) {
+				Boolean indexed = m_permissionIndex.isAllowed(userId, roles, lock, realms);
+				if (indexed != null) return indexed;
+			}
+
 			if (delegatedAccess && userId != null && userId.equals(sessionManager().getCurrentSessionUserId())) {
 
 				// First check in the user's own Home site realm if it's in the list
@@ -2340,6 +2372,114 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			return rv;
 		}
 
+		/**
+		 * {@inheritDoc}
+		 */
+		public Set<String> filterUsersIsAllowed(Collection<String> userIds, String lock, Collection<String> realms)
+		{
+			Set<String> rv = new HashSet<String>();
+			if ((userIds == null) || userIds.isEmpty() || (lock == null) || (realms == null) || realms.isEmpty()) return rv;
+
+			// the roles that have the function in any of the realms
+			String sql = dbAuthzGroupSql.getSelectRealmFunctionRoleKeySql(orInClause(realms.size(), "REALM_ID"));
+			Object[] fields = new Object[realms.size() + 1];
+			int pos = 0;
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			fields[pos++] = lock;
+			List<Integer> results = m_sql.dbRead(sql, fields, new SqlReader()
+			{
+				public Object readSqlResultRecord(ResultSet result)
+				{
+					try
+					{
+						return Integer.valueOf(result.getInt(1));
+					}
+					catch (SQLException ignore)
+					{
+						return null;
+					}
+				}
+			});
+			Set<Integer> roleKeys = new HashSet<Integer>(results);
+			if (roleKeys.isEmpty()) return rv;
+
+			// users allowed through the roles everyone holds (.anon, .auth, provided roles)
+			List<String> others = new ArrayList<String>();
+			for (String userId : userIds)
+			{
+				if (!Collections.disjoint(roleKeys, getRealmRoleKeys(getEmptyRoles(userId))))
+				{
+					rv.add(userId);
+				}
+				else if (userId != null)
+				{
+					others.add(userId);
+				}
+			}
+			if (others.isEmpty()) return rv;
+
+			// the rest need an active membership with one of those roles in one of the realms
+			sql = dbAuthzGroupSql.getSelectRealmRoleFunctionUserIdSql(orInClause(others.size(), "USER_ID"), orInClause(realms.size(), "REALM_ID"));
+			fields = new Object[others.size() + (2 * realms.size()) + 1];
+			pos = 0;
+			for (String userId : others)
+			{
+				fields[pos++] = userId;
+			}
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			fields[pos++] = lock;
+			List<String> users = m_sql.dbRead(sql, fields, null);
+			rv.addAll(users);
+
+			return rv;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Set<String> getFunctionsIsAllowed(String userId, Collection<String> locks, Collection<String> realms)
+		{
+			Set<String> rv = new HashSet<String>();
+			if ((locks == null) || locks.isEmpty() || (realms == null) || realms.isEmpty()) return rv;
+
+			Set<Integer> roleKeys = getRealmRoleKeys(getEmptyRoles(userId));
+			String realmInClause = orInClause(realms.size(), "REALM_ID");
+			String sql = dbAuthzGroupSql.getSelectRealmUserFunctionNameSql(orInClause(locks.size(), "SRF.FUNCTION_NAME"), realmInClause, roleKeys.size());
+			Object[] fields = new Object[(2 * realms.size()) + locks.size() + 1 + roleKeys.size()];
+			int pos = 0;
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			for (String lock : locks)
+			{
+				fields[pos++] = lock;
+			}
+			fields[pos++] = userId;
+			for (String realmId : realms)
+			{
+				fields[pos++] = realmId;
+			}
+			for (Integer roleKey : roleKeys)
+			{
+				fields[pos++] = roleKey;
+			}
+
+			List<String> results = m_sql.dbRead(sql, fields, null);
+			rv.addAll(results);
+			return rv;
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -2661,6 +2801,13 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 
 					m_sql.dbWrite(sql, fields);
 				}
+
+				// the user's role changed in these realms
+				if (m_permissionIndex != null)
+				{
+					m_permissionIndex.invalidateKeys(toDelete);
+					m_permissionIndex.invalidateKeys(toInsert.stream().map(rar -> rar.realmId).collect(Collectors.toList()));
+				}
 			}
 		}
 
@@ -2701,6 +2848,9 @@ public abstract class DbAuthzGroupService extends BaseAuthzGroupService implemen
 			if ((realm == null) || (m_provider == null)) return;
 			log.debug("Refreshing authz group: {}", realm);
 
+			// provided members may change
+			if (m_permissionIndex != null) m_permissionIndex.invalidate(realm.getId());
+
 			boolean synchWithContainingRealm = serverConfigurationService().getBoolean("authz.synchWithContainingRealm", true);
 
 			// check to see whether this is of group realm or not
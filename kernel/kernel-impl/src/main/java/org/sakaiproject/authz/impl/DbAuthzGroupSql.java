@@ -133,6 +133,12 @@ public interface DbAuthzGroupSql
 
 	String getSelectRealmRoleUserIdSql(String inClause);
 
+	String getSelectRealmFunctionRoleKeySql(String realmInClause);
+
+	String getSelectRealmRoleFunctionUserIdSql(String userInClause, String realmInClause);
+
+	String getSelectRealmUserFunctionNameSql(String functionInClause, String realmInClause, int roleCount);
+
 	String getSelectRealmRoleGroupUserIdSql(String inClause);
 	
 	String getSelectRealmRoleGroupUserCountSql(String inClause);
@@ -460,6 +460,55 @@ public class DbAuthzGroupSqlDefault implements DbAuthzGroupSql
 		return sqlBuf.toString();
 	}
 
+	public String getSelectRealmFunctionRoleKeySql(String realmInClause)
+	{
+		StringBuilder sqlBuf = new StringBuilder();
+
+		sqlBuf.append("SELECT DISTINCT ROLE_KEY FROM SAKAI_REALM_RL_FN ");
+		sqlBuf.append("WHERE REALM_KEY IN (SELECT REALM_KEY FROM SAKAI_REALM WHERE " + realmInClause + ") ");
+		sqlBuf.append("AND FUNCTION_KEY IN (SELECT FUNCTION_KEY FROM SAKAI_REALM_FUNCTION WHERE FUNCTION_NAME = ?) ");
+
+		return sqlBuf.toString();
+	}
+
+	public String getSelectRealmRoleFunctionUserIdSql(String userInClause, String realmInClause)
+	{
+		StringBuilder sqlBuf = new StringBuilder();
+
+		sqlBuf.append("SELECT DISTINCT USER_ID FROM SAKAI_REALM_RL_GR ");
+		sqlBuf.append("WHERE ACTIVE = '1' AND " + userInClause + " ");
+		sqlBuf.append("AND REALM_KEY IN (SELECT REALM_KEY FROM SAKAI_REALM WHERE " + realmInClause + ") ");
+		sqlBuf.append("AND ROLE_KEY IN (SELECT ROLE_KEY FROM SAKAI_REALM_RL_FN ");
+		sqlBuf.append("WHERE REALM_KEY IN (SELECT REALM_KEY FROM SAKAI_REALM WHERE " + realmInClause + ") ");
+		sqlBuf.append("AND FUNCTION_KEY IN (SELECT FUNCTION_KEY FROM SAKAI_REALM_FUNCTION WHERE FUNCTION_NAME = ?)) ");
+
+		return sqlBuf.toString();
+	}
+
+	public String getSelectRealmUserFunctionNameSql(String functionInClause, String realmInClause, int roleCount)
+	{
+		StringBuilder sqlBuf = new StringBuilder();
+
+		sqlBuf.append("SELECT DISTINCT SRF.FUNCTION_NAME FROM SAKAI_REALM_RL_FN SRRF ");
+		sqlBuf.append("INNER JOIN SAKAI_REALM_FUNCTION SRF ON SRRF.FUNCTION_KEY = SRF.FUNCTION_KEY ");
+		sqlBuf.append("WHERE SRRF.REALM_KEY IN (SELECT REALM_KEY FROM SAKAI_REALM WHERE " + realmInClause + ") ");
+		sqlBuf.append("AND " + functionInClause + " ");
+		sqlBuf.append("AND (SRRF.ROLE_KEY IN (SELECT ROLE_KEY FROM SAKAI_REALM_RL_GR WHERE ACTIVE = '1' AND USER_ID = ? ");
+		sqlBuf.append("AND REALM_KEY IN (SELECT REALM_KEY FROM SAKAI_REALM WHERE " + realmInClause + "))");
+		if (roleCount > 0)
+		{
+			sqlBuf.append(" OR SRRF.ROLE_KEY IN (?");
+			for (int i = 1; i < roleCount; i++)
+			{
+				sqlBuf.append(", ?");
+			}
+			sqlBuf.append(")");
+		}
+		sqlBuf.append(")");
+
+		return sqlBuf.toString();
+	}
+
 	public String getSelectRealmRoleGroupUserIdSql(String inClause)
 	{
 		StringBuilder sqlBuf = new StringBuilder();
@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.sakaiproject.authz.api.Member;
+import org.sakaiproject.authz.api.Role;
+
+/**
+ * An in memory index of the permissions of realms that have been read, so that isAllowed can be answered without
+ * going to the database. Each role in a realm is compiled to a bitset of function ids and each active member is
+ * mapped to their role. A realm must be removed from the index whenever its roles, functions or members change,
+ * and is dropped anyway once it is older than the time to live, so a change made by another server is not seen for long.
+ * When full, the realm used least recently is dropped.
+ */
+public class RealmPermissionIndex
+{
+	/** Function name to bit, assigned once and never reused. */
+	private final Map<String, Integer> functionIds = new ConcurrentHashMap<>();
+	private final AtomicInteger nextFunctionId = new AtomicInteger();
+
+	/** The compiled realms, by realm id. */
+	private final Map<String, CompiledRealm> realms = new ConcurrentHashMap<>();
+
+	/** The realm ids, by the REALM_KEY used in the grant tables. */
+	private final Map<Integer, String> realmIds = new ConcurrentHashMap<>();
+
+	/** The most realms to hold. */
+	private final int maxRealms;
+
+	/** How long a realm is held, in ms. */
+	private final long ttl;
+
+	/** The time in ms, replaced in tests. */
+	private final LongSupplier clock;
+
+	/** Counts uses, to find the realm used least recently. */
+	private final AtomicLong uses = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param functions
+	 *        the known function names, to give them the low bits.
+	 * @param maxRealms
+	 *        the most realms to hold, beyond which the least recently used are dropped.
+	 * @param ttl
+	 *        how long to hold a realm, in ms.
+	 */
+	public RealmPermissionIndex(Collection<String> functions, int maxRealms, long ttl)
+	{
+		this(functions, maxRealms, ttl, System::currentTimeMillis);
+	}
+
+	RealmPermissionIndex(Collection<String> functions, int maxRealms, long ttl, LongSupplier clock)
+	{
+		this.maxRealms = maxRealms;
+		this.ttl = ttl;
+		this.clock = clock;
+		for (String function : functions)
+		{
+			functionId(function);
+		}
+	}
+
+	/**
+	 * Compile and add (or replace) a realm.
+	 *
+	 * @param realmId
+	 *        The realm id.
+	 * @param realmKey
+	 *        The realm's REALM_KEY, or null if not known.
+	 * @param roles
+	 *        The realm's roles, by role id.
+	 * @param userGrants
+	 *        The realm's members, by user id.
+	 */
+	public void index(String realmId, Integer realmKey, Map<String, ? extends Role> roles, Map<String, Member> userGrants)
+	{
+		Map<String, BitSet> roleFunctions = new HashMap<>();
+		for (Role role : roles.values())
+		{
+			BitSet functions = new BitSet();
+			for (Object function : role.getAllowedFunctions())
+			{
+				functions.set(functionId((String) function));
+			}
+			roleFunctions.put(role.getId(), functions);
+		}
+
+		Map<String, String> userRoles = new HashMap<>();
+		for (Map.Entry<String, Member> grant : userGrants.entrySet())
+		{
+			Member member = grant.getValue();
+			if (member.isActive() && member.getRole() != null)
+			{
+				userRoles.put(grant.getKey(), member.getRole().getId());
+			}
+		}
+
+		if (realms.size() >= maxRealms && !realms.containsKey(realmId))
+		{
+			evictLeastRecentlyUsed();
+		}
+		realms.put(realmId, new CompiledRealm(realmKey, roleFunctions, userRoles, clock.getAsLong() + ttl, uses.incrementAndGet()));
+		if (realmKey != null) realmIds.put(realmKey, realmId);
+	}
+
+	/**
+	 * Remove a realm, as it has changed.
+	 *
+	 * @param realmId
+	 *        The realm id.
+	 */
+	public void invalidate(String realmId)
+	{
+		CompiledRealm realm = realms.remove(realmId);
+		if (realm != null && realm.realmKey != null) realmIds.remove(realm.realmKey, realmId);
+	}
+
+	/**
+	 * Remove the realms with these keys, as grants have been written to them directly.
+	 *
+	 * @param realmKeys
+	 *        The REALM_KEYs.
+	 */
+	public void invalidateKeys(Collection<Integer> realmKeys)
+	{
+		for (Integer realmKey : realmKeys)
+		{
+			String realmId = realmIds.get(realmKey);
+			if (realmId != null) invalidate(realmId);
+		}
+	}
+
+	/**
+	 * Remove all the realms.
+	 */
+	public void clear()
+	{
+		realms.clear();
+		realmIds.clear();
+	}
+
+	/**
+	 * Answer isAllowed from the index, giving the same answer as the SQL count of SAKAI_REALM_RL_FN: the lock is allowed if,
+	 * in any of the realms, any of the user's empty roles (.anon, .auth, provided roles) or any role the user actively
+	 * holds in one of the realms has the function.
+	 *
+	 * @param userId
+	 *        The user id.
+	 * @param emptyRoles
+	 *        The roles the user has in every realm.
+	 * @param lock
+	 *        The function.
+	 * @param realmIds
+	 *        The realms to check.
+	 * @return TRUE or FALSE, or null if any of the realms is not in the index and the database must be asked.
+	 */
+	public Boolean isAllowed(String userId, Set<String> emptyRoles, String lock, Collection<String> realmIds)
+	{
+		CompiledRealm[] compiled = new CompiledRealm[realmIds.size()];
+		long now = clock.getAsLong();
+		int i = 0;
+		for (String realmId : realmIds)
+		{
+			CompiledRealm realm = realms.get(realmId);
+			if (realm != null && realm.expires <= now)
+			{
+				invalidate(realmId);
+				realm = null;
+			}
+			if (realm == null)
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+			compiled[i++] = realm;
+		}
+		hits.incrementAndGet();
+		long use = uses.incrementAndGet();
+		for (CompiledRealm realm : compiled)
+		{
+			realm.lastUse = use;
+		}
+
+		Integer functionId = functionIds.get(lock);
+		if (functionId == null) return Boolean.FALSE;
+
+		// as with the SQL, a role granted in one of the realms counts in all of them
+		Set<String> roles = new HashSet<>(emptyRoles);
+		if (userId != null)
+		{
+			for (CompiledRealm realm : compiled)
+			{
+				String role = realm.userRoles.get(userId);
+				if (role != null) roles.add(role);
+			}
+		}
+
+		for (CompiledRealm realm : compiled)
+		{
+			for (String role : roles)
+			{
+				if (realm.allows(role, functionId)) return Boolean.TRUE;
+			}
+		}
+		return Boolean.FALSE;
+	}
+
+	public int size()
+	{
+		return realms.size();
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * Drop the realm used least recently. Only done when a realm is read while the index is full, which costs far
+	 * more than the walk.
+	 */
+	private void evictLeastRecentlyUsed()
+	{
+		String oldest = null;
+		long oldestUse = Long.MAX_VALUE;
+		for (Map.Entry<String, CompiledRealm> entry : realms.entrySet())
+		{
+			if (entry.getValue().lastUse < oldestUse)
+			{
+				oldest = entry.getKey();
+				oldestUse = entry.getValue().lastUse;
+			}
+		}
+		if (oldest != null) invalidate(oldest);
+	}
+
+	private int functionId(String function)
+	{
+		return functionIds.computeIfAbsent(function, f -> nextFunctionId.getAndIncrement());
+	}
+
+	/**
+	 * The roles and members of one realm.
+	 */
+	private static class CompiledRealm
+	{
+		private final Integer realmKey;
+		private final Map<String, BitSet> roleFunctions;
+		private final Map<String, String> userRoles;
+		private final long expires;
+		private volatile long lastUse;
+
+		CompiledRealm(Integer realmKey, Map<String, BitSet> roleFunctions, Map<String, String> userRoles, long expires, long lastUse)
+		{
+			this.realmKey = realmKey;
+			this.roleFunctions = roleFunctions;
+			this.userRoles = userRoles;
+			this.expires = expires;
+			this.lastUse = lastUse;
+		}
+
+		boolean allows(String role, int functionId)
+		{
+			BitSet functions = roleFunctions.get(role);
+			return functions != null && functions.get(functionId);
+		}
+	}
+}
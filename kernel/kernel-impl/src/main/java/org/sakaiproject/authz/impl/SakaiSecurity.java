@@ -261,6 +261,51 @@ public abstract class SakaiSecurity implements SecurityService, Observer
         }
     }
 
+    /**
+     * Get a set of permission checks from the cache
+     * @param keys the cache keys (generated using makeCacheKey)
+     * @return the cached values by key, missing any that are not in the cache
+     */
+    Map<String, Boolean> getAllFromCache(Set<String> keys) {
+        Map<String, Boolean> result = new HashMap<>();
+        if (m_callCache != null && !keys.isEmpty()) {
+            Set<String> contentKeys = keys.stream().filter(key -> key.contains("@/content")).collect(Collectors.toSet());
+            Set<String> callKeys = new HashSet<>(keys);
+            callKeys.removeAll(contentKeys);
+            if (!contentKeys.isEmpty()) {
+                result.putAll(m_contentCache.getAll(contentKeys));
+            }
+            if (!callKeys.isEmpty()) {
+                result.putAll(m_callCache.getAll(callKeys));
+            }
+        }
+        if (cacheDebugDetailed) {
+            log.info("SScache:getAll:keys="+keys.size()+":hits="+result.size());
+        }
+        return result;
+    }
+
+    /**
+     * Add a set of permission checks to the cache
+     * @param payloads true or false by cache key (generated using makeCacheKey)
+     */
+    void addAllToCache(Map<String, Boolean> payloads) {
+        if (m_callCache != null && !payloads.isEmpty()) {
+            Map<String, Boolean> content = new HashMap<>();
+            Map<String, Boolean> calls = new HashMap<>();
+            for (Map.Entry<String, Boolean> payload : payloads.entrySet()) {
+                (payload.getKey().contains("@/content") ? content : calls).put(payload.getKey(), payload.getValue());
+            }
+            if (!content.isEmpty()) {
+                m_contentCache.putAll(content);
+            }
+            if (!calls.isEmpty()) {
+                m_callCache.putAll(calls);
+            }
+            if (cacheDebugDetailed) logCacheState("addAllToCache("+payloads.size()+")");
+        }
+    }
+
     /* KNL-1230: expiration happens based on the following plan:
     if (user.template, site.helper, etc. change) then clear entire security cache
     else if the perms in a site changes we loop through all possible site users and the changed permissions and remove all those entries from the cache (including the entry for the anon user - e.g. unlock@@...)
@@ -525,13 +570,28 @@ public abstract class SakaiSecurity implements SecurityService, Observer
         if (function == null || reference == null) {
             return null;
         }
+        Collection<String> azgs = null;
+        if (!reference.startsWith("/site") && !reference.startsWith("/content")) {
+            Reference ref = entityManager().newReference(reference);
+            azgs = ref.getAuthzGroups(userId);
+        }
+        return makeCacheKey(userId, role, function, reference, azgs);
+    }
+
+    /**
+     * Make a cache key for security caching when the reference's authz groups are already known
+     * @param userId the internal sakai user ID (can be null)
+     * @param function the permission
+     * @param reference the realm reference
+     * @param azgs the authz groups of the reference for this user (only needed if the reference is not a site or content reference)
+     * @return the key
+     */
+    String makeCacheKey(String userId, String role, String function, String reference, Collection<String> azgs) {
 	if (role == null)
 	    role = "";
         // SPECIAL conversion to reduce duplicate caching data
-        if (!reference.startsWith("/site") && !reference.startsWith("/content")) {
+        if (!reference.startsWith("/site") && !reference.startsWith("/content") && azgs != null) {
             // try to convert this from a special reference down to the authzgroup ref
-            Reference ref = entityManager().newReference(reference);
-            Collection<String> azgs = ref.getAuthzGroups(userId);
             for (String azgRef : azgs) {
                 if (azgRef.startsWith("/site")) {
                     if (cacheDebug) log.warn("SScache:converted ref "+reference+" to "+azgRef);
@@ -736,6 +796,169 @@ public abstract class SakaiSecurity implements SecurityService, Observer
 		return checkAuthzGroups(userId, function, entityRef, azgs);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlock(Collection<String> userIds, String function, String entityRef)
+	{
+		Map<String, Boolean> rv = new HashMap<>();
+		if (userIds == null || function == null || entityRef == null)
+		{
+			log.warn("unlock(): null: " + userIds + " " + function + " " + entityRef);
+			return rv;
+		}
+
+		// role swap and delegated access change the answer for the session's user, so those go one at a time
+		String currentUserId = sessionManager().getCurrentSessionUserId();
+		boolean swapped = getUserEffectiveRole() != null;
+
+		Reference ref = entityManager().newReference(entityRef);
+		Map<String, String> keys = new HashMap<>();
+		Map<String, Collection<String>> userAzgs = new HashMap<>();
+		for (String userId : userIds)
+		{
+			if (userId == null || rv.containsKey(userId) || keys.containsKey(userId)) continue;
+
+			if (swapped || userId.equals(currentUserId))
+			{
+				rv.put(userId, unlock(userId, function, entityRef));
+				continue;
+			}
+
+			if (isSuperUser(userId))
+			{
+				rv.put(userId, Boolean.TRUE);
+				continue;
+			}
+
+			if (hasAdvisors())
+			{
+				SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+				if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+				{
+					rv.put(userId, advice == SecurityAdvisor.SecurityAdvice.ALLOWED);
+					continue;
+				}
+			}
+
+			Collection<String> azgs = ref.getAuthzGroups(userId);
+			userAzgs.put(userId, azgs);
+			keys.put(userId, makeCacheKey(userId, null, function, entityRef, azgs));
+		}
+
+		// answer what we can from the cache, then ask once for the rest of the users sharing the same AuthzGroups
+		Map<String, Boolean> cached = getAllFromCache(new HashSet<>(keys.values()));
+		Map<Set<String>, List<String>> misses = new HashMap<>();
+		for (Map.Entry<String, String> key : keys.entrySet())
+		{
+			Boolean value = cached.get(key.getValue());
+			if (value != null)
+			{
+				rv.put(key.getKey(), value);
+			}
+			else
+			{
+				misses.computeIfAbsent(new HashSet<>(userAzgs.get(key.getKey())), k -> new ArrayList<>()).add(key.getKey());
+			}
+		}
+
+		Map<String, Boolean> results = new HashMap<>();
+		for (Map.Entry<Set<String>, List<String>> miss : misses.entrySet())
+		{
+			Set<String> allowed = authzGroupService().filterUsersIsAllowed(miss.getValue(), function, miss.getKey());
+			for (String userId : miss.getValue())
+			{
+				Boolean value = allowed.contains(userId);
+				rv.put(userId, value);
+				results.put(keys.get(userId), value);
+			}
+		}
+		addAllToCache(results);
+
+		return rv;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> unlockFunctions(String userId, Set<String> functions, String entityRef)
+	{
+		Map<String, Boolean> rv = new HashMap<>();
+		if (userId == null || functions == null || entityRef == null)
+		{
+			log.warn("unlockFunctions(): null: " + userId + " " + functions + " " + entityRef);
+			return rv;
+		}
+
+		// role swap and delegated access are worked out per function
+		if (getUserEffectiveRole() != null
+				|| (userId.equals(sessionManager().getCurrentSessionUserId())
+						&& sessionManager().getCurrentSession().getAttribute("delegatedaccess.accessmapflag") != null))
+		{
+			for (String function : functions)
+			{
+				rv.put(function, unlock(userId, function, entityRef));
+			}
+			return rv;
+		}
+
+		boolean isSuper = isSuperUser(userId);
+		Collection<String> azgs = isSuper ? null : entityManager().newReference(entityRef).getAuthzGroups(userId);
+		Map<String, String> keys = new HashMap<>();
+		for (String function : functions)
+		{
+			if (function == null) continue;
+
+			if (isSuper)
+			{
+				rv.put(function, Boolean.TRUE);
+				continue;
+			}
+
+			if (hasAdvisors())
+			{
+				SecurityAdvisor.SecurityAdvice advice = adviseIsAllowed(userId, function, entityRef);
+				if (advice != SecurityAdvisor.SecurityAdvice.PASS)
+				{
+					rv.put(function, advice == SecurityAdvisor.SecurityAdvice.ALLOWED);
+					continue;
+				}
+			}
+
+			keys.put(function, makeCacheKey(userId, null, function, entityRef, azgs));
+		}
+
+		Map<String, Boolean> cached = getAllFromCache(new HashSet<>(keys.values()));
+		List<String> misses = new ArrayList<>();
+		for (Map.Entry<String, String> key : keys.entrySet())
+		{
+			Boolean value = cached.get(key.getValue());
+			if (value != null)
+			{
+				rv.put(key.getKey(), value);
+			}
+			else
+			{
+				misses.add(key.getKey());
+			}
+		}
+
+		if (!misses.isEmpty())
+		{
+			Set<String> allowed = authzGroupService().getFunctionsIsAllowed(userId, misses, azgs);
+			Map<String, Boolean> results = new HashMap<>();
+			for (String function : misses)
+			{
+				Boolean value = allowed.contains(function);
+				rv.put(function, value);
+				results.put(keys.get(function), value);
+			}
+			addAllToCache(results);
+		}
+
+		return rv;
+	}
+
 	/**
 	 * Check the appropriate AuthzGroups for the answer - this may be cached
 	 * 
@@ -11070,22 +11070,12 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
             long size = 0;
             String context = getContext();
             if (context != null) {
-                Map<String, Long> sizes = getSizeForContext(context);
                 if (m_id.startsWith(COLLECTION_DROPBOX)) {
-                    size = sizes.keySet().stream()
-                            .filter(k -> k.startsWith(COLLECTION_DROPBOX))
-                            .mapToLong(k -> Long.valueOf(sizes.get(k)))
-                            .sum();
+                    size = getContextAreaSize(context, COLLECTION_DROPBOX);
                 } else if (m_id.startsWith(COLLECTION_USER)) {
-                    size = sizes.keySet().stream()
-                            .filter(k -> k.startsWith(COLLECTION_USER))
-                            .mapToLong(k -> Long.valueOf(sizes.get(k)))
-                            .sum();
+                    size = getContextAreaSize(context, COLLECTION_USER);
                 } else {
-                    size = sizes.keySet().stream()
-                            .filter(k -> k.startsWith(COLLECTION_SITE))
-                            .mapToLong(k -> Long.valueOf(sizes.get(k)))
-                            .sum();
+                    size = getContextAreaSize(context, COLLECTION_SITE);
                 }
 
                 if (size > 0) size /= 1024L;
@@ -13193,6 +13183,24 @@ SiteContentAdvisorProvider, SiteContentAdvisorTypeRegistry, HardDeleteAware
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * Access the total bytes of the resources of a context within one of the areas with quotas.
+	 *
+	 * @param context
+	 *        The context.
+	 * @param area
+	 *        The area: COLLECTION_SITE, COLLECTION_USER or COLLECTION_DROPBOX.
+	 * @return The total bytes.
+	 */
+	protected long getContextAreaSize(String context, String area)
+	{
+		Map<String, Long> sizes = getSizeForContext(context);
+		return sizes.keySet().stream()
+				.filter(k -> k.startsWith(area))
+				.mapToLong(k -> Long.valueOf(sizes.get(k)))
+				.sum();
+	}
+
 	public Map<String, String> transferCopyEntities(String fromContext, String toContext, List<String> ids, List<String> options, boolean cleanup) {
 
 		Map traversalMap = new HashMap();
@@ -142,6 +142,42 @@ public interface ContentServiceSql
 	 */
 	String getContextSizesSql();
 
+	/**
+	 * returns the sql statement which retrieves the total number of bytes and the number of resources for each collection within a site.
+	 */
+	String getContextSizesAndCountsSql();
+
+	/**
+	 * returns the sql statement which retrieves the context and size of a resource.
+	 */
+	String getResourceContextSizeSql();
+
+	/**
+	 * returns the sql statement which retrieves the running totals (area, bytes, files) of a context from the CONTENT_CONTEXT_USAGE table.
+	 */
+	String getContextUsageSql();
+
+	/**
+	 * returns the sql statement which retrieves the running totals of a context like getContextUsageSql, locking them until the transaction ends.
+	 */
+	String getContextUsageForUpdateSql();
+
+	/**
+	 * returns the sql statement which retrieves all the contexts with running totals.
+	 */
+	String getContextUsageContextsSql();
+
+	/**
+	 * returns the sql statement which sets the running totals of an area of a context, inserting them if not yet kept.
+	 * The fields are the context, area, bytes and files, then the bytes and files again.
+	 */
+	String getUpsertContextUsageSql();
+
+	/**
+	 * returns the sql statement which adds to the running totals of an area of a context.
+	 */
+	String getAdjustContextUsageSql();
+
 	/**
 	 * returns the sql statement which retrieves the total number of bytes for this collection
 	 */
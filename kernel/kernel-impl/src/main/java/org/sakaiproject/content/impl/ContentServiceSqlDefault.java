@@ -182,6 +182,41 @@ public class ContentServiceSqlDefault implements ContentServiceSql {
         return "select IN_COLLECTION, SUM(FILE_SIZE) from CONTENT_RESOURCE where CONTEXT = ? GROUP BY IN_COLLECTION";
     }
 
+    @Override
+    public String getContextSizesAndCountsSql() {
+        return "select IN_COLLECTION, SUM(FILE_SIZE), COUNT(1) from CONTENT_RESOURCE where CONTEXT = ? GROUP BY IN_COLLECTION";
+    }
+
+    @Override
+    public String getResourceContextSizeSql() {
+        return "select CONTEXT, FILE_SIZE from CONTENT_RESOURCE where RESOURCE_ID = ?";
+    }
+
+    @Override
+    public String getContextUsageSql() {
+        return "select AREA, BYTES, FILES from CONTENT_CONTEXT_USAGE where CONTEXT = ?";
+    }
+
+    @Override
+    public String getContextUsageForUpdateSql() {
+        return getContextUsageSql() + " for update";
+    }
+
+    @Override
+    public String getContextUsageContextsSql() {
+        return "select distinct CONTEXT from CONTENT_CONTEXT_USAGE";
+    }
+
+    @Override
+    public String getUpsertContextUsageSql() {
+        return "insert into CONTENT_CONTEXT_USAGE (CONTEXT, AREA, BYTES, FILES) values (?, ?, ?, ?) on duplicate key update BYTES = ?, FILES = ?";
+    }
+
+    @Override
+    public String getAdjustContextUsageSql() {
+        return "update CONTENT_CONTEXT_USAGE set BYTES = BYTES + ?, FILES = FILES + ? where CONTEXT = ? and AREA = ?";
+    }
+
     @Override
     public String getCollectionSizeSql() {
         return "select SUM(FILE_SIZE) from CONTENT_RESOURCE where IN_COLLECTION LIKE = ?";
@@ -37,6 +37,16 @@ public class ContentServiceSqlHSql extends ContentServiceSqlDefault
 		//return "merge into CONTENT_DROPBOX_CHANGES using dual on (dual.dummy is not null and CONTENT_DROPBOX_CHANGES.DROPBOX_ID = ?) when not matched then insert (DROPBOX_ID, IN_COLLECTION, LAST_UPDATE) values (?, ?, ?) when matched then update set CONTENT_DROPBOX_CHANGES.IN_COLLECTION = ?, LAST_UPDATE = ?";
 	}
 
+	/**
+	 * returns the sql statement which sets the running totals of an area of a context, inserting them if not yet kept.
+	 */
+	public String getUpsertContextUsageSql()
+	{
+		return "merge into CONTENT_CONTEXT_USAGE U using (values(cast(? as varchar(99)), cast(? as varchar(32)), cast(? as bigint), cast(? as integer))) V(CONTEXT, AREA, BYTES, FILES) "
+				+ "on (U.CONTEXT = V.CONTEXT and U.AREA = V.AREA) when matched then update set U.BYTES = ?, U.FILES = ? "
+				+ "when not matched then insert (CONTEXT, AREA, BYTES, FILES) values (V.CONTEXT, V.AREA, V.BYTES, V.FILES)";
+	}
+
 	/**
 	 * returns the sql statement which retrieves the total number of bytes within a site-level collection skiping user folders.
 	 * KNL-1084, SAK-22169
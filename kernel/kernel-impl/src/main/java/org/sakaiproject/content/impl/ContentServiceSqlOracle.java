@@ -35,6 +35,15 @@ public class ContentServiceSqlOracle extends ContentServiceSqlDefault
 		// return "insert into CONTENT_DROPBOX_CHANGES (DROPBOX_ID, IN_COLLECTION, LAST_UPDATE) values (? , ? , ?) on duplicate key update IN_COLLECTION = ?, LAST_UPDATE = ?";
 	}
 
+	/**
+	 * returns the sql statement which sets the running totals of an area of a context, inserting them if not yet kept.
+	 */
+	public String getUpsertContextUsageSql()
+	{
+		return "merge into CONTENT_CONTEXT_USAGE U using (select ? CONTEXT, ? AREA, ? BYTES, ? FILES from dual) V on (U.CONTEXT = V.CONTEXT and U.AREA = V.AREA) "
+				+ "when matched then update set U.BYTES = ?, U.FILES = ? when not matched then insert (CONTEXT, AREA, BYTES, FILES) values (V.CONTEXT, V.AREA, V.BYTES, V.FILES)";
+	}
+
 	/**
 	 * returns the sql statement which retrieves the number of content resources from the content_resource table.
 	 */
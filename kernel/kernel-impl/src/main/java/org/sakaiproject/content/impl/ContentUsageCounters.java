@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.db.api.SqlReader;
+import org.sakaiproject.db.api.SqlService;
+
+/**
+ * Running totals of the bytes and number of resources in each quota area (site, user and dropbox) of a context, kept in
+ * CONTENT_CONTEXT_USAGE so that quota checks do not have to sum CONTENT_RESOURCE. Resource writes adjust the totals in
+ * the transaction that writes the resource; a context's totals are first computed from CONTENT_RESOURCE when they are needed, and are recomputed by
+ * {@link #reconcileAll()} to correct any drift. Recomputing locks the context's totals first, so adjustments made
+ * meanwhile wait for it rather than being overwritten.
+ */
+@Slf4j
+public class ContentUsageCounters
+{
+	/** The areas with quotas. */
+	static final String[] AREAS = {ContentHostingService.COLLECTION_SITE, ContentHostingService.COLLECTION_USER, ContentHostingService.COLLECTION_DROPBOX};
+
+	private final SqlService sqlService;
+	private final ContentServiceSql contentServiceSql;
+
+	public ContentUsageCounters(SqlService sqlService, ContentServiceSql contentServiceSql)
+	{
+		this.sqlService = sqlService;
+		this.contentServiceSql = contentServiceSql;
+	}
+
+	/**
+	 * Find the quota area of an entity.
+	 *
+	 * @param id
+	 *        The resource or collection id.
+	 * @return The area, or null if the entity is not in an area with a quota.
+	 */
+	static String area(String id)
+	{
+		if (id == null) return null;
+		for (String area : AREAS)
+		{
+			if (id.startsWith(area)) return area;
+		}
+		return null;
+	}
+
+	/**
+	 * Read the context and size of a resource, as stored.
+	 *
+	 * @param resourceId
+	 *        The resource id.
+	 * @return The context and the size in bytes, or null if the resource is not stored.
+	 */
+	public Object[] readResource(String resourceId)
+	{
+		List<Object[]> rows = sqlService.dbRead(contentServiceSql.getResourceContextSizeSql(), new Object[] {resourceId}, result -> {
+			try
+			{
+				return new Object[] {result.getString(1), result.getLong(2)};
+			}
+			catch (SQLException e)
+			{
+				log.warn("readResource: {}", e.toString());
+				return null;
+			}
+		});
+		return rows.isEmpty() ? null : rows.get(0);
+	}
+
+	/**
+	 * Add to the totals of the area that a resource is in.
+	 *
+	 * @param context
+	 *        The resource's context.
+	 * @param resourceId
+	 *        The resource id.
+	 * @param bytes
+	 *        The change in bytes.
+	 * @param files
+	 *        The change in the number of resources.
+	 * @return false if the totals could not be written.
+	 */
+	public boolean adjust(String context, String resourceId, long bytes, int files)
+	{
+		String area = area(resourceId);
+		if (context == null || area == null || (bytes == 0 && files == 0)) return true;
+
+		// contexts without totals yet are left alone, they are computed in full when first needed
+		return sqlService.dbWrite(contentServiceSql.getAdjustContextUsageSql(), new Object[] {bytes, files, context, area});
+	}
+
+	/**
+	 * Record the replacement of one stored version of a resource with another. Both are read back from the database, so
+	 * a resource write that failed without saying so changes nothing.
+	 *
+	 * @param before
+	 *        The context and size stored before (from {@link #readResource(String)}), or null if the resource was not stored.
+	 * @param after
+	 *        The context and size stored now, or null if the resource is no longer stored.
+	 * @param resourceId
+	 *        The resource id.
+	 * @return false if the totals could not be written.
+	 */
+	public boolean replace(Object[] before, Object[] after, String resourceId)
+	{
+		if (before == null)
+		{
+			return after == null || adjust((String) after[0], resourceId, (Long) after[1], 1);
+		}
+		if (after == null)
+		{
+			return adjust((String) before[0], resourceId, -((Long) before[1]), -1);
+		}
+		if (after[0] != null && after[0].equals(before[0]))
+		{
+			return adjust((String) after[0], resourceId, (Long) after[1] - (Long) before[1], 0);
+		}
+		return adjust((String) before[0], resourceId, -((Long) before[1]), -1) && adjust((String) after[0], resourceId, (Long) after[1], 1);
+	}
+
+	/**
+	 * Access the total bytes of the resources in an area of a context, computing the context's totals if they are not yet kept.
+	 *
+	 * @param context
+	 *        The context.
+	 * @param area
+	 *        The area.
+	 * @return The total bytes.
+	 */
+	public long getBytes(String context, String area)
+	{
+		Map<String, long[]> usage = read(context);
+		if (usage.isEmpty())
+		{
+			usage = reconcile(context);
+		}
+		long[] totals = usage.get(area);
+		return totals == null ? 0L : totals[0];
+	}
+
+	/**
+	 * Recompute the totals of a context from CONTENT_RESOURCE, in a transaction that locks the totals kept so far.
+	 *
+	 * @param context
+	 *        The context.
+	 * @return The totals (bytes, files) by area.
+	 */
+	public Map<String, long[]> reconcile(String context)
+	{
+		Map<String, long[]> usage = new HashMap<>();
+		try
+		{
+			sqlService.transact(() -> {
+				usage.clear();
+				sqlService.dbRead(contentServiceSql.getContextUsageForUpdateSql(), new Object[] {context}, null);
+				usage.putAll(sum(context));
+				for (Map.Entry<String, long[]> entry : usage.entrySet())
+				{
+					long[] totals = entry.getValue();
+					if (!sqlService.dbWrite(contentServiceSql.getUpsertContextUsageSql(), new Object[] {context, entry.getKey(), totals[0], totals[1], totals[0], totals[1]}))
+					{
+						throw new IllegalStateException("could not write the totals of " + context);
+					}
+				}
+			}, "contentUsageReconcile:" + context);
+		}
+		catch (RuntimeException e)
+		{
+			log.warn("reconcile: {}", e.toString());
+		}
+		return usage;
+	}
+
+	private Map<String, long[]> sum(String context)
+	{
+		Map<String, long[]> usage = new HashMap<>();
+		for (String area : AREAS)
+		{
+			usage.put(area, new long[2]);
+		}
+
+		sqlService.dbRead(contentServiceSql.getContextSizesAndCountsSql(), new Object[] {context}, result -> {
+			try
+			{
+				String area = area(result.getString(1));
+				if (area != null)
+				{
+					long[] totals = usage.get(area);
+					totals[0] += result.getLong(2);
+					totals[1] += result.getLong(3);
+				}
+			}
+			catch (SQLException e)
+			{
+				log.warn("sum: {}", e.toString());
+			}
+			return null;
+		});
+		return usage;
+	}
+
+	/**
+	 * Recompute the totals of every context that has them.
+	 *
+	 * @return The number of contexts whose totals had drifted.
+	 */
+	public int reconcileAll()
+	{
+		List<String> contexts = sqlService.dbRead(contentServiceSql.getContextUsageContextsSql());
+		int drifted = 0;
+		for (String context : contexts)
+		{
+			Map<String, long[]> before = read(context);
+			Map<String, long[]> after = reconcile(context);
+			for (Map.Entry<String, long[]> entry : after.entrySet())
+			{
+				long[] was = before.get(entry.getKey());
+				if (was == null || was[0] != entry.getValue()[0] || was[1] != entry.getValue()[1])
+				{
+					log.debug("reconcileAll: context {} area {} was {} bytes {} files, now {} bytes {} files", context, entry.getKey(),
+							was == null ? null : was[0], was == null ? null : was[1], entry.getValue()[0], entry.getValue()[1]);
+					drifted++;
+					break;
+				}
+			}
+		}
+		log.info("reconcileAll: checked {} contexts, corrected {}", contexts.size(), drifted);
+		return drifted;
+	}
+
+	private Map<String, long[]> read(String context)
+	{
+		Map<String, long[]> usage = new HashMap<>();
+		sqlService.dbRead(contentServiceSql.getContextUsageSql(), new Object[] {context}, result -> {
+			try
+			{
+				usage.put(result.getString(1), new long[] {result.getLong(2), result.getLong(3)});
+			}
+			catch (SQLException e)
+			{
+				log.warn("read: {}", e.toString());
+			}
+			return null;
+		});
+		return usage;
+	}
+}
@@ -39,6 +39,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
@@ -55,6 +58,7 @@ import org.slf4j.MarkerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import org.sakaiproject.cluster.api.ClusterService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.content.api.ContentCollection;
 import org.sakaiproject.content.api.ContentCollectionEdit;
@@ -170,6 +174,18 @@ public class DbContentService extends BaseContentService
     private static final String PROP_SINGLE_INSTANCE = "content.singleInstanceStore";
     private static final boolean PROP_SINGLE_INSTANCE_DEFAULT = true;
 
+    /** Property name used in sakai.properties to keep running totals of each context's resources for quota checks */
+    private static final String PROP_USAGE_COUNTERS = "content.quota.counters";
+
+    /** Property name used in sakai.properties for the minutes between corrections of the running totals (0 for never) */
+    private static final String PROP_USAGE_RECONCILE_MINUTES = "content.quota.counters.reconcileMinutes";
+
+    /** The running totals of each context's resources, or null if quota checks sum CONTENT_RESOURCE. */
+    protected ContentUsageCounters usageCounters = null;
+
+    /** Corrects the running totals in the background. */
+    private ScheduledExecutorService usageReconciler = null;
+
     /*************************************************************************************************************************************************
      * Constructors, Dependencies and their setter methods
      ************************************************************************************************************************************************/
@@ -304,6 +320,26 @@ public class DbContentService extends BaseContentService
                 throw new IllegalStateException("There is no FileSystemHandler set for the ContentService!");
             }
 
+            if (serverConfigurationService.getBoolean(PROP_USAGE_COUNTERS, false))
+            {
+                if (m_autoDdl)
+                {
+                    sqlService.ddl(this.getClass().getClassLoader(), "sakai_content_usage");
+                }
+                usageCounters = new ContentUsageCounters(sqlService, contentServiceSql);
+
+                int minutes = serverConfigurationService.getInt(PROP_USAGE_RECONCILE_MINUTES, 60);
+                if (minutes > 0)
+                {
+                    usageReconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "content-usage-reconciler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    usageReconciler.scheduleWithFixedDelay(this::reconcileUsage, minutes, minutes, TimeUnit.MINUTES);
+                }
+            }
+
             log.info("init(): tables: {} {} {} {} locks-in-db: {} bodyPath: {} storage: {}",
                 collectionTableName, resourceTableName, resourceBodyTableName, groupTableName, m_locksInDb, bodyPath, m_storage);
 
@@ -316,6 +352,88 @@ public class DbContentService extends BaseContentService
         //testResourceByTypePaging();
     }
 
+    /**
+     * Returns to uninitialized state.
+     */
+    public void destroy()
+    {
+        if (usageReconciler != null)
+        {
+            usageReconciler.shutdownNow();
+            usageReconciler = null;
+        }
+        super.destroy();
+    }
+
+    /**
+     * Correct any drift in the running totals of the contexts' resources. Every server schedules it, only the first
+     * one in the cluster runs it.
+     */
+    protected void reconcileUsage()
+    {
+        try
+        {
+            ClusterService clusterService = (ClusterService) ComponentManager.get(ClusterService.class);
+            List<String> servers = clusterService == null ? null : clusterService.getServers();
+            if (servers != null && !servers.isEmpty() && !servers.get(0).equals(serverConfigurationService.getServerIdInstance()))
+            {
+                return;
+            }
+            usageCounters.reconcileAll();
+        }
+        catch (Exception e)
+        {
+            log.warn("reconcileUsage: {}", e.toString());
+        }
+    }
+
+    /**
+     * Write a resource row together with the running totals it changes, in one transaction so that neither is kept
+     * without the other. With locks in the database the row is committed on the lock's own connection, so the totals
+     * are written just after it and any drift is left to the reconciler.
+     */
+    protected void writeWithUsage(Runnable write, String tag)
+    {
+        if (usageCounters == null || m_locksInDb)
+        {
+            write.run();
+        }
+        else
+        {
+            sqlService.transact(write, tag);
+        }
+    }
+
+    /**
+     * Fail a write of writeWithUsage whose totals could not be adjusted, so that its transaction rolls the resource row
+     * back with them. With locks in the database the row is already committed, and the drift is left to the reconciler.
+     */
+    protected void usageWritten(boolean ok, String id)
+    {
+        if (ok) return;
+        if (m_locksInDb)
+        {
+            log.warn("usageWritten: could not adjust the usage totals for {}", id);
+        }
+        else
+        {
+            throw new IllegalStateException("could not adjust the usage totals for " + id);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected long getContextAreaSize(String context, String area)
+    {
+        if (usageCounters == null)
+        {
+            return super.getContextAreaSize(context, area);
+        }
+        return usageCounters.getBytes(context, area);
+    }
+
     /**
      * Runs tests of the getResourcesOfType() method. Steps are:<br/>
      * 1) Add 26 site-level resource collections ("/group/site_A/" through "/group/site_Z/")
@@ -1310,7 +1428,15 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(id));
                     }
-                    return (ContentResourceEdit) m_resourceStore.putResource(id, null);
+                    ContentResourceEdit[] edit = new ContentResourceEdit[1];
+                    writeWithUsage(() -> {
+                        edit[0] = (ContentResourceEdit) m_resourceStore.putResource(id, null);
+                        if (edit[0] != null && usageCounters != null)
+                        {
+                            usageWritten(usageCounters.adjust(((BasicGroupAwareEdit) edit[0]).getContext(), id, edit[0].getContentLength(), 1), id);
+                        }
+                    }, "contentPut:" + id);
+                    return edit[0];
                 }
             }
             finally
@@ -1518,7 +1644,14 @@ public class DbContentService extends BaseContentService
                     {
                         insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
                     }
-                    m_resourceStore.commitResource(edit);
+                    writeWithUsage(() -> {
+                        Object[] stored = usageCounters == null ? null : usageCounters.readResource(edit.getId());
+                        m_resourceStore.commitResource(edit);
+                        if (usageCounters != null)
+                        {
+                            usageWritten(usageCounters.replace(stored, usageCounters.readResource(edit.getId()), edit.getId()), edit.getId());
+                        }
+                    }, "contentCommit:" + edit.getId());
                 }
 
             }
@@ -1875,7 +2008,14 @@ public class DbContentService extends BaseContentService
 				   {
 					   insertIndividualDropboxRecord(getIndividualDropboxId(edit.getId()));
 				   }
-				   m_resourceStore.removeResource(edit);
+				   writeWithUsage(() -> {
+					   Object[] stored = usageCounters == null ? null : usageCounters.readResource(edit.getId());
+					   m_resourceStore.removeResource(edit);
+					   if (stored != null)
+					   {
+						   usageWritten(usageCounters.replace(stored, usageCounters.readResource(edit.getId()), edit.getId()), edit.getId());
+					   }
+				   }, "contentRemove:" + edit.getId());
 
 			   }
 		   }
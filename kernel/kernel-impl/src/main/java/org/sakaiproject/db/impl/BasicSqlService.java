@@ -44,7 +44,12 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.sql.DataSource;
 
@@ -171,6 +176,68 @@ public abstract class BasicSqlService implements SqlService
 		m_deadlockRetries = Integer.parseInt(value);
 	}
 
+	/** Configuration: number of rows fetched per round trip when streaming a query. */
+	protected int m_streamFetchSize = 500;
+
+	/**
+	 * Configuration: number of rows fetched per round trip when streaming a query.
+	 * 
+	 * @param value
+	 *        the fetch size.
+	 */
+	public void setStreamFetchSize(String value)
+	{
+		m_streamFetchSize = Integer.parseInt(value);
+	}
+
+	/** Per statement counters and latency histograms. */
+	protected final SqlStatistics m_statistics = new SqlStatistics();
+
+	/** Configuration: to keep statistics of each statement run or not. */
+	protected boolean m_collectStatistics = true;
+
+	/**
+	 * Configuration: to keep statistics of each statement run or not.
+	 * 
+	 * @param value
+	 *        the setting (true of false) string.
+	 */
+	public void setCollectStatistics(String value)
+	{
+		m_collectStatistics = Boolean.valueOf(value).booleanValue();
+	}
+
+	/**
+	 * Configuration: statements taking at least this many ms are logged as slow, with the caller's stack the first time for each statement; 0 to
+	 * turn this off.
+	 * 
+	 * @param value
+	 *        the threshold in ms.
+	 */
+	public void setSlowQueryMillis(String value)
+	{
+		m_statistics.setSlowQueryMillis(Long.parseLong(value));
+	}
+
+	/**
+	 * Configuration: the most distinct statements to keep statistics for.
+	 * 
+	 * @param value
+	 *        the number of statements.
+	 */
+	public void setMaxStatementStatistics(String value)
+	{
+		m_statistics.setMaxStatements(Integer.parseInt(value));
+	}
+
+	/**
+	 * @return the statement statistics.
+	 */
+	public SqlStatistics getStatistics()
+	{
+		return m_statistics;
+	}
+
 	/** Configuration: to run the ddl on init or not. */
 	protected boolean m_autoDdl = false;
 
@@ -229,7 +296,8 @@ public abstract class BasicSqlService implements SqlService
 			ddl(getClass().getClassLoader(), "sakai_locks");
 		}
 
-		log.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries);
+		log.info("init(): vendor: " + m_vendor + " autoDDL: " + m_autoDdl + " deadlockRetries: " + m_deadlockRetries + " statistics: " + m_collectStatistics
+				+ " slowQueryMillis: " + m_statistics.getSlowQueryMillis());
 	}
 
 	/**
@@ -253,6 +321,7 @@ public abstract class BasicSqlService implements SqlService
 
 		if (defaultDataSource != null)
 		{
+			if (m_collectStatistics) m_statistics.recordBorrow();
 			return defaultDataSource.getConnection();
 		}
 		else
@@ -318,6 +387,8 @@ public abstract class BasicSqlService implements SqlService
 
 			Connection connection = null;
 			boolean wasCommit = true;
+			boolean committed = false;
+			long began = System.nanoTime();
 			try
 			{
 				connection = borrowConnection();
@@ -330,6 +401,7 @@ public abstract class BasicSqlService implements SqlService
 				callback.run();
 
 				connection.commit();
+				committed = true;
 
 				return true;
 			}
@@ -410,12 +482,35 @@ public abstract class BasicSqlService implements SqlService
 					}
 					returnConnection(connection);
 				}
+				recordStatement("transact: " + tag, began, 0, 0, !committed);
 			}
 		}
 
 		return false;
 	}
 
+	/**
+	 * Add a statement run to the statistics.
+	 * 
+	 * @param sql
+	 *        The sql run.
+	 * @param began
+	 *        System.nanoTime() when the call started.
+	 * @param borrowNanos
+	 *        Time spent borrowing a connection for the call.
+	 * @param rows
+	 *        Rows read or written.
+	 * @param failed
+	 *        true if the statement failed.
+	 */
+	protected void recordStatement(String sql, long began, long borrowNanos, int rows, boolean failed)
+	{
+		if (m_collectStatistics)
+		{
+			m_statistics.record(sql, System.nanoTime() - began, borrowNanos, rows, failed);
+		}
+	}
+
 	/**
 	 * Read a single field from the db, from multiple records, returned as List<String>, one per record.
 	 * 
@@ -511,6 +606,9 @@ public abstract class BasicSqlService implements SqlService
 		ResultSet result = null;
 		ResultSetMetaData meta = null;
 		List rv = new Vector();
+		long began = System.nanoTime();
+		long borrowNanos = 0;
+		boolean failed = false;
 
         try {
             if (m_showSql) {
@@ -522,6 +620,7 @@ public abstract class BasicSqlService implements SqlService
                 conn = callerConn;
             } else {
                 conn = borrowConnection();
+                borrowNanos = System.nanoTime() - began;
                 threadLocalManager().set(TRANSACTION_CONNECTION, conn);
             }
             if (m_showSql) {
@@ -551,15 +650,7 @@ public abstract class BasicSqlService implements SqlService
 
                 // without a reader, we read the first String from each record
                 if (reader == null) {
-                    String s;
-                    ResultSetMetaData metadataResult = result.getMetaData();
-                	
-                    if (metadataResult != null && Types.CLOB == metadataResult.getColumnType(1)) {
-                        Clob clobResult = result.getClob(1);
-                        s = clobResult.getSubString(1, (int) clobResult.length());
-                    } else {
-                        s = result.getString(1);
-                    }
+                    String s = readFirstString(result);
                     if (s != null) {
                         rv.add(s);
                     }
@@ -576,8 +667,10 @@ public abstract class BasicSqlService implements SqlService
 
             }
         } catch (SQLException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } catch (UnsupportedEncodingException e) {
+            failed = true;
             log.warn("Sql.dbRead: sql: " + sql + debugFields(fields), e);
         } finally {
             if (m_showSql) {
@@ -616,11 +709,170 @@ public abstract class BasicSqlService implements SqlService
 
         }
 
+		recordStatement(sql, began, borrowNanos, rv.size(), failed);
+
 		if (m_showSql) debug("Sql.dbRead: time: " + connectionTime + " / " + stmtTime + " / " + resultsTime + " #: " + count, sql, fields);
 
 		return rv;
 	}
 
+	/**
+	 * Process a query, filling in with fields, and return the results as a Stream, one per record read. The query runs on its own connection, never the
+	 * thread's transaction connection, since a streaming cursor (MySQL in particular) blocks any other statement on the connection until it is drained.
+	 * The statement is forward only with the vendor's streaming fetch size; closing the stream closes the cursor and returns the connection.
+	 * Statistics are recorded when the stream is closed, so the time includes reading the records. Closing a stream before its end may still read
+	 * through the rest of the cursor with some drivers (MySQL), so limit large reads in the sql rather than on the stream.
+	 * 
+	 * @param sql
+	 *        The sql statement.
+	 * @param fields
+	 *        The array of fields for parameters.
+	 * @param reader
+	 *        The reader object to read each record.
+	 * @return A Stream of things read, one per record, which must be closed.
+	 */
+	public <T> Stream<T> dbStream(String sql, Object[] fields, SqlReader<T> reader)
+	{
+		if (log.isDebugEnabled())
+		{
+			log.debug("dbStream(String " + sql + ", Object[] " + Arrays.toString(fields) + ", SqlReader " + reader + ")");
+		}
+
+		Connection conn = null;
+		PreparedStatement pstmt = null;
+		ResultSet result = null;
+		long start = m_showSql ? System.currentTimeMillis() : 0;
+		long began = System.nanoTime();
+		long borrowNanos = 0;
+
+		try
+		{
+			conn = borrowConnection();
+			borrowNanos = System.nanoTime() - began;
+			pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			pstmt.setFetchSize(sqlServiceSql.getStreamFetchSize(m_streamFetchSize));
+
+			// put in all the fields
+			prepareStatement(pstmt, fields);
+
+			result = pstmt.executeQuery();
+		}
+		catch (SQLException | UnsupportedEncodingException e)
+		{
+			log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			closeStream(conn, pstmt, result, sql, fields);
+			recordStatement(sql, began, borrowNanos, 0, true);
+			return Stream.empty();
+		}
+
+		if (m_showSql) debug("Sql.dbStream: open time: " + (System.currentTimeMillis() - start), sql, fields);
+
+		final Connection streamConn = conn;
+		final PreparedStatement streamStmt = pstmt;
+		final ResultSet streamResult = result;
+		final long streamBorrowNanos = borrowNanos;
+		// records read and whether reading failed, for the statistics
+		final int[] rows = {0};
+		final boolean[] failed = {false};
+		Spliterator<T> records = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+		{
+			private boolean finished = false;
+
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action)
+			{
+				try
+				{
+					while (!finished && streamResult.next())
+					{
+						rows[0]++;
+						T obj = (reader == null) ? (T) readFirstString(streamResult) : reader.readSqlResultRecord(streamResult);
+						if (obj != null)
+						{
+							action.accept(obj);
+							return true;
+						}
+					}
+				}
+				catch (SqlReaderFinishedException e)
+				{
+					// the reader has seen all it needs
+				}
+				catch (SQLException e)
+				{
+					log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+					failed[0] = true;
+				}
+				finished = true;
+				return false;
+			}
+		};
+
+		return StreamSupport.stream(records, false).onClose(() -> {
+			closeStream(streamConn, streamStmt, streamResult, sql, fields);
+			recordStatement(sql, began, streamBorrowNanos, rows[0], failed[0]);
+		});
+	}
+
+	/**
+	 * Read the first field of the current record as a String, as dbRead does without a reader.
+	 */
+	protected String readFirstString(ResultSet result) throws SQLException
+	{
+		ResultSetMetaData metadataResult = result.getMetaData();
+		if (metadataResult != null && Types.CLOB == metadataResult.getColumnType(1))
+		{
+			Clob clobResult = result.getClob(1);
+			return clobResult.getSubString(1, (int) clobResult.length());
+		}
+		return result.getString(1);
+	}
+
+	/**
+	 * Release the cursor, statement and connection behind a stream from dbStream().
+	 */
+	protected void closeStream(Connection conn, PreparedStatement pstmt, ResultSet result, String sql, Object[] fields)
+	{
+		if (null != result)
+		{
+			try
+			{
+				result.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			}
+		}
+		if (null != pstmt)
+		{
+			try
+			{
+				pstmt.close();
+			}
+			catch (SQLException e)
+			{
+				log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+			}
+		}
+		if (null != conn)
+		{
+			// if we commit on read
+			if (m_commitAfterRead)
+			{
+				try
+				{
+					conn.commit();
+				}
+				catch (SQLException e)
+				{
+					log.warn("Sql.dbStream: sql: " + sql + debugFields(fields), e);
+				}
+			}
+			returnConnection(conn);
+		}
+	}
+
 	/**
 	 * Read a single field from the db, from multiple record - concatenating the binary values into value.
 	 * 
@@ -1153,6 +1405,7 @@ public abstract class BasicSqlService implements SqlService
 	{
 		boolean success = false;
 		PreparedStatement pstmt = null;
+		long began = System.nanoTime();
 
 		try
 		{
@@ -1175,6 +1428,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordStatement(sql, began, 0, success ? fieldsList.size() : 0, !success);
 			try
 			{
 				pstmt.close();
@@ -1189,6 +1443,71 @@ public abstract class BasicSqlService implements SqlService
 		return success;
 	}
 
+	/**
+	 * @see org.sakaiproject.db.api.SqlService#dbInsertBatch(Connection, String, List<Object[]>, String)
+	 */
+	public List<Long> dbInsertBatch(Connection callerConnection, String sql, List<Object[]> fieldsList, String autoColumn)
+	{
+		List<Long> rv = null;
+		PreparedStatement pstmt = null;
+		long began = System.nanoTime();
+
+		// for DEBUG
+		long start = 0;
+		if (m_showSql) start = System.currentTimeMillis();
+
+		try
+		{
+			pstmt = sqlServiceSql.prepareAutoColumnBatch(callerConnection, sql, autoColumn);
+			for (Object[] fields : fieldsList)
+			{
+				prepareStatement(pstmt, fields);
+				pstmt.addBatch();
+			}
+			pstmt.executeBatch();
+
+			List<Long> keys = sqlServiceSql.getGeneratedKeys(pstmt, sql);
+			if (keys.size() == fieldsList.size())
+			{
+				rv = keys;
+			}
+			else
+			{
+				log.warn("Sql.dbInsertBatch(): driver returned {} keys for {} records, sql: {}", keys.size(), fieldsList.size(), sql);
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			log.warn("Sql.dbInsertBatch()", e);
+		}
+		catch (SQLException e)
+		{
+			if (sqlServiceSql.isDeadLockError(e.getErrorCode()))
+			{
+				log.warn("Sql.dbInsertBatch(): deadlock: error code: " + e.getErrorCode() + " sql: " + sql + " " + e);
+				throw new SqlServiceDeadlockException(e);
+			}
+			log.warn("Sql.dbInsertBatch(): error code: " + e.getErrorCode() + " sql: " + sql + " " + e);
+		}
+		finally
+		{
+			recordStatement(sql, began, 0, rv != null ? rv.size() : 0, rv == null);
+			try
+			{
+				if (null != pstmt) pstmt.close();
+			}
+			catch (Exception e)
+			{
+				log.warn("Sql.dbInsertBatch(): " + e);
+				throw new RuntimeException("SqlService.dbInsertBatch failure", e);
+			}
+		}
+
+		if (m_showSql) debug("Sql.dbInsertBatch(): count: " + fieldsList.size() + "  time: " + (System.currentTimeMillis() - start), sql, null);
+
+		return rv;
+	}
+
 	/**
 	 * @see org.sakaiproject.db.api.SqlService#dbWriteCount(String, Object[], String, Connection, int)
 	 */
@@ -1242,6 +1561,8 @@ public abstract class BasicSqlService implements SqlService
 		boolean resetAutoCommit = false;
 
 		boolean success = false;
+		long began = System.nanoTime();
+		long borrowNanos = 0;
 
 		try
 		{
@@ -1253,6 +1574,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				borrowNanos = System.nanoTime() - began;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1336,6 +1658,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordStatement(sql, began, borrowNanos, Math.max(retval, 0), !success);
 			try
 			{
 				if (null != pstmt) pstmt.close();
@@ -1442,6 +1765,8 @@ public abstract class BasicSqlService implements SqlService
 
 		boolean success = false;
 		Long rv = null;
+		long began = System.nanoTime();
+		long borrowNanos = 0;
 
 		try
 		{
@@ -1453,6 +1778,7 @@ public abstract class BasicSqlService implements SqlService
 			{
 				if (m_showSql) start = System.currentTimeMillis();
 				conn = borrowConnection();
+				borrowNanos = System.nanoTime() - began;
 				if (m_showSql) connectionTime = System.currentTimeMillis() - start;
 
 				// make sure we have do not have auto commit - will change and reset if needed
@@ -1533,6 +1859,7 @@ public abstract class BasicSqlService implements SqlService
 		}
 		finally
 		{
+			recordStatement(sql, began, borrowNanos, success ? 1 : 0, !success);
 			try
 			{
 				if (null != pstmt) pstmt.close();
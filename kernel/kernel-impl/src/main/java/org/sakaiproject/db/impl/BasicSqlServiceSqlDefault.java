@@ -27,6 +27,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * methods for accessing sql service methods in a database.
@@ -157,4 +159,43 @@ public class BasicSqlServiceSqlDefault implements SqlServiceSql
 		return null;
 	}
 
+
+	/**
+	 * Batches use the same auto column preparation as single inserts
+	 * 
+	 * {@inheritDoc}
+	 */
+	public PreparedStatement prepareAutoColumnBatch(Connection conn, String sql, String autoColumn) throws SQLException
+	{
+		return prepareAutoColumn(conn, sql, autoColumn);
+	}
+
+	/**
+	 * Extract every generated key for JDBC drivers that support getGeneratedKeys() after executeBatch()
+	 * 
+	 * {@inheritDoc}
+	 */
+	public List<Long> getGeneratedKeys(PreparedStatement pstmt, String sql) throws SQLException
+	{
+		List<Long> rv = new ArrayList<>();
+		try (ResultSet keys = pstmt.getGeneratedKeys())
+		{
+			while (keys.next())
+			{
+				rv.add(Long.valueOf(keys.getLong(1)));
+			}
+		}
+		return rv;
+	}
+
+	/**
+	 * Most drivers honour the fetch size as a hint for a forward only cursor
+	 * 
+	 * {@inheritDoc}
+	 */
+	public int getStreamFetchSize(int fetchSize)
+	{
+		return fetchSize;
+	}
+
 }
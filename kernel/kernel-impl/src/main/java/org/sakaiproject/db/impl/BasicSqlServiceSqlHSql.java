@@ -111,4 +111,17 @@ public class BasicSqlServiceSqlHSql extends BasicSqlServiceSqlDefault
 		return null;
 	}
 
+
+	/**
+	 * HSQL 2.x can return the values of named columns for every row of a batch,
+	 * including those filled from a sequence, which the IDENTITY() lookup cannot do.
+	 *
+	 * {@inheritDoc}
+	 */
+	@Override
+	public PreparedStatement prepareAutoColumnBatch(Connection conn, String sql, String autoColumn) throws SQLException
+	{
+		return conn.prepareStatement(sql, new String[] { autoColumn });
+	}
+
 }
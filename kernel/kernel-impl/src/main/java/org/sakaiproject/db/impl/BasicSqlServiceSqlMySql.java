@@ -77,6 +77,15 @@ public class BasicSqlServiceSqlMySql extends BasicSqlServiceSqlDefault
 		return pstmt;
 	}
 
+	/**
+	 * MySQL buffers the whole result set unless the fetch size is Integer.MIN_VALUE, which switches the driver into row by row streaming.
+	 */
+	@Override
+	public int getStreamFetchSize(int fetchSize)
+	{
+		return Integer.MIN_VALUE;
+	}
+
 	@Override
     public boolean isDeadLockError(int errorCode){        
         // perhaps due to a mysql deadlock?
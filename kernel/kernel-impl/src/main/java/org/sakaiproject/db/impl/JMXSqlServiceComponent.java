@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.sakaiproject.db.api.SqlService;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Export the SqlService statement statistics over JMX.
+ */
+@ManagedResource(objectName="org.sakaiproject:name=SqlService", description="Sakai SqlService statement statistics")
+public class JMXSqlServiceComponent {
+
+    private SqlStatistics statistics;
+
+    @ManagedAttribute(description="Distinct statement fingerprints with statistics", currencyTimeLimit=0)
+    public int getStatementCount() {
+        return statistics != null ? statistics.getStatementCount() : 0;
+    }
+
+    @ManagedAttribute(description="Statements that took longer than the slow query threshold", currencyTimeLimit=0)
+    public long getSlowQueryCount() {
+        return statistics != null ? statistics.getSlowCount() : 0;
+    }
+
+    @ManagedAttribute(description="Time in ms from which a statement is logged as slow, 0 if off", currencyTimeLimit=0)
+    public long getSlowQueryMillis() {
+        return statistics != null ? statistics.getSlowQueryMillis() : 0;
+    }
+
+    @ManagedAttribute(description="Slow query threshold in ms, 0 to turn slow query logging off")
+    public void setSlowQueryMillis(long millis) {
+        if (statistics != null) statistics.setSlowQueryMillis(millis);
+    }
+
+    @ManagedAttribute(description="Connections borrowed from the pool", currencyTimeLimit=0)
+    public long getConnectionBorrowCount() {
+        return statistics != null ? statistics.getBorrowCount() : 0;
+    }
+
+    @ManagedAttribute(description="Total time in ms statements waited to borrow a connection", currencyTimeLimit=0)
+    public long getConnectionWaitMillis() {
+        return statistics != null ? statistics.getBorrowWaitMillis() : 0;
+    }
+
+    @ManagedAttribute(description="Longest time in ms a statement waited to borrow a connection", currencyTimeLimit=0)
+    public long getMaxConnectionWaitMillis() {
+        return statistics != null ? statistics.getMaxBorrowWaitMillis() : 0;
+    }
+
+    @ManagedAttribute(description="The 20 statements with the most total time", currencyTimeLimit=0)
+    public List<String> getTopStatements() {
+        return getStatements("total", 20);
+    }
+
+    @ManagedOperation(description="Statement statistics in descending order of one of: total, count, mean, p95, p99, max, rows, errors, slow, wait")
+    @ManagedOperationParameters({
+        @ManagedOperationParameter(name="sortBy", description="total, count, mean, p95, p99, max, rows, errors, slow or wait"),
+        @ManagedOperationParameter(name="limit", description="most statements to list, 0 for all")
+    })
+    public List<String> getStatements(String sortBy, int limit) {
+        if (statistics == null) return Collections.emptyList();
+        return statistics.getStatements(sortBy, limit).stream().map(Object::toString).collect(Collectors.toList());
+    }
+
+    @ManagedOperation(description="Clear the statement statistics")
+    public void resetStatistics() {
+        if (statistics != null) statistics.reset();
+    }
+
+    public void setSqlService(SqlService sqlService) {
+        if (sqlService instanceof BasicSqlService) {
+            this.statistics = ((BasicSqlService) sqlService).getStatistics();
+        }
+    }
+
+}
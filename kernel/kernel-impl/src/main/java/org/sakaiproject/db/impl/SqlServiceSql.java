@@ -26,6 +26,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 /**
  * database methods.
@@ -131,4 +132,34 @@ public interface SqlServiceSql
 	 */
 	public Long getGeneratedKey(PreparedStatement pstmt, String sql) throws SQLException;
 
+	/**
+	 * Prepare a batched insert statement when an autoColumn is involved
+	 * @param conn
+	 *      The connection to use
+	 * @param sql
+	 *      The SQL statement to prepare
+	 * @param autoColumn
+	 *      The name of the db column that will have auto-update - we will return the values used.
+	 */
+	public PreparedStatement prepareAutoColumnBatch(Connection conn, String sql, String autoColumn) throws SQLException;
+
+	/**
+	 * Extract all the generated keys from a just-executed batch insert statement
+	 * @param pstmt
+	 *      The prepared statement just executed as a batch
+	 * @param sql
+	 *      The SQL statement used to prepare pstmt
+	 * @return
+	 *      The inserted keys, in batch order
+	 */
+	public List<Long> getGeneratedKeys(PreparedStatement pstmt, String sql) throws SQLException;
+
+	/**
+	 * returns the fetch size to set on a statement whose results are streamed rather than read into a list.
+	 * 
+	 * @param fetchSize
+	 *        the configured number of rows to fetch per round trip.
+	 */
+	public int getStreamFetchSize(int fetchSize);
+
 }
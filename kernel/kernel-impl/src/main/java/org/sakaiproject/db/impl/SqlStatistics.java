@@ -0,0 +1,372 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+/**
+ * Per statement counters and latency histograms for the sql run through BasicSqlService. Statements are grouped by a fingerprint of their sql
+ * with literals and in lists collapsed, so the many variants of the same query (such as those built by orInClause) share one entry.
+ */
+@Slf4j
+public class SqlStatistics
+{
+	/** The fingerprint that statements are counted under once maxStatements distinct fingerprints are tracked. */
+	public static final String OTHER = "(other)";
+
+	/** The orders getStatements can sort by, all descending. */
+	public static final String[] SORT_KEYS = {"total", "count", "mean", "p95", "p99", "max", "rows", "errors", "slow", "wait"};
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.?])-?\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern OR_IN_CHAIN = Pattern.compile("(?i)(\\b([\\w.]+) in \\(\\?\\.\\.\\.\\))(?: or \\2 in \\(\\?\\.\\.\\.\\))+");
+	private static final Pattern VALUES_ROWS = Pattern.compile("(?i)(\\bvalues\\s*(\\([^()]*\\)))(?:\\s*,\\s*\\2)+");
+
+	/** Most raw sql strings cached against their fingerprint, and the longest cached. */
+	private static final int MAX_CACHED_SQL = 10000;
+	private static final int MAX_CACHED_SQL_LENGTH = 2000;
+
+	private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, StatementStatistics> statements = new ConcurrentHashMap<>();
+
+	private final LongAdder borrowCount = new LongAdder();
+
+	private final LongAdder borrowWaitNanos = new LongAdder();
+
+	private final LongAccumulator maxBorrowWaitNanos = new LongAccumulator(Math::max, 0);
+
+	private final LongAdder slowCount = new LongAdder();
+
+	private volatile long slowNanos = TimeUnit.SECONDS.toNanos(2);
+
+	private volatile int maxStatements = 2000;
+
+	/**
+	 * Record one statement run.
+	 *
+	 * @param sql
+	 *        The sql that was run.
+	 * @param elapsedNanos
+	 *        The time taken, including any wait for a connection.
+	 * @param borrowNanos
+	 *        The part of that time spent waiting for a connection from the pool, 0 if the caller's connection was used.
+	 * @param rows
+	 *        The rows read, or updated for a write.
+	 * @param failed
+	 *        true if the statement failed.
+	 */
+	public void record(String sql, long elapsedNanos, long borrowNanos, int rows, boolean failed)
+	{
+		if (sql == null) return;
+		StatementStatistics stats = statistics(sql);
+		stats.count.increment();
+		stats.totalNanos.add(elapsedNanos);
+		stats.latency.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), 0));
+		if (rows > 0) stats.rows.add(rows);
+		if (failed) stats.errors.increment();
+		if (borrowNanos > 0)
+		{
+			stats.borrowWaitNanos.add(borrowNanos);
+			borrowWaitNanos.add(borrowNanos);
+			maxBorrowWaitNanos.accumulate(borrowNanos);
+		}
+
+		long threshold = slowNanos;
+		if (threshold > 0 && elapsedNanos >= threshold)
+		{
+			stats.slow.increment();
+			slowCount.increment();
+
+			// the stack is only worth having once for each fingerprint, after that the counters are enough
+			if (stats.slowLogged.compareAndSet(false, true))
+			{
+				log.warn("Slow sql: {} ms (threshold {} ms): {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), TimeUnit.NANOSECONDS.toMillis(threshold), sql,
+						new Throwable("caller of slow sql"));
+			}
+			else if (log.isDebugEnabled())
+			{
+				log.debug("Slow sql: {} ms: {}", TimeUnit.NANOSECONDS.toMillis(elapsedNanos), sql);
+			}
+		}
+	}
+
+	/**
+	 * Record a connection borrowed from the pool.
+	 */
+	public void recordBorrow()
+	{
+		borrowCount.increment();
+	}
+
+	/**
+	 * @return The statistics for the fingerprint of this sql, created if needed.
+	 */
+	protected StatementStatistics statistics(String sql)
+	{
+		String fingerprint = fingerprints.get(sql);
+		if (fingerprint == null)
+		{
+			fingerprint = fingerprint(sql);
+			if (sql.length() <= MAX_CACHED_SQL_LENGTH && fingerprints.size() < MAX_CACHED_SQL)
+			{
+				fingerprints.put(sql, fingerprint);
+			}
+		}
+
+		StatementStatistics stats = statements.get(fingerprint);
+		if (stats == null)
+		{
+			if (statements.size() >= maxStatements)
+			{
+				fingerprint = OTHER;
+			}
+			stats = statements.computeIfAbsent(fingerprint, StatementStatistics::new);
+		}
+		return stats;
+	}
+
+	/**
+	 * Normalize sql so that statements differing only in literal values, in list lengths or the number of ORed in lists (see orInClause in
+	 * DbAuthzGroupService) or multi-row values lists share a fingerprint.
+	 *
+	 * @param sql
+	 *        The sql.
+	 * @return The fingerprint.
+	 */
+	public static String fingerprint(String sql)
+	{
+		if (sql == null) return "";
+		String rv = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+		rv = STRING_LITERAL.matcher(rv).replaceAll("?");
+		rv = NUMBER_LITERAL.matcher(rv).replaceAll("?");
+		rv = IN_LIST.matcher(rv).replaceAll("IN (?...)");
+		rv = OR_IN_CHAIN.matcher(rv).replaceAll("$1");
+		rv = VALUES_ROWS.matcher(rv).replaceAll("$1");
+		return rv;
+	}
+
+	/**
+	 * @param sortBy
+	 *        One of SORT_KEYS, total time if not recognised.
+	 * @param limit
+	 *        The most statements to return, all if < 1.
+	 * @return The statistics of each fingerprint, in descending order of sortBy.
+	 */
+	public List<StatementStatistics> getStatements(String sortBy, int limit)
+	{
+		List<StatementStatistics> rv = new ArrayList<>(statements.values());
+		rv.sort(comparator(sortBy).reversed());
+		if (limit > 0 && rv.size() > limit)
+		{
+			rv = new ArrayList<>(rv.subList(0, limit));
+		}
+		return rv;
+	}
+
+	private static Comparator<StatementStatistics> comparator(String sortBy)
+	{
+		switch (sortBy == null ? "" : sortBy.toLowerCase(Locale.ROOT))
+		{
+			case "count":
+				return Comparator.comparingLong(StatementStatistics::getCount);
+			case "mean":
+				return Comparator.comparingDouble(StatementStatistics::getMeanMillis);
+			case "p95":
+				return Comparator.comparingDouble(s -> s.getPercentileMillis(95.0));
+			case "p99":
+				return Comparator.comparingDouble(s -> s.getPercentileMillis(99.0));
+			case "max":
+				return Comparator.comparingDouble(StatementStatistics::getMaxMillis);
+			case "rows":
+				return Comparator.comparingLong(StatementStatistics::getRows);
+			case "errors":
+				return Comparator.comparingLong(StatementStatistics::getErrors);
+			case "slow":
+				return Comparator.comparingLong(StatementStatistics::getSlowCount);
+			case "wait":
+				return Comparator.comparingLong(StatementStatistics::getBorrowWaitMillis);
+			default:
+				return Comparator.comparingLong(StatementStatistics::getTotalMillis);
+		}
+	}
+
+	/**
+	 * Clear all the statistics, including the once per fingerprint slow sql logging.
+	 */
+	public void reset()
+	{
+		statements.clear();
+		fingerprints.clear();
+		borrowCount.reset();
+		borrowWaitNanos.reset();
+		maxBorrowWaitNanos.reset();
+		slowCount.reset();
+	}
+
+	public int getStatementCount()
+	{
+		return statements.size();
+	}
+
+	public long getBorrowCount()
+	{
+		return borrowCount.sum();
+	}
+
+	public long getBorrowWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.sum());
+	}
+
+	public long getMaxBorrowWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(maxBorrowWaitNanos.get());
+	}
+
+	public long getSlowCount()
+	{
+		return slowCount.sum();
+	}
+
+	public long getSlowQueryMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis(slowNanos);
+	}
+
+	/**
+	 * @param millis
+	 *        Statements taking at least this long are logged as slow, 0 to turn this off.
+	 */
+	public void setSlowQueryMillis(long millis)
+	{
+		slowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+	}
+
+	/**
+	 * @param max
+	 *        The most distinct fingerprints tracked, statements beyond that are counted under OTHER.
+	 */
+	public void setMaxStatements(int max)
+	{
+		maxStatements = max;
+	}
+
+	/**
+	 * The counters for one statement fingerprint.
+	 */
+	public static class StatementStatistics
+	{
+		private final String fingerprint;
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final LongAdder rows = new LongAdder();
+
+		private final LongAdder errors = new LongAdder();
+
+		private final LongAdder slow = new LongAdder();
+
+		private final LongAdder borrowWaitNanos = new LongAdder();
+
+		private final AtomicBoolean slowLogged = new AtomicBoolean();
+
+		/** Latency in microseconds; one significant digit keeps each histogram to a couple of KB. */
+		private final ConcurrentHistogram latency = new ConcurrentHistogram(1);
+
+		StatementStatistics(String fingerprint)
+		{
+			this.fingerprint = fingerprint;
+		}
+
+		public String getFingerprint()
+		{
+			return fingerprint;
+		}
+
+		public long getCount()
+		{
+			return count.sum();
+		}
+
+		public long getTotalMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+		}
+
+		public double getMeanMillis()
+		{
+			long n = count.sum();
+			return n == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / n;
+		}
+
+		public double getPercentileMillis(double percentile)
+		{
+			return latency.getValueAtPercentile(percentile) / 1000.0;
+		}
+
+		public double getMaxMillis()
+		{
+			return latency.getMaxValue() / 1000.0;
+		}
+
+		public long getRows()
+		{
+			return rows.sum();
+		}
+
+		public long getErrors()
+		{
+			return errors.sum();
+		}
+
+		public long getSlowCount()
+		{
+			return slow.sum();
+		}
+
+		public long getBorrowWaitMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.sum());
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(Locale.ROOT, "count=%d total=%dms mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms rows=%d errors=%d slow=%d wait=%dms : %s",
+					getCount(), getTotalMillis(), getMeanMillis(), getPercentileMillis(50.0), getPercentileMillis(95.0), getPercentileMillis(99.0), getMaxMillis(),
+					getRows(), getErrors(), getSlowCount(), getBorrowWaitMillis(), fingerprint);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Wraps an event Observer so that it is notified on its own worker thread, from a bounded queue,
+ * rather than on the thread that posted the event. The observer is only ever called by one thread at a time,
+ * and sees the events in the order they were posted. When the queue is full the posting thread waits for room,
+ * so events are never lost and a slow observer can only hold up a poster once its queue has filled.
+ * Events posted by the observer itself are delivered at once, as they would be without the wrapper.
+ */
+@Slf4j
+public class AsyncObserver implements Observer, Runnable
+{
+	/** Marks the end of the queue when stopping. */
+	private static final Object STOP = new Object();
+
+	private final Observer observer;
+	private final Observable observable;
+	private final BlockingQueue<Object> queue;
+	private final Thread worker;
+	/** Held while the observer is called, a lock rather than a monitor so virtual threads can unmount. */
+	private final ReentrantLock deliveryLock = new ReentrantLock();
+
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong posterWaits = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private volatile long maxNanos = 0;
+
+	/**
+	 * @param observer
+	 *        The observer to notify.
+	 * @param observable
+	 *        The observable the observer is registered with, passed on to update().
+	 * @param queueSize
+	 *        The maximum number of events waiting for this observer.
+	 */
+	public AsyncObserver(Observer observer, Observable observable, int queueSize)
+	{
+		this.observer = observer;
+		this.observable = observable;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+		this.worker = newThread(this, "EventObserver-" + observer.getClass().getName());
+		this.worker.start();
+	}
+
+	/**
+	 * @return the observer being notified.
+	 */
+	public Observer getObserver()
+	{
+		return observer;
+	}
+
+	/**
+	 * Queue the event for the worker thread, waiting for room if the queue is full.
+	 */
+	public void update(Observable o, Object arg)
+	{
+		if (Thread.currentThread() == worker)
+		{
+			// posted while handling an event, waiting for room would never end
+			deliver(arg);
+			return;
+		}
+		if (queue.offer(arg)) return;
+
+		posterWaits.incrementAndGet();
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					queue.put(arg);
+					return;
+				}
+				catch (InterruptedException e)
+				{
+					// keep waiting, dropping the event would lose it for good
+					interrupted = true;
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Worker loop, delivering queued events until stopped.
+	 */
+	public void run()
+	{
+		try
+		{
+			while (true)
+			{
+				Object arg = queue.take();
+				if (arg == STOP) break;
+				deliver(arg);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stop the worker once the events already queued have been delivered.
+	 *
+	 * @param wait
+	 *        How long to wait for the queue to drain, in ms.
+	 */
+	public void stop(long wait)
+	{
+		try
+		{
+			if (queue.offer(STOP, wait, TimeUnit.MILLISECONDS))
+			{
+				worker.join(wait);
+			}
+			else
+			{
+				worker.interrupt();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		if (!queue.isEmpty())
+		{
+			log.warn("Stopped event observer {} with {} events undelivered", observer, queue.size());
+		}
+	}
+
+	/**
+	 * @return a summary of the queue depth and processing time for this observer.
+	 */
+	public Map<String, String> getMetrics()
+	{
+		Map<String, String> metrics = new LinkedHashMap<>();
+		long count = delivered.get();
+		metrics.put("queueDepth", Integer.toString(queue.size()));
+		metrics.put("delivered", Long.toString(count));
+		metrics.put("posterWaits", Long.toString(posterWaits.get()));
+		metrics.put("meanMicros", Long.toString(count > 0 ? totalNanos.get() / count / 1000 : 0));
+		metrics.put("maxMicros", Long.toString(maxNanos / 1000));
+		return metrics;
+	}
+
+	public int getQueueDepth()
+	{
+		return queue.size();
+	}
+
+	public long getDelivered()
+	{
+		return delivered.get();
+	}
+
+	private void deliver(Object arg)
+	{
+		deliveryLock.lock();
+		try
+		{
+			long start = System.nanoTime();
+			try
+			{
+				observer.update(observable, arg);
+			}
+			catch (Exception e)
+			{
+				log.warn("Event observer {} failed on {}", observer, arg, e);
+			}
+			long elapsed = System.nanoTime() - start;
+			totalNanos.addAndGet(elapsed);
+			if (elapsed > maxNanos) maxNanos = elapsed;
+			delivered.incrementAndGet();
+		}
+		finally
+		{
+			deliveryLock.unlock();
+		}
+	}
+
+	/**
+	 * Create the worker, as a virtual thread if the JVM has them.
+	 */
+	private static Thread newThread(Runnable runnable, String name)
+	{
+		try
+		{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+			Method unstarted = builderClass.getMethod("unstarted", Runnable.class);
+			return (Thread) unstarted.invoke(builder, runnable);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
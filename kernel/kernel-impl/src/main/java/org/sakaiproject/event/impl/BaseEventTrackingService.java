@@ -22,9 +22,15 @@
 package org.sakaiproject.event.impl;
 
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -68,6 +74,15 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 
 	protected EventDelayHandler delayHandler;
 
+	/** Classes of the observers added with addObserver that are notified on their own worker thread anyway. */
+	protected Set<String> m_asyncObserverClasses = Collections.emptySet();
+
+	/** The number of events that may wait for each asynchronous observer. */
+	protected int m_asyncObserverQueueSize = 10000;
+
+	/** The asynchronous wrappers for the normal observers, by observer. */
+	protected Map<Observer, AsyncObserver> m_asyncObserverMap = new ConcurrentHashMap<>();
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Observable implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -169,9 +184,61 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void destroy()
 	{
+		for (AsyncObserver asyncObserver : m_asyncObserverMap.values())
+		{
+			asyncObserver.stop(5000);
+		}
+		m_asyncObserverMap.clear();
+
 		log.info(this + ".destroy()");
 	}
 
+	/**
+	 * Configuration: the observers, by class name, to notify asynchronously even though they were added with addObserver.
+	 * Only list observers that do not need the session or thread state of the request that posted the event.
+	 *
+	 * @param value
+	 *        A comma separated list of observer class names.
+	 */
+	public void setAsyncObserverClasses(String value)
+	{
+		Set<String> classes = new HashSet<>();
+		if (value != null)
+		{
+			for (String name : value.split(","))
+			{
+				if (!name.trim().isEmpty()) classes.add(name.trim());
+			}
+		}
+		m_asyncObserverClasses = classes;
+	}
+
+	/**
+	 * Configuration: the number of events that may wait for each asynchronous observer
+	 * before the posting thread waits for room.
+	 *
+	 * @param value
+	 *        The queue size.
+	 */
+	public void setAsyncObserverQueueSize(String value)
+	{
+		m_asyncObserverQueueSize = Integer.parseInt(value);
+	}
+
+	/**
+	 * @return the queue depth and processing time of each asynchronous observer, by observer class.
+	 */
+	public Map<String, Map<String, String>> getAsyncObserverMetrics()
+	{
+		Map<String, Map<String, String>> metrics = new LinkedHashMap<>();
+		for (AsyncObserver asyncObserver : m_asyncObserverMap.values())
+		{
+			metrics.put(asyncObserver.getObserver().getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(asyncObserver.getObserver())),
+					asyncObserver.getMetrics());
+		}
+		return metrics;
+	}
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * EventTracking implementation
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -450,13 +517,39 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void addObserver(Observer observer)
 	{
+		if (m_asyncObserverClasses.contains(observer.getClass().getName()))
+		{
+			addAsyncObserver(observer);
+			return;
+		}
+
 		// keep this observer in one list only
+		deleteAsyncObserver(observer);
 		m_priorityObservableHelper.deleteObserver(observer);
 		m_localObservableHelper.deleteObserver(observer);
 
 		m_observableHelper.addObserver(observer);
 	}
 
+	/**
+	 * Add an observer of events, notified on its own worker thread in the order the events were posted.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 */
+	public void addAsyncObserver(Observer observer)
+	{
+		// keep this observer in one list only
+		m_observableHelper.deleteObserver(observer);
+		m_priorityObservableHelper.deleteObserver(observer);
+		m_localObservableHelper.deleteObserver(observer);
+
+		// one worker per observer, even if added again
+		AsyncObserver asyncObserver = m_asyncObserverMap.computeIfAbsent(observer,
+				o -> new AsyncObserver(o, m_observableHelper, m_asyncObserverQueueSize));
+		m_observableHelper.addObserver(asyncObserver);
+	}
+
 	/**
 	 * Add an observer of events. The observer will be notified whenever there are new events. Priority observers get notified first, before normal observers.
 	 *
@@ -466,6 +559,7 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	public void addPriorityObserver(Observer observer)
 	{
 		// keep this observer in one list only
+		deleteAsyncObserver(observer);
 		m_observableHelper.deleteObserver(observer);
 		m_localObservableHelper.deleteObserver(observer);
 
@@ -481,6 +575,7 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	public void addLocalObserver(Observer observer)
 	{
 		// keep this observer in one list only
+		deleteAsyncObserver(observer);
 		m_observableHelper.deleteObserver(observer);
 		m_priorityObservableHelper.deleteObserver(observer);
 
@@ -495,11 +590,28 @@ public abstract class BaseEventTrackingService implements EventTrackingService
 	 */
 	public void deleteObserver(Observer observer)
 	{
+		deleteAsyncObserver(observer);
 		m_observableHelper.deleteObserver(observer);
 		m_priorityObservableHelper.deleteObserver(observer);
 		m_localObservableHelper.deleteObserver(observer);
 	}
 
+	/**
+	 * Remove the asynchronous wrapper for this observer, if there is one, and stop its worker.
+	 *
+	 * @param observer
+	 *        The class observing.
+	 */
+	protected void deleteAsyncObserver(Observer observer)
+	{
+		AsyncObserver asyncObserver = m_asyncObserverMap.remove(observer);
+		if (asyncObserver != null)
+		{
+			m_observableHelper.deleteObserver(asyncObserver);
+			asyncObserver.stop(5000);
+		}
+	}
+
 	/**
 	 * Extend Observable to "public"ize setChanges, so we can set it. Why a helper object? Cause the service (which is observable) already 'extends' TurbineBaseService, and cannot also 'extend' Observable.
 	 */
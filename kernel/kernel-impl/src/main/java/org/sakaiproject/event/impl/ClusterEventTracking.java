@@ -25,9 +25,16 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -59,6 +66,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	// see http://jira.sakaiproject.org/browse/SAK-3793 for more info about these numbers
 	private static final long WARNING_SAFE_EVENTS_TABLE_SIZE = 18000000l;
 	private static final long MAX_SAFE_EVENTS_TABLE_SIZE = 20000000l;
+	/** The most missed events read from the db before the observers are told of them. */
+	private static final int CATCH_UP_CHUNK = 1000;
 	/** The db event checker thread. */
 	protected Thread m_thread = null;
 
@@ -70,8 +79,21 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 	protected long m_totalEventsCount = 0;
 
-	/** Queue of events to write if we are batching. */
-	protected Collection<Event> m_eventQueue = null;
+	/** Queue of events to write if we are batching, filled by request threads and drained by the timer thread. */
+	protected Queue<Event> m_eventQueue = null;
+	/** The number of events in m_eventQueue (the queue itself can not count cheaply). */
+	protected final AtomicInteger m_eventQueueSize = new AtomicInteger();
+	/** The queue depth at which the writer is asked to flush before its next scheduled run. */
+	protected int m_maxQueueDepth = 10000;
+	/** Set while an early flush is waiting on the timer thread, so a full queue only asks once. */
+	private final AtomicBoolean m_earlyFlushPending = new AtomicBoolean();
+	/** Count of flushes triggered by a full queue rather than the timer. */
+	private final AtomicLong m_earlyFlushCount = new AtomicLong();
+	/** Count of events written from the queue. */
+	private final AtomicLong m_batchEventsWritten = new AtomicLong();
+	/** How long the last and the slowest drains of the queue took, in ms. */
+	private volatile long m_lastDrainMillis = 0;
+	private volatile long m_maxDrainMillis = 0;
 	/** Unless false, check the db for events from the other cluster servers. */
 	protected boolean m_checkDb = true;
 	/** If true, batch events for bulk write. */
@@ -173,6 +195,17 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		m_period = Integer.parseInt(time);
 	}
 
+	/**
+	 * Set the number of queued events at which the batch is written early, rather than waiting for the next period.
+	 *
+	 * @param value
+	 *        The maximum queue depth.
+	 */
+	public void setMaxQueueDepth(String value)
+	{
+		m_maxQueueDepth = Integer.parseInt(value);
+	}
+
 	public void setDatabaseBeans(Map databaseBeans)
 	{
 		this.databaseBeans = databaseBeans;
@@ -217,7 +250,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 
 			if (m_batchWrite)
 			{
-				m_eventQueue = new Vector<Event>();
+				m_eventQueue = new ConcurrentLinkedQueue<>();
+				scheduler = Executors.newSingleThreadScheduledExecutor();
 			}
 
 			// startup the event checking
@@ -225,7 +259,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			{
 				initLastEvent();
 
-				scheduler = Executors.newSingleThreadScheduledExecutor();
+				if (scheduler == null) scheduler = Executors.newSingleThreadScheduledExecutor();
 				// schedule task for every pollDelaySeconds
 				scheduler.scheduleWithFixedDelay(
 						this,
@@ -252,7 +286,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
     			}
 			}
 
-			log.info("period: {}, batch: {}, checkDb: {}", m_period, m_batchWrite, m_checkDb);
+			log.info("period: {}, batch: {}, maxQueueDepth: {}, checkDb: {}", m_period, m_batchWrite, m_maxQueueDepth, m_checkDb);
 
             String sakaiVersion = serverConfigurationService().getString("version.sakai", "unknown") + "/" + serverConfigurationService().getString("version.service", "unknown");
             log.info("Server Start: serverId={}, serverInstance={}, serverIdInstance={}, version={}",
@@ -304,7 +338,7 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 	 */
 	public void destroy()
 	{
-		scheduler.shutdown();
+		if (scheduler != null) scheduler.shutdown();
 		super.destroy();
 	}
 
@@ -338,9 +372,10 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// batch the event if we are batching
 			if (m_batchWrite)
 			{
-				synchronized (m_eventQueue)
+				m_eventQueue.add(event);
+				if (m_eventQueueSize.incrementAndGet() >= m_maxQueueDepth)
 				{
-					m_eventQueue.add(event);
+					requestEarlyFlush();
 				}
 			}
 
@@ -354,6 +389,101 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		log.debug("{}{}", m_logId, event);
 	}
 
+	/**
+	 * Ask the timer thread to write the queue now, as it has reached the maximum depth.
+	 * The write happens on the timer thread so the request thread that filled the queue is not held up.
+	 */
+	protected void requestEarlyFlush()
+	{
+		if (m_earlyFlushPending.compareAndSet(false, true))
+		{
+			m_earlyFlushCount.incrementAndGet();
+			try
+			{
+				scheduler.execute(() -> {
+					m_earlyFlushPending.set(false);
+					writeQueuedEvents();
+				});
+			}
+			catch (RejectedExecutionException e)
+			{
+				// shutting down, the events will be written by the final drain if there is one
+				m_earlyFlushPending.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Drain the event queue and write what was in it as a single batch.
+	 */
+	protected void writeQueuedEvents()
+	{
+		List<Event> batchEvents = new ArrayList<>();
+		Event event;
+		while ((event = m_eventQueue.poll()) != null)
+		{
+			batchEvents.add(event);
+		}
+		if (batchEvents.isEmpty()) return;
+		m_eventQueueSize.addAndGet(-batchEvents.size());
+
+		long start = System.currentTimeMillis();
+		writeBatchEvents(batchEvents);
+		long elapsed = System.currentTimeMillis() - start;
+
+		m_lastDrainMillis = elapsed;
+		if (elapsed > m_maxDrainMillis) m_maxDrainMillis = elapsed;
+		m_batchEventsWritten.addAndGet(batchEvents.size());
+	}
+
+	/**
+	 * @return the number of events waiting to be written.
+	 */
+	public int getEventQueueDepth()
+	{
+		return m_eventQueueSize.get();
+	}
+
+	/**
+	 * @return the queue depth at which an early write is triggered.
+	 */
+	public int getMaxQueueDepth()
+	{
+		return m_maxQueueDepth;
+	}
+
+	/**
+	 * @return the number of writes triggered by the queue reaching its maximum depth.
+	 */
+	public long getEarlyFlushCount()
+	{
+		return m_earlyFlushCount.get();
+	}
+
+	/**
+	 * @return the number of events written from the queue since startup.
+	 */
+	public long getBatchEventsWritten()
+	{
+		return m_batchEventsWritten.get();
+	}
+
+	/**
+	 * @return how long the last drain of the queue took to write, in ms.
+	 */
+	public long getLastDrainMillis()
+	{
+		return m_lastDrainMillis;
+	}
+
+	/**
+	 * @return how long the slowest drain of the queue took to write, in ms.
+	 */
+	public long getMaxDrainMillis()
+	{
+		return m_maxDrainMillis;
+	}
+
 	/**
 	 * Write a single event to the db
 	 * 
@@ -407,29 +537,35 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// common preparation for each insert
 			String statement = insertStatement();
 
-			// Setup a batch of events if not using a cluster
+			// Setup a batch of events
 			List<Object[]> eventList = new ArrayList<>();
-
-			// write all events
 			for (Event event : events)
 			{
 				Object fields[] = new Object[6];
 				bindValues(event, fields);
 				eventList.add(fields);
+			}
 
-				// For clustered setups with caching enabled, use legacy, individual inserts
-				// TODO: it might be possible to write the entire batch to database and still get return values. But this will need testing on MySQL and Oracle.
-				if (cachingEnabled) {
-					Long eventId = sqlService().dbInsert(conn, statement, fields, "EVENT_ID");
-					if (eventId != null) {
-						// write event to cache
-						writeEventToCluster(event, eventId);
+			// For clustered setups with caching enabled, we need the ids of the new events for the cluster event cache
+			if (cachingEnabled) {
+				List<Long> eventIds = insertBatchEvents(conn, statement, eventList);
+				if (eventIds != null) {
+					writeEventsToCluster(events, eventIds);
+				} else {
+					// fall back to individual inserts if the batch could not report the ids, discarding anything it wrote
+					log.debug("batch insert returned no event ids, using individual inserts for {} events", eventList.size());
+					conn.rollback();
+					Iterator<Object[]> fieldsIterator = eventList.iterator();
+					for (Event event : events) {
+						Long eventId = sqlService().dbInsert(conn, statement, fieldsIterator.next(), "EVENT_ID");
+						if (eventId != null) {
+							// write event to cache
+							writeEventToCluster(event, eventId);
+						}
 					}
 				}
-			}
-
-			// Write all of these events in a batch if not using clustering
-			if (!cachingEnabled) {
+			} else {
+				// Write all of these events in a batch if not using clustering
 				boolean ok = sqlService().dbWriteBatch(conn, statement, eventList);
 				if (!ok) {
 					log.warn("dbWriteBatch failed: event count: {}", eventList.size());
@@ -476,6 +612,50 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 		}
 	}
 
+	/**
+	 * Insert a batch of events in one JDBC batch, returning their new EVENT_IDs.
+	 * Databases that can not report generated keys for a batch reserve the ids from the sequence first.
+	 *
+	 * @param conn
+	 *        The connection to use.
+	 * @param statement
+	 *        The insert statement for writing an event.
+	 * @param eventList
+	 *        The bound values for each event.
+	 * @return The event ids, in the order of the eventList, or null if they could not be determined.
+	 */
+	protected List<Long> insertBatchEvents(Connection conn, String statement, List<Object[]> eventList)
+	{
+		String idsStatement = clusterEventTrackingServiceSql.getNextEventIdsSql();
+		if (idsStatement == null)
+		{
+			return sqlService().dbInsertBatch(conn, statement, eventList, "EVENT_ID");
+		}
+
+		List<Long> eventIds = sqlService().dbRead(conn, idsStatement, new Object[] {eventList.size()}, new SqlReader<Long>() {
+			public Long readSqlResultRecord(ResultSet result) {
+				try {
+					return result.getLong(1);
+				} catch (SQLException e) {
+					log.warn("Could not read reserved event id: {}", e.toString());
+					return null;
+				}
+			}
+		});
+		if (eventIds.size() != eventList.size())
+		{
+			return null;
+		}
+
+		List<Object[]> idEventList = new ArrayList<>(eventList.size());
+		for (int i = 0; i < eventList.size(); i++)
+		{
+			idEventList.add(ArrayUtils.insert(0, eventList.get(i), eventIds.get(i)));
+		}
+		boolean ok = sqlService().dbWriteBatch(conn, clusterEventTrackingServiceSql.getInsertEventWithIdSql(), idEventList);
+		return ok ? eventIds : null;
+	}
+
 	/**
 	 * Form the proper event insert statement for the database technology.
 	 * 
@@ -538,19 +718,13 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 			// write any events we have
 			if (m_batchWrite)
 			{
-				Collection<Event> batchEvents;
-				synchronized (m_eventQueue)
-				{
-					batchEvents = new ArrayList<>(m_eventQueue);
-					m_eventQueue.clear();
-				}
-				writeBatchEvents(batchEvents);
+				writeQueuedEvents();
 			}
 
 			log.debug("checking for events > {}", m_lastEventSeq);
 			// check the db for new events
 			// We do a left join which gets us records from non-sessions also (SESSION_SERVER may be null when non-session events are returned)
-			String statement = clusterEventTrackingServiceSql.getEventSql();
+			String statement = clusterEventTrackingServiceSql.getEventSql(CATCH_UP_CHUNK);
 
 			// send in the last seq number parameter
 			Object[] fields = new Object[1];
@@ -596,8 +770,8 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 					}
 				}
 			} else {
-				events = sqlService().dbRead(statement, fields, new SqlReader() {
-					public Object readSqlResultRecord(ResultSet result) {
+				SqlReader<Event> reader = new SqlReader<Event>() {
+					public Event readSqlResultRecord(ResultSet result) {
 						try {
 							Long id = result.getLong(1);
 							Date date = new Date(result.getTimestamp(2).getTime());
@@ -647,7 +821,28 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
 							return null;
 						}
 					}
-				});
+				};
+
+				// read a long catch-up (say after a restart) a chunk at a time, in event order, closing the cursor before the
+				// observers are notified so that they neither hold the connection nor see the whole catch-up in memory at once.
+				// The chunk is limited in the sql, so each read is an index range after the last event rather than the whole
+				// remainder, and the cursor is always read to its end. Events from this server are read but not returned.
+				int[] rows = {0};
+				SqlReader<Event> counted = result -> {
+					rows[0]++;
+					return reader.readSqlResultRecord(result);
+				};
+				do {
+					rows[0] = 0;
+					fields[0] = Long.valueOf(m_lastEventSeq);
+					List<Event> chunk;
+					try (Stream<Event> stream = sqlService().dbStream(statement, fields, counted)) {
+						chunk = stream.collect(Collectors.toList());
+					}
+					for (Event event : chunk) {
+						notifyObservers(event, false);
+					}
+				} while (rows[0] == CATCH_UP_CHUNK);
 			}
 			// for each new event found, notify observers
 			for (Event event : events) {
@@ -730,6 +925,35 @@ public abstract class ClusterEventTracking extends BaseEventTrackingService impl
         }
     }
 
+    /**
+     * Writes a batch of events to the cache in one call, if enabled
+     *
+     * @param events the event objects
+     * @param eventIds the ids of the event objects, in the same order
+     */
+    private void writeEventsToCluster(Collection<Event> events, List<Long> eventIds) {
+        if (cachingEnabled && eventCache != null) {
+            Map<String, SimpleEvent> simpleEvents = new HashMap<>();
+            Iterator<Long> idIterator = eventIds.iterator();
+            String serverIdInstance = serverConfigurationService().getServerIdInstance();
+            Long lastEventId = null;
+            for (Event event : events) {
+                Long eventId = idIterator.next();
+                simpleEvents.put(String.valueOf(eventId), new SimpleEvent((Event) ensureBaseEvent(event), serverIdInstance));
+                if (lastEventId == null || eventId > lastEventId) {
+                    lastEventId = eventId;
+                }
+            }
+            eventCache.putAll(simpleEvents);
+            // update the last event id once the whole batch is visible
+            if (lastEventId != null) {
+                eventLastCache.put("lastEventId", lastEventId);
+            }
+        } else {
+            log.debug("Cannot store events to cache, caching not enabled or event store not initialized.");
+        }
+    }
+
     /**
      * Writes an event to cache, if enabled
      * 
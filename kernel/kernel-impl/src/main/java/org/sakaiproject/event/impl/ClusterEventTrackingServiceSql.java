@@ -32,9 +32,11 @@ public interface ClusterEventTrackingServiceSql
 	String getInsertEventSql();
 
 	/**
-	 * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
+	 * returns the sql statement which retrieves the first events after an event id from the sakai_event and sakai_session tables, in event id order.
+	 *
+	 * @param limit the most events to retrieve
 	 */
-	String getEventSql();
+	String getEventSql(int limit);
 
 	/**
 	 * returns the sql statement which retrieves the largest event id from the sakai_event table.
@@ -46,4 +48,17 @@ public interface ClusterEventTrackingServiceSql
      */
     String getEventsCountSql();
 
+	/**
+	 * returns the sql statement which reserves a block of event ids from the event sequence in a single query,
+	 * taking the number of ids wanted as its only parameter, or null if event ids are generated on insert and
+	 * should be read back as generated keys instead.
+	 */
+	String getNextEventIdsSql();
+
+	/**
+	 * returns the sql statement which inserts an event with an already reserved EVENT_ID into the sakai_event table.
+	 * Only used when getNextEventIdsSql() is not null.
+	 */
+	String getInsertEventWithIdSql();
+
 }
@@ -41,14 +41,14 @@ public class ClusterEventTrackingServiceSqlDefault implements ClusterEventTracki
    }
 
    /**
-	 * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
+	 * returns the sql statement which retrieves the first events after an event id from the sakai_event and sakai_session tables.
 	 */
-	public String getEventSql()
+	public String getEventSql(int limit)
 	{
 	    return "select SAKAI_EVENT.EVENT_ID,SAKAI_EVENT.EVENT_DATE,SAKAI_EVENT.EVENT,SAKAI_EVENT.REF,SAKAI_EVENT.SESSION_ID,SAKAI_EVENT.EVENT_CODE,SAKAI_EVENT.CONTEXT,SAKAI_SESSION.SESSION_SERVER "
 	            + "from SAKAI_EVENT "
 	            + "left join SAKAI_SESSION ON SAKAI_EVENT.SESSION_ID = SAKAI_SESSION.SESSION_ID "
-	            + "where (SAKAI_EVENT.EVENT_ID > ?)";
+	            + "where (SAKAI_EVENT.EVENT_ID > ?) order by SAKAI_EVENT.EVENT_ID limit " + limit;
 	}
 
 	/**
@@ -66,4 +66,18 @@ public class ClusterEventTrackingServiceSqlDefault implements ClusterEventTracki
         return "select COUNT(*) from SAKAI_EVENT";
     }
 
+    /**
+     * The default sequence backed insert can report EVENT_ID as a generated key for a whole batch.
+     */
+    public String getNextEventIdsSql() {
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.event.impl.ClusterEventTrackingServiceSql#getInsertEventWithIdSql()
+     */
+    public String getInsertEventWithIdSql() {
+        return null;
+    }
+
 }
@@ -41,14 +41,37 @@ public class ClusterEventTrackingServiceSqlOracle extends ClusterEventTrackingSe
    }
 
    /**
-    * returns the sql statement which retrieves an event from the sakai_event and sakai_session tables.
+    * returns the sql statement which retrieves the first events after an event id from the sakai_event and sakai_session tables.
     */
-	public String getEventSql()
+	public String getEventSql(int limit)
 	{
 	    // this now has Oracle specific hint to improve performance with large tables -ggolden
-	    return "select /*+ FIRST_ROWS */ SAKAI_EVENT.EVENT_ID,SAKAI_EVENT.EVENT_DATE,SAKAI_EVENT.EVENT,SAKAI_EVENT.REF,SAKAI_EVENT.SESSION_ID,SAKAI_EVENT.EVENT_CODE,SAKAI_EVENT.CONTEXT,SAKAI_SESSION.SESSION_SERVER "
+	    return "select * from (select /*+ FIRST_ROWS */ SAKAI_EVENT.EVENT_ID,SAKAI_EVENT.EVENT_DATE,SAKAI_EVENT.EVENT,SAKAI_EVENT.REF,SAKAI_EVENT.SESSION_ID,SAKAI_EVENT.EVENT_CODE,SAKAI_EVENT.CONTEXT,SAKAI_SESSION.SESSION_SERVER "
 	        + "from SAKAI_EVENT "
 	        + "left join SAKAI_SESSION ON SAKAI_EVENT.SESSION_ID = SAKAI_SESSION.SESSION_ID "
-	        + "where (SAKAI_EVENT.EVENT_ID > ?)";
+	        + "where (SAKAI_EVENT.EVENT_ID > ?) order by SAKAI_EVENT.EVENT_ID) where ROWNUM <= " + limit;
+	}
+
+	/**
+	 * The Oracle driver can not return generated keys for a batch, so reserve the ids up front in one round trip.
+	 */
+	public String getNextEventIdsSql()
+	{
+		return "select SAKAI_EVENT_SEQ.NEXTVAL from DUAL connect by level <= ?";
+	}
+
+	/**
+	 * returns the sql statement which inserts an event with an already reserved EVENT_ID into the sakai_event table.
+	 */
+	public String getInsertEventWithIdSql()
+	{
+		return "insert into SAKAI_EVENT (EVENT_ID,EVENT_DATE,EVENT,REF,SESSION_ID,EVENT_CODE,CONTEXT) " +
+		       "values      (?, " + // id reserved from the sequence
+		                    "?, " + // date
+		                    "?, " + // event
+		                    "?, " + // reference
+		                    "?, " + // session id
+		                    "?, " + // code
+		                    "?) ";  // context
 	}
 }
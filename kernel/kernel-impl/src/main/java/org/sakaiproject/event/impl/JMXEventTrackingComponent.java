@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sakaiproject.event.api.EventTrackingService;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Export the state of the event write queue over JMX.
+ */
+@ManagedResource(objectName="org.sakaiproject:name=EventTracking", description="Sakai Event Tracking queue data")
+public class JMXEventTrackingComponent {
+
+    private ClusterEventTracking clusterEventTracking;
+
+    @ManagedAttribute(description="Events waiting to be written to the database", currencyTimeLimit=0)
+    public int getEventQueueDepth() {
+        return clusterEventTracking != null ? clusterEventTracking.getEventQueueDepth() : 0;
+    }
+
+    @ManagedAttribute(description="Queue depth at which the events are written before the next period", currencyTimeLimit=600)
+    public int getMaxQueueDepth() {
+        return clusterEventTracking != null ? clusterEventTracking.getMaxQueueDepth() : 0;
+    }
+
+    @ManagedAttribute(description="Writes triggered by the queue reaching its maximum depth", currencyTimeLimit=0)
+    public long getEarlyFlushCount() {
+        return clusterEventTracking != null ? clusterEventTracking.getEarlyFlushCount() : 0;
+    }
+
+    @ManagedAttribute(description="Events written from the queue since startup", currencyTimeLimit=0)
+    public long getBatchEventsWritten() {
+        return clusterEventTracking != null ? clusterEventTracking.getBatchEventsWritten() : 0;
+    }
+
+    @ManagedAttribute(description="Time in ms taken to write the last drained batch", currencyTimeLimit=0)
+    public long getLastDrainMillis() {
+        return clusterEventTracking != null ? clusterEventTracking.getLastDrainMillis() : 0;
+    }
+
+    @ManagedAttribute(description="Time in ms taken to write the slowest drained batch", currencyTimeLimit=0)
+    public long getMaxDrainMillis() {
+        return clusterEventTracking != null ? clusterEventTracking.getMaxDrainMillis() : 0;
+    }
+
+    @ManagedAttribute(description="Queue depth, events delivered and processing time of each asynchronous observer", currencyTimeLimit=0)
+    public Map<String, String> getAsyncObservers() {
+        if (clusterEventTracking == null) return Collections.emptyMap();
+        Map<String, String> summary = new LinkedHashMap<>();
+        clusterEventTracking.getAsyncObserverMetrics().forEach((observer, metrics) ->
+                metrics.forEach((name, value) -> summary.put(observer + "." + name, value)));
+        return summary;
+    }
+
+    public void setEventTrackingService(EventTrackingService eventTrackingService) {
+        if (eventTrackingService instanceof ClusterEventTracking) {
+            this.clusterEventTracking = (ClusterEventTracking) eventTrackingService;
+        }
+    }
+
+}
@@ -21,8 +21,17 @@
 
 package org.sakaiproject.memory.impl;
 
+import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -32,11 +41,13 @@ import org.sakaiproject.memory.api.CacheStatistics;
 
 /**
  * Contains Hazelcast implementation related to a HC Map based cache.
+ * Reads go through the node's near cache for the map when one is configured.
  *
  * @author Aaron Zeckoski (azeckoski @ unicon.net) (azeckoski @ gmail.com)
  */
 public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
     private IMap<K, V> cache;
+    private NearCache<K, V> nearCache;
 
     /**
      * Construct the Cache
@@ -45,7 +56,18 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
      * @param hcMap the hazelcast Map (IMap)
      */
     public HazelcastCache(IMap hcMap) {
-        super(hcMap.getName(), hcMap);
+        this(hcMap, null);
+    }
+
+    /**
+     * @param hcMap the hazelcast Map (IMap)
+     * @param nearCache [OPTIONAL] the near cache of the map on this node, kept current by a {@link NearCacheInvalidator}
+     */
+    HazelcastCache(IMap hcMap, NearCache<K, V> nearCache) {
+        super(hcMap.getName());
+        //noinspection unchecked
+        this.cache = hcMap;
+        this.nearCache = nearCache;
     }
 
     @Override
@@ -53,6 +75,64 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
         return cache.getName();
     }
 
+    @Override
+    public void put(K key, V payload) {
+        cache.put(key, payload);
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        if (nearCache != null && nearCache.contains(key)) {
+            return true;
+        }
+        return cache.containsKey(key);
+    }
+
+    @Override
+    public V get(K key) {
+        if (nearCache == null) {
+            return cache.get(key);
+        }
+        V value = nearCache.get(key);
+        if (value == null) {
+            long version = nearCache.version(key);
+            value = cache.get(key);
+            nearCache.put(key, value, version);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean remove(K key) {
+        Object o = cache.remove(key);
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+        return (o != null);
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        if (nearCache != null) {
+            nearCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        clear();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> clazz) {
+        //noinspection unchecked
+        return (T) cache;
+    }
+
     @Override
     public void registerCacheEventListener(org.sakaiproject.memory.api.CacheEventListener cacheEventListener) {
         this.cacheEventListener = cacheEventListener;
@@ -60,7 +140,8 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     @Override
     public String getDescription() {
-        return "HCMap("+getName()+"):"+cache.getLocalMapStats(); // TODO we really want the cluster stats
+        return "HCMap("+getName()+"):"+cache.getLocalMapStats() // TODO we really want the cluster stats
+                + (nearCache != null ? ":" + nearCache : "");
     }
 
     @Override
@@ -73,12 +154,12 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
         return new CacheStatistics() {
             @Override
             public long getCacheHits() {
-                return 0;
-            } // TODO get real numbers
+                return nearCache != null ? nearCache.getHits() : 0;
+            } // TODO get real numbers without a near cache
             @Override
             public long getCacheMisses() {
-                return 0;
-            } // TODO get real numbers
+                return nearCache != null ? nearCache.getMisses() : 0;
+            } // TODO get real numbers without a near cache
         };
     }
 
@@ -87,6 +168,12 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
         Properties p = new Properties();
         p.put("name", getName());
         p.put("class", this.getClass().getSimpleName());
+        if (nearCache != null) {
+            p.put("nearCacheSize", nearCache.size());
+            p.put("nearCacheHits", nearCache.getHits());
+            p.put("nearCacheMisses", nearCache.getMisses());
+            p.put("nearCacheInvalidations", nearCache.getInvalidations());
+        }
         // TODO fill in more info about the cache (like stats)
         return p;
     }
@@ -95,14 +182,39 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     @Override
     public Map<K, V> getAll(Set<? extends K> keys) {
-        //noinspection unchecked
-        return cache.getAll((Set<K>) keys);
+        if (nearCache == null) {
+            //noinspection unchecked
+            return cache.getAll((Set<K>) keys);
+        }
+        Map<K, V> rv = new HashMap<>();
+        Map<K, Long> missing = new HashMap<>();
+        for (K key : keys) {
+            V value = nearCache.get(key);
+            if (value != null) {
+                rv.put(key, value);
+            } else {
+                missing.put(key, nearCache.version(key));
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<K, V> found = cache.getAll(missing.keySet());
+            for (Map.Entry<K, V> entry : found.entrySet()) {
+                nearCache.put(entry.getKey(), entry.getValue(), missing.get(entry.getKey()));
+            }
+            rv.putAll(found);
+        }
+        return rv;
     }
 
     @Override
     public void putAll(Map<? extends K, ? extends V> map) {
         //noinspection unchecked
         cache.putAll(map);
+        if (nearCache != null) {
+            for (K key : map.keySet()) {
+                nearCache.invalidate(key);
+            }
+        }
     }
 
     @Override
@@ -112,7 +224,7 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
                 if (key == null) {
                     throw new NullPointerException("keys Set for removeAll cannot contain nulls (but it does)");
                 }
-                cache.remove(key);
+                remove(key);
             }
         }
     }
@@ -120,6 +232,52 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
     @Override
     public void close() {
         this.cache.destroy();
+        if (nearCache != null) {
+            nearCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Drops the near cache entries of the keys that change anywhere in the cluster, including on this node.
+     * Added entries are ignored as the near cache never holds a key the map does not have.
+     */
+    static class NearCacheInvalidator<K, V> implements EntryUpdatedListener<K, V>, EntryRemovedListener<K, V>,
+            EntryEvictedListener<K, V>, EntryExpiredListener<K, V>, MapClearedListener, MapEvictedListener {
+        private final NearCache<K, V> nearCache;
+
+        NearCacheInvalidator(NearCache<K, V> nearCache) {
+            this.nearCache = nearCache;
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            nearCache.invalidateAll();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            nearCache.invalidateAll();
+        }
     }
 
 }
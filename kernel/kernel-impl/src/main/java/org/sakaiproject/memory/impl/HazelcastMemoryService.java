@@ -29,8 +29,11 @@ import com.hazelcast.core.DistributedObject;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.MembershipAdapter;
+import com.hazelcast.core.MembershipEvent;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -57,6 +60,10 @@ public class HazelcastMemoryService implements MemoryService {
     SecurityService securityService;
     HazelcastInstance hcInstance;
 
+    /** The near caches of this node by cache name, see {@link #getNearCache(IMap)} */
+    final Map<String, NearCache> nearCaches = new ConcurrentHashMap<>();
+    /** The registrations of the listeners invalidating the near caches by cache name */
+    final Map<String, String> nearCacheListeners = new ConcurrentHashMap<>();
 
     public HazelcastMemoryService() {}
 
@@ -65,10 +72,23 @@ public class HazelcastMemoryService implements MemoryService {
         this.serverConfigurationService = serverConfigurationService;
     }
 
+    /**
+     * @param hcInstance an already started member or client, used instead of the one init() would start
+     */
+    HazelcastMemoryService(ServerConfigurationService serverConfigurationService, HazelcastInstance hcInstance) {
+        this(serverConfigurationService);
+        this.hcInstance = hcInstance;
+    }
+
     /**
      * Service INIT
      */
     public void init() {
+        if (hcInstance != null) {
+            watchMembership();
+            log.info("INIT: " + hcInstance.getName() + " (injected), cache maps: " + hcInstance.getDistributedObjects());
+            return;
+        }
         String clientServers = serverConfigurationService.getString("memory.hc.server", null);
         boolean clientConfigured = StringUtils.isNotBlank(clientServers);
         if (clientConfigured) {
@@ -86,6 +106,7 @@ public class HazelcastMemoryService implements MemoryService {
         if (hcInstance == null) {
             throw new IllegalStateException("init(): HazelcastInstance is null!");
         }
+        watchMembership();
         log.info("INIT: " + hcInstance.getName() + " ("+(clientConfigured?"client:"+hcInstance.getClientService():"localServer")+"), cache maps: " + hcInstance.getDistributedObjects());
     }
 
@@ -93,6 +114,9 @@ public class HazelcastMemoryService implements MemoryService {
      * Service SHUTDOWN
      */
     public void destroy() {
+        invalidateNearCaches();
+        nearCaches.clear();
+        nearCacheListeners.clear();
         try {
             hcInstance.shutdown();
         } catch (CacheException e) {
@@ -119,12 +143,14 @@ public class HazelcastMemoryService implements MemoryService {
 
     @Override
     public <K, V, C extends Configuration<K, V>> Cache createCache(String cacheName, C configuration) {
-        return new HazelcastCache(makeHazelcastCache(cacheName, configuration));
+        IMap map = makeHazelcastCache(cacheName, configuration);
+        return new HazelcastCache(map, getNearCache(map));
     }
 
     @Override
     public Cache getCache(String cacheName) {
-        return new HazelcastCache(makeHazelcastCache(cacheName, null));
+        IMap map = makeHazelcastCache(cacheName, null);
+        return new HazelcastCache(map, getNearCache(map));
     }
 
     @Override
@@ -146,8 +172,16 @@ public class HazelcastMemoryService implements MemoryService {
         if (this.hcInstance != null) {
             IMap hcMap = this.hcInstance.getMap(cacheName);
             if (hcMap != null) {
+                String listener = nearCacheListeners.remove(cacheName);
+                if (listener != null) {
+                    hcMap.removeEntryListener(listener);
+                }
                 hcMap.destroy();
             }
+            NearCache nearCache = nearCaches.remove(cacheName);
+            if (nearCache != null) {
+                nearCache.invalidateAll();
+            }
         }
     }
 
@@ -175,11 +209,15 @@ public class HazelcastMemoryService implements MemoryService {
                 }
             }
         }
+        invalidateNearCaches();
     }
 
     @Override
     public void evictExpiredMembers() {
-        log.info("Eviction of expired members is meaningless for Hazelcast (so we are doing nothing)");
+        for (NearCache nearCache : nearCaches.values()) {
+            nearCache.evictExpired();
+        }
+        log.info("Eviction of expired members is meaningless for Hazelcast (so only the near caches were cleaned)");
     }
 
     @Override
@@ -207,7 +245,7 @@ public class HazelcastMemoryService implements MemoryService {
 
         // summary (cache descriptions)
         for (Map.Entry<String, IMap> entry : caches.entrySet()) {
-            Cache c = new HazelcastCache(entry.getValue());
+            Cache c = new HazelcastCache(entry.getValue(), nearCaches.get(entry.getKey()));
             buf.append(c.getDescription()).append("\n");
         }
 
@@ -388,6 +426,67 @@ public class HazelcastMemoryService implements MemoryService {
         return cache;
     }
 
+    /**
+     * Finds or makes the near cache of a map on this node. The near cache is configured with
+     * memory.{cacheName}.nearCache, or memory.hc.nearCache for every cache, like maxEntries=1000,timeToLive=60
+     *
+     * @param map the hazelcast map
+     * @return the near cache, or null if none is configured for the map
+     */
+    NearCache getNearCache(IMap map) {
+        String name = map.getName();
+        NearCache nearCache = nearCaches.get(name);
+        if (nearCache != null) {
+            return nearCache;
+        }
+        String config = serverConfigurationService.getString("memory." + name + ".nearCache",
+                serverConfigurationService.getString("memory.hc.nearCache", null));
+        try {
+            nearCache = NearCache.fromConfig(config);
+        } catch (IllegalArgumentException e) {
+            log.error("Failure configuring near cache (" + name + "): " + config + " :: " + e);
+            return null;
+        }
+        if (nearCache == null) {
+            return null;
+        }
+        synchronized (nearCaches) {
+            NearCache existing = nearCaches.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            //noinspection unchecked
+            nearCacheListeners.put(name, map.addEntryListener(new HazelcastCache.NearCacheInvalidator(nearCache), false));
+            nearCaches.put(name, nearCache);
+        }
+        log.info("Configured near cache (" + name + ") from Sakai config: " + config);
+        return nearCache;
+    }
+
+    /**
+     * Changes to entries owned by a member that leaves may never be reported, and entries move between members as
+     * they join, so the near caches start over whenever the cluster changes
+     */
+    private void watchMembership() {
+        hcInstance.getCluster().addMembershipListener(new MembershipAdapter() {
+            @Override
+            public void memberAdded(MembershipEvent membershipEvent) {
+                invalidateNearCaches();
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent membershipEvent) {
+                invalidateNearCaches();
+            }
+        });
+    }
+
+    private void invalidateNearCaches() {
+        for (NearCache nearCache : nearCaches.values()) {
+            nearCache.invalidateAll();
+        }
+    }
+
     public void setServerConfigurationService(ServerConfigurationService serverConfigurationService) {
         this.serverConfigurationService = serverConfigurationService;
     }
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded, per node copy of the most recently read entries of a distributed cache, so repeated reads of the same
+ * key do not go over the network. Entries live at most timeToLive seconds, and are dropped sooner when the
+ * distributed cache reports that they changed.
+ *
+ * The values are shared by every reader on the node, as they are with any local cache. Reads don't lock: the entries
+ * are kept in a segmented Guava cache, which drops the least recently read entries of a segment first.
+ */
+class NearCache<K, V> {
+    /** The number of version stripes, a power of two */
+    private static final int STRIPES = 1024;
+
+    private final int maxEntries;
+    private final long timeToLive;
+    private final Cache<K, V> entries;
+
+    /**
+     * The version of each key, kept in the stripe its hash falls in. It changes whenever the key is invalidated, so a
+     * value read before an invalidation is not kept after it, while puts of keys in other stripes go on.
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries the most entries to keep, least recently read are dropped first
+     * @param timeToLive the most seconds to keep an entry, 0 to keep it until it is invalidated
+     */
+    NearCache(int maxEntries, long timeToLive) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be greater than 0: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLive = Math.max(timeToLive, 0);
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maxEntries);
+        if (timeToLive > 0) {
+            builder.expireAfterWrite(timeToLive, TimeUnit.SECONDS);
+        }
+        this.entries = builder.build();
+    }
+
+    /**
+     * Parses a near cache configuration like maxEntries=1000,timeToLive=60
+     *
+     * @param config the configuration string
+     * @return the near cache, or null if the config is blank or does not allow any entries
+     */
+    static <K, V> NearCache<K, V> fromConfig(String config) {
+        if (StringUtils.isBlank(config)) {
+            return null;
+        }
+        int maxEntries = 0;
+        long timeToLive = 0;
+        for (String setting : StringUtils.split(config, ',')) {
+            String name = StringUtils.trim(StringUtils.substringBefore(setting, "="));
+            String value = StringUtils.trim(StringUtils.substringAfter(setting, "="));
+            if ("maxEntries".equalsIgnoreCase(name)) {
+                maxEntries = NumberUtils.toInt(value, 0);
+            } else if ("timeToLive".equalsIgnoreCase(name)) {
+                timeToLive = NumberUtils.toLong(value, 0);
+            } else {
+                throw new IllegalArgumentException("Unknown near cache setting (" + name + ") in: " + config);
+            }
+        }
+        return maxEntries > 0 ? new NearCache<>(maxEntries, timeToLive) : null;
+    }
+
+    /**
+     * @return the current version of the key, to pass to {@link #put(Object, Object, long)} after reading the value
+     */
+    long version(K key) {
+        return versions.get(stripe(key));
+    }
+
+    /**
+     * @return the value kept for the key, or null if there is none (counted as a miss)
+     */
+    V get(K key) {
+        V value = key != null ? entries.getIfPresent(key) : null;
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Keeps a value read from the distributed cache, unless the key was invalidated since the read started
+     *
+     * @param version the version of the key before the value was read
+     */
+    void put(K key, V value, long version) {
+        if (key == null || value == null) {
+            return;
+        }
+        int stripe = stripe(key);
+        // checked while the entry is locked, so an invalidation either rejects this put or removes what it stored
+        entries.asMap().compute(key, (k, current) -> versions.get(stripe) == version ? value : current);
+    }
+
+    boolean contains(K key) {
+        return key != null && entries.asMap().containsKey(key);
+    }
+
+    void invalidate(K key) {
+        versions.incrementAndGet(stripe(key));
+        entries.invalidate(key);
+        invalidations.increment();
+    }
+
+    void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        entries.invalidateAll();
+        invalidations.increment();
+    }
+
+    /**
+     * Drops the expired entries
+     */
+    void evictExpired() {
+        entries.cleanUp();
+    }
+
+    int size() {
+        return (int) entries.size();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache(maxEntries=" + maxEntries + ",timeToLive=" + timeToLive
+                + "):size=" + size() + ",hits=" + getHits() + ",misses=" + getMisses() + ",invalidations=" + getInvalidations();
+    }
+
+    private static int stripe(Object key) {
+        int h = key != null ? key.hashCode() : 0;
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -85,7 +85,8 @@ public class TaskServiceImpl implements TaskService, Observer {
 
         functionManager.registerFunction(TaskPermissions.CREATE_TASK, true);
 
-        eventTrackingService.addObserver(this);
+        // membership clean up only needs the event, so keep it off the request that changed the site
+        eventTrackingService.addAsyncObserver(this);
     }
 
     public void update(Observable o, Object arg) {
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.impl;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The users that have a registered session, indexed by the second of their most recent access, so the users active
+ * within a period are counted without visiting every session. A user stays in the index while any of their sessions
+ * is registered.
+ */
+class ActiveUsers
+{
+	/** Users that are never counted as active */
+	private static final String[] IGNORED_USERS = { "admin", "postmaster" };
+
+	/** How long a second stays open to late accesses before its bucket may be dropped once empty (seconds) */
+	private static final long PURGE_DELAY = 60;
+
+	/** The sessions and most recent access of each user, keyed by user id. */
+	private final Map<String, UserActivity> users = new ConcurrentHashMap<>();
+
+	/** The users whose most recent access falls in each second. */
+	private final NavigableMap<Long, Set<String>> bySecond = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Counts another session for a user
+	 *
+	 * @param userId
+	 *        The user, ignored if null.
+	 * @param accessed
+	 *        The last access time of the session.
+	 */
+	void add(String userId, long accessed)
+	{
+		if (isIgnored(userId)) return;
+
+		users.compute(userId, (id, user) -> {
+			if (user == null)
+			{
+				user = new UserActivity();
+			}
+			user.sessions++;
+			moveTo(id, user, accessed);
+			return user;
+		});
+	}
+
+	/**
+	 * Stops counting one of the sessions of a user, dropping the user with their last session
+	 */
+	void remove(String userId)
+	{
+		if (isIgnored(userId)) return;
+
+		users.computeIfPresent(userId, (id, user) -> {
+			if (--user.sessions > 0)
+			{
+				return user;
+			}
+			Set<String> bucket = bySecond.get(user.second);
+			if (bucket != null) bucket.remove(id);
+			return null;
+		});
+	}
+
+	/**
+	 * Records an access by a user, if any of their sessions is counted
+	 */
+	void accessed(String userId, long time)
+	{
+		if (isIgnored(userId)) return;
+
+		UserActivity user = users.get(userId);
+		// most accesses fall in the same second as the previous one
+		if (user == null || (time / 1000 == user.second && time <= user.accessed)) return;
+
+		users.computeIfPresent(userId, (id, u) -> {
+			moveTo(id, u, time);
+			return u;
+		});
+	}
+
+	/**
+	 * @return the number of users accessed less than the given number of seconds ago
+	 */
+	int count(int secs, long now)
+	{
+		long threshold = now - secs * 1000L;
+		long boundary = Math.floorDiv(threshold, 1000L);
+
+		Map.Entry<Long, Set<String>> oldest = bySecond.firstEntry();
+		if (oldest == null) return 0;
+		if (oldest.getKey() > boundary) return users.size();
+
+		int count = 0;
+		for (Set<String> bucket : bySecond.tailMap(boundary, false).values())
+		{
+			count += bucket.size();
+		}
+		// only the second the period starts in has users on both sides of it
+		Set<String> partial = bySecond.get(boundary);
+		if (partial != null)
+		{
+			for (String userId : partial)
+			{
+				UserActivity user = users.get(userId);
+				if (user != null && user.accessed > threshold) count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Drops the emptied buckets of seconds that can no longer receive accesses
+	 */
+	void purge(long now)
+	{
+		bySecond.headMap(now / 1000 - PURGE_DELAY).entrySet().removeIf(e -> e.getValue().isEmpty());
+	}
+
+	private void moveTo(String userId, UserActivity user, long time)
+	{
+		if (time <= user.accessed) return;
+
+		long second = time / 1000;
+		if (second != user.second)
+		{
+			bySecond.computeIfAbsent(second, s -> ConcurrentHashMap.newKeySet()).add(userId);
+			Set<String> previous = bySecond.get(user.second);
+			if (previous != null) previous.remove(userId);
+			user.second = second;
+		}
+		user.accessed = time;
+	}
+
+	private static boolean isIgnored(String userId)
+	{
+		if (userId == null) return true;
+		for (String ignored : IGNORED_USERS)
+		{
+			if (ignored.equals(userId)) return true;
+		}
+		return false;
+	}
+
+	private static class UserActivity
+	{
+		private int sessions;
+		private long accessed = Long.MIN_VALUE;
+		private long second = Long.MIN_VALUE;
+	}
+}
@@ -264,7 +264,12 @@ public class MySession implements Session, HttpSession, Serializable
 	 */
 	public void setUserId(String uid)
 	{
+		String previous = m_userId;
 		m_userId = uid;
+		if (sessionStore instanceof SessionComponent)
+		{
+			((SessionComponent) sessionStore).userChanged(this, previous);
+		}
 	}
 
 	/**
@@ -483,6 +488,10 @@ public class MySession implements Session, HttpSession, Serializable
 	{
 		m_accessed = System.currentTimeMillis();
 		updateExpirationTimeSuggestion();
+		if (sessionStore instanceof SessionComponent)
+		{
+			((SessionComponent) sessionStore).accessed(this);
+		}
 	}
 
 	protected void updateExpirationTimeSuggestion()
@@ -27,11 +27,14 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
@@ -78,6 +81,16 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	 * to determine if a session is invalid or not.
 	 */
 	protected Map<String,MutableLong> expirationTimeSuggestionMap = new ConcurrentHashMap<String, MutableLong>();
+	/**
+	 * The ids of the sessions to check for expiration, keyed by the time each is due to be checked.
+	 * Only the sessions that are due are visited by the maintenance thread. Guarded by itself,
+	 * along with expiryChecks.
+	 */
+	protected NavigableMap<Long, Set<String>> expiryIndex = new TreeMap<Long, Set<String>>();
+	/** The time each session in the expiryIndex is due to be checked, keyed by session id. */
+	protected Map<String, Long> expiryChecks = new HashMap<String, Long>();
+	/** The users with a session, by their last access. */
+	protected ActiveUsers activeUsers = new ActiveUsers();
 	/** The maintenance. */
 	protected Maintenance m_maintenance = null;
 	/** The set of tool ids that represent tools that can be clustered */
@@ -283,8 +296,13 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	}
 
 	public void remove(String sessionId) {
-		m_sessions.remove(sessionId);
+		Session s = m_sessions.remove(sessionId);
 		expirationTimeSuggestionMap.remove(sessionId);
+		unscheduleExpiryCheck(sessionId);
+		if (s != null)
+		{
+			activeUsers.remove(s.getUserId());
+		}
 	}
 
 	/**
@@ -365,7 +383,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 
 		// create a new MutableLong object representing the current time that both
 		// the Session and SessionManager can see.
-		MutableLong currentTime = currentTimeMutableLong();
+		MutableLong currentTime = expirationTimeSuggestion(id);
 
 		// create a new session
 		Session s = new MySession(this,id,threadLocalManager(),idManager(),this,sessionListener,m_defaultInactiveInterval,nPS,currentTime,rebuildBreakdownService());
@@ -375,6 +393,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 
 		// Place an entry in the expirationTimeSuggestionMap that corresponds to the entry in m_sessions
 		expirationTimeSuggestionMap.put(id, currentTime);
+		scheduleExpiryCheck(id, currentTime.longValue());
 
 		// check for id conflict
 		if (old != null)
@@ -390,6 +409,15 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		return new MutableLong(System.currentTimeMillis());
 	}
 
+	/**
+	 * @return the expiration time suggestion for a session to be registered, which brings its expiry check
+	 *         forward whenever the suggestion moves earlier
+	 */
+	protected MutableLong expirationTimeSuggestion(String id)
+	{
+		return new ExpirationTimeSuggestion(this, id, System.currentTimeMillis());
+	}
+
 	/**
 	 * @inheritDoc
 	 */
@@ -472,26 +500,126 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 	 */
 	public int getActiveUserCount(int secs)
 	{
-		Set<String> activeusers = new HashSet<String>(m_sessions.size());
+		// admin, postmaster and sessions without a user are not counted
+		return activeUsers.count(secs, System.currentTimeMillis());
+	}
+
+	/**
+	 * Called by a session when its user changes.
+	 */
+	protected void userChanged(Session s, String previousUserId)
+	{
+		// sessions that are not registered, such as those made for a single request, are not counted
+		if (m_sessions.get(s.getId()) != s || Objects.equals(previousUserId, s.getUserId())) return;
+
+		activeUsers.remove(previousUserId);
+		activeUsers.add(s.getUserId(), s.getLastAccessedTime());
+	}
+
+	/**
+	 * Called by a session when it is accessed.
+	 */
+	protected void accessed(Session s)
+	{
+		activeUsers.accessed(s.getUserId(), s.getLastAccessedTime());
+	}
+
+	/**
+	 * Checks a session for expiration once the given time has passed, instead of when it was due to be checked before.
+	 */
+	protected void scheduleExpiryCheck(String id, long time)
+	{
+		synchronized (expiryIndex)
+		{
+			unscheduleExpiryCheck(id);
+			expiryChecks.put(id, time);
+			expiryIndex.computeIfAbsent(time, t -> new HashSet<String>()).add(id);
+		}
+	}
 
-		long now = System.currentTimeMillis();
+	protected void unscheduleExpiryCheck(String id)
+	{
+		synchronized (expiryIndex)
+		{
+			Long time = expiryChecks.remove(id);
+			if (time != null)
+			{
+				Set<String> ids = expiryIndex.get(time);
+				ids.remove(id);
+				if (ids.isEmpty()) expiryIndex.remove(time);
+			}
+		}
+	}
 
-		for (Iterator<Session> i = m_sessions.values().iterator(); i.hasNext();)
+	/**
+	 * Called when the expiration time suggestion of a session changes, so a session whose inactive interval
+	 * was shortened is not checked any later than its new suggestion. Suggestions that move later need
+	 * nothing, the session is moved along the index when its current check comes up.
+	 */
+	protected void expirationTimeSuggested(String id, long time)
+	{
+		synchronized (expiryIndex)
 		{
-			MySession s = (MySession) i.next();
+			Long scheduled = expiryChecks.get(id);
+			if ((scheduled == null || time < scheduled) && expirationTimeSuggestionMap.containsKey(id))
+			{
+				scheduleExpiryCheck(id, time);
+			}
+		}
+	}
 
-			if ((now - s.getLastAccessedTime()) < (secs * 1000))
+	/**
+	 * Takes the sessions that are due to be checked for expiration out of the index.
+	 */
+	protected List<String> dueForExpiryCheck(long now)
+	{
+		List<String> due = new ArrayList<String>();
+		synchronized (expiryIndex)
+		{
+			NavigableMap<Long, Set<String>> head = expiryIndex.headMap(now, true);
+			for (Set<String> ids : head.values())
 			{
-				activeusers.add(s.getUserId());
+				for (String id : ids)
+				{
+					expiryChecks.remove(id);
+					due.add(id);
+				}
 			}
+			head.clear();
 		}
+		return due;
+	}
+
+	/**
+	 * Invalidates a session that is due for an expiry check if it is inactive, otherwise schedules its next check.
+	 */
+	protected void checkExpiry(String id, long now)
+	{
+		MySession s = (MySession) m_sessions.get(id);
+		MutableLong suggestion = expirationTimeSuggestionMap.get(id);
+		if (s == null || suggestion == null) return;
 
-		// Ignore admin and postmaster
-		activeusers.remove("admin");
-		activeusers.remove("postmaster");
-		activeusers.remove(null);
+		long suggested = suggestion.longValue();
+		if (suggested > now)
+		{
+			scheduleExpiryCheck(id, suggested);
+			return;
+		}
 
-		return activeusers.size();
+		if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
+		if (s.isInactive())
+		{
+			if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
+			synchronized(s) {
+				s.invalidate();
+			}
+		}
+		else if (s.getMaxInactiveInterval() > 0)
+		{
+			// the suggestion is only refreshed every half interval, the session expires at its last access plus the interval
+			scheduleExpiryCheck(id, Math.max(s.getLastAccessedTime() + s.getMaxInactiveInterval() * 1000L, now + 1));
+		}
+		// sessions that never expire are checked again when their interval is set, through their suggestion
 	}
 
 	public SessionAttributeListener getSessionListener() {
@@ -561,7 +689,7 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		}
 
 		/**
-		 * Run the maintenance thread. Every m_checkEvery seconds, check for expired sessions.
+		 * Run the maintenance thread. Every m_checkEvery seconds, check the sessions that are due for expiry.
 		 */
 		public void run()
 		{
@@ -571,26 +699,21 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 
 			while (!m_maintenanceCheckerStop)
 			{
-				try
+				long now = System.currentTimeMillis();
+				for (String id : dueForExpiryCheck(now))
 				{
-					for (Map.Entry<String, MutableLong> entry: expirationTimeSuggestionMap.entrySet()) {
-						if (entry.getValue().longValue() < System.currentTimeMillis()) {
-							MySession s = (MySession)m_sessions.get(entry.getKey());
-							if (log.isDebugEnabled()) log.debug("checking session " + s.getId());
-							if (s.isInactive())
-							{
-								if (log.isDebugEnabled()) log.debug("invalidating session " + s.getId());
-								synchronized(s) {
-									s.invalidate();
-								}
-							}
-						}
+					try
+					{
+						checkExpiry(id, now);
+					}
+					catch (Exception e)
+					{
+						log.warn("run(): exception: " + e);
+						// keep the session in the index, to be checked again on the next cycle
+						if (m_sessions.containsKey(id)) scheduleExpiryCheck(id, now + m_checkEvery * 1000L);
 					}
 				}
-				catch (Exception e)
-				{
-					log.warn("run(): exception: " + e);
-				}
+				activeUsers.purge(now);
 
 				// cycle every REFRESH seconds
 				if (!m_maintenanceCheckerStop)
@@ -607,4 +730,31 @@ public abstract class SessionComponent implements SessionManager, SessionStore
 		}
 	}
 
+	/**
+	 * The expiration time suggestion of a registered session, which tells the SessionComponent when it moves.
+	 */
+	protected static class ExpirationTimeSuggestion extends MutableLong
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final transient SessionComponent sessionComponent;
+		private final String sessionId;
+
+		public ExpirationTimeSuggestion(SessionComponent sessionComponent, String sessionId, long value)
+		{
+			super(value);
+			this.sessionComponent = sessionComponent;
+			this.sessionId = sessionId;
+		}
+
+		@Override
+		public void setValue(long value)
+		{
+			super.setValue(value);
+			if (sessionComponent != null)
+			{
+				sessionComponent.expirationTimeSuggested(sessionId, value);
+			}
+		}
+	}
 }
@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -57,6 +58,7 @@ import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.id.api.IdManager;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.tool.api.SessionBindingEvent;
 import org.sakaiproject.tool.api.SessionBindingListener;
@@ -82,6 +84,7 @@ import org.sakaiproject.user.api.UserPermissionException;
 import org.sakaiproject.user.api.UsersShareEmailUDP;
 import org.sakaiproject.util.BaseResourceProperties;
 import org.sakaiproject.util.BaseResourcePropertiesEdit;
+import org.sakaiproject.util.RequestFilter;
 import org.sakaiproject.util.StringUtil;
 import org.sakaiproject.util.Validator;
 import org.sakaiproject.util.api.FormattedText;
@@ -127,6 +130,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	/** A cache of users */
 	protected Cache<String, UserEdit> m_callCache = null;
 
+	/** Key for the current request's batch of user lookups */
+	protected final String M_lookupBatchKey = getClass().getName() + ".lookupBatch";
+
 	/** A cache of users' id/eid map */
 	protected Cache<String, String> m_userCache = null;
 
@@ -578,6 +584,11 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	 */
     protected abstract FormattedText formattedText();
 
+	/**
+	 * @return the ThreadLocalManager collaborator.
+	 */
+	protected abstract ThreadLocalManager threadLocalManager();
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Init and Destroy
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -842,6 +853,19 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 		if (id == null) throw new UserNotDefinedException("null");
 
+		// see if it was looked up, or is waiting to be looked up, with others in this request
+		UserLookupBatch batch = getLookupBatch(false);
+		if (batch != null)
+		{
+			if (batch.isQueued(id))
+			{
+				lookUpBatch(batch);
+			}
+			User batched = batch.get(id);
+			batch.lookedUp(batched != null);
+			if (batched != null) return batched;
+		}
+
 		// see if we've done this already in this thread
 		String ref = userReference(id);
 		UserEdit user = getCachedUser(ref);
@@ -950,12 +974,15 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		// a list of User (edits) setup to check with the provider
 		Collection<UserEdit> fromProvider = new Vector<UserEdit>();
 
+		// the users already cached, read all at once
+		Map<String, UserEdit> cached = getCachedUsers(searchIds);
+
 		// for each requested id
 		for (String id : searchIds)
 		{
 			// see if we've done this already in this thread
 			String ref = userReference(id);
-			UserEdit user = getCachedUser(ref);
+			UserEdit user = cached.get(id);
 			if (user == null)
 			{
 				// find our user record
@@ -1003,6 +1030,70 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		return rv;
 	}
 	
+	/**
+	 * @inheritDoc
+	 */
+	public Map<String, User> getUsersById(Collection<String> ids)
+	{
+		Map<String, User> rv = new HashMap<>();
+		for (Object user : getUsers(ids))
+		{
+			rv.put(((User) user).getId(), (User) user);
+		}
+		return rv;
+	}
+
+	/**
+	 * @inheritDoc
+	 */
+	public void queueUsers(Collection<String> ids)
+	{
+		UserLookupBatch batch = getLookupBatch(true);
+		if (batch == null || ids == null) return;
+
+		List<String> cleanIds = new ArrayList<>(ids.size());
+		for (String id : ids)
+		{
+			id = cleanId(id);
+			if (id != null) cleanIds.add(id);
+		}
+		batch.queue(cleanIds);
+	}
+
+	/**
+	 * Access the batch of user lookups of the current request. Only requests get one, as their thread locals are cleared when they end.
+	 *
+	 * @param create
+	 *        true to start a batch if the request does not have one yet.
+	 * @return The batch, or null if there is none.
+	 */
+	protected UserLookupBatch getLookupBatch(boolean create)
+	{
+		ThreadLocalManager threadLocalManager = threadLocalManager();
+		if (threadLocalManager == null || threadLocalManager.get(RequestFilter.CURRENT_HTTP_REQUEST) == null) return null;
+
+		UserLookupBatch batch = (UserLookupBatch) threadLocalManager.get(M_lookupBatchKey);
+		if (batch == null && create)
+		{
+			batch = new UserLookupBatch();
+			threadLocalManager.set(M_lookupBatchKey, batch);
+		}
+		return batch;
+	}
+
+	/**
+	 * Look up all the queued ids of a batch at once: one read of the call cache, one query for the rest and one call to the provider for those it provides.
+	 */
+	protected void lookUpBatch(UserLookupBatch batch)
+	{
+		Set<String> ids = batch.drain();
+		List<User> users = getUsers(ids);
+		batch.resolved(ids, users);
+
+		log.debug("lookUpBatch: found {} of {} users, {} batches of {} ids and {} of {} lookups from batches in this request", users.size(), ids.size(),
+				batch.getBatches(), batch.getBatchedIds(), batch.getBatchedLookups(), batch.getLookups());
+	}
+
 	/**
 	 * @see org.sakaiproject.user.api.UserDirectoryService#getUsersByEids(java.util.Collection)
 	 */
@@ -1858,6 +1949,31 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 		return userEdit;
 	}
 
+	/**
+	 * Read the cached users of a bunch of ids at once.
+	 *
+	 * @return The cached users, keyed by user id.
+	 */
+	protected Map<String, UserEdit> getCachedUsers(Collection<String> ids)
+	{
+		Map<String, UserEdit> rv = new HashMap<>();
+		if (m_callCache == null || ids.isEmpty()) return rv;
+
+		Map<String, String> idsByRef = new HashMap<>();
+		for (String id : ids)
+		{
+			idsByRef.put(userReference(id), id);
+		}
+		for (Map.Entry<String, UserEdit> entry : m_callCache.getAll(idsByRef.keySet()).entrySet())
+		{
+			if (entry.getValue() != null)
+			{
+				rv.put(idsByRef.get(entry.getKey()), entry.getValue());
+			}
+		}
+		return rv;
+	}
+
 	protected void putCachedUser(String ref, UserEdit user)
 	{
 		// KNL-1241 removed caching in threadlocal
@@ -1874,6 +1990,13 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 			m_callCache.remove(ref);
 		}
 
+		UserLookupBatch batch = getLookupBatch(false);
+		String root = userReference("");
+		if (batch != null && ref.startsWith(root))
+		{
+			batch.forget(ref.substring(root.length()));
+		}
+
 		if (m_userCache != null && StringUtils.isNotBlank(eid))
 		{
 			m_userCache.remove(IDCACHE + eid);
@@ -663,10 +663,11 @@ public abstract class DbUserService extends BaseUserDirectoryService
 			List<User> foundUsers = new ArrayList<User>();
 
 			// Put all the already cached user records to one side.
+			Map<String, UserEdit> cachedUsers = getCachedUsers(ids);
 			Set<String> idsToSearch = new HashSet<String>();
 			for (String id : ids)
 			{
-				UserEdit cachedUser = getCachedUser(userReference(id));
+				UserEdit cachedUser = cachedUsers.get(id);
 				if (cachedUser != null)
 				{
 					foundUsers.add(cachedUser);
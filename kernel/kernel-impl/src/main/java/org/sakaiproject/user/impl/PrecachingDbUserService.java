@@ -24,14 +24,16 @@ package org.sakaiproject.user.impl;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
 import lombok.extern.slf4j.Slf4j;
 
-import org.sakaiproject.user.api.UserNotDefinedException;
+import org.sakaiproject.user.api.User;
 
 /**
  * This will refresh the user cache based on configuration options,
@@ -61,6 +63,11 @@ public abstract class PrecachingDbUserService extends DbUserService
     boolean logUsersAccessed = false;
     boolean logUsersNotAccessed = true;
 
+    /**
+     * How many users are removed from the cache and looked up again at once
+     */
+    private static final int REFRESH_BATCH_SIZE = 500;
+
     /**
      * Query to retrieve all distinct userIds from all sites
      */
@@ -181,49 +188,53 @@ public abstract class PrecachingDbUserService extends DbUserService
             List<String> notAccessedUsers = new ArrayList<String>();
 
             long totalTime = 0;
-            for (String userId : userIds) {
+            for (int from = 0; from < userIds.size(); from += REFRESH_BATCH_SIZE) {
+                List<String> batch = userIds.subList(from, Math.min(from + REFRESH_BATCH_SIZE, userIds.size()));
 
-                // clear existing cache entry
-                String key = makeUserRef(userId);
-                if (log.isDebugEnabled()) {
-                    log.debug("doCacheRefresh(): NEW key==[" + key + "] in cache? before removing:  " + m_callCache.containsKey(key));
+                // clear the existing cache entries of the batch
+                Set<String> keys = new HashSet<String>();
+                for (String userId : batch) {
+                    keys.add(makeUserRef(userId));
                 }
-                if (m_callCache.containsKey(key)) {
-                    m_callCache.remove(key);
-                    removedCount++;
-                    if (logUsersRemoved) {
-                        removedUsers.add(userId);
-                    }
-                } else {
-                    notRemovedCount++;
-                    if (logUsersNotRemoved) {
-                        notRemovedUsers.add(userId);
+                Set<String> cachedKeys = m_callCache.getAll(keys).keySet();
+                m_callCache.removeAll(keys);
+                for (String userId : batch) {
+                    if (cachedKeys.contains(makeUserRef(userId))) {
+                        removedCount++;
+                        if (logUsersRemoved) {
+                            removedUsers.add(userId);
+                        }
+                    } else {
+                        notRemovedCount++;
+                        if (logUsersNotRemoved) {
+                            notRemovedUsers.add(userId);
+                        }
                     }
                 }
+
+                // redo the lookup of the batch, all at once, which will reload the cache
+                long before = System.currentTimeMillis();
+                Set<String> foundIds = new HashSet<String>();
+                for (Object user : getUsers(batch)) {
+                    foundIds.add(((User) user).getId());
+                }
+                long after = System.currentTimeMillis();
+                totalTime += after - before;
                 if (log.isDebugEnabled()) {
-                    log.debug("doCacheRefresh(): NEW key==[" + key + "] in cache? after removing:  " + m_callCache.containsKey(key));
+                    log.debug("doCacheRefresh(): recached " + foundIds.size() + " of " + batch.size() + " users in " + (after - before) + " milliseconds");
                 }
 
-                // redo the lookup of this user which will reload the cache
-                try {
-                    long before = System.currentTimeMillis();
-                    if (log.isDebugEnabled()) {
-                        log.debug("doCacheRefresh(): key==[" + key + "] in cache? before accessing:  " + m_callCache.containsKey(key));
-                    }
-                    getUser(userId);
-                    if (log.isDebugEnabled()) {
-                        log.debug("doCacheRefresh(): key==[" + key + "] in cache? after accessing:  " + m_callCache.containsKey(key));
-                    }
-                    long after = System.currentTimeMillis();
-                    totalTime += after - before;
-                    accessedCount++;
-                    if (logUsersAccessed) {
-                        accessedUsers.add(userId);
-                    }
-                } catch (UserNotDefinedException e) {
-                    notAccessedCount++;
-                    if (logUsersNotAccessed) {
-                        notAccessedUsers.add(userId);
+                for (String userId : batch) {
+                    if (foundIds.contains(userId)) {
+                        accessedCount++;
+                        if (logUsersAccessed) {
+                            accessedUsers.add(userId);
+                        }
+                    } else {
+                        notAccessedCount++;
+                        if (logUsersNotAccessed) {
+                            notAccessedUsers.add(userId);
+                        }
                     }
                 }
             }
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.sakaiproject.user.api.User;
+
+/**
+ * The user lookups of one request. Ids queued by a tool are looked up together the first time any of them is needed,
+ * and the users found are kept for the rest of the request, along with the ids that were not found.
+ */
+class UserLookupBatch
+{
+	/** Ids waiting to be looked up, in the order they were queued. */
+	private final Set<String> queued = new LinkedHashSet<>();
+
+	/** Users looked up in a batch, keyed by user id. */
+	private final Map<String, User> resolved = new HashMap<>();
+
+	/** Ids looked up in a batch that no user has. */
+	private final Set<String> missing = new HashSet<>();
+
+	/** Lookups of single users made during the request */
+	private int lookups;
+
+	/** Lookups of single users answered by a batch */
+	private int batchedLookups;
+
+	/** Batches looked up during the request */
+	private int batches;
+
+	/** Ids looked up in batches during the request */
+	private int batchedIds;
+
+	/**
+	 * Queues ids that have not been looked up in this request yet.
+	 */
+	void queue(Collection<String> ids)
+	{
+		for (String id : ids)
+		{
+			if (!resolved.containsKey(id) && !missing.contains(id))
+			{
+				queued.add(id);
+			}
+		}
+	}
+
+	boolean isQueued(String id)
+	{
+		return queued.contains(id);
+	}
+
+	/**
+	 * @return the queued ids, which are no longer queued
+	 */
+	Set<String> drain()
+	{
+		Set<String> ids = new LinkedHashSet<>(queued);
+		queued.clear();
+		return ids;
+	}
+
+	/**
+	 * Records the result of looking up a batch of ids.
+	 */
+	void resolved(Collection<String> ids, Collection<? extends User> users)
+	{
+		for (User user : users)
+		{
+			resolved.put(user.getId(), user);
+		}
+		for (String id : ids)
+		{
+			if (!resolved.containsKey(id)) missing.add(id);
+		}
+		batches++;
+		batchedIds += ids.size();
+	}
+
+	/**
+	 * @return the user looked up in a batch, or null
+	 */
+	User get(String id)
+	{
+		return resolved.get(id);
+	}
+
+	/**
+	 * Forgets a user that has been changed, so it is looked up again.
+	 */
+	void forget(String id)
+	{
+		resolved.remove(id);
+		missing.remove(id);
+	}
+
+	/**
+	 * Counts a lookup of a single user.
+	 *
+	 * @param fromBatch
+	 *        true if the lookup was answered by a batch
+	 */
+	void lookedUp(boolean fromBatch)
+	{
+		lookups++;
+		if (fromBatch) batchedLookups++;
+	}
+
+	int getLookups()
+	{
+		return lookups;
+	}
+
+	int getBatchedLookups()
+	{
+		return batchedLookups;
+	}
+
+	int getBatches()
+	{
+		return batches;
+	}
+
+	int getBatchedIds()
+	{
+		return batchedIds;
+	}
+}
@@ -0,0 +1,13 @@
+-----------------------------------------------------------------------------
+-- CONTENT_CONTEXT_USAGE
+-- Running totals of the resources in each quota area (/group/, /user/, /group-user/) of a context
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_CONTEXT_USAGE
+(
+	CONTEXT VARCHAR (99) NOT NULL,
+	AREA VARCHAR (32) NOT NULL,
+	BYTES BIGINT NOT NULL,
+	FILES INTEGER NOT NULL,
+	PRIMARY KEY (CONTEXT, AREA)
+);
@@ -0,0 +1,13 @@
+-----------------------------------------------------------------------------
+-- CONTENT_CONTEXT_USAGE
+-- Running totals of the resources in each quota area (/group/, /user/, /group-user/) of a context
+-----------------------------------------------------------------------------
+
+CREATE TABLE CONTENT_CONTEXT_USAGE
+(
+	CONTEXT VARCHAR2 (99) NOT NULL,
+	AREA VARCHAR2 (32) NOT NULL,
+	BYTES NUMBER(18) NOT NULL,
+	FILES NUMBER(10) NOT NULL,
+	PRIMARY KEY (CONTEXT, AREA)
+);
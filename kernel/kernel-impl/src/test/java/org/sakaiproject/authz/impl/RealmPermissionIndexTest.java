@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.authz.api.Member;
+
+/**
+ * Checks the permission index against the rules of the SAKAI_REALM_RL_FN count query.
+ */
+public class RealmPermissionIndexTest
+{
+	protected static final String SITE = "/site/big";
+	private static final String GROUP = "/site/big/group/g1";
+	protected static final int MEMBERS = 5000;
+
+	protected RealmPermissionIndex index;
+	private AtomicLong now = new AtomicLong();
+
+	@Before
+	public void setUp()
+	{
+		index = new RealmPermissionIndex(Arrays.asList("site.visit", "content.read", "site.upd"), 100, 60000, now::get);
+
+		BaseRole student = role("access", "site.visit", "content.read");
+		BaseRole instructor = role("maintain", "site.visit", "content.read", "site.upd");
+		BaseRole anon = role(AuthzGroupService.ANON_ROLE, "content.read");
+
+		Map<String, BaseRole> roles = new HashMap<>();
+		roles.put(student.getId(), student);
+		roles.put(instructor.getId(), instructor);
+		roles.put(anon.getId(), anon);
+
+		Map<String, Member> grants = new HashMap<>();
+		for (int i = 0; i < MEMBERS; i++)
+		{
+			grants.put("student" + i, new BaseMember(student, true, false, "student" + i, null));
+		}
+		grants.put("teacher", new BaseMember(instructor, true, false, "teacher", null));
+		grants.put("inactive", new BaseMember(instructor, false, false, "inactive", null));
+		index.index(SITE, 1, roles, grants);
+
+		// the group grants nothing to its own members
+		Map<String, BaseRole> groupRoles = new HashMap<>();
+		groupRoles.put("access", role("access"));
+		index.index(GROUP, 2, groupRoles, Collections.singletonMap("teacher", new BaseMember(groupRoles.get("access"), true, false, "teacher", null)));
+	}
+
+	@Test
+	public void testMemberRoles()
+	{
+		Set<String> auth = Collections.singleton(AuthzGroupService.AUTH_ROLE);
+		Assert.assertTrue(index.isAllowed("student1", auth, "site.visit", Collections.singleton(SITE)));
+		Assert.assertFalse(index.isAllowed("student1", auth, "site.upd", Collections.singleton(SITE)));
+		Assert.assertTrue(index.isAllowed("teacher", auth, "site.upd", Collections.singleton(SITE)));
+		Assert.assertFalse(index.isAllowed("inactive", auth, "site.upd", Collections.singleton(SITE)));
+		Assert.assertFalse(index.isAllowed("stranger", auth, "site.visit", Collections.singleton(SITE)));
+	}
+
+	@Test
+	public void testEmptyRoles()
+	{
+		Set<String> anon = Collections.singleton(AuthzGroupService.ANON_ROLE);
+		Assert.assertTrue(index.isAllowed(null, anon, "content.read", Collections.singleton(SITE)));
+		Assert.assertFalse(index.isAllowed(null, anon, "site.visit", Collections.singleton(SITE)));
+	}
+
+	@Test
+	public void testRoleCarriesAcrossRealms()
+	{
+		// the teacher's role in the group is checked in the site too, and the site role in the group
+		List<String> realms = Arrays.asList(GROUP, SITE);
+		Assert.assertTrue(index.isAllowed("teacher", Collections.emptySet(), "site.upd", realms));
+		Assert.assertTrue(index.isAllowed("student2", Collections.emptySet(), "content.read", realms));
+	}
+
+	@Test
+	public void testUnknownRealmAndFunction()
+	{
+		Assert.assertNull(index.isAllowed("student1", Collections.emptySet(), "site.visit", Arrays.asList(SITE, "/site/other")));
+		Assert.assertFalse(index.isAllowed("teacher", Collections.emptySet(), "no.such.function", Collections.singleton(SITE)));
+
+		index.invalidate(SITE);
+		Assert.assertNull(index.isAllowed("student1", Collections.emptySet(), "site.visit", Collections.singleton(SITE)));
+		Assert.assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testMaxRealms()
+	{
+		RealmPermissionIndex small = new RealmPermissionIndex(Collections.emptyList(), 2, 60000);
+		for (int i = 0; i < 5; i++)
+		{
+			small.index("/site/s" + i, i, Collections.emptyMap(), Collections.emptyMap());
+		}
+		Assert.assertEquals(2, small.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDropped()
+	{
+		RealmPermissionIndex small = new RealmPermissionIndex(Collections.emptyList(), 2, 60000);
+		small.index("/site/a", 1, Collections.emptyMap(), Collections.emptyMap());
+		small.index("/site/b", 2, Collections.emptyMap(), Collections.emptyMap());
+		// a is used after b was read, so b goes
+		Assert.assertNotNull(small.isAllowed("user", Collections.emptySet(), "site.visit", Collections.singleton("/site/a")));
+		small.index("/site/c", 3, Collections.emptyMap(), Collections.emptyMap());
+		Assert.assertNotNull(small.isAllowed("user", Collections.emptySet(), "site.visit", Collections.singleton("/site/a")));
+		Assert.assertNull(small.isAllowed("user", Collections.emptySet(), "site.visit", Collections.singleton("/site/b")));
+		Assert.assertNotNull(small.isAllowed("user", Collections.emptySet(), "site.visit", Collections.singleton("/site/c")));
+	}
+
+	@Test
+	public void testExpires()
+	{
+		Assert.assertTrue(index.isAllowed("teacher", Collections.emptySet(), "site.upd", Collections.singleton(SITE)));
+		now.addAndGet(60000);
+		Assert.assertNull(index.isAllowed("teacher", Collections.emptySet(), "site.upd", Collections.singleton(SITE)));
+		Assert.assertEquals(1, index.size());
+	}
+
+	@Test
+	public void testInvalidateKeys()
+	{
+		// as after the provider changed a user's role in the group
+		index.invalidateKeys(Arrays.asList(2, 99));
+		Assert.assertNull(index.isAllowed("teacher", Collections.emptySet(), "site.upd", Collections.singleton(GROUP)));
+		Assert.assertNotNull(index.isAllowed("teacher", Collections.emptySet(), "site.upd", Collections.singleton(SITE)));
+	}
+
+	private BaseRole role(String id, String... functions)
+	{
+		BaseRole role = new BaseRole(id);
+		role.allowFunctions(Arrays.asList(functions));
+		return role;
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.authz.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.db.impl.BasicSqlServiceSqlHSql;
+import org.sakaiproject.db.impl.SqlServiceSql;
+import org.sakaiproject.db.impl.SqlServiceTest;
+
+/**
+ * Compares isAllowed answered from the permission index with the SAKAI_REALM_RL_FN count query DbAuthzGroupService runs
+ * for realms it hasn't indexed, on the same large site. Not part of the default build, run it with
+ * -Dtest=RealmPermissionIndexTestPerf.
+ */
+@Slf4j
+public class RealmPermissionIndexTestPerf extends RealmPermissionIndexTest
+{
+	private static final String[] FUNCTIONS = {"site.visit", "content.read", "site.upd"};
+	private static final int AUTH_ROLE_KEY = 4;
+
+	private SqlServiceTest sqlService;
+	private Connection conn;
+
+	@Before
+	public void setUpDatabase() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:realmindex;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		sqlService = new SqlServiceTest();
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+
+		// the tables and indexes of sakai_realm.sql, with the realms, roles and grants indexed by setUp
+		conn = sqlService.borrowConnection();
+		conn.setAutoCommit(false);
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE SAKAI_REALM (REALM_KEY INTEGER NOT NULL PRIMARY KEY, REALM_ID VARCHAR(255) NOT NULL UNIQUE)");
+			stmt.execute("CREATE TABLE SAKAI_REALM_FUNCTION (FUNCTION_KEY INTEGER NOT NULL PRIMARY KEY, FUNCTION_NAME VARCHAR(99) NOT NULL UNIQUE)");
+			stmt.execute("CREATE TABLE SAKAI_REALM_RL_FN (REALM_KEY INTEGER NOT NULL, ROLE_KEY INTEGER NOT NULL, FUNCTION_KEY INTEGER NOT NULL, "
+					+ "PRIMARY KEY (REALM_KEY, ROLE_KEY, FUNCTION_KEY))");
+			stmt.execute("CREATE INDEX FK_SAKAI_REALM_RL_FN_REALM ON SAKAI_REALM_RL_FN (REALM_KEY)");
+			stmt.execute("CREATE INDEX FK_SAKAI_REALM_RL_FN_FUNC ON SAKAI_REALM_RL_FN (FUNCTION_KEY)");
+			stmt.execute("CREATE INDEX FJ_SAKAI_REALM_RL_FN_ROLE ON SAKAI_REALM_RL_FN (ROLE_KEY)");
+			stmt.execute("CREATE TABLE SAKAI_REALM_RL_GR (REALM_KEY INTEGER NOT NULL, USER_ID VARCHAR(99) NOT NULL, ROLE_KEY INTEGER NOT NULL, "
+					+ "ACTIVE CHAR(1), PROVIDED CHAR(1), PRIMARY KEY (REALM_KEY, USER_ID))");
+			stmt.execute("CREATE INDEX FK_SAKAI_REALM_RL_GR_REALM ON SAKAI_REALM_RL_GR (REALM_KEY)");
+			stmt.execute("CREATE INDEX FK_SAKAI_REALM_RL_GR_ROLE ON SAKAI_REALM_RL_GR (ROLE_KEY)");
+			stmt.execute("CREATE INDEX IE_SAKAI_REALM_RL_GR_ACT ON SAKAI_REALM_RL_GR (ACTIVE)");
+			stmt.execute("CREATE INDEX IE_SAKAI_REALM_RL_GR_USR ON SAKAI_REALM_RL_GR (USER_ID)");
+
+			stmt.execute("INSERT INTO SAKAI_REALM VALUES (1, '" + SITE + "')");
+			for (int i = 0; i < FUNCTIONS.length; i++)
+			{
+				stmt.execute("INSERT INTO SAKAI_REALM_FUNCTION VALUES (" + (i + 1) + ", '" + FUNCTIONS[i] + "')");
+			}
+			// access (1): site.visit, content.read; maintain (2): all three; .anon (3): content.read
+			stmt.execute("INSERT INTO SAKAI_REALM_RL_FN VALUES (1, 1, 1), (1, 1, 2), (1, 2, 1), (1, 2, 2), (1, 2, 3), (1, 3, 2)");
+		}
+		try (PreparedStatement grant = conn.prepareStatement("INSERT INTO SAKAI_REALM_RL_GR VALUES (1, ?, ?, ?, '0')"))
+		{
+			for (int i = 0; i < MEMBERS; i++)
+			{
+				addGrant(grant, "student" + i, 1, "1");
+			}
+			addGrant(grant, "teacher", 2, "1");
+			addGrant(grant, "inactive", 2, "0");
+			grant.executeBatch();
+		}
+		conn.commit();
+	}
+
+	@After
+	public void tearDownDatabase() throws Exception
+	{
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		sqlService.returnConnection(conn);
+	}
+
+	@Test
+	public void testLookupRate()
+	{
+		Set<String> auth = Collections.singleton(AuthzGroupService.AUTH_ROLE);
+		List<String> realms = Collections.singletonList(SITE);
+		Set<Integer> roleKeys = Collections.singleton(AUTH_ROLE_KEY);
+		// as DbAuthzGroupService builds it for one realm with orInClause
+		String statement = new DbAuthzGroupSqlHSql().getCountRealmRoleFunctionSql(roleKeys, " SAKAI_REALM.REALM_ID IN (?)");
+
+		int checks = 20_000;
+		int indexAllowed = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < checks; i++)
+		{
+			if (index.isAllowed("student" + (i % MEMBERS), auth, function(i), realms)) indexAllowed++;
+		}
+		long indexNanos = System.nanoTime() - start;
+
+		int sqlAllowed = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < checks; i++)
+		{
+			// the fields in the order DbAuthzGroupService sets them for databases other than Oracle
+			Object[] fields = {SITE, function(i), "student" + (i % MEMBERS), SITE, AUTH_ROLE_KEY};
+			List<String> count = sqlService.dbRead(conn, statement, fields, null);
+			if (Integer.parseInt(count.get(0)) > 0) sqlAllowed++;
+		}
+		long sqlNanos = System.nanoTime() - start;
+
+		Assert.assertEquals(checks / 2, indexAllowed);
+		Assert.assertEquals(indexAllowed, sqlAllowed);
+		log.info("{} isAllowed checks on a {} member site: index {} ns per check, count query {} ns per check",
+				checks, MEMBERS, indexNanos / checks, sqlNanos / checks);
+	}
+
+	private static String function(int i)
+	{
+		return (i & 1) == 0 ? "site.visit" : "site.upd";
+	}
+
+	private static void addGrant(PreparedStatement grant, String userId, int roleKey, String active) throws Exception
+	{
+		grant.setString(1, userId);
+		grant.setInt(2, roleKey);
+		grant.setString(3, active);
+		grant.addBatch();
+	}
+}
@@ -29,16 +29,25 @@ import org.sakaiproject.authz.api.FunctionManager;
 import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Collections.singleton;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
 import static org.hamcrest.collection.IsIterableContainingInAnyOrder.containsInAnyOrder;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -57,6 +66,8 @@ public class SakaiSecurityTest {
     @Mock private MemoryService memoryService;
     @Mock private ServerConfigurationService serverConfigurationService;
     @Mock private EventTrackingService eventTrackingService;
+    @Mock private SessionManager sessionManager;
+    @Mock private ThreadLocalManager threadLocalManager;
 
 
     private SakaiSecurity sakaiSecurity;
@@ -70,6 +81,8 @@ public class SakaiSecurityTest {
         sakaiSecurity.setMemoryService(memoryService);
         sakaiSecurity.setServerConfigurationService(serverConfigurationService);
         sakaiSecurity.setEventTrackingService(eventTrackingService);
+        sakaiSecurity.setSessionManager(sessionManager);
+        sakaiSecurity.setThreadLocalManager(threadLocalManager);
 
         // Always return default
         when(serverConfigurationService.getString(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(1));
@@ -150,4 +163,58 @@ public class SakaiSecurityTest {
         assertThat(flushed, containsInAnyOrder("unlock@1@@function@/site/1", "unlock@2@@function@/site/1"));
     }
 
+    @Test
+    public void testUnlockUsersAsksOnceForCacheMisses() {
+
+        Cache cache = mock(Cache.class);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.cache")).thenReturn(cache);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.superCache")).thenReturn(mock(Cache.class));
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.contentCache")).thenReturn(mock(Cache.class));
+        when(sessionManager.getCurrentSession()).thenReturn(mock(Session.class));
+        sakaiSecurity.init();
+
+        Reference reference = mock(Reference.class);
+        when(entityManager.newReference("/site/1")).thenReturn(reference);
+        when(reference.getAuthzGroups(anyString())).thenReturn(singleton("/site/1"));
+
+        // user1 is already cached, user2 and user3 have to be looked up
+        when(cache.getAll(any())).thenReturn(Collections.singletonMap("unlock@user1@@function@/site/1", Boolean.TRUE));
+        when(authzGroupService.filterUsersIsAllowed(any(), eq("function"), any())).thenReturn(singleton("user2"));
+        Map<String, Boolean> cached = new HashMap<>();
+        doAnswer(s -> { cached.putAll(s.getArgument(0)); return null; }).when(cache).putAll(any());
+
+        Map<String, Boolean> allowed = sakaiSecurity.unlock(Arrays.asList("user1", "user2", "user3"), "function", "/site/1");
+
+        assertEquals(Boolean.TRUE, allowed.get("user1"));
+        assertEquals(Boolean.TRUE, allowed.get("user2"));
+        assertEquals(Boolean.FALSE, allowed.get("user3"));
+        verify(authzGroupService, times(1)).filterUsersIsAllowed(any(), eq("function"), any());
+        verify(authzGroupService, never()).isAllowed(anyString(), eq("function"), any(Collection.class));
+        assertEquals(2, cached.size());
+        assertEquals(Boolean.FALSE, cached.get("unlock@user3@@function@/site/1"));
+    }
+
+    @Test
+    public void testUnlockFunctions() {
+
+        Cache cache = mock(Cache.class);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.cache")).thenReturn(cache);
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.superCache")).thenReturn(mock(Cache.class));
+        when(memoryService.getCache("org.sakaiproject.authz.api.SecurityService.contentCache")).thenReturn(mock(Cache.class));
+        when(sessionManager.getCurrentSession()).thenReturn(mock(Session.class));
+        sakaiSecurity.init();
+
+        Reference reference = mock(Reference.class);
+        when(entityManager.newReference("/site/1")).thenReturn(reference);
+        when(reference.getAuthzGroups("user1")).thenReturn(singleton("/site/1"));
+        when(cache.getAll(any())).thenReturn(Collections.emptyMap());
+        when(authzGroupService.getFunctionsIsAllowed(eq("user1"), any(), any())).thenReturn(singleton("function1"));
+
+        Map<String, Boolean> allowed = sakaiSecurity.unlockFunctions("user1", new HashSet<>(Arrays.asList("function1", "function2")), "/site/1");
+
+        assertEquals(Boolean.TRUE, allowed.get("function1"));
+        assertEquals(Boolean.FALSE, allowed.get("function2"));
+        verify(authzGroupService, times(1)).getFunctionsIsAllowed(eq("user1"), any(), any());
+    }
+
 }
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.content.impl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.content.api.ContentHostingService;
+import org.sakaiproject.db.impl.BasicSqlServiceSqlHSql;
+import org.sakaiproject.db.impl.SqlServiceSql;
+import org.sakaiproject.db.impl.SqlServiceTest;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+
+public class ContentUsageCountersTest
+{
+	private SqlServiceTest sqlService;
+	private ContentUsageCounters counters;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:contentusage;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		ThreadLocalManager threadLocalManager = new ThreadLocalComponent();
+		sqlService = new SqlServiceTest()
+		{
+			// transactions keep their connection in a thread local
+			protected ThreadLocalManager threadLocalManager()
+			{
+				return threadLocalManager;
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+
+		sqlService.dbWrite("CREATE TABLE CONTENT_RESOURCE (RESOURCE_ID VARCHAR(255) NOT NULL PRIMARY KEY, IN_COLLECTION VARCHAR(255), "
+				+ "CONTEXT VARCHAR(99), FILE_SIZE BIGINT)");
+		sqlService.dbWrite("CREATE TABLE CONTENT_CONTEXT_USAGE (CONTEXT VARCHAR(99) NOT NULL, AREA VARCHAR(32) NOT NULL, "
+				+ "BYTES BIGINT NOT NULL, FILES INTEGER NOT NULL, PRIMARY KEY (CONTEXT, AREA))");
+
+		store("/group/site1/a.txt", "site1", 100);
+		store("/group/site1/folder/b.txt", "site1", 200);
+		store("/group-user/site1/user1/c.txt", "site1", 50);
+		store("/user/user1/d.txt", "~user1", 70);
+
+		counters = new ContentUsageCounters(sqlService, new ContentServiceSqlHSql());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		Connection conn = sqlService.borrowConnection();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		sqlService.returnConnection(conn);
+	}
+
+	@Test
+	public void testTotalsComputedWhenFirstNeeded()
+	{
+		Assert.assertEquals(300, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+		Assert.assertEquals(50, counters.getBytes("site1", ContentHostingService.COLLECTION_DROPBOX));
+		Assert.assertEquals(70, counters.getBytes("~user1", ContentHostingService.COLLECTION_USER));
+		Assert.assertEquals(0, counters.getBytes("site2", ContentHostingService.COLLECTION_SITE));
+	}
+
+	@Test
+	public void testWritesAdjustTotals()
+	{
+		counters.getBytes("site1", ContentHostingService.COLLECTION_SITE);
+
+		// a new resource is stored empty, then committed with its body
+		String id = "/group/site1/e.txt";
+		store(id, "site1", 0);
+		counters.adjust("site1", id, 0, 1);
+		Object[] stored = counters.readResource(id);
+		sqlService.dbWrite("update CONTENT_RESOURCE set FILE_SIZE = ? where RESOURCE_ID = ?", new Object[] {1000L, id});
+		Assert.assertTrue(counters.replace(stored, counters.readResource(id), id));
+		Assert.assertEquals(1300, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+
+		// and removed
+		stored = counters.readResource("/group/site1/a.txt");
+		sqlService.dbWrite("delete from CONTENT_RESOURCE where RESOURCE_ID = ?", new Object[] {"/group/site1/a.txt"});
+		Assert.assertTrue(counters.replace(stored, counters.readResource("/group/site1/a.txt"), "/group/site1/a.txt"));
+		Assert.assertEquals(1200, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+
+		// nothing has drifted
+		Assert.assertEquals(0, counters.reconcileAll());
+	}
+
+	@Test
+	public void testTotalsRolledBackWithWrite()
+	{
+		counters.getBytes("site1", ContentHostingService.COLLECTION_SITE);
+
+		String id = "/group/site1/f.txt";
+		try
+		{
+			sqlService.transact(() -> {
+				store(id, "site1", 500);
+				counters.adjust("site1", id, 500, 1);
+				throw new IllegalStateException("write failed");
+			}, "test");
+			Assert.fail();
+		}
+		catch (IllegalStateException expected)
+		{
+		}
+
+		Assert.assertNull(counters.readResource(id));
+		Assert.assertEquals(300, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+		Assert.assertEquals(0, counters.reconcileAll());
+	}
+
+	@Test
+	public void testFailedWriteChangesNothing()
+	{
+		counters.getBytes("site1", ContentHostingService.COLLECTION_SITE);
+
+		// the resource write failed quietly, so what is stored after is what was stored before
+		Object[] stored = counters.readResource("/group/site1/a.txt");
+		Assert.assertTrue(counters.replace(stored, counters.readResource("/group/site1/a.txt"), "/group/site1/a.txt"));
+		Assert.assertEquals(300, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+
+		// and a failed totals write is reported
+		sqlService.dbWrite("DROP TABLE CONTENT_CONTEXT_USAGE");
+		Assert.assertFalse(counters.adjust("site1", "/group/site1/a.txt", 10, 0));
+	}
+
+	@Test
+	public void testReconcileCorrectsDrift()
+	{
+		counters.getBytes("site1", ContentHostingService.COLLECTION_SITE);
+		sqlService.dbWrite("update CONTENT_CONTEXT_USAGE set BYTES = 5 where CONTEXT = 'site1' and AREA = '/group/'");
+
+		Assert.assertEquals(5, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+		Assert.assertEquals(1, counters.reconcileAll());
+		Assert.assertEquals(300, counters.getBytes("site1", ContentHostingService.COLLECTION_SITE));
+	}
+
+	private void store(String id, String context, long size)
+	{
+		String collection = id.substring(0, id.lastIndexOf('/') + 1);
+		sqlService.dbWrite("insert into CONTENT_RESOURCE (RESOURCE_ID, IN_COLLECTION, CONTEXT, FILE_SIZE) values (?, ?, ?, ?)",
+				new Object[] {id, collection, context, size});
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.event.impl.ClusterEventTrackingServiceSqlHSql;
+
+/**
+ * Checks dbInsertBatch for the SAKAI_EVENT insert, which is what ClusterEventTracking does for each
+ * batch when cluster caching is enabled.
+ */
+public class BatchInsertTest
+{
+	protected SqlServiceTest sqlService;
+	protected Connection conn;
+	protected String insertSql;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:batchinsert;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		sqlService = new SqlServiceTest();
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+
+		conn = sqlService.borrowConnection();
+		conn.setAutoCommit(false);
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE SAKAI_EVENT (EVENT_ID BIGINT NOT NULL PRIMARY KEY, EVENT_DATE TIMESTAMP, EVENT VARCHAR(32), "
+					+ "REF VARCHAR(255), CONTEXT VARCHAR(255), SESSION_ID VARCHAR(163), EVENT_CODE VARCHAR(1))");
+			stmt.execute("CREATE SEQUENCE SAKAI_EVENT_SEQ");
+		}
+		conn.commit();
+
+		insertSql = new ClusterEventTrackingServiceSqlHSql().getInsertEventSql();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		sqlService.returnConnection(conn);
+	}
+
+	@Test
+	public void testBatchKeysMatchRows() throws Exception
+	{
+		List<Long> keys = sqlService.dbInsertBatch(conn, insertSql, events(50), "EVENT_ID");
+		conn.commit();
+
+		Assert.assertNotNull(keys);
+		Assert.assertEquals(50, keys.size());
+		Assert.assertEquals(50, new HashSet<>(keys).size());
+		Assert.assertEquals(50, sqlService.dbRead(conn, "select EVENT_ID from SAKAI_EVENT", null, null).size());
+	}
+
+	protected List<Object[]> events(int count)
+	{
+		List<Object[]> rv = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			rv.add(new Object[] {new Date(), "content.read", "/content/group/site" + i + "/file.txt", "session" + i, "a", "site" + i});
+		}
+		return rv;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares individual dbInsert calls with a single dbInsertBatch for the SAKAI_EVENT insert.
+ * Not part of the default build, run it with -Dtest=BatchInsertTestPerf.
+ */
+@Slf4j
+public class BatchInsertTestPerf extends BatchInsertTest
+{
+	private static final int EVENTS_PER_RUN = 5000;
+
+	@Test
+	public void testBatchThroughput() throws Exception
+	{
+		for (int batchSize : new int[] {1, 50, 500})
+		{
+			long single = run(batchSize, false);
+			long batched = run(batchSize, true);
+			log.info("batch size {}: individual inserts {} events/sec, batched insert {} events/sec",
+					batchSize, eventsPerSecond(single), eventsPerSecond(batched));
+		}
+	}
+
+	private long run(int batchSize, boolean batched) throws Exception
+	{
+		long start = System.nanoTime();
+		for (int written = 0; written < EVENTS_PER_RUN; written += batchSize)
+		{
+			List<Object[]> batch = events(batchSize);
+			if (batched)
+			{
+				Assert.assertEquals(batchSize, sqlService.dbInsertBatch(conn, insertSql, batch, "EVENT_ID").size());
+			}
+			else
+			{
+				for (Object[] fields : batch)
+				{
+					Assert.assertNotNull(sqlService.dbInsert(conn, insertSql, fields, "EVENT_ID"));
+				}
+			}
+			conn.commit();
+		}
+		return System.nanoTime() - start;
+	}
+
+	private long eventsPerSecond(long nanos)
+	{
+		return EVENTS_PER_RUN * 1_000_000_000L / Math.max(nanos, 1);
+	}
+}
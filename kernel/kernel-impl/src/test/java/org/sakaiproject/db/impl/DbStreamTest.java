@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.sakaiproject.db.api.SqlReaderFinishedException;
+
+public class DbStreamTest
+{
+	private static final int ROWS = 2000;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private SqlServiceTest sqlService;
+	private Connection conn;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:dbstream;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		sqlService = new SqlServiceTest()
+		{
+			@Override
+			public Connection borrowConnection() throws SQLException
+			{
+				outstanding.incrementAndGet();
+				return super.borrowConnection();
+			}
+
+			@Override
+			public void returnConnection(Connection conn)
+			{
+				outstanding.decrementAndGet();
+				super.returnConnection(conn);
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+		sqlService.setStreamFetchSize("100");
+
+		conn = dataSource.getConnection();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE STREAM_TEST (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(32))");
+			for (int i = 0; i < ROWS; i++)
+			{
+				stmt.execute("INSERT INTO STREAM_TEST VALUES (" + i + ", 'name" + i + "')");
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		conn.close();
+	}
+
+	@Test
+	public void testStreamsEveryRecord()
+	{
+		try (Stream<Integer> ids = sqlService.dbStream("select ID from STREAM_TEST where ID >= ? order by ID", new Object[] {10}, result -> {
+			try
+			{
+				return result.getInt(1);
+			}
+			catch (SQLException e)
+			{
+				return null;
+			}
+		}))
+		{
+			Assert.assertEquals(1, outstanding.get());
+			List<Integer> read = ids.collect(Collectors.toList());
+			Assert.assertEquals(ROWS - 10, read.size());
+			Assert.assertEquals(Integer.valueOf(10), read.get(0));
+		}
+		Assert.assertEquals(0, outstanding.get());
+	}
+
+	@Test
+	public void testWithoutReaderStreamsFirstColumn()
+	{
+		try (Stream<String> names = sqlService.dbStream("select NAME from STREAM_TEST order by ID", null, null))
+		{
+			Assert.assertEquals("name0", names.findFirst().orElse(null));
+		}
+		Assert.assertEquals(0, outstanding.get());
+	}
+
+	@Test
+	public void testReaderCanFinishEarly()
+	{
+		try (Stream<Integer> ids = sqlService.dbStream("select ID from STREAM_TEST order by ID", null, result -> {
+			try
+			{
+				int id = result.getInt(1);
+				if (id >= 5) throw new SqlReaderFinishedException();
+				return id;
+			}
+			catch (SQLException e)
+			{
+				return null;
+			}
+		}))
+		{
+			Assert.assertEquals(5, ids.count());
+		}
+		Assert.assertEquals(0, outstanding.get());
+	}
+
+	@Test
+	public void testBadSqlGivesEmptyStreamAndReturnsConnection()
+	{
+		try (Stream<String> names = sqlService.dbStream("select NOPE from NO_SUCH_TABLE", null, null))
+		{
+			Assert.assertEquals(0, names.count());
+		}
+		Assert.assertEquals(0, outstanding.get());
+	}
+}
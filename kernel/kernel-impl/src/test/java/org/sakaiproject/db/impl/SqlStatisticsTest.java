@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.db.impl;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SqlStatisticsTest
+{
+	@Test
+	public void testFingerprintCollapsesLiteralsAndInLists()
+	{
+		Assert.assertEquals("select NAME from T where ID = ? and KIND = ?", SqlStatistics.fingerprint("select NAME\n  from T where ID = 42 and KIND = 'it''s'"));
+		Assert.assertEquals(SqlStatistics.fingerprint("select * from T1 where A IN (?)"), SqlStatistics.fingerprint("select * from T1 where A in (?, ?,?)"));
+		Assert.assertEquals("insert into T values (?, ?)", SqlStatistics.fingerprint("insert into T values (?, ?), (?, ?), (?, ?)"));
+	}
+
+	@Test
+	public void testFingerprintCollapsesOrInClause()
+	{
+		String small = "select R.REALM_ID from SAKAI_REALM R where" + orInClause(3, "R.REALM_ID");
+		String large = "select R.REALM_ID from SAKAI_REALM R where" + orInClause(2500, "R.REALM_ID");
+		String larger = "select R.REALM_ID from SAKAI_REALM R where" + orInClause(4200, "R.REALM_ID");
+
+		Assert.assertEquals(SqlStatistics.fingerprint(large), SqlStatistics.fingerprint(larger));
+		Assert.assertEquals("select R.REALM_ID from SAKAI_REALM R where ( R.REALM_ID IN (?...) )", SqlStatistics.fingerprint(large));
+		Assert.assertEquals("select R.REALM_ID from SAKAI_REALM R where R.REALM_ID IN (?...)", SqlStatistics.fingerprint(small));
+	}
+
+	@Test
+	public void testRecordAndSort()
+	{
+		SqlStatistics statistics = new SqlStatistics();
+		statistics.setSlowQueryMillis(100);
+		for (int i = 0; i < 10; i++)
+		{
+			statistics.record("select A from T where ID = " + i, 1_000_000L, 0, 1, false);
+		}
+		statistics.record("update T set A = ?", 250_000_000L, 5_000_000L, 3, false);
+		statistics.record("update T set A = ?", 1_000_000L, 0, 0, true);
+
+		Assert.assertEquals(2, statistics.getStatementCount());
+		Assert.assertEquals(1, statistics.getSlowCount());
+		Assert.assertEquals(5, statistics.getBorrowWaitMillis());
+
+		List<SqlStatistics.StatementStatistics> byCount = statistics.getStatements("count", 0);
+		Assert.assertEquals("select A from T where ID = ?", byCount.get(0).getFingerprint());
+		Assert.assertEquals(10, byCount.get(0).getCount());
+		Assert.assertEquals(10, byCount.get(0).getRows());
+
+		SqlStatistics.StatementStatistics update = statistics.getStatements("total", 1).get(0);
+		Assert.assertEquals("update T set A = ?", update.getFingerprint());
+		Assert.assertEquals(1, update.getErrors());
+		Assert.assertEquals(1, update.getSlowCount());
+		Assert.assertEquals(251, update.getTotalMillis());
+		Assert.assertTrue(update.getMaxMillis() >= 200);
+
+		statistics.reset();
+		Assert.assertEquals(0, statistics.getStatementCount());
+	}
+
+	@Test
+	public void testOverflowIsCountedTogether()
+	{
+		SqlStatistics statistics = new SqlStatistics();
+		statistics.setMaxStatements(2);
+		statistics.record("select A from T1", 1000, 0, 0, false);
+		statistics.record("select A from T2", 1000, 0, 0, false);
+		statistics.record("select A from T3", 1000, 0, 0, false);
+		statistics.record("select A from T4", 1000, 0, 0, false);
+
+		Assert.assertEquals(3, statistics.getStatementCount());
+		Assert.assertEquals(2, statistics.getStatements("count", 1).get(0).getCount());
+		Assert.assertEquals(SqlStatistics.OTHER, statistics.getStatements("count", 1).get(0).getFingerprint());
+	}
+
+	@Test
+	public void testSqlServiceRecordsStatements() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:sqlstatistics;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		SqlServiceTest sqlService = new SqlServiceTest();
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+
+		Connection conn = sqlService.borrowConnection();
+		try
+		{
+			try (Statement stmt = conn.createStatement())
+			{
+				stmt.execute("CREATE TABLE STATS_TEST (ID INT NOT NULL PRIMARY KEY, NAME VARCHAR(32))");
+			}
+			for (int i = 0; i < 5; i++)
+			{
+				sqlService.dbWrite(conn, "insert into STATS_TEST values (?, ?)", new Object[] {i, "name" + i});
+			}
+			sqlService.dbRead(conn, "select NAME from STATS_TEST where ID in (?, ?, ?)", new Object[] {1, 2, 3}, null);
+			sqlService.dbRead(conn, "select NAME from STATS_TEST where ID in (?, ?)", new Object[] {1, 2}, null);
+			sqlService.dbRead(conn, "select NAME from NO_SUCH_TABLE", null, null);
+
+			SqlStatistics statistics = sqlService.getStatistics();
+			Assert.assertEquals(3, statistics.getStatementCount());
+			for (SqlStatistics.StatementStatistics stats : statistics.getStatements("count", 0))
+			{
+				switch (stats.getFingerprint())
+				{
+					case "insert into STATS_TEST values (?, ?)":
+						Assert.assertEquals(5, stats.getCount());
+						Assert.assertEquals(5, stats.getRows());
+						break;
+					case "select NAME from STATS_TEST where ID IN (?...)":
+						Assert.assertEquals(2, stats.getCount());
+						Assert.assertEquals(5, stats.getRows());
+						break;
+					default:
+						Assert.assertEquals("select NAME from NO_SUCH_TABLE", stats.getFingerprint());
+						Assert.assertEquals(1, stats.getErrors());
+				}
+			}
+		}
+		finally
+		{
+			try (Statement stmt = conn.createStatement())
+			{
+				stmt.execute("SHUTDOWN");
+			}
+			sqlService.returnConnection(conn);
+		}
+	}
+
+	/**
+	 * The in clause DbAuthzGroupService builds for large lists, which splits into ORed in lists of at most 1000.
+	 */
+	private String orInClause(int size, String field)
+	{
+		StringBuilder buf = new StringBuilder();
+		int ors = size / 1000;
+		int leftover = size - (ors * 1000);
+		if (ors > 0) buf.append(" (");
+		buf.append(" " + field + " IN ");
+		for (int i = 0; i < ors; i++)
+		{
+			buf.append("(?");
+			for (int j = 1; j < 1000; j++) buf.append(",?");
+			buf.append(")");
+			if (i < ors - 1) buf.append(" OR " + field + " IN ");
+		}
+		if (leftover > 0)
+		{
+			if (ors > 0) buf.append(" OR " + field + " IN ");
+			buf.append("(?");
+			for (int i = 1; i < leftover; i++) buf.append(",?");
+			buf.append(")");
+		}
+		if (ors > 0) buf.append(" )");
+		return buf.toString();
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that an AsyncObserver keeps the posting thread free, the events in order and none lost.
+ */
+public class AsyncObserverTest
+{
+	@Test
+	public void testSlowObserverDoesNotHoldPoster() throws Exception
+	{
+		Object release = new Object();
+		Observer blocked = (o, arg) -> {
+			synchronized (release)
+			{
+				// nothing, just wait until the test lets go
+			}
+		};
+		Observable observable = new Observable();
+		AsyncObserver async = new AsyncObserver(blocked, observable, 100);
+
+		synchronized (release)
+		{
+			long start = System.nanoTime();
+			for (int i = 0; i < 100; i++)
+			{
+				async.update(observable, i);
+			}
+			// the worker is stuck on the first event, the rest are queued and the poster returned
+			Assert.assertTrue(System.nanoTime() - start < 1_000_000_000L);
+		}
+		async.stop(10000);
+		Assert.assertEquals(100, async.getDelivered());
+	}
+
+	@Test
+	public void testOrderKeptWhenQueueFull() throws Exception
+	{
+		List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+		Observer slow = (o, arg) -> {
+			try
+			{
+				Thread.sleep(1);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			seen.add(arg);
+		};
+		Observable observable = new Observable();
+		AsyncObserver async = new AsyncObserver(slow, observable, 4);
+
+		List<Object> posted = new ArrayList<>();
+		for (int i = 0; i < 200; i++)
+		{
+			posted.add(i);
+			async.update(observable, i);
+		}
+		async.stop(10000);
+
+		// the queue filled up, so the poster waited rather than delivering out of turn
+		Assert.assertNotEquals("0", async.getMetrics().get("posterWaits"));
+		Assert.assertEquals(posted, seen);
+	}
+
+	@Test
+	public void testEventPostedByObserver() throws Exception
+	{
+		List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+		Observable observable = new Observable();
+		AsyncObserver[] async = new AsyncObserver[1];
+		Observer reposting = (o, arg) -> {
+			seen.add(arg);
+			if ((Integer) arg < 10)
+			{
+				// the observer posts an event of its own while its queue is full
+				async[0].update(o, (Integer) arg + 100);
+			}
+		};
+		async[0] = new AsyncObserver(reposting, observable, 1);
+		for (int i = 0; i < 10; i++)
+		{
+			async[0].update(observable, i);
+		}
+		async[0].stop(10000);
+
+		Assert.assertEquals(20, seen.size());
+		Assert.assertEquals(0, seen.get(0));
+		Assert.assertEquals(100, seen.get(1));
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.event.impl;
+
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Posts a large number of events at a deliberately slow observer, checking none are lost
+ * and reporting how long the posting thread was held up compared with the observer.
+ * Not part of the default build, run it with -Dtest=AsyncObserverTestPerf.
+ */
+@Slf4j
+public class AsyncObserverTestPerf
+{
+	private static final int EVENTS = 1_000_000;
+
+	/** An observer that takes a couple of microseconds per event. */
+	private static class SlowObserver implements Observer
+	{
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong sum = new AtomicLong();
+
+		public void update(Observable o, Object arg)
+		{
+			long until = System.nanoTime() + 2_000;
+			while (System.nanoTime() < until)
+			{
+				Thread.onSpinWait();
+			}
+			count.incrementAndGet();
+			sum.addAndGet((Integer) arg);
+		}
+	}
+
+	@Test
+	public void testMillionEventsSlowObserver() throws Exception
+	{
+		SlowObserver slow = new SlowObserver();
+		Observable observable = new Observable();
+		AsyncObserver async = new AsyncObserver(slow, observable, 10000);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++)
+		{
+			async.update(observable, i);
+		}
+		long posting = System.nanoTime() - start;
+
+		async.stop(60000);
+		long total = System.nanoTime() - start;
+
+		Assert.assertEquals(EVENTS, slow.count.get());
+		Assert.assertEquals((long) EVENTS * (EVENTS - 1) / 2, slow.sum.get());
+		Assert.assertEquals(EVENTS, async.getDelivered());
+		Assert.assertEquals(0, async.getQueueDepth());
+		log.info("posted {} events in {} ms, observer finished after {} ms, metrics {}",
+				EVENTS, posting / 1_000_000, total / 1_000_000, async.getMetrics());
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.impl;
+
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.memory.api.Cache;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs two Hazelcast members in this JVM, each with its own memory service, to check that a change made through
+ * one member reaches the near cache of the other.
+ */
+public class HazelcastNearCacheTest {
+
+	private static final String CACHE = "org.sakaiproject.memory.impl.HazelcastNearCacheTest.cache";
+
+	private HazelcastInstance member1;
+	private HazelcastInstance member2;
+	private HazelcastMemoryService service1;
+	private HazelcastMemoryService service2;
+
+	@Before
+	public void setUp() {
+		ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+		when(serverConfigurationService.getString(anyString(), any())).thenAnswer(i -> i.getArgument(1));
+		when(serverConfigurationService.getString(eq("memory." + CACHE + ".nearCache"), any())).thenReturn("maxEntries=100,timeToLive=300");
+
+		member1 = Hazelcast.newHazelcastInstance(memberConfig("member1"));
+		member2 = Hazelcast.newHazelcastInstance(memberConfig("member2"));
+		assertTrue("members did not join", member1.getCluster().getMembers().size() == 2);
+
+		service1 = new HazelcastMemoryService(serverConfigurationService, member1);
+		service1.init();
+		service2 = new HazelcastMemoryService(serverConfigurationService, member2);
+		service2.init();
+	}
+
+	@After
+	public void tearDown() {
+		service1.destroy();
+		service2.destroy();
+	}
+
+	@Test
+	public void testRepeatedReadsAreServedByTheNearCache() throws Exception {
+		Cache<String, String> cache = service1.getCache(CACHE);
+		cache.put("key", "value");
+
+		// the event of the put may still invalidate the first read
+		assertEventually(() -> "value".equals(cache.get("key")) && cache.getCacheStatistics().getCacheHits() > 0);
+		assertTrue(cache.getCacheStatistics().getCacheMisses() > 0);
+	}
+
+	@Test
+	public void testUpdateOnAnotherMemberInvalidates() throws Exception {
+		Cache<String, String> cache1 = service1.getCache(CACHE);
+		Cache<String, String> cache2 = service2.getCache(CACHE);
+		cache2.put("key", "old");
+		assertEquals("old", cache1.get("key"));
+
+		cache2.put("key", "new");
+		assertEventually(() -> "new".equals(cache1.get("key")));
+	}
+
+	@Test
+	public void testRemoveAndClearOnAnotherMemberInvalidate() throws Exception {
+		Cache<String, String> cache1 = service1.getCache(CACHE);
+		Cache<String, String> cache2 = service2.getCache(CACHE);
+		cache2.put("key1", "value1");
+		cache2.put("key2", "value2");
+		assertEquals("value1", cache1.get("key1"));
+		assertEquals("value2", cache1.get("key2"));
+
+		cache2.remove("key1");
+		assertEventually(() -> cache1.get("key1") == null);
+
+		cache2.clear();
+		assertEventually(() -> cache1.get("key2") == null);
+		assertTrue(service1.nearCaches.get(CACHE).getInvalidations() >= 2);
+	}
+
+	@Test
+	public void testCachesWithoutConfigurationHaveNoNearCache() {
+		Cache<String, String> cache = service1.getCache(CACHE + ".other");
+		cache.put("key", "value");
+		assertEquals("value", cache.get("key"));
+
+		assertNull(service1.nearCaches.get(CACHE + ".other"));
+		assertEquals(0, cache.getCacheStatistics().getCacheHits());
+	}
+
+	private static Config memberConfig(String name) {
+		Config config = new Config();
+		config.setInstanceName("HazelcastNearCacheTest-" + name);
+		config.getGroupConfig().setName("HazelcastNearCacheTest");
+		config.setProperty("hazelcast.phone.home.enabled", "false");
+		JoinConfig join = config.getNetworkConfig().getJoin();
+		join.getMulticastConfig().setEnabled(false);
+		join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+		return config;
+	}
+
+	private static void assertEventually(Callable<Boolean> condition) throws Exception {
+		long until = System.currentTimeMillis() + 10000;
+		while (!condition.call()) {
+			assertTrue("condition not met within 10 seconds", System.currentTimeMillis() < until);
+			Thread.sleep(50);
+		}
+	}
+}
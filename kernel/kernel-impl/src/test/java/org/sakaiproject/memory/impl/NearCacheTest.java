@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.memory.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NearCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		NearCache<String, String> nearCache = new NearCache<>(10, 0);
+		assertNull(nearCache.get("a"));
+		nearCache.put("a", "1", nearCache.version("a"));
+
+		assertEquals("1", nearCache.get("a"));
+		assertEquals(1, nearCache.getHits());
+		assertEquals(1, nearCache.getMisses());
+	}
+
+	@Test
+	public void testLeastRecentlyReadEntriesAreDropped() {
+		NearCache<String, String> nearCache = new NearCache<>(2, 0);
+		nearCache.put("a", "1", nearCache.version("a"));
+		nearCache.put("b", "2", nearCache.version("b"));
+		nearCache.get("a");
+		nearCache.put("c", "3", nearCache.version("c"));
+
+		assertEquals(2, nearCache.size());
+		assertEquals("1", nearCache.get("a"));
+		assertNull(nearCache.get("b"));
+	}
+
+	@Test
+	public void testValuesReadBeforeAnInvalidationAreNotKept() {
+		NearCache<String, String> nearCache = new NearCache<>(10, 0);
+		long versionOfA = nearCache.version("a");
+		long versionOfB = nearCache.version("b");
+		nearCache.invalidate("a");
+		nearCache.put("a", "1", versionOfA);
+		nearCache.put("b", "2", versionOfB);
+
+		assertNull(nearCache.get("a"));
+		assertEquals("2", nearCache.get("b"));
+		assertEquals(1, nearCache.getInvalidations());
+	}
+
+	@Test
+	public void testInvalidateAll() {
+		NearCache<String, String> nearCache = new NearCache<>(10, 0);
+		nearCache.put("a", "1", nearCache.version("a"));
+		nearCache.put("b", "2", nearCache.version("b"));
+		long version = nearCache.version("c");
+		nearCache.invalidateAll();
+		nearCache.put("c", "3", version);
+
+		assertEquals(0, nearCache.size());
+	}
+
+	@Test
+	public void testFromConfig() {
+		assertNull(NearCache.fromConfig(null));
+		assertNull(NearCache.fromConfig("maxEntries=0,timeToLive=60"));
+		assertEquals("NearCache(maxEntries=500,timeToLive=60):size=0,hits=0,misses=0,invalidations=0",
+				NearCache.fromConfig("maxEntries=500, timeToLive=60").toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFromConfigRejectsUnknownSettings() {
+		NearCache.fromConfig("maxEntries=500,timeToIdle=60");
+	}
+}
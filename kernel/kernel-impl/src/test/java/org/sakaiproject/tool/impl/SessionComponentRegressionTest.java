@@ -557,8 +557,6 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 	 * that it violates the black-box intentions of this test class. No other
 	 * option was really feasible for this particular test, though.</p>
 	 * @throws InterruptedException 
-	 * 
-	 * @see #testCanStartSessionWhileCalculatingActiveUserCount()
 	 */
 	public void testCanStartSessionWhilePerformingMaintenance() 
 	throws InterruptedException {
@@ -593,46 +591,44 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 	}
 	
 	/**
-	 * Tests that sessions can be created while an active user count is in
-	 * progress.
-	 * 
-	 * <p>Same as {@link #testCanStartSessionWhilePerformingMaintenance()} but
-	 * for {@link SessionComponent#getActiveUserCount(int)}</p>
-	 * @throws InterruptedException 
+	 * Active users are counted from an index maintained as sessions change
+	 * user, so a session counts for its current user only, and stops
+	 * counting once invalidated.
 	 */
-	public void testCanStartSessionWhileCalculatingActiveUserCount() 
-	throws InterruptedException {
-		final CountDownLatch countStartedLatch = new CountDownLatch(1);
-		final CountDownLatch countCompletedLatch = new CountDownLatch(2);
-		final CountDownLatch countBlockerLatch = new CountDownLatch(1);
-		
-		// need two sessions to ensure Iterator.hasNext() is invoked
-		// twice before the test's main thread exits. It's the hasNext()
-		// method that we expect to fail if the data structure is not
-		// handled/specified correctly.
-		registerSession(newSessionWithBlockableGetLastAccessedTimeImpl(countStartedLatch,
-				countBlockerLatch, countCompletedLatch));
-		registerSession(newSessionWithBlockableGetLastAccessedTimeImpl(countStartedLatch,
-				countBlockerLatch, countCompletedLatch));
-		new Thread() {
-			public void run() {
-				sessionComponent.getActiveUserCount(100000);
-			}
-		}.start();
-		
-		// Wait for the counting thread to start checking for
-		// active users. The wait time is arbitrary, but ensures
-		// the test exits. Same for the await() call at bottom.
-		if (!(countStartedLatch.await(2, TimeUnit.SECONDS))) {
-			fail("Took too long for the counting thread to start up");
-		}
-		startSessionForUser(); // the actual code exercise
-		countBlockerLatch.countDown(); // allow the counting thread to proceed
-		if ( !(countCompletedLatch.await(2, TimeUnit.SECONDS)) ) {
-			fail("Took too long for the counting thread to complete");
-		}
-	}	
-	
+	public void testGetActiveUserCountFollowsSessionUser() {
+		Session session = startSessionAndExpectItsExpiration();
+		assertEquals(1, sessionComponent.getActiveUserCount(100000));
+		session.setUserId(nextUuid());
+		assertEquals(1, sessionComponent.getActiveUserCount(100000));
+		session.setUserId(null);
+		assertEquals(0, sessionComponent.getActiveUserCount(100000));
+		session.setUserId(nextUuid());
+		startSessionForUser();
+		assertEquals(2, sessionComponent.getActiveUserCount(100000));
+		session.invalidate();
+		assertEquals(1, sessionComponent.getActiveUserCount(100000));
+	}
+
+	/**
+	 * Sessions are only visited by the maintenance thread when due, so
+	 * shortening the inactive interval of a session must bring its expiry
+	 * check forward.
+	 *
+	 * @throws InterruptedException
+	 * @throws IllegalAccessException 
+	 * @throws NoSuchFieldException 
+	 * @throws IllegalArgumentException 
+	 * @throws SecurityException 
+	 */
+	public void testSessionExpiresAfterItsIntervalIsShortened() 
+	throws InterruptedException, SecurityException, IllegalArgumentException, NoSuchFieldException, IllegalAccessException {
+		resetMaintenance("1", "3600");
+		Session session = startSessionAndExpectItsExpiration();
+		session.setMaxInactiveInterval(1);
+		awaitExpirationOrFail(session, 1);
+		assertNull(sessionComponent.getSession(session.getId()));
+	}
+
 	protected Session newSessionWithBlockableInvalidate(final CountDownLatch opStarted,
 			final CountDownLatch opBlocker, final CountDownLatch opCompleted) {
 		// unfortunately, the Maintenance implementation compels us to
@@ -691,33 +687,6 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 		return session;
 	}
 	
-	protected Session newSessionWithBlockableGetLastAccessedTimeImpl(final CountDownLatch opStarted,
-			final CountDownLatch opBlocker, final CountDownLatch opCompleted) {
-		// unfortunately, the getActiveUserCount() implementation compels us to
-		// use MySession rather than an interface.
-		String uuid = nextUuid();
-		final MySession session = new MySession(sessionComponent,uuid,threadLocalManager,idManager,
-				sessionComponent,sessionListener,sessionComponent.getInactiveInterval(),new MyNonPortableSession(),
-				new MutableLong(System.currentTimeMillis()), null) {
-			private long superGetLastAccessedTime() {
-				return super.getLastAccessedTime();
-			}
-			@Override
-			public long getLastAccessedTime()
-			{
-				Callable<Long> callback = new Callable<Long>() {
-					public Long call() throws Exception {
-						return superGetLastAccessedTime();
-					}
-				};
-				Long result = 
-					execBlockableSessionOp(opStarted, opBlocker, opCompleted, callback);
-				return result;
-			}
-		};
-		return session;
-	}
-	
 	// Doesn't necessarily take less code in the client to split this method
 	// out, but the *latch calls are error prone.
 	protected <V> V execBlockableSessionOp(final CountDownLatch opStarted,
@@ -751,6 +720,8 @@ public class SessionComponentRegressionTest extends BaseSessionComponentTest {
 		if (session instanceof MySession) {
 			MySession mySession = (MySession)session;
 			sessionComponent.expirationTimeSuggestionMap.put(session.getId(),mySession.expirationTimeSuggestion);
+			// due on the next maintenance cycle, without reading the suggestion here
+			sessionComponent.scheduleExpiryCheck(session.getId(), System.currentTimeMillis());
 		}
 	}
 	
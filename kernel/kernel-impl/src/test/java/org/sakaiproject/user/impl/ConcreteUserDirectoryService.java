@@ -103,4 +103,9 @@ public class ConcreteUserDirectoryService extends BaseUserDirectoryService {
 		return null;
 	}
 
+	@Override
+	protected ThreadLocalManager threadLocalManager() {
+		return null;
+	}
+
 }
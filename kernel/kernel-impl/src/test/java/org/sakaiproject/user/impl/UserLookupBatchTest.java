@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.user.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.user.api.User;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UserLookupBatchTest {
+
+	private UserLookupBatch batch;
+	private User user1;
+
+	@Before
+	public void setUp() {
+		batch = new UserLookupBatch();
+		user1 = mock(User.class);
+		when(user1.getId()).thenReturn("user1");
+	}
+
+	@Test
+	public void testQueuedIdsAreDrainedOnce() {
+		batch.queue(Arrays.asList("user1", "user2"));
+		assertTrue(batch.isQueued("user2"));
+
+		assertEquals(Arrays.asList("user1", "user2"), Arrays.asList(batch.drain().toArray()));
+		assertFalse(batch.isQueued("user1"));
+		assertTrue(batch.drain().isEmpty());
+	}
+
+	@Test
+	public void testLookedUpIdsAreNotQueuedAgain() {
+		batch.queue(Arrays.asList("user1", "user2"));
+		batch.resolved(batch.drain(), Collections.singletonList(user1));
+
+		batch.queue(Arrays.asList("user1", "user2", "user3"));
+		assertEquals(Collections.singletonList("user3"), Arrays.asList(batch.drain().toArray()));
+		assertSame(user1, batch.get("user1"));
+		assertNull(batch.get("user2"));
+		assertEquals(1, batch.getBatches());
+		assertEquals(2, batch.getBatchedIds());
+	}
+
+	@Test
+	public void testForgottenUsersAreQueuedAgain() {
+		batch.resolved(Collections.singletonList("user1"), Collections.singletonList(user1));
+		batch.forget("user1");
+
+		assertNull(batch.get("user1"));
+		batch.queue(Collections.singletonList("user1"));
+		assertTrue(batch.isQueued("user1"));
+	}
+
+	@Test
+	public void testLookupsAreCounted() {
+		batch.lookedUp(true);
+		batch.lookedUp(false);
+
+		assertEquals(2, batch.getLookups());
+		assertEquals(1, batch.getBatchedLookups());
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.sakaiproject.db.impl.BasicSqlServiceSqlHSql;
+import org.sakaiproject.db.impl.SqlServiceSql;
+import org.sakaiproject.db.impl.SqlServiceTest;
+import org.sakaiproject.entity.api.Edit;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.javax.Filter;
+import org.sakaiproject.javax.Restriction;
+import org.sakaiproject.javax.Search;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+import org.sakaiproject.util.serialize.Type1XmlEntitySerializer;
+
+public class BaseDbDoubleStorageTest
+{
+	private static final int MESSAGES = 30;
+	private static final long START = 1700000000000L;
+
+	private final AtomicInteger parsed = new AtomicInteger();
+	private SqlServiceTest sqlService;
+	private Connection conn;
+	private BaseDbDoubleStorage storage;
+	private Entity channel;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:doublestorage;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		ThreadLocalManager threadLocalManager = new ThreadLocalComponent();
+		sqlService = new SqlServiceTest()
+		{
+			protected ThreadLocalManager threadLocalManager()
+			{
+				return threadLocalManager;
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+		sqlService.setVendor("hsqldb");
+
+		conn = dataSource.getConnection();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE TEST_CHANNEL (CHANNEL_ID VARCHAR(99) NOT NULL PRIMARY KEY, NEXT_ID INT, XML LONGVARCHAR)");
+			stmt.execute("CREATE TABLE TEST_MESSAGE (CHANNEL_ID VARCHAR(99) NOT NULL, MESSAGE_ID VARCHAR(36) NOT NULL, DRAFT CHAR(1), PUBVIEW CHAR(1),"
+					+ " OWNER VARCHAR(99), MESSAGE_DATE TIMESTAMP, XML LONGVARCHAR, BINARY_ENTITY LONGVARBINARY, PRIMARY KEY (CHANNEL_ID, MESSAGE_ID))");
+		}
+		for (int i = 0; i < MESSAGES; i++)
+		{
+			sqlService.dbWrite("insert into TEST_MESSAGE (CHANNEL_ID, MESSAGE_ID, DRAFT, PUBVIEW, OWNER, MESSAGE_DATE, XML) values (?, ?, ?, ?, ?, ?, ?)",
+					new Object[] {"/test/channel/c1", id(i), isDraft(i) ? "1" : "0", isPubView(i) ? "1" : "0", "owner" + (i % 2),
+							new Date(START + i * 60000L), "<message id=\"" + id(i) + "\"/>"});
+		}
+
+		DoubleStorageUser user = mock(DoubleStorageUser.class);
+		when(user.newResource(any(Entity.class), any(Element.class))).thenAnswer(invocation -> {
+			parsed.incrementAndGet();
+			Entity message = mock(Entity.class);
+			String id = ((Element) invocation.getArgument(1)).getAttribute("id");
+			when(message.getId()).thenReturn(id);
+			return message;
+		});
+		channel = mock(Entity.class);
+		when(channel.getReference()).thenReturn("/test/channel/c1");
+
+		storage = new BaseDbDoubleStorage("TEST_CHANNEL", "CHANNEL_ID", "TEST_MESSAGE", "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
+				"PUBVIEW", new String[] {"DRAFT", "PUBVIEW", "OWNER", "MESSAGE_DATE"}, false, "channel", "message", user, sqlService);
+		storage.setResourceTableFilterField("date", "MESSAGE_DATE");
+		storage.setResourceTableFilterField("pubview", "PUBVIEW");
+		storage.open();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		storage.close();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		conn.close();
+	}
+
+	private static String id(int i)
+	{
+		return String.format("m%02d", i);
+	}
+
+	private static boolean isDraft(int i)
+	{
+		return i % 3 == 0;
+	}
+
+	private static boolean isPubView(int i)
+	{
+		return i % 2 == 0;
+	}
+
+	/**
+	 * A message edit that writes itself as a message element with its id and owner.
+	 */
+	private static Edit message(String id, String owner)
+	{
+		Edit message = mock(Edit.class);
+		when(message.getId()).thenReturn(id);
+		when(message.getReference()).thenReturn("/test/channel/c1/" + id);
+		when(message.toXml(any(Document.class), any(Stack.class))).thenAnswer(invocation -> {
+			Document doc = invocation.getArgument(0);
+			Element element = doc.createElement("message");
+			element.setAttribute("id", id);
+			element.setAttribute("owner", owner);
+			doc.appendChild(element);
+			return element;
+		});
+		return message;
+	}
+
+	private static List<String> ids(List resources)
+	{
+		List<String> ids = new ArrayList<>();
+		for (Object resource : resources)
+		{
+			ids.add(((Entity) resource).getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * A selection filter like the message one: its restrictions describe what accept() tests.
+	 */
+	private static class SelectionFilter extends Search implements Filter
+	{
+		private final Date after;
+		private final boolean pubViewOnly;
+		private final boolean noDrafts;
+
+		SelectionFilter(Date after, boolean pubViewOnly, boolean noDrafts)
+		{
+			this.after = after;
+			this.pubViewOnly = pubViewOnly;
+			this.noDrafts = noDrafts;
+			if (after != null) addRestriction(new Restriction("date", after, Restriction.GREATER));
+			if (pubViewOnly) addRestriction(new Restriction("pubview", Boolean.TRUE));
+			// not declared by the storage, so left to accept()
+			if (noDrafts) addRestriction(new Restriction("nodrafts", Boolean.TRUE));
+		}
+
+		public boolean accept(Object o)
+		{
+			int i = Integer.parseInt(((Entity) o).getId().substring(1));
+			if (after != null && START + i * 60000L <= after.getTime()) return false;
+			if (pubViewOnly && !isPubView(i)) return false;
+			if (noDrafts && isDraft(i)) return false;
+			return true;
+		}
+	}
+
+	@Test
+	public void testDeclaredRestrictionsSelectAndCountInSql()
+	{
+		SelectionFilter filter = new SelectionFilter(new Date(START + 9 * 60000L), true, false);
+
+		Assert.assertEquals(10, storage.getCount(channel, filter));
+		Assert.assertEquals(0, parsed.get());
+
+		List<String> found = ids(storage.getAllResources(channel, filter, null, true, null));
+		List<String> expected = new ArrayList<>();
+		for (int i = 10; i < MESSAGES; i += 2) expected.add(id(i));
+		Assert.assertEquals(expected, found);
+		Assert.assertEquals(expected.size(), parsed.get());
+	}
+
+	@Test
+	public void testPageIsSelectedAfterRestrictions()
+	{
+		SelectionFilter filter = new SelectionFilter(null, true, false);
+		filter.setStart(3);
+		filter.setLimit(5);
+
+		List<String> found = ids(storage.getAllResources(channel, filter, null, true, null));
+		Assert.assertEquals(List.of(id(4), id(6), id(8)), found);
+		Assert.assertEquals(3, parsed.get());
+	}
+
+	@Test
+	public void testUndeclaredRestrictionIsTestedByAccept()
+	{
+		SelectionFilter filter = new SelectionFilter(null, true, true);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < MESSAGES; i += 2) if (!isDraft(i)) expected.add(id(i));
+		Assert.assertEquals(expected.size(), storage.getCount(channel, filter));
+
+		filter.setStart(2);
+		filter.setLimit(3);
+		Assert.assertEquals(expected.subList(1, 3), ids(storage.getAllResources(channel, filter, null, true, null)));
+	}
+
+	@Test
+	public void testDisjunctionIsOnlyPushedWhole()
+	{
+		SelectionFilter either = new SelectionFilter(null, false, false);
+		either.setRestrictions(new Restriction[] {new Restriction("pubview", Boolean.TRUE), new Restriction("owner", "owner1")});
+		either.setConjunction(false);
+
+		List<Object> binds = new ArrayList<>();
+		Assert.assertNull(storage.getRestrictionWhereClause(either, binds));
+		Assert.assertTrue(storage.hasRestrictionsLeft(either));
+
+		storage.setResourceTableFilterField("owner", "OWNER");
+		Assert.assertEquals("( PUBVIEW = ? or OWNER = ? )", storage.getRestrictionWhereClause(either, binds));
+		Assert.assertEquals(List.of("1", "owner1"), binds);
+		Assert.assertFalse(storage.hasRestrictionsLeft(either));
+	}
+
+	@Test
+	public void testBinaryMessagesRoundTrip() throws Exception
+	{
+		DoubleStorageUser user = mock(DoubleStorageUser.class);
+		when(user.newResource(any(Entity.class), any(String.class), any())).thenAnswer(invocation -> message(invocation.getArgument(1), "owner0"));
+		when(user.newResource(any(Entity.class), any(Element.class))).thenAnswer(invocation -> {
+			Element element = invocation.getArgument(1);
+			return message(element.getAttribute("id"), element.getAttribute("owner"));
+		});
+		when(user.newResourceEdit(any(Entity.class), any(Entity.class))).thenAnswer(invocation -> message(((Entity) invocation.getArgument(1)).getId(), "owner1"));
+		when(user.storageFields(any(Entity.class))).thenReturn(new Object[] {"owner1"});
+
+		BaseDbDoubleStorage binary = new BaseDbDoubleStorage("TEST_CHANNEL", "CHANNEL_ID", "TEST_MESSAGE", "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE",
+				"OWNER", "DRAFT", "PUBVIEW", new String[] {"OWNER"}, false, "channel", "message", user, sqlService);
+		binary.m_locksAreInTable = false;
+		binary.setBinaryEntities(true);
+		binary.open();
+		try
+		{
+			Edit edit = binary.putResource(channel, "b01", null);
+			Assert.assertNotNull(edit);
+			binary.commitResource(channel, edit);
+
+			try (Statement stmt = conn.createStatement();
+					ResultSet result = stmt.executeQuery("SELECT XML, BINARY_ENTITY FROM TEST_MESSAGE WHERE MESSAGE_ID = 'b01'"))
+			{
+				Assert.assertTrue(result.next());
+				Assert.assertNull(result.getString(1));
+				Assert.assertTrue(Type1XmlEntitySerializer.accept(result.getBytes(2)));
+			}
+
+			Entity read = binary.getResource(channel, "b01");
+			Assert.assertEquals("b01", read.getId());
+			Element element = read.toXml(StorageUtils.createDocument(), new Stack());
+			Assert.assertEquals("owner1", element.getAttribute("owner"));
+
+			// the xml rows written before binaryEntities was on read alongside the blob
+			List<String> all = ids(binary.getAllResources(channel));
+			Assert.assertEquals(MESSAGES + 1, all.size());
+			Assert.assertTrue(all.contains("b01"));
+			Assert.assertTrue(all.contains(id(0)));
+		}
+		finally
+		{
+			binary.close();
+		}
+	}
+}
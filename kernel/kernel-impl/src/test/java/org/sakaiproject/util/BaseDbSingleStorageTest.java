@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.sakaiproject.db.impl.BasicSqlServiceSqlHSql;
+import org.sakaiproject.db.impl.SqlServiceSql;
+import org.sakaiproject.db.impl.SqlServiceTest;
+import org.sakaiproject.entity.api.Edit;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.thread_local.impl.ThreadLocalComponent;
+import org.sakaiproject.util.serialize.Type1XmlEntitySerializer;
+
+/**
+ * Writes and reads resources through the single storage with binaryEntities on, alongside records still held as xml.
+ */
+public class BaseDbSingleStorageTest
+{
+	private SqlServiceTest sqlService;
+	private Connection conn;
+	private BaseDbSingleStorage storage;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		JDBCDataSource dataSource = new JDBCDataSource();
+		dataSource.setUrl("jdbc:hsqldb:mem:singlestorage;shutdown=true");
+		dataSource.setUser("sa");
+		dataSource.setPassword("");
+
+		Map<String, SqlServiceSql> databaseBeans = new HashMap<>();
+		databaseBeans.put("hsqldb", new BasicSqlServiceSqlHSql());
+		ThreadLocalManager threadLocalManager = new ThreadLocalComponent();
+		sqlService = new SqlServiceTest()
+		{
+			protected ThreadLocalManager threadLocalManager()
+			{
+				return threadLocalManager;
+			}
+		};
+		sqlService.setDefaultDataSource(dataSource);
+		sqlService.setDatabaseBeans(databaseBeans);
+		sqlService.setSqlServiceSql("hsqldb");
+		sqlService.setVendor("hsqldb");
+
+		conn = dataSource.getConnection();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE TEST_RESOURCE (RESOURCE_ID VARCHAR(99) NOT NULL PRIMARY KEY, OWNER VARCHAR(99), XML LONGVARCHAR, BINARY_ENTITY LONGVARBINARY)");
+			stmt.execute("INSERT INTO TEST_RESOURCE (RESOURCE_ID, OWNER, XML) VALUES ('old', 'admin', '<resource id=\"old\" title=\"Written as xml\"/>')");
+		}
+
+		SingleStorageUser user = mock(SingleStorageUser.class);
+		when(user.newResource(isNull(), anyString(), any())).thenAnswer(invocation -> resource(invocation.getArgument(1), "New"));
+		when(user.newResource(isNull(), any(Element.class))).thenAnswer(invocation -> {
+			Element element = invocation.getArgument(1);
+			return resource(element.getAttribute("id"), element.getAttribute("title"));
+		});
+		when(user.newResourceEdit(isNull(), any(Entity.class))).thenAnswer(invocation -> {
+			Entity other = invocation.getArgument(1);
+			return resource(other.getId(), "Edited");
+		});
+		when(user.storageFields(any(Entity.class))).thenReturn(new Object[] {"admin"});
+
+		storage = new BaseDbSingleStorage("TEST_RESOURCE", "RESOURCE_ID", new String[] {"OWNER"}, false, "resource", user, sqlService);
+		storage.m_locksAreInTable = false;
+		storage.setBinaryEntities(true);
+		storage.open();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		storage.close();
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("SHUTDOWN");
+		}
+		conn.close();
+	}
+
+	/**
+	 * A resource that writes itself as a resource element with its id and title.
+	 */
+	private static Edit resource(String id, String title)
+	{
+		Edit resource = mock(Edit.class);
+		when(resource.getId()).thenReturn(id);
+		when(resource.getReference()).thenReturn("/test/" + id);
+		when(resource.toXml(any(Document.class), any(Stack.class))).thenAnswer(invocation -> {
+			Document doc = invocation.getArgument(0);
+			Element element = doc.createElement("resource");
+			element.setAttribute("id", id);
+			element.setAttribute("title", title);
+			doc.appendChild(element);
+			return element;
+		});
+		return resource;
+	}
+
+	private String title(Entity resource) throws Exception
+	{
+		Document doc = StorageUtils.createDocument();
+		return resource.toXml(doc, new Stack()).getAttribute("title");
+	}
+
+	private Object[] stored(String id) throws Exception
+	{
+		try (Statement stmt = conn.createStatement();
+				ResultSet result = stmt.executeQuery("SELECT XML, BINARY_ENTITY FROM TEST_RESOURCE WHERE RESOURCE_ID = '" + id + "'"))
+		{
+			Assert.assertTrue(result.next());
+			return new Object[] {result.getString(1), result.getBytes(2)};
+		}
+	}
+
+	@Test
+	public void testPutWritesBinaryAndReadsBack() throws Exception
+	{
+		Edit edit = storage.putResource("new", null);
+		Assert.assertNotNull(edit);
+		storage.commitResource(edit);
+
+		Object[] stored = stored("new");
+		Assert.assertNull(stored[0]);
+		Assert.assertTrue(Type1XmlEntitySerializer.accept((byte[]) stored[1]));
+
+		Entity read = storage.getResource("new");
+		Assert.assertEquals("new", read.getId());
+		Assert.assertEquals("Edited", title(read));
+		Assert.assertEquals(2, storage.getAllResources().size());
+	}
+
+	@Test
+	public void testXmlRecordReadsAndConvertsOnCommit() throws Exception
+	{
+		Entity read = storage.getResource("old");
+		Assert.assertEquals("Written as xml", title(read));
+
+		Edit edit = storage.editResource("old");
+		Assert.assertNotNull(edit);
+		storage.commitResource(edit);
+
+		Object[] stored = stored("old");
+		Assert.assertNull(stored[0]);
+		Assert.assertNotNull(stored[1]);
+		Assert.assertEquals("Edited", title(storage.getResource("old")));
+	}
+
+	@Test
+	public void testWithoutBinaryWritesXml() throws Exception
+	{
+		storage.setBinaryEntities(false);
+		Edit edit = storage.putResource("plain", null);
+		storage.commitResource(edit);
+
+		Object[] stored = stored("plain");
+		Assert.assertNotNull(stored[0]);
+		Assert.assertNull(stored[1]);
+		Assert.assertEquals("Edited", title(storage.getResource("plain")));
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.serialize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.sakaiproject.util.StorageUtils;
+
+/**
+ * Checks the Type1 binary form reads back as the same document and SAX events as the xml.
+ */
+public class Type1XmlEntitySerializerTest
+{
+	protected static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+			+ "<message body=\"Qm9keSAyMDA4MDEyNzIwMTM0MTkzMw==\" body-html=\"PHA+Qm9keSAmYW1wOyDDqXTDqTwvcD4=\">"
+			+ "<header access=\"channel\" date=\"20260127201341934\" draft=\"false\" from=\"admin\" id=\"d978685c-8730-4975-b3ea-55fdf03e0e5a\""
+			+ " message_order=\"3\" subject=\"Café &amp; &lt;tea&gt; ☃\"><attachment relative-url=\"/content/attachment/a.pdf\"/></header>"
+			+ "<properties><property enc=\"BASE64\" name=\"CHEF:creator\" value=\"YWRtaW4=\"/>"
+			+ "<property enc=\"BASE64\" name=\"CHEF:modifiedby\" value=\"YWRtaW4=\"/>"
+			+ "<property enc=\"BASE64\" name=\"DAV:creationdate\" value=\"MjAyNjAxMjcyMDEzNDE5MzQ=\"/>"
+			+ "<property enc=\"BASE64\" list=\"list\" name=\"notes\" value=\"b25l\"/><property enc=\"BASE64\" list=\"list\" name=\"notes\" value=\"dHdv\"/>"
+			+ "</properties><text>some text &amp; more</text></message>";
+
+	@Test
+	public void testBlobReadsBackAsSameDocument() throws Exception
+	{
+		Document doc = StorageUtils.readDocumentFromString(XML);
+		byte[] blob = Type1XmlEntitySerializer.serialize(doc);
+
+		Assert.assertTrue(Type1XmlEntitySerializer.accept(blob));
+		Assert.assertFalse(Type1XmlEntitySerializer.accept(XML.getBytes(StandardCharsets.UTF_8)));
+
+		Document read = Type1XmlEntitySerializer.parseDocument(blob);
+		Assert.assertNotNull(read);
+		Assert.assertEquals(StorageUtils.writeDocumentToString(doc), StorageUtils.writeDocumentToString(read));
+	}
+
+	@Test
+	public void testReplayMatchesSaxParse() throws Exception
+	{
+		RecordingHandler parsed = new RecordingHandler();
+		StorageUtils.processString(XML, parsed);
+
+		RecordingHandler replayed = new RecordingHandler();
+		byte[] blob = Type1XmlEntitySerializer.serialize(StorageUtils.readDocumentFromString(XML));
+		Type1XmlEntitySerializer.parse(blob, replayed);
+
+		Assert.assertFalse(parsed.events.isEmpty());
+		Assert.assertEquals(parsed.events, replayed.events);
+	}
+
+	/**
+	 * Records the events a SAX parse delivers, in a comparable form.
+	 */
+	private static class RecordingHandler extends DefaultHandler
+	{
+		List<String> events = new ArrayList<>();
+
+		StringBuilder text = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes)
+		{
+			flushText();
+			StringBuilder buf = new StringBuilder("start " + qName);
+			for (int i = 0; i < attributes.getLength(); i++)
+			{
+				buf.append(' ').append(attributes.getQName(i)).append('=').append(attributes.getValue(i));
+				Assert.assertEquals(attributes.getValue(i), attributes.getValue(attributes.getQName(i)));
+			}
+			events.add(buf.toString());
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+		{
+			text.append(ch, start, length);
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+		{
+			flushText();
+			events.add("end " + qName);
+		}
+
+		private void flushText()
+		{
+			if (text.length() > 0)
+			{
+				events.add("text " + text);
+				text.setLength(0);
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.serialize;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Test;
+import org.xml.sax.helpers.DefaultHandler;
+
+import org.sakaiproject.util.StorageUtils;
+
+/**
+ * Compares the cost of a SAX parse of the xml with replaying the Type1 binary form (a plain timing run; there is no JMH here).
+ * Not part of the default build, run it with -Dtest=Type1XmlEntitySerializerTestPerf.
+ */
+@Slf4j
+public class Type1XmlEntitySerializerTestPerf extends Type1XmlEntitySerializerTest
+{
+	private static final int RUNS = 20000;
+
+	@Test
+	public void testDecodeCost() throws Exception
+	{
+		byte[] blob = Type1XmlEntitySerializer.serialize(StorageUtils.readDocumentFromString(XML));
+		DefaultHandler handler = new DefaultHandler();
+
+		// warm up both paths before timing
+		for (int i = 0; i < RUNS / 10; i++)
+		{
+			StorageUtils.processString(XML, handler);
+			Type1XmlEntitySerializer.parse(blob, handler);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+		{
+			StorageUtils.processString(XML, handler);
+		}
+		long sax = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++)
+		{
+			Type1XmlEntitySerializer.parse(blob, handler);
+		}
+		long binary = System.nanoTime() - start;
+
+		log.info("{} reads: xml {} chars, SAX parse {} ns/read; Type1 {} bytes, replay {} ns/read", RUNS, XML.length(), sax / RUNS,
+				blob.length, binary / RUNS);
+	}
+}
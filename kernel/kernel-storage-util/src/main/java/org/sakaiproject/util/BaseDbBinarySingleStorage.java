@@ -29,6 +29,8 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -505,6 +507,27 @@ public class BaseDbBinarySingleStorage implements DbSingleStorage
 		return all;
 	}
 
+	/**
+	 * Read the Resources from a bulk select through a stream, so the driver does not buffer every record's bytes before they are parsed.
+	 */
+	protected List streamResources(String sql, Object[] fields)
+	{
+		SqlReader<Object> reader = result -> {
+			try
+			{
+				return readResource(result.getBytes(1));
+			}
+			catch (SQLException ignore)
+			{
+				return null;
+			}
+		};
+		try (Stream<Object> records = m_sql.dbStream(sql, fields, reader))
+		{
+			return records.collect(Collectors.toCollection(Vector::new));
+		}
+	}
+
 	public List getAllResourcesWhereLike(String field, String value)
 	{
 		String sql = singleStorageSql.getXmlLikeSql(field, m_resourceTableName);
@@ -1364,7 +1387,7 @@ public class BaseDbBinarySingleStorage implements DbSingleStorage
 		Object[] fields = new Object[1];
 		fields[0] = selectByValue;
 		// %%% + "order by " + m_resourceTableOrderField + " asc";
-		return loadResources(sql, fields);
+		return streamResources(sql, fields);
 	}
 
 }
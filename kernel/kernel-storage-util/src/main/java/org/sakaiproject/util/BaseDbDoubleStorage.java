@@ -24,12 +24,18 @@ package org.sakaiproject.util;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -44,14 +50,17 @@ import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.Edit;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.ResourceProperties;
+import org.sakaiproject.entity.api.serialize.EntityParseException;
 import org.sakaiproject.event.cover.UsageSessionService;
 import org.sakaiproject.javax.Filter;
 import org.sakaiproject.javax.Order;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.Restriction;
 import org.sakaiproject.javax.Search;
 import org.sakaiproject.javax.SearchFilter;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.time.cover.TimeService;
+import org.sakaiproject.util.serialize.Type1XmlEntitySerializer;
 
 /**
  * <p>
@@ -119,12 +128,21 @@ public class BaseDbDoubleStorage
 	/** The field in the record that has the pubview indicator ('0' for no, '1' for yes). */
 	protected String m_resourceTablePubViewField = null;
 
+	/** Search restriction properties that can be answered from an indexed column of the resource table, mapped to that column. */
+	protected Map<String, String> m_resourceTableFilterFields = new HashMap<>();
+
 	/** If true, we do our locks in the remote database. */
 	protected boolean m_locksAreInDb = true;
 
 	/** If true, we do our locks in the remove database using a separate locking table. */
 	protected boolean m_locksAreInTable = true;
 
+	/** If true, resources are written to the BINARY_ENTITY field as Type1 binary blobs, with a null XML field. */
+	protected boolean m_binaryEntities = false;
+
+	/** The XML field in a resource select list, to be followed by BINARY_ENTITY. */
+	protected static final Pattern XML_SELECT = Pattern.compile("\\bXML\\b(?=\\s*(,|from\\b))");
+
 	/** The StorageUser to callback for new Resource and Edit objects. */
 	protected DoubleStorageUser m_user = null;
 
@@ -159,6 +177,16 @@ public class BaseDbDoubleStorage
 		this.doubleStorageSql = (databaseBeans.containsKey(vendor) ? databaseBeans.get(vendor) : databaseBeans.get("default"));
 	}
 
+	/**
+	 * Write resources as Type1 binary blobs in the BINARY_ENTITY field of the resource table from now on, which must have
+	 * that column. Records still in the XML field are read as before, and convert as they are next saved, or in bulk with
+	 * Type1XmlEntityConversionHandler. BINARY_ENTITY is only read while this is on, so leave it on once records are written.
+	 */
+	public void setBinaryEntities(boolean binaryEntities)
+	{
+		m_binaryEntities = binaryEntities;
+	}
+
 	// since spring is not used and this class is instatiated directly, we need to "inject" these values ourselves
 	static
 	{
@@ -255,6 +283,140 @@ public class BaseDbDoubleStorage
 		setDoubleStorageSql(m_sql.getVendor());
 	}
 
+	/**
+	 * Declare a column of the resource table that answers Search restrictions on this property. When the filter
+	 * given to getAllResources() or getCount() is a Search, its restrictions on declared columns go into the select
+	 * rather than being tested against every parsed record. The column should be indexed along with the container
+	 * id field. A Boolean restriction value is matched as '1' or '0', as the draft and pubview fields are held.
+	 * 
+	 * @param property
+	 *        The Restriction property name.
+	 * @param column
+	 *        The resource table column, or null to stop treating the property as a column.
+	 */
+	public void setResourceTableFilterField(String property, String column)
+	{
+		if (property == null) return;
+
+		if (column == null)
+		{
+			m_resourceTableFilterFields.remove(property);
+		}
+		else
+		{
+			m_resourceTableFilterFields.put(property, column);
+		}
+	}
+
+	/**
+	 * Form the where conditions for the restrictions of a Search filter that fall on declared filter columns.
+	 * In a conjunction, the restrictions that cannot be formed are left to the filter's accept(); a disjunction
+	 * is only formed if every one of its restrictions can be.
+	 * 
+	 * @param filter
+	 *        The soft filter, which may be a Search.
+	 * @param binds
+	 *        The list to add the bind values for the conditions to.
+	 * @return The conditions, or null if nothing can be applied in sql.
+	 */
+	protected String getRestrictionWhereClause(Filter filter, List<Object> binds)
+	{
+		if (!(filter instanceof Search)) return null;
+
+		Search search = (Search) filter;
+		Restriction[] restrictions = search.getRestrictions();
+		if (restrictions == null || restrictions.length == 0) return null;
+
+		List<String> conditions = new ArrayList<>();
+		List<Object> values = new ArrayList<>();
+		for (Restriction restriction : restrictions)
+		{
+			String condition = getRestrictionCondition(restriction, values);
+			if (condition == null)
+			{
+				if (!search.isConjunction()) return null;
+				continue;
+			}
+			conditions.add(condition);
+		}
+		if (conditions.isEmpty()) return null;
+
+		binds.addAll(values);
+		return "( " + String.join(search.isConjunction() ? " and " : " or ", conditions) + " )";
+	}
+
+	/**
+	 * Check if a filter has Search restrictions that getRestrictionWhereClause() cannot put in the select.
+	 * 
+	 * @return true if some restriction must still be tested with accept() against each parsed record.
+	 */
+	protected boolean hasRestrictionsLeft(Filter filter)
+	{
+		if (!(filter instanceof Search)) return false;
+
+		Restriction[] restrictions = ((Search) filter).getRestrictions();
+		if (restrictions == null) return false;
+
+		for (Restriction restriction : restrictions)
+		{
+			if (getRestrictionCondition(restriction, new ArrayList<>()) == null) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Form the condition for one restriction, adding its bind values.
+	 * 
+	 * @return The condition, or null if the restriction is not on a declared column or cannot be expressed.
+	 */
+	private String getRestrictionCondition(Restriction restriction, List<Object> values)
+	{
+		String column = (restriction == null) ? null : m_resourceTableFilterFields.get(restriction.property);
+		if (column == null) return null;
+
+		if (restriction.comparison == Restriction.NULL) return column + " is null";
+		if (restriction.comparison == Restriction.NOT_NULL) return column + " is not null";
+		if (restriction.value == null) return null;
+
+		Object value = restriction.value;
+		if (value instanceof Collection) value = ((Collection) value).toArray();
+		if (value instanceof Object[])
+		{
+			Object[] items = (Object[]) value;
+			if (items.length == 0 || restriction.comparison != Restriction.EQUALS) return null;
+
+			StringBuilder buf = new StringBuilder(column + " in (");
+			for (int i = 0; i < items.length; i++)
+			{
+				buf.append(i == 0 ? "?" : ",?");
+				values.add(filterValue(items[i]));
+			}
+			return buf.append(")").toString();
+		}
+
+		String op = null;
+		switch (restriction.comparison)
+		{
+			case Restriction.EQUALS: op = " = ?"; break;
+			case Restriction.NOT_EQUALS: op = " <> ?"; break;
+			case Restriction.GREATER: op = " > ?"; break;
+			case Restriction.LESS: op = " < ?"; break;
+			case Restriction.LIKE: op = " like ?"; break;
+			default: return null;
+		}
+		values.add(filterValue(value));
+		return column + op;
+	}
+
+	/**
+	 * Booleans are held as '1' / '0' in the draft and pubview style fields.
+	 */
+	private Object filterValue(Object value)
+	{
+		if (value instanceof Boolean) return ((Boolean) value) ? "1" : "0";
+		return value;
+	}
+
 	/**
 	 * Open and be ready to read / write.
 	 */
@@ -750,6 +912,119 @@ public class BaseDbDoubleStorage
 		}
 	}
 
+	/**
+	 * Read one Resource from a Type1 binary blob
+	 * 
+	 * @param container
+	 *        The container for this resource.
+	 * @param blob
+	 *        The BINARY_ENTITY field of the resource.
+	 * @return The Resource object created from the blob.
+	 */
+	protected Entity readResource(Entity container, byte[] blob)
+	{
+		try
+		{
+			if ( m_user instanceof SAXEntityReader ) {
+				SAXEntityReader sm_user = (SAXEntityReader) m_user;
+				DefaultEntityHandler deh = sm_user.getDefaultHandler(sm_user.getServices());
+				deh.setContainer(container);
+				Type1XmlEntitySerializer.parse(blob, deh);
+				return deh.getEntity();
+			}
+
+			Element root = Type1XmlEntitySerializer.parseDocument(blob).getDocumentElement();
+			if (!root.getTagName().equals(m_resourceEntryTagName))
+			{
+				log.warn("readResource(): not = " + m_resourceEntryTagName + " : " + root.getTagName());
+				return null;
+			}
+			return m_user.newResource(container, root);
+		}
+		catch (Exception e)
+		{
+			log.warn("readResource(): "+e.getMessage());
+			log.info("readResource(): ", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read one Resource from whichever of its XML or BINARY_ENTITY fields readStored found.
+	 */
+	protected Entity readStoredResource(Entity container, Object stored)
+	{
+		if (stored instanceof byte[]) return readResource(container, (byte[]) stored);
+		return readResource(container, (String) stored);
+	}
+
+	/**
+	 * Add BINARY_ENTITY after the XML field of a resource select when resources are written as binary blobs.
+	 */
+	protected String withBinary(String sql)
+	{
+		if (!m_binaryEntities) return sql;
+		return XML_SELECT.matcher(sql).replaceAll("XML, BINARY_ENTITY");
+	}
+
+	/**
+	 * Read the stored form of a resource selected with withBinary: the BINARY_ENTITY field following the XML one if it
+	 * is set, otherwise the xml.
+	 * 
+	 * @param result
+	 *        The result set.
+	 * @param column
+	 *        The index of the XML field.
+	 * @return A byte[] blob or a String of xml.
+	 */
+	protected Object readStored(ResultSet result, int column) throws SQLException
+	{
+		if (m_binaryEntities)
+		{
+			byte[] blob = result.getBytes(column + 1);
+			if (blob != null) return blob;
+		}
+		return result.getString(column);
+	}
+
+	/**
+	 * Serialize a resource document for the BINARY_ENTITY field, or return null if it is to be written as xml.
+	 */
+	protected byte[] binaryEntity(Document doc)
+	{
+		if (!m_binaryEntities) return null;
+		try
+		{
+			return Type1XmlEntitySerializer.serialize(doc);
+		}
+		catch (EntityParseException e)
+		{
+			log.warn("binaryEntity(): writing xml instead", e);
+			return null;
+		}
+	}
+
+	/**
+	 * A reader for resources selected with withBinary, where the XML field is the first.
+	 */
+	protected SqlReader storedResourceReader(final Entity container)
+	{
+		return new SqlReader()
+		{
+			public Object readSqlResultRecord(ResultSet result)
+			{
+				try
+				{
+					return readStoredResource(container, readStored(result, 1));
+				}
+				catch (SQLException ignore)
+				{
+					return null;
+				}
+			}
+		};
+	}
+
 	/**
 	 * Check if a Resource by this id exists.
 	 * 
@@ -784,15 +1059,14 @@ public class BaseDbDoubleStorage
 		Entity entry = null;
 
 		// get the user from the db
-		String sql = doubleStorageSql.getSelectXml4Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField);
+		String sql = withBinary(doubleStorageSql.getSelectXml4Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField));
 		Object[] fields = new Object[2];
 		fields[0] = container.getReference();
 		fields[1] = id;
-		List xml = m_sql.dbRead(sql, fields, null);
-		if (!xml.isEmpty())
+		List resources = m_sql.dbRead(sql, fields, storedResourceReader(container));
+		if (!resources.isEmpty())
 		{
-			// create the Resource from the db xml
-			entry = readResource(container, (String) xml.get(0));
+			entry = (Entity) resources.get(0);
 		}
 
 		return entry;
@@ -834,40 +1108,49 @@ public class BaseDbDoubleStorage
 	{
 		if ( filter == null ) return getCount(container);
 
+		// restrictions on declared filter columns are counted in the select
+		List<Object> restrictionBinds = new ArrayList<>();
+		String restrictionWhere = getRestrictionWhereClause(filter, restrictionBinds);
+		boolean restrictionsLeft = hasRestrictionsLeft(filter);
+		String searchString = (filter instanceof SearchFilter) ? ((SearchFilter) filter).getSearchString() : null;
+
 		// If we have search fields - do a quick select count with a where clause
-		if  ( m_resourceTableSearchFields != null && filter instanceof SearchFilter ) 
+		String whereClause = null;
+		int searchFieldCount = 0;
+		if  ( m_resourceTableSearchFields != null && searchString != null && searchString.length() > 0 ) 
 		{
-			int searchFieldCount = 0;
-			String searchString = ((SearchFilter) filter).getSearchString();
-			if ( searchString != null && searchString.length() > 0 )
-			{
-				String searchWhere = doubleStorageSql.getSearchWhereClause(m_resourceTableSearchFields);
-				if ( searchWhere != null && searchWhere.length() > 0 ) 
-				{
-					searchFieldCount = m_resourceTableSearchFields.length;
-					String sql = doubleStorageSql.getCountSqlWhere(m_resourceTableName, 
-						m_resourceTableContainerIdField, searchWhere);
+			whereClause = doubleStorageSql.getSearchWhereClause(m_resourceTableSearchFields);
+			if ( whereClause != null && whereClause.length() > 0 ) searchFieldCount = m_resourceTableSearchFields.length;
+		}
+
+		// With nothing left to test against the parsed records, a select count is exact
+		if ( ( searchFieldCount > 0 || searchString == null ) && !restrictionsLeft )
+		{
+			if ( searchFieldCount == 0 ) whereClause = null;
+			if ( restrictionWhere != null ) whereClause = (whereClause == null) ? restrictionWhere : whereClause + " and " + restrictionWhere;
+			String sql = doubleStorageSql.getCountSqlWhere(m_resourceTableName, 
+				m_resourceTableContainerIdField, whereClause);
 
-					Object[] fields = new Object[1+searchFieldCount];
-					fields[0] = container.getReference();
-					for ( int i=0; i < searchFieldCount; i++) fields[i+1] = "%" + searchString + "%";
+			List<Object> fields = new ArrayList<>();
+			fields.add(container.getReference());
+			for ( int i=0; i < searchFieldCount; i++) fields.add("%" + searchString + "%");
+			fields.addAll(restrictionBinds);
 
-					List countList = m_sql.dbRead(sql, fields, null);
+			List countList = m_sql.dbRead(sql, fields.toArray(), null);
 		  
-					if ( countList.isEmpty() ) return 0;
+			if ( countList.isEmpty() ) return 0;
 		
-					Object obj = countList.get(0);
-					String str = (String) obj;
-					return Integer.parseInt(str);
-				}
-			}
+			Object obj = countList.get(0);
+			String str = (String) obj;
+			return Integer.parseInt(str);
 		}
 
 		// No search fields - retrieve, filter and count
-		String sql = doubleStorageSql.getSelectXml5Sql(m_resourceTableName, m_resourceTableContainerIdField, null, false);
-		Object[] fields = new Object[1];
-		fields[0] = container.getReference();
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, filter,  null, true));
+		String sql = withBinary(doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, m_resourceTableContainerIdField, null, restrictionWhere));
+		List<Object> fields = new ArrayList<>();
+		fields.add(container.getReference());
+		fields.addAll(restrictionBinds);
+		List all = m_sql.dbRead(sql, fields.toArray(), new SearchFilterReader(container, filter,  null, true, restrictionsLeft));
 		int count = all.size();
 		return count;
 	}
@@ -1011,13 +1294,26 @@ public class BaseDbDoubleStorage
 			}
 		}
 
-		String sql = doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, 
-				m_resourceTableContainerIdField, orderString, sqlFilter);
+		// restrictions on declared filter columns go into the select too
+		List<Object> restrictionBinds = new ArrayList<>();
+		String restrictionWhere = getRestrictionWhereClause(softFilter, restrictionBinds);
+		if ( restrictionWhere != null )
+		{
+			sqlFilter = (sqlFilter == null) ? restrictionWhere : sqlFilter + " and " + restrictionWhere;
+		}
+		boolean restrictionsLeft = hasRestrictionsLeft(softFilter);
+
+		String sql = withBinary(doubleStorageSql.getSelectXml5filterSql(m_resourceTableName, 
+				m_resourceTableContainerIdField, orderString, sqlFilter));
+
+		// A search string that did not become sql, or a restriction that did not, is tested against each parsed
+		// record, so the page can only be counted out after that; otherwise the select returns exactly the page wanted
+		boolean filteredAfter = (softFilter instanceof SearchFilter && ((SearchFilter) softFilter).getSearchString() != null
+				&& searchFieldCount == 0) || restrictionsLeft;
 	
 		// Add Paging to the Search if requested
-		// TODO: Someday make this think Filter and emulate PagingPosition
 		boolean pagedInSql = false;
-		if ( pager != null )
+		if ( pager != null && !filteredAfter )
 		{
 			String limitedSql = doubleStorageSql.addLimitToQuery(sql, pager.getFirst()-1, pager.getLast()-1);
  
@@ -1041,13 +1337,25 @@ public class BaseDbDoubleStorage
 
 		if (bindVariables != null && bindVariables.size() > 0) {
 			// Add the bind variables to the fields to substitute in the prepared statement
-			fields = ArrayUtils.addAll(fields, bindVariables.toArray(new Object[fields.length]));
+			fields = ArrayUtils.addAll(fields, bindVariables.toArray());
+		}
+		if ( !restrictionBinds.isEmpty() )
+		{
+			fields = ArrayUtils.addAll(fields, restrictionBinds.toArray());
 		}
 
 		// If we are paged in SQL - then do not pass in the pager
-		List all = m_sql.dbRead(sql, fields, new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false));
-		
-		return all;
+		SqlReader reader = new SearchFilterReader(container, softFilter,  pagedInSql ? null : pager, false, restrictionsLeft);
+		if (pagedInSql)
+		{
+			return m_sql.dbRead(sql, fields, reader);
+		}
+
+		// an unpaged read can cover a whole container, so stream it rather than having the driver buffer every record's xml
+		try (Stream<Object> records = m_sql.dbStream(sql, fields, reader))
+		{
+			return records.collect(Collectors.toCollection(Vector::new));
+		}
 	}
     
 	/** matchXml - Perform an optional pre-de-serialize match if desired
@@ -1073,6 +1381,7 @@ public class BaseDbDoubleStorage
 		private PagingPosition m_pager;
 		private Entity m_container;
 		private boolean m_doCount = false;
+		private boolean m_restrictionsLeft = false;
     	
 		private int count = 0;
     	
@@ -1080,12 +1389,22 @@ public class BaseDbDoubleStorage
 		private final Integer intValue = 1;
     	
 		public SearchFilterReader(Entity container, Filter filter, PagingPosition pager, boolean doCount)
+		{
+			this(container, filter, pager, doCount, false);
+		}
+
+		/**
+		 * @param restrictionsLeft
+		 *        true if the filter has Search restrictions that were not applied in the select, so its accept() must be tested.
+		 */
+		public SearchFilterReader(Entity container, Filter filter, PagingPosition pager, boolean doCount, boolean restrictionsLeft)
 		{
 			m_container = container;
 			m_filter = filter;
 			if ( filter instanceof SearchFilter ) m_search = ( (SearchFilter) filter).getSearchString();
 			m_pager = pager;
 			m_doCount = doCount;
+			m_restrictionsLeft = restrictionsLeft;
 		}
     	
 		public Object readSqlResultRecord(ResultSet result)
@@ -1093,20 +1412,37 @@ public class BaseDbDoubleStorage
 		{
 			try
 			{
-				String theXml = result.getString(1);
+				Object stored = readStored(result, 1);
 				if ( m_pager != null && count > m_pager.getLast() ) 
 				{
 					throw new SqlReaderFinishedException();
 				}
+
+				// Without a search or a restriction left there is nothing to test in the parsed record,
+				// so count and page first and only parse the records that are returned
+				if ( m_search == null && !m_restrictionsLeft )
+				{
+					count++;
+					if ( m_pager != null && count < m_pager.getFirst() ) return null;
+					if ( m_pager != null && count > m_pager.getLast() )
+					{
+						throw new SqlReaderFinishedException();
+					}
+					if ( m_doCount ) return intValue;
+					return readStoredResource(m_container, stored);
+				}
 				
 				int iTest = 0;  // Don't know if we have a match
-				if ( m_search != null )
+				if ( m_search != null && stored instanceof String )
 				{
-					iTest = matchXml(theXml, m_search);
+					iTest = matchXml((String) stored, m_search);
 				}
                 
 				// If it is clearly rejected from pre-parse match
 				if ( iTest == -1 ) return null;
+
+				// A search match still leaves any restrictions to test
+				if ( iTest == 1 && m_restrictionsLeft ) iTest = 0;
                 
 				// If it is a match and we are just counting - no parsing
 				// needed
@@ -1114,11 +1450,11 @@ public class BaseDbDoubleStorage
                 
 				// If it is known to be accepted (1) or unsure (0), 
 				// parse the Xml and continue
-				Entity entry = readResource(m_container, theXml);
+				Entity entry = readStoredResource(m_container, stored);
 				if ( entry == null ) return null;
                     
 				// If there is no indication from matchXml
-				if ( iTest == 0 && m_search != null)
+				if ( iTest == 0 )
 				{
 					if ( ! m_filter.accept(entry) ) return null;
 				}
@@ -1159,13 +1495,18 @@ public class BaseDbDoubleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
-
-		String statement = doubleStorageSql.getInsertSql3(m_resourceTableName, insertFields(m_containerTableIdField, m_resourceTableIdField,
-				m_resourceTableOtherFields, "XML"), valuesParams(m_resourceTableOtherFields));
+		byte[] blob = binaryEntity(doc);
+		String xml = (blob == null) ? StorageUtils.writeDocumentToString(doc) : null;
+
+		String statement = m_binaryEntities
+				? doubleStorageSql.getInsertSql3(m_resourceTableName, insertFields(m_containerTableIdField, m_resourceTableIdField,
+						m_resourceTableOtherFields, "BINARY_ENTITY,XML"), valuesParams(m_resourceTableOtherFields) + " ?,")
+				: doubleStorageSql.getInsertSql3(m_resourceTableName, insertFields(m_containerTableIdField, m_resourceTableIdField,
+						m_resourceTableOtherFields, "XML"), valuesParams(m_resourceTableOtherFields));
 		Object[] flds = m_user.storageFields(entry);
 
 		if (flds == null) flds = new Object[0];
+		if (m_binaryEntities) flds = ArrayUtils.add(flds, blob);
 		Object[] fields = new Object[flds.length + 3];
 		System.arraycopy(flds, 0, fields, 2, flds.length);
 		fields[0] = container.getReference();
@@ -1207,16 +1548,31 @@ public class BaseDbDoubleStorage
 			if ("oracle".equals(m_sql.getVendor()))
 			{
 				// read the record and get a lock on it (non blocking)
-				String statement = doubleStorageSql.getSelectXml6Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField,
-				        StorageUtils.escapeSql(id), StorageUtils.escapeSql(container.getReference()));
-				StringBuilder result = new StringBuilder();
-				Connection lock = m_sql.dbReadLock(statement, result);
+				String statement = withBinary(doubleStorageSql.getSelectXml6Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField,
+				        StorageUtils.escapeSql(id), StorageUtils.escapeSql(container.getReference())));
+				final List<Object> result = new ArrayList<>();
+				Connection lock = m_sql.dbReadLock(statement, new SqlReader()
+				{
+					public Object readSqlResultRecord(ResultSet r)
+					{
+						try
+						{
+							Object stored = readStored(r, 1);
+							if (stored != null) result.add(stored);
+						}
+						catch (SQLException e)
+						{
+							log.warn("editResource(): failed to read record ", e);
+						}
+						return null;
+					}
+				});
 
 				// for missing or already locked...
-				if ((lock == null) || (result.length() == 0)) return null;
+				if ((lock == null) || result.isEmpty()) return null;
 
 				// make first a Resource, then an Edit
-				Entity entry = readResource(container, result.toString());
+				Entity entry = readStoredResource(container, result.get(0));
 				edit = m_user.newResourceEdit(container, entry);
 
 				// store the lock for this object
@@ -1300,12 +1656,14 @@ public class BaseDbDoubleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		byte[] blob = binaryEntity(doc);
+		String xml = (blob == null) ? StorageUtils.writeDocumentToString(doc) : null;
 		String statement = doubleStorageSql.getUpdate2Sql(m_resourceTableName, m_resourceTableIdField, m_resourceTableContainerIdField,
-				updateSet(m_resourceTableOtherFields));
+				updateSet(m_resourceTableOtherFields) + (m_binaryEntities ? " BINARY_ENTITY = ?," : ""));
 
 		Object[] flds = m_user.storageFields(edit);
 		if (flds == null) flds = new Object[0];
+		if (m_binaryEntities) flds = ArrayUtils.add(flds, blob);
 		Object[] fields = new Object[flds.length + 3];
 		System.arraycopy(flds, 0, fields, 0, flds.length);
 		fields[fields.length - 3] = xml;
@@ -1677,23 +2035,7 @@ public class BaseDbDoubleStorage
 			fields[pos++] = Integer.valueOf(limitedToLatest);
 		}
 
-		List all = m_sql.dbRead(buf.toString(), fields, new SqlReader()
-		{
-			public Object readSqlResultRecord(ResultSet result)
-			{
-				try
-				{
-					// get the xml and parse into a Resource
-					String xml = result.getString(1);
-					Entity entry = readResource(container, xml);
-					return entry;
-				}
-				catch (SQLException ignore)
-				{
-					return null;
-				}
-			}
-		});
+		List all = m_sql.dbRead(withBinary(buf.toString()), fields, storedResourceReader(container));
 
 		// after filter for draft / pubview and limit
 		if (filterAfter)
@@ -24,11 +24,13 @@ package org.sakaiproject.util;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.Vector;
+import java.util.regex.Pattern;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,9 +41,11 @@ import org.sakaiproject.db.api.SqlReader;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.Edit;
 import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.entity.api.serialize.EntityParseException;
 import org.sakaiproject.event.cover.UsageSessionService;
 import org.sakaiproject.javax.Filter;
 import org.sakaiproject.time.cover.TimeService;
+import org.sakaiproject.util.serialize.Type1XmlEntitySerializer;
 
 /**
  * Single Storage provides persisting of just resources(no properties, no container).
@@ -84,6 +88,12 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	/** If true, we do our locks in the remove database using a separate locking table. */
 	protected boolean m_locksAreInTable = true;
 
+	/** If true, resources are written to the BINARY_ENTITY field as Type1 binary blobs, with a null XML field. */
+	protected boolean m_binaryEntities = false;
+
+	/** The XML field in a resource select list, to be followed by BINARY_ENTITY. */
+	protected static final Pattern XML_SELECT = Pattern.compile("\\bXML\\b(?=\\s*(,|from\\b))");
+
 	/** The StorageUser to callback for new Resource and Edit objects. */
 	protected SingleStorageUser m_user = null;
 
@@ -121,6 +131,16 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		this.singleStorageSql = (databaseBeans.containsKey(vendor) ? databaseBeans.get(vendor) : databaseBeans.get("default"));
 	}
 
+	/**
+	 * Write resources as Type1 binary blobs in the BINARY_ENTITY field of the resource table from now on, which must have
+	 * that column. Records still in the XML field are read as before, and convert as they are next saved, or in bulk with
+	 * Type1XmlEntityConversionHandler. BINARY_ENTITY is only read while this is on, so leave it on once records are written.
+	 */
+	public void setBinaryEntities(boolean binaryEntities)
+	{
+		m_binaryEntities = binaryEntities;
+	}
+
 	// since spring is not used and this class is instatiated directly, we need to "inject" these values ourselves
 	static
 	{
@@ -274,6 +294,118 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		}
 	}
 
+	/**
+	 * Read one Resource from a Type1 binary blob
+	 * 
+	 * @param blob
+	 *        The BINARY_ENTITY field of the resource.
+	 * @return The Resource object created from the blob.
+	 */
+	protected Entity readResource(byte[] blob)
+	{
+		try
+		{
+			if (m_user instanceof SAXEntityReader)
+			{
+				SAXEntityReader sm_user = (SAXEntityReader) m_user;
+				DefaultEntityHandler deh = sm_user.getDefaultHandler(sm_user
+						.getServices());
+				Type1XmlEntitySerializer.parse(blob, deh);
+				return deh.getEntity();
+			}
+
+			Element root = Type1XmlEntitySerializer.parseDocument(blob).getDocumentElement();
+			if (!root.getTagName().equals(m_resourceEntryTagName))
+			{
+				log.warn("readResource(): not = " + m_resourceEntryTagName + " : "
+						+ root.getTagName());
+				return null;
+			}
+			return m_user.newResource(null, root);
+		}
+		catch (Exception e)
+		{
+			log.debug("readResource(): ", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read one Resource from whichever of its XML or BINARY_ENTITY fields readStored found.
+	 */
+	protected Entity readStoredResource(Object stored)
+	{
+		if (stored instanceof byte[]) return readResource((byte[]) stored);
+		return readResource((String) stored);
+	}
+
+	/**
+	 * Add BINARY_ENTITY after the XML field of a resource select when resources are written as binary blobs.
+	 */
+	protected String withBinary(String sql)
+	{
+		if (!m_binaryEntities) return sql;
+		return XML_SELECT.matcher(sql).replaceAll("XML, BINARY_ENTITY");
+	}
+
+	/**
+	 * Read the stored form of a resource selected with withBinary: the BINARY_ENTITY field following the XML one if it
+	 * is set, otherwise the xml.
+	 * 
+	 * @param result
+	 *        The result set.
+	 * @param column
+	 *        The index of the XML field.
+	 * @return A byte[] blob or a String of xml.
+	 */
+	protected Object readStored(ResultSet result, int column) throws SQLException
+	{
+		if (m_binaryEntities)
+		{
+			byte[] blob = result.getBytes(column + 1);
+			if (blob != null) return blob;
+		}
+		return result.getString(column);
+	}
+
+	/**
+	 * Serialize a resource document for the BINARY_ENTITY field, or return null if it is to be written as xml.
+	 */
+	protected byte[] binaryEntity(Document doc)
+	{
+		if (!m_binaryEntities) return null;
+		try
+		{
+			return Type1XmlEntitySerializer.serialize(doc);
+		}
+		catch (EntityParseException e)
+		{
+			log.warn("binaryEntity(): writing xml instead", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Read the resources selected with withBinary, where the XML field is the first.
+	 */
+	protected List readStoredResources(String sql, Object[] fields)
+	{
+		return m_sql.dbRead(withBinary(sql), fields, new SqlReader()
+		{
+			public Object readSqlResultRecord(ResultSet result)
+			{
+				try
+				{
+					return readStoredResource(readStored(result, 1));
+				}
+				catch (SQLException ignore)
+				{
+					return null;
+				}
+			}
+		});
+	}
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.util.DbSingleStorage#checkResource(java.lang.String)
 	 */
@@ -301,11 +433,10 @@ public class BaseDbSingleStorage implements DbSingleStorage
 
 		Object fields[] = new Object[1];
 		fields[0] = caseId(id);
-		List xml = m_sql.dbRead(sql, fields, null);
-		if (!xml.isEmpty())
+		List resources = readStoredResources(sql, fields);
+		if (!resources.isEmpty())
 		{
-			// create the Resource from the db xml
-			entry = readResource((String) xml.get(0));
+			entry = (Entity) resources.get(0);
 		}
 
 		return entry;
@@ -332,17 +463,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		String sql = singleStorageSql.getXmlSql(m_resourceTableName);
 		// %%% + "order by " + m_resourceTableOrderField + " asc";
 
-		List xml = m_sql.dbRead(sql);
-
-		// process all result xml into user objects
-		if (!xml.isEmpty())
-		{
-			for (int i = 0; i < xml.size(); i++)
-			{
-				Entity entry = readResource((String) xml.get(i));
-				if (entry != null) all.add(entry);
-			}
-		}
+		all.addAll(readStoredResources(sql, null));
 
 		return all;
 	}
@@ -354,18 +475,9 @@ public class BaseDbSingleStorage implements DbSingleStorage
 	{
 		String sql = singleStorageSql.getXmlSql(m_resourceTableIdField, m_resourceTableName, first, last);
 		Object[] fields = singleStorageSql.getXmlFields(first, last);
-		List xml = m_sql.dbRead(sql, fields, null);
 		List rv = new Vector();
 
-		// process all result xml into user objects
-		if (!xml.isEmpty())
-		{
-			for (int i = 0; i < xml.size(); i++)
-			{
-				Entity entry = readResource((String) xml.get(i));
-				if (entry != null) rv.add(entry);
-			}
-		}
+		rv.addAll(readStoredResources(sql, fields));
 
 		return rv;
 	}
@@ -444,24 +556,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 
 	protected List loadResources(String sql, Object[] fields)
 	{
-		List all = m_sql.dbRead(sql, fields, new SqlReader()
-		{
-			public Object readSqlResultRecord(ResultSet result)
-			{
-				try
-				{
-					// create the Resource from the db xml
-					String xml = result.getString(1);
-					Entity entry = readResource(xml);
-					return entry;
-				}
-				catch (SQLException ignore)
-				{
-					return null;
-				}
-			}
-		});
-		return all;
+		return readStoredResources(sql, fields);
 	}
 
 	/**
@@ -510,7 +605,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		String sql = singleStorageSql.getXmlAndFieldSql(m_resourceTableIdField, m_resourceTableName);
 		// %%% + "order by " + m_resourceTableOrderField + " asc";
 
-		List xml = m_sql.dbRead(sql, null, new SqlReader()
+		List xml = m_sql.dbRead(withBinary(sql), null, new SqlReader()
 		{
 			public Object readSqlResultRecord(ResultSet result)
 			{
@@ -519,12 +614,10 @@ public class BaseDbSingleStorage implements DbSingleStorage
 					// read the id m_resourceTableIdField
 					String id = result.getString(1);
 
-					// read the xml
-					String xml = result.getString(2);
-
 					if (!filter.accept(caseId(id))) return null;
 
-					return xml;
+					// read the xml
+					return readStored(result, 2);
 				}
 				catch (SQLException ignore)
 				{
@@ -538,7 +631,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		{
 			for (int i = 0; i < xml.size(); i++)
 			{
-				Entity entry = readResource((String) xml.get(i));
+				Entity entry = readStoredResource(xml.get(i));
 				if (entry != null) all.add(entry);
 			}
 		}
@@ -557,17 +650,7 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		String sql = singleStorageSql.getXmlWhereSql(m_resourceTableName, sqlWhere);
 		// %%% + "order by " + m_resourceTableOrderField + " asc";
 
-		List xml = m_sql.dbRead(sql);
-
-		// process all result xml into user objects
-		if (!xml.isEmpty())
-		{
-			for (int i = 0; i < xml.size(); i++)
-			{
-				Entity entry = readResource((String) xml.get(i));
-				if (entry != null) all.add(entry);
-			}
-		}
+		all.addAll(readStoredResources(sql, null));
 
 		return all;
 	}
@@ -583,16 +666,18 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the XML and SQL for the insert
 		Document doc = StorageUtils.createDocument();
 		entry.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		byte[] blob = binaryEntity(doc);
+		String xml = (blob == null) ? StorageUtils.writeDocumentToString(doc) : null;
 		String statement = // singleStorageSql.
-		"insert into " + m_resourceTableName + insertFields(m_resourceTableIdField, m_resourceTableOtherFields, "XML") + " values ( ?, "
-				+ valuesParams(m_resourceTableOtherFields) + " ? )";
+		"insert into " + m_resourceTableName + insertFields(m_resourceTableIdField, m_resourceTableOtherFields, m_binaryEntities ? "BINARY_ENTITY,XML" : "XML")
+				+ " values ( ?, " + valuesParams(m_resourceTableOtherFields) + (m_binaryEntities ? " ?," : "") + " ? )";
 
 		Object[] flds = m_user.storageFields(entry);
 		if (flds == null) flds = new Object[0];
-		Object[] fields = new Object[flds.length + 2];
+		Object[] fields = new Object[flds.length + (m_binaryEntities ? 3 : 2)];
 		System.arraycopy(flds, 0, fields, 1, flds.length);
 		fields[0] = caseId(entry.getId());
+		if (m_binaryEntities) fields[fields.length - 2] = blob;
 		fields[fields.length - 1] = xml;
 
 		// process the insert
@@ -767,16 +852,31 @@ public class BaseDbSingleStorage implements DbSingleStorage
 			if ("oracle".equals(m_sql.getVendor()))
 			{
 				// read the record and get a lock on it (non blocking)
-				String statement = "select XML from " + m_resourceTableName + " where ( " + m_resourceTableIdField + " = '"
-						+ StorageUtils.escapeSql(caseId(id)) + "' )" + " for update nowait";
-				StringBuilder result = new StringBuilder();
-				Connection lock = m_sql.dbReadLock(statement, result);
+				String statement = withBinary("select XML from " + m_resourceTableName + " where ( " + m_resourceTableIdField + " = '"
+						+ StorageUtils.escapeSql(caseId(id)) + "' )" + " for update nowait");
+				final List<Object> result = new ArrayList<>();
+				Connection lock = m_sql.dbReadLock(statement, new SqlReader()
+				{
+					public Object readSqlResultRecord(ResultSet r)
+					{
+						try
+						{
+							Object stored = readStored(r, 1);
+							if (stored != null) result.add(stored);
+						}
+						catch (SQLException e)
+						{
+							log.warn("editResource(): failed to read record ", e);
+						}
+						return null;
+					}
+				});
 
 				// for missing or already locked...
-				if ((lock == null) || (result.length() == 0)) return null;
+				if ((lock == null) || result.isEmpty()) return null;
 
 				// make first a Resource, then an Edit
-				Entity entry = readResource(result.toString());
+				Entity entry = readStoredResource(result.get(0));
 				edit = m_user.newResourceEdit(null, entry);
 
 				// store the lock for this object
@@ -855,16 +955,18 @@ public class BaseDbSingleStorage implements DbSingleStorage
 		// form the SQL statement and the var w/ the XML
 		Document doc = StorageUtils.createDocument();
 		edit.toXml(doc, new Stack());
-		String xml = StorageUtils.writeDocumentToString(doc);
+		byte[] blob = binaryEntity(doc);
+		String xml = (blob == null) ? StorageUtils.writeDocumentToString(doc) : null;
 		Object[] flds = m_user.storageFields(edit);
 		if (flds == null) flds = new Object[0];
-		Object[] fields = new Object[flds.length + 2];
+		Object[] fields = new Object[flds.length + (m_binaryEntities ? 3 : 2)];
 		System.arraycopy(flds, 0, fields, 0, flds.length);
+		if (m_binaryEntities) fields[fields.length - 3] = blob;
 		fields[fields.length - 2] = xml;
 		fields[fields.length - 1] = caseId(edit.getId());
 
-		String statement = "update " + m_resourceTableName + " set " + updateSet(m_resourceTableOtherFields) + " XML = ? where ( "
-				+ m_resourceTableIdField + " = ? )";
+		String statement = "update " + m_resourceTableName + " set " + updateSet(m_resourceTableOtherFields)
+				+ (m_binaryEntities ? " BINARY_ENTITY = ?," : "") + " XML = ? where ( " + m_resourceTableIdField + " = ? )";
 		// singleStorageSql.getUpdateXml(m_resourceTableIdField, m_resourceTableOtherFields, m_resourceTableName);
 
 		if (m_locksAreInDb)
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.conversion;
+
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.w3c.dom.Document;
+
+import org.sakaiproject.util.StorageUtils;
+import org.sakaiproject.util.serialize.Type1XmlEntitySerializer;
+
+/**
+ * Converts the XML field of a single or double storage table to a Type1 binary blob in its BINARY_ENTITY field in
+ * bulk, for storage that has setBinaryEntities turned on and should not wait for each record to be saved again.
+ * Records already converted have a null XML field and are skipped. For example, for announcements:
+ * 
+ * <pre>
+ * convert.0=Type1XmlAnnouncementConversion
+ * convert.0.handler.class=org.sakaiproject.util.conversion.Type1XmlEntityConversionHandler
+ * convert.0.create.migrate.table.count=1
+ * convert.0.create.migrate.table.0=create table announcement_t1register ( id varchar(99), status varchar(99) )
+ * convert.0.drop.migrate.table.count=1
+ * convert.0.drop.migrate.table.0=drop table announcement_t1register
+ * convert.0.check.migrate.table=select count(*) from announcement_t1register where status <> 'done'
+ * convert.0.select.next.batch=select id from announcement_t1register where status = 'pending' limit 100
+ * convert.0.complete.next.batch=update announcement_t1register set status = 'done' where id = ?
+ * convert.0.mark.next.batch=update announcement_t1register set status = 'locked' where id = ?
+ * convert.0.populate.migrate.table=insert into announcement_t1register (id,status) select MESSAGE_ID, 'pending' from ANNOUNCEMENT_MESSAGE where XML is not null
+ * convert.0.select.record=select XML from ANNOUNCEMENT_MESSAGE where MESSAGE_ID = ?
+ * convert.0.select.validate.record=select BINARY_ENTITY from ANNOUNCEMENT_MESSAGE where MESSAGE_ID = ?
+ * convert.0.update.record=update ANNOUNCEMENT_MESSAGE set BINARY_ENTITY = ?, XML = NULL where MESSAGE_ID = ?
+ * </pre>
+ */
+@Slf4j
+public class Type1XmlEntityConversionHandler implements SchemaConversionHandler
+{
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getSource(String id, ResultSet rs) throws SQLException
+	{
+		return readString(rs);
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#convertSource(java.lang.String, java.lang.Object, java.sql.PreparedStatement)
+	 */
+	public boolean convertSource(String id, Object source, PreparedStatement updateRecord) throws SQLException
+	{
+		try
+		{
+			Document doc = StorageUtils.readDocumentFromString((String) source);
+			if (doc == null)
+			{
+				log.warn("Failed to parse {}", id);
+				return false;
+			}
+			byte[] converted = Type1XmlEntitySerializer.serialize(doc);
+
+			// the blob must read back to the same document before it replaces the xml
+			check(id, doc, converted);
+
+			updateRecord.setBytes(1, converted);
+			updateRecord.setString(2, id);
+			return true;
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to process record {}", id, e);
+		}
+		return false;
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#validate(java.lang.String, java.lang.Object, java.lang.Object)
+	 */
+	public void validate(String id, Object source, Object result) throws Exception
+	{
+		Document doc = StorageUtils.readDocumentFromString((String) source);
+		if (doc == null) throw new Exception("Source of " + id + " no longer parses");
+		check(id, doc, (byte[]) result);
+	}
+
+	/**
+	 * @see org.sakaiproject.util.conversion.SchemaConversionHandler#getValidateSource(java.lang.String, java.sql.ResultSet)
+	 */
+	public Object getValidateSource(String id, ResultSet rs) throws SQLException
+	{
+		if (rs.getMetaData().getColumnType(1) == Types.BLOB)
+		{
+			Blob blob = rs.getBlob(1);
+			return (blob == null) ? null : blob.getBytes(1L, (int) blob.length());
+		}
+		return rs.getBytes(1);
+	}
+
+	private void check(String id, Document doc, byte[] converted) throws Exception
+	{
+		byte[] expected = Type1XmlEntitySerializer.serialize(doc);
+		byte[] actual = Type1XmlEntitySerializer.serialize(Type1XmlEntitySerializer.parseDocument(converted));
+		if (!Arrays.equals(expected, actual))
+		{
+			throw new Exception("Type1 blob for " + id + " does not match its xml");
+		}
+	}
+
+	private String readString(ResultSet rs) throws SQLException
+	{
+		if (rs.getMetaData().getColumnType(1) == Types.CLOB)
+		{
+			Clob clob = rs.getClob(1);
+			return (clob == null) ? null : clob.getSubString(1L, (int) clob.length());
+		}
+		return rs.getString(1);
+	}
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.util.serialize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import org.sakaiproject.entity.api.serialize.EntityParseException;
+import org.sakaiproject.util.StorageUtils;
+
+/**
+ * <pre>
+ * Serializes the xml document of any storage entity (anything a SingleStorageUser or DoubleStorageUser
+ * writes with toXml) into a Type1 binary token stream, and reads it back either as SAX events for a
+ * SAXEntityReader or as a DOM for everything else. Decoding skips the xml lexer, character escaping
+ * and entity handling, and element and attribute names are only written once per blob.
+ *
+ * The blob is written to a BINARY_ENTITY column beside the XML column, which is left null, so xml and
+ * binary records can sit side by side in the same table.
+ *
+ * If you need to modify this class think very carefully about what data might be in production databases.
+ * If you need to change the structure, create a Type2 and leave Type1 readable.
+ *
+ * The structure of a serialization is
+ * byte 1-6 : BLOB_ID identifying the blob.
+ * First Int: Type Number (int)
+ * Then a token stream, each token a byte:
+ * ELEMENT_START name, attribute count (short), then name, value for each attribute
+ * TEXT value
+ * ELEMENT_END
+ * BLOCK_END
+ * A name is a short index into the names seen so far in this blob, or -1 followed by a short length and the UTF8 bytes of a new name.
+ * A value is an int length followed by that many UTF8 bytes.
+ * </pre>
+ */
+public class Type1XmlEntitySerializer
+{
+	public static final String BLOB_ID = "SAKXML";
+
+	private static final byte[] BYTE_BLOB_ID = new byte[] { 'S', 'A', 'K', 'X', 'M', 'L' };
+
+	private static final int TYPE1 = 1;
+
+	private static final byte BLOCK_END = 0;
+
+	private static final byte ELEMENT_START = 1;
+
+	private static final byte TEXT = 2;
+
+	private static final byte ELEMENT_END = 3;
+
+	private static final short NEW_NAME = -1;
+
+	/**
+	 * Return true if these bytes are a Type1 blob.
+	 */
+	public static boolean accept(byte[] blob)
+	{
+		if (blob == null || blob.length < BYTE_BLOB_ID.length) return false;
+		for (int i = 0; i < BYTE_BLOB_ID.length; i++)
+		{
+			if (blob[i] != BYTE_BLOB_ID[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Serialize the document to a Type1 blob.
+	 */
+	public static byte[] serialize(Document doc) throws EntityParseException
+	{
+		try
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream ds = new DataOutputStream(baos);
+			ds.write(BYTE_BLOB_ID);
+			ds.writeInt(TYPE1);
+			writeElement(doc.getDocumentElement(), ds, new HashMap<>());
+			ds.writeByte(BLOCK_END);
+			ds.flush();
+			return baos.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new EntityParseException("Failed to serialize entity document", e);
+		}
+	}
+
+	/**
+	 * Replay a Type1 blob as SAX events into the handler, as a parse of the original xml would.
+	 */
+	public static void parse(byte[] blob, ContentHandler handler) throws EntityParseException
+	{
+		Reader in = new Reader(blob);
+		try
+		{
+			handler.startDocument();
+			byte token;
+			while ((token = in.buf.get()) != BLOCK_END)
+			{
+				switch (token)
+				{
+					case ELEMENT_START:
+						String name = in.name();
+						AttributesImpl attributes = new AttributesImpl();
+						for (int n = in.buf.getShort(); n > 0; n--)
+						{
+							attributes.addAttribute("", "", in.name(), "CDATA", in.value());
+						}
+						in.open.add(name);
+						handler.startElement("", "", name, attributes);
+						break;
+					case TEXT:
+						char[] text = in.value().toCharArray();
+						handler.characters(text, 0, text.length);
+						break;
+					case ELEMENT_END:
+						handler.endElement("", "", in.open.remove(in.open.size() - 1));
+						break;
+					default:
+						throw new EntityParseException("Unknown token " + token + " in Type1 xml blob");
+				}
+			}
+			handler.endDocument();
+		}
+		catch (SAXException | RuntimeException e)
+		{
+			throw new EntityParseException("Failed to replay Type1 xml blob", e);
+		}
+	}
+
+	/**
+	 * Rebuild the document from a Type1 blob.
+	 */
+	public static Document parseDocument(byte[] blob) throws EntityParseException
+	{
+		Reader in = new Reader(blob);
+		Document doc = StorageUtils.createDocument();
+		try
+		{
+			Node current = doc;
+			byte token;
+			while ((token = in.buf.get()) != BLOCK_END)
+			{
+				switch (token)
+				{
+					case ELEMENT_START:
+						Element element = doc.createElement(in.name());
+						for (int n = in.buf.getShort(); n > 0; n--)
+						{
+							element.setAttribute(in.name(), in.value());
+						}
+						current.appendChild(element);
+						current = element;
+						break;
+					case TEXT:
+						current.appendChild(doc.createTextNode(in.value()));
+						break;
+					case ELEMENT_END:
+						current = current.getParentNode();
+						break;
+					default:
+						throw new EntityParseException("Unknown token " + token + " in Type1 xml blob");
+				}
+			}
+			return doc;
+		}
+		catch (RuntimeException e)
+		{
+			throw new EntityParseException("Failed to read Type1 xml blob", e);
+		}
+	}
+
+	private static void writeElement(Element element, DataOutputStream ds, Map<String, Short> names) throws IOException
+	{
+		ds.writeByte(ELEMENT_START);
+		writeName(element.getTagName(), ds, names);
+		NamedNodeMap attributes = element.getAttributes();
+		ds.writeShort(attributes.getLength());
+		for (int i = 0; i < attributes.getLength(); i++)
+		{
+			Attr attr = (Attr) attributes.item(i);
+			writeName(attr.getName(), ds, names);
+			writeValue(attr.getValue(), ds);
+		}
+		for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling())
+		{
+			switch (child.getNodeType())
+			{
+				case Node.ELEMENT_NODE:
+					writeElement((Element) child, ds, names);
+					break;
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+					ds.writeByte(TEXT);
+					writeValue(child.getNodeValue(), ds);
+					break;
+				default:
+					// comments and processing instructions are not part of an entity
+					break;
+			}
+		}
+		ds.writeByte(ELEMENT_END);
+	}
+
+	private static void writeName(String name, DataOutputStream ds, Map<String, Short> names) throws IOException
+	{
+		Short index = names.get(name);
+		if (index != null)
+		{
+			ds.writeShort(index);
+			return;
+		}
+		if (names.size() < Short.MAX_VALUE)
+		{
+			names.put(name, (short) names.size());
+		}
+		byte[] b = name.getBytes(StandardCharsets.UTF_8);
+		ds.writeShort(NEW_NAME);
+		ds.writeShort(b.length);
+		ds.write(b);
+	}
+
+	private static void writeValue(String value, DataOutputStream ds) throws IOException
+	{
+		byte[] b = value.getBytes(StandardCharsets.UTF_8);
+		ds.writeInt(b.length);
+		ds.write(b);
+	}
+
+	/**
+	 * Read position in a blob, with the names seen so far and the open elements.
+	 */
+	private static class Reader
+	{
+		final ByteBuffer buf;
+
+		final List<String> names = new ArrayList<>();
+
+		final List<String> open = new ArrayList<>();
+
+		Reader(byte[] blob) throws EntityParseException
+		{
+			if (!accept(blob))
+			{
+				throw new EntityParseException("Data Block does not belong to this serializer expected [" + BLOB_ID + "]");
+			}
+			buf = ByteBuffer.wrap(blob);
+			buf.position(BYTE_BLOB_ID.length);
+			int type = buf.getInt();
+			if (type != TYPE1)
+			{
+				throw new EntityParseException("Unknown Type " + type + " in xml blob, expected " + TYPE1);
+			}
+		}
+
+		String name()
+		{
+			short index = buf.getShort();
+			if (index != NEW_NAME) return names.get(index);
+
+			int length = buf.getShort() & 0xFFFF;
+			String name = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+			buf.position(buf.position() + length);
+			if (names.size() < Short.MAX_VALUE) names.add(name);
+			return name;
+		}
+
+		String value()
+		{
+			int length = buf.getInt();
+			String value = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+			buf.position(buf.position() + length);
+			return value;
+		}
+	}
+}
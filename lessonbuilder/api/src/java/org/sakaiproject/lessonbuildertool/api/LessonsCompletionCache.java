@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.lessonbuildertool.api;
+
+/**
+ * Which Lessons items a user has completed and can see, kept per user and site across requests, so prerequisite and
+ * progress checks don't rebuild it on every click.
+ * <p>
+ * The results are computed, as before, by SimplePageBean and only stored here. Writes of log entries, question
+ * responses and comments forget the items they complete, grade and submission events forget what the user or the site
+ * completed elsewhere, and page, item and group changes forget everything known about the site.
+ * </p>
+ * <p>
+ * A request may compute a result from data read before such a change and store it after, so results are stored with
+ * the graph version read before computing them, and are dropped if anything was forgotten since.
+ * </p>
+ */
+public interface LessonsCompletionCache {
+
+    /** What one user has completed and can see in one site, by item id */
+    interface Graph {
+
+        /** @return the version to store results computed from now on with */
+        long getVersion();
+
+        /** @return whether the item is complete, null if not known */
+        Boolean isComplete(long itemId);
+
+        /** @return whether the item is visible, null if not known */
+        Boolean isVisible(long itemId);
+
+        /** Stores whether the item is complete, unless something was forgotten since the version was read */
+        void putComplete(long itemId, boolean complete, long version);
+
+        /** Stores whether the item is visible, unless something was forgotten since the version was read */
+        void putVisible(long itemId, boolean visible, long version);
+
+        /**
+         * Notes the page an item is on, so the page items whose completion follows from that page are forgotten with
+         * it. Note it before storing its completion.
+         */
+        void addItem(long itemId, long pageId);
+
+        /**
+         * Marks a page item whose completion follows from the items on the page it links to, to forget it with any
+         * of them. Mark it before storing its completion.
+         */
+        void addDerived(long itemId, long subPageId);
+    }
+
+    /**
+     * @param role the role the user swapped to in the site, or null, as what a user can see depends on it
+     * @return the user's graph for the site, empty if nothing is known since the site last changed
+     */
+    Graph getGraph(String siteId, String userId, String role);
+
+    /** Something the user did may complete an item: forget it, and the page items whose completion follows from it */
+    void itemChanged(String userId, long itemId);
+
+    /** Forget what the user completed and can see in every site */
+    void userChanged(String userId);
+
+    /** The site's pages, items, groups or grades changed: forget what all its users completed and can see */
+    void siteChanged(String siteId);
+}
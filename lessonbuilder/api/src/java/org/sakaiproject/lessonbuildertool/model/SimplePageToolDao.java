@@ -197,6 +197,10 @@ public interface SimplePageToolDao {
     // version without permission checking and logging
 	public boolean quickUpdate(Object o);
 
+    // updating a log entry doesn't tell the completion cache, as it's updated on every view. Call this
+    // after updating one that completes its item differently, i.e. its complete or dummy flag changed
+	public void logEntryCompletionChanged(SimplePageLogEntry entry);
+
 	public Long getTopLevelPageId(String toolId);
 
 	public SimplePage getPage(long pageId);
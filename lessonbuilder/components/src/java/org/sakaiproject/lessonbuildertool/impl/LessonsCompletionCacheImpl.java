@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.lessonbuildertool.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.lessonbuildertool.api.LessonBuilderEvents;
+import org.sakaiproject.lessonbuildertool.api.LessonsCompletionCache;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the completion graphs in two maps: the graphs of each user by site and swapped role, and a generation for each
+ * site. A site change just moves the site to a new generation, and a graph of an older generation is replaced when it
+ * is next asked for, so a change in a large site doesn't walk all its users. User changes remove what changed, and the
+ * page items above it, from the user's graphs and move them to a new version, so results computed before are not
+ * stored.
+ * <p>
+ * The maps are kept on each server, least recently used users and sites dropped first, as generations are only
+ * ordered on the server that handed them out. Events are observed from the whole cluster, so the graphs kept on one
+ * server follow what users do on the others. Writes made through the Lessons DAO on this server are passed on
+ * directly once they commit.
+ * </p>
+ */
+@Slf4j
+public class LessonsCompletionCacheImpl implements LessonsCompletionCache, Observer {
+
+    /** Events after which the user who caused them may have completed something, matched by prefix */
+    static final List<String> DEFAULT_USER_EVENTS = Arrays.asList(
+            LessonBuilderEvents.COMMENT_CREATE, LessonBuilderEvents.COMMENT_UPDATE, LessonBuilderEvents.COMMENT_DELETE,
+            "sam.assessment.submit", "forums.new", "forums.response");
+
+    /** Events after which any user of the site may have completed something, or see other items, matched by prefix */
+    static final List<String> DEFAULT_SITE_EVENTS = Arrays.asList(
+            LessonBuilderEvents.PAGE_CREATE, LessonBuilderEvents.PAGE_UPDATE, LessonBuilderEvents.PAGE_DELETE, LessonBuilderEvents.PAGE_REMOVE,
+            LessonBuilderEvents.ITEM_CREATE, LessonBuilderEvents.ITEM_UPDATE, LessonBuilderEvents.ITEM_DELETE,
+            "asn.submit.submission", "asn.grade.submission", "asn.new.assignment", "asn.revise.", "asn.delete.",
+            "sam.total.score.update", "sam.student.score.update", "sam.question.score.update", "sam.submission.delete", "sam.pubassessment.",
+            "forums.grade", "forums.revise", "forums.delete",
+            "gradebook.", "site.upd", "realm.upd");
+
+    @Setter private EventTrackingService eventTrackingService;
+    @Setter private ServerConfigurationService serverConfigurationService;
+
+    private boolean enabled;
+    private List<String> userEvents;
+    private List<String> siteEvents;
+    // userId => siteId, or siteId/role when swapped => graph
+    private Map<String, ConcurrentMap<String, GraphImpl>> graphs;
+    // siteId => generation
+    private Map<String, Long> generations;
+    private final AtomicLong nextGeneration = new AtomicLong();
+
+    public void init() {
+        enabled = serverConfigurationService.getBoolean("lessonbuilder.completion.cache.enabled", true);
+        userEvents = serverConfigurationService.getStringList("lessonbuilder.completion.cache.user.events", DEFAULT_USER_EVENTS);
+        siteEvents = serverConfigurationService.getStringList("lessonbuilder.completion.cache.site.events", DEFAULT_SITE_EVENTS);
+        if (enabled) {
+            graphs = lruMap(serverConfigurationService.getInt("lessonbuilder.completion.cache.users", 10000));
+            generations = lruMap(serverConfigurationService.getInt("lessonbuilder.completion.cache.sites", 10000));
+            eventTrackingService.addObserver(this);
+        }
+        log.info("init() completion cache enabled: {}", enabled);
+    }
+
+    public void destroy() {
+        log.info("destroy()");
+        if (enabled) {
+            eventTrackingService.deleteObserver(this);
+            graphs.clear();
+            generations.clear();
+        }
+    }
+
+    @Override
+    public Graph getGraph(String siteId, String userId, String role) {
+        if (!enabled || StringUtils.isAnyBlank(siteId, userId)) {
+            return new GraphImpl(0);
+        }
+        long generation = generations.computeIfAbsent(siteId, id -> nextGeneration.incrementAndGet());
+        String key = StringUtils.isBlank(role) ? siteId : siteId + "/" + role;
+        return graphs.computeIfAbsent(userId, id -> new ConcurrentHashMap<>())
+                .compute(key, (k, graph) -> graph == null || graph.generation != generation ? new GraphImpl(generation) : graph);
+    }
+
+    @Override
+    public void itemChanged(String userId, long itemId) {
+        forEachGraph(userId, graph -> graph.forget(itemId));
+    }
+
+    @Override
+    public void userChanged(String userId) {
+        if (enabled && StringUtils.isNotBlank(userId)) {
+            graphs.remove(userId);
+        }
+    }
+
+    @Override
+    public void siteChanged(String siteId) {
+        if (enabled && StringUtils.isNotBlank(siteId)) {
+            generations.put(siteId, nextGeneration.incrementAndGet());
+        }
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        if (!(arg instanceof Event)) {
+            return;
+        }
+        Event event = (Event) arg;
+        String name = event.getEvent();
+        if (name == null) {
+            return;
+        }
+        String userId = event.getUserId();
+        if (LessonBuilderEvents.ITEM_READ.equals(name) || LessonBuilderEvents.PAGE_READ.equals(name)) {
+            // every view of a page or item is posted, but only the first one, or one that finds the page complete
+            // when it wasn't, changes its log entry. Writes on this server were already passed on by the DAO.
+            Long id = getId(event.getResource());
+            if (id != null) {
+                if (LessonBuilderEvents.ITEM_READ.equals(name)) {
+                    forEachGraph(userId, graph -> graph.read(id, true));
+                } else {
+                    // pages are found by their page id, the items linking to them are the ones to check
+                    forEachGraph(userId, graph -> graph.getDerived(id).forEach(itemId -> graph.read(itemId, event.getModify())));
+                }
+            }
+        } else if (matches(userEvents, name)) {
+            if (StringUtils.isNotBlank(userId)) {
+                userChanged(userId);
+            } else {
+                // submitted by a job on behalf of the user
+                siteChanged(getSiteId(event));
+            }
+        } else if (matches(siteEvents, name)) {
+            siteChanged(getSiteId(event));
+        }
+    }
+
+    private void forEachGraph(String userId, Consumer<GraphImpl> action) {
+        if (!enabled || StringUtils.isBlank(userId)) {
+            return;
+        }
+        ConcurrentMap<String, GraphImpl> userGraphs = graphs.get(userId);
+        if (userGraphs != null) {
+            userGraphs.values().forEach(action);
+        }
+    }
+
+    /** @return a map dropping its least recently used entry when it has more than maxEntries */
+    private static <K, V> Map<K, V> lruMap(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    private static boolean matches(List<String> prefixes, String name) {
+        for (String prefix : prefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the id at the end of a /lessonbuilder/item/id or /lessonbuilder/page/id reference */
+    private static Long getId(String resource) {
+        String id = StringUtils.substringAfterLast(resource, "/");
+        return StringUtils.isNumeric(id) ? Long.valueOf(id) : null;
+    }
+
+    /** @return the event context, or the site in references such as /realm//site/id/group/id */
+    private static String getSiteId(Event event) {
+        if (StringUtils.isNotBlank(event.getContext())) {
+            return event.getContext();
+        }
+        String resource = event.getResource();
+        if (resource == null || !resource.contains("/site/")) {
+            return null;
+        }
+        return StringUtils.substringBefore(StringUtils.substringAfter(resource, "/site/"), "/");
+    }
+
+    static class GraphImpl implements Graph {
+
+        private final long generation;
+        private final AtomicLong version;
+        private final ConcurrentMap<Long, Boolean> complete;
+        private final ConcurrentMap<Long, Boolean> visible;
+        // itemId => the page it is on
+        private final ConcurrentMap<Long, Long> pages;
+        // pageId => the page items linking to it, which complete when the items on it do
+        private final ConcurrentMap<Long, Set<Long>> derived;
+
+        GraphImpl(long generation) {
+            this.generation = generation;
+            this.version = new AtomicLong();
+            this.complete = new ConcurrentHashMap<>();
+            this.visible = new ConcurrentHashMap<>();
+            this.pages = new ConcurrentHashMap<>();
+            this.derived = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public long getVersion() {
+            return version.get();
+        }
+
+        @Override
+        public Boolean isComplete(long itemId) {
+            return complete.get(itemId);
+        }
+
+        @Override
+        public Boolean isVisible(long itemId) {
+            return visible.get(itemId);
+        }
+
+        @Override
+        public void putComplete(long itemId, boolean value, long version) {
+            complete.compute(itemId, (id, current) -> this.version.get() == version ? Boolean.valueOf(value) : current);
+        }
+
+        @Override
+        public void putVisible(long itemId, boolean value, long version) {
+            visible.compute(itemId, (id, current) -> this.version.get() == version ? Boolean.valueOf(value) : current);
+        }
+
+        @Override
+        public void addItem(long itemId, long pageId) {
+            pages.put(itemId, pageId);
+        }
+
+        @Override
+        public void addDerived(long itemId, long subPageId) {
+            derived.computeIfAbsent(subPageId, id -> ConcurrentHashMap.newKeySet()).add(itemId);
+        }
+
+        /** @return the page items known to complete from the items on the page */
+        Set<Long> getDerived(long pageId) {
+            return derived.getOrDefault(pageId, Collections.emptySet());
+        }
+
+        /** Forgets whether the item is complete, and what follows from it, if a read found otherwise */
+        void read(long itemId, boolean complete) {
+            Boolean known = this.complete.get(itemId);
+            if (known != null && known != complete) {
+                forget(itemId);
+            }
+        }
+
+        /**
+         * Forgets whether the item is complete, and the page items above it, up through the pages linking to its
+         * page. The pages and links stay noted, so one stored by another request meanwhile is still forgotten next
+         * time. The version is moved first, so a result computed before is either removed here or not stored.
+         */
+        void forget(long itemId) {
+            version.incrementAndGet();
+            Set<Long> seen = new HashSet<>();
+            Deque<Long> items = new ArrayDeque<>();
+            items.push(itemId);
+            while (!items.isEmpty()) {
+                Long id = items.pop();
+                // pages may link to each other in a loop
+                if (seen.add(id)) {
+                    complete.remove(id);
+                    Long pageId = pages.get(id);
+                    if (pageId != null) {
+                        getDerived(pageId).forEach(items::push);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -66,6 +66,8 @@ import org.sakaiproject.time.api.UserTimeService;
 import org.springframework.dao.DataAccessException;
 import org.springframework.orm.hibernate5.HibernateTemplate;
 import org.springframework.orm.hibernate5.support.HibernateDaoSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import org.sakaiproject.authz.api.AuthzGroupService;
 import org.sakaiproject.authz.api.SecurityService;
@@ -102,6 +104,7 @@ import org.sakaiproject.lessonbuildertool.SimpleStudentPage;
 import org.sakaiproject.lessonbuildertool.SimpleStudentPageImpl;
 import org.sakaiproject.lessonbuildertool.api.LessonBuilderConstants;
 import org.sakaiproject.lessonbuildertool.api.LessonBuilderEvents;
+import org.sakaiproject.lessonbuildertool.api.LessonsCompletionCache;
 import org.sakaiproject.lessonbuildertool.util.LessonsSubNavBuilder;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.SitePage;
@@ -115,6 +118,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 
 	private AuthzGroupService authzGroupService;
 	private EventTrackingService eventTrackingService;
+	private LessonsCompletionCache lessonsCompletionCache;
 	private PortalService portalService;
 	private SecurityService securityService;
 	private ServerConfigurationService serverConfigurationService;
@@ -743,6 +747,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 				SimplePageComment comment = (SimplePageComment)o;
 				eventTrackingService.post(eventTrackingService.newEvent(LessonBuilderEvents.COMMENT_CREATE, "/lessonbuilder/comment/" + comment.getId(), true));
 			}
+			completionChanged(o);
 
 			return true;
 		} catch (org.springframework.dao.DataIntegrityViolationException e) {
@@ -797,6 +802,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 		    if(o instanceof SimplePageItem || o instanceof SimplePage) {
 		    	updateStudentPage(o);
 		    }
+		    completionChanged(o);
 
 		    return true;
 		} catch (org.springframework.dao.DataIntegrityViolationException e) {
@@ -816,6 +822,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 	public boolean quickSaveItem(Object o) {
 		try {
 			Object id = getHibernateTemplate().save(o);
+			completionChanged(o);
 			return true;
 		} catch (DataAccessException e) {
 			log.warn("Hibernate could not save: {}", e.toString());
@@ -851,6 +858,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 			Object p = getDaoHibernateTemplate().merge(o);
 			getHibernateTemplate().delete(p);
 			getHibernateTemplate().flush();
+			completionChanged(o);
 			return true;
 		} catch (DataAccessException | IllegalArgumentException e) {
 			log.warn("Hibernate could not delete: {}", e.toString());
@@ -863,6 +871,7 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 			Object p = getHibernateTemplate().merge(o);
 			getHibernateTemplate().delete(p);
 			getHibernateTemplate().flush();
+			completionChanged(o);
 			return true;
 		} catch (DataAccessException | IllegalArgumentException e) {
 			log.warn("Hibernate could not delete: {}", e.toString());
@@ -921,6 +930,9 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 			if(o instanceof SimplePageItem || o instanceof SimplePage) {
 				updateStudentPage(o);
 			}
+			if (!(o instanceof SimplePageLogEntry)) {
+				completionChanged(o);
+			}
 
 			return true;
 		} catch (org.springframework.dao.DataIntegrityViolationException e) {
@@ -939,6 +951,9 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 	public boolean quickUpdate(Object o) {
 		try {
 			getHibernateTemplate().merge(o);
+			if (!(o instanceof SimplePageLogEntry)) {
+				completionChanged(o);
+			}
 			return true;
 		} catch (DataAccessException e) {
 			log.error(e.getMessage(), e);
@@ -946,6 +961,70 @@ public class SimplePageToolDaoImpl extends HibernateDaoSupport implements Simple
 		}
 	}
 
+	public void logEntryCompletionChanged(SimplePageLogEntry entry) {
+		completionChanged(entry);
+	}
+
+	// Log entries, question responses and comments complete items for their user. Log entries are only
+	// passed on when created or deleted, or through logEntryCompletionChanged, as views update them. Pages, items, groups and
+	// student pages change what every user of the site has completed and can see. The completion cache
+	// is told once the write commits, so a request reading meanwhile doesn't read the old data after it.
+	// One that read it before stores its result with an older graph version or generation, which is dropped.
+	private void completionChanged(Object o) {
+		if (lessonsCompletionCache == null) {
+			return;
+		}
+		Runnable change;
+		if (o instanceof SimplePageLogEntry) {
+			SimplePageLogEntry entry = (SimplePageLogEntry) o;
+			change = () -> lessonsCompletionCache.itemChanged(entry.getUserId(), entry.getItemId());
+		} else if (o instanceof SimplePageQuestionResponse) {
+			SimplePageQuestionResponse response = (SimplePageQuestionResponse) o;
+			change = () -> lessonsCompletionCache.itemChanged(response.getUserId(), response.getQuestionId());
+		} else if (o instanceof SimplePageComment) {
+			SimplePageComment comment = (SimplePageComment) o;
+			change = () -> lessonsCompletionCache.itemChanged(comment.getAuthor(), comment.getItemId());
+		} else {
+			String siteId;
+			if (o instanceof SimplePage) {
+				siteId = ((SimplePage) o).getSiteId();
+			} else if (o instanceof SimplePageItem) {
+				siteId = getSiteIdOfPage(((SimplePageItem) o).getPageId());
+			} else if (o instanceof SimplePageGroup) {
+				siteId = ((SimplePageGroup) o).getSiteId();
+			} else if (o instanceof SimpleStudentPage) {
+				siteId = getSiteIdOfPage(((SimpleStudentPage) o).getPageId());
+			} else {
+				return;
+			}
+			change = () -> lessonsCompletionCache.siteChanged(siteId);
+		}
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					change.run();
+				}
+			});
+		} else {
+			change.run();
+		}
+	}
+
+	private String getSiteIdOfPage(long pageId) {
+		SimplePage page = getPage(pageId);
+		if (page != null) {
+			return page.getSiteId();
+		}
+		// new student pages and forced comments have no page yet
+		try {
+			return toolManager.getCurrentPlacement().getContext();
+		} catch (NullPointerException ignore) {
+			return null;
+		}
+	}
+
 	public Long getTopLevelPageId(String toolId) {
 		DetachedCriteria d = DetachedCriteria.forClass(SimplePage.class).add(Restrictions.eq("toolId", toolId))
 			.add(Restrictions.isNull("parent")).addOrder(Order.desc("pageId"));
@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.lessonbuildertool.impl;
+
+import static org.mockito.Mockito.*;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.lessonbuildertool.api.LessonBuilderEvents;
+import org.sakaiproject.lessonbuildertool.api.LessonsCompletionCache.Graph;
+
+public class LessonsCompletionCacheImplTest {
+
+    private LessonsCompletionCacheImpl cache;
+
+    @Before
+    public void before() {
+        ServerConfigurationService serverConfigurationService = mock(ServerConfigurationService.class);
+        when(serverConfigurationService.getBoolean(anyString(), anyBoolean())).thenAnswer(i -> i.getArgument(1));
+        when(serverConfigurationService.getInt(anyString(), anyInt())).thenAnswer(i -> i.getArgument(1));
+        when(serverConfigurationService.getStringList(anyString(), anyList())).thenAnswer(i -> i.getArgument(1));
+
+        cache = new LessonsCompletionCacheImpl();
+        cache.setEventTrackingService(mock(EventTrackingService.class));
+        cache.setServerConfigurationService(serverConfigurationService);
+        cache.init();
+    }
+
+    @After
+    public void after() {
+        cache.destroy();
+    }
+
+    @Test
+    public void graphIsKeptPerUserSiteAndRole() {
+        Graph graph = cache.getGraph("site", "user", null);
+        graph.putComplete(1L, true, graph.getVersion());
+        graph.putVisible(1L, false, graph.getVersion());
+
+        Assert.assertSame(graph, cache.getGraph("site", "user", null));
+        Assert.assertEquals(Boolean.TRUE, cache.getGraph("site", "user", null).isComplete(1L));
+        Assert.assertEquals(Boolean.FALSE, cache.getGraph("site", "user", null).isVisible(1L));
+        Assert.assertNull(cache.getGraph("site", "other", null).isComplete(1L));
+        Assert.assertNull(cache.getGraph("other", "user", null).isComplete(1L));
+        Assert.assertNull(cache.getGraph("site", "user", "access").isVisible(1L));
+    }
+
+    @Test
+    public void itemChangedForgetsTheItem() {
+        Graph graph = cache.getGraph("site", "user", null);
+        graph.putComplete(1L, false, graph.getVersion());
+        graph.putComplete(2L, false, graph.getVersion());
+        graph.putVisible(1L, true, graph.getVersion());
+
+        cache.itemChanged("user", 1L);
+
+        Assert.assertNull(graph.isComplete(1L));
+        Assert.assertEquals(Boolean.FALSE, graph.isComplete(2L));
+        Assert.assertEquals(Boolean.TRUE, graph.isVisible(1L));
+    }
+
+    @Test
+    public void resultComputedBeforeItemChangedIsNotStored() {
+        Graph graph = cache.getGraph("site", "user", null);
+        long version = graph.getVersion();
+
+        cache.itemChanged("user", 1L);
+        graph.putComplete(1L, false, version);
+        graph.putVisible(1L, false, version);
+
+        Assert.assertNull(graph.isComplete(1L));
+        Assert.assertNull(graph.isVisible(1L));
+
+        graph.putComplete(1L, true, graph.getVersion());
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(1L));
+    }
+
+    @Test
+    public void itemChangedForgetsThePageItemsAboveIt() {
+        Graph graph = subpages();
+
+        cache.itemChanged("user", 1L);
+        Assert.assertNull(graph.isComplete(1L));
+        Assert.assertNull(graph.isComplete(10L));
+        Assert.assertNull(graph.isComplete(20L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(2L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(30L));
+
+        // still noted when stored again later
+        graph.putComplete(10L, true, graph.getVersion());
+        graph.putComplete(20L, true, graph.getVersion());
+        cache.itemChanged("user", 1L);
+        Assert.assertNull(graph.isComplete(10L));
+        Assert.assertNull(graph.isComplete(20L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(30L));
+    }
+
+    @Test
+    public void itemChangedStopsAtPagesLinkedInALoop() {
+        Graph graph = cache.getGraph("site", "user", null);
+        // page 4 links to page 5, which links back to page 4
+        graph.addItem(1L, 5L);
+        graph.addDerived(10L, 5L);
+        graph.addItem(10L, 4L);
+        graph.addDerived(40L, 4L);
+        graph.addItem(40L, 5L);
+        graph.putComplete(1L, true, graph.getVersion());
+        graph.putComplete(10L, true, graph.getVersion());
+        graph.putComplete(40L, true, graph.getVersion());
+
+        cache.itemChanged("user", 1L);
+        Assert.assertNull(graph.isComplete(1L));
+        Assert.assertNull(graph.isComplete(10L));
+        Assert.assertNull(graph.isComplete(40L));
+    }
+
+    @Test
+    public void siteChangedReplacesTheGraphs() {
+        Graph graph = cache.getGraph("site", "user", null);
+        long version = graph.getVersion();
+        graph.putComplete(1L, true, version);
+
+        cache.siteChanged("site");
+        Graph replaced = cache.getGraph("site", "user", null);
+        graph.putComplete(2L, true, version);
+
+        Assert.assertNotSame(graph, replaced);
+        Assert.assertNull(replaced.isComplete(1L));
+        Assert.assertNull(replaced.isComplete(2L));
+    }
+
+    @Test
+    public void userChangedForgetsEverySite() {
+        cache.getGraph("site", "user", null).putComplete(1L, true, 0);
+        cache.getGraph("other", "user", null).putComplete(2L, true, 0);
+        cache.getGraph("site", "someone", null).putComplete(1L, true, 0);
+
+        cache.userChanged("user");
+
+        Assert.assertNull(cache.getGraph("site", "user", null).isComplete(1L));
+        Assert.assertNull(cache.getGraph("other", "user", null).isComplete(2L));
+        Assert.assertEquals(Boolean.TRUE, cache.getGraph("site", "someone", null).isComplete(1L));
+    }
+
+    @Test
+    public void updateForgetsReadsThatChangeCompletion() {
+        Graph graph = subpages();
+        long version = graph.getVersion();
+
+        // views of what is known to be complete change nothing
+        cache.update(null, event(LessonBuilderEvents.ITEM_READ, "user", "site", "/lessonbuilder/item/1", false));
+        cache.update(null, event(LessonBuilderEvents.PAGE_READ, "user", "site", "/lessonbuilder/page/5", true));
+        Assert.assertEquals(version, graph.getVersion());
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(1L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(10L));
+
+        // page 5 found incomplete forgets the page items linking to it, and those above them
+        cache.update(null, event(LessonBuilderEvents.PAGE_READ, "user", "site", "/lessonbuilder/page/5", false));
+        Assert.assertNull(graph.isComplete(10L));
+        Assert.assertNull(graph.isComplete(20L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(1L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(30L));
+
+        // the first view of an item completes it
+        graph.putComplete(2L, false, graph.getVersion());
+        cache.update(null, event(LessonBuilderEvents.ITEM_READ, "user", "site", "/lessonbuilder/item/2", false));
+        Assert.assertNull(graph.isComplete(2L));
+        Assert.assertNull(graph.isComplete(30L));
+        Assert.assertEquals(Boolean.TRUE, graph.isComplete(1L));
+    }
+
+    @Test
+    public void updateRoutesUserEvents() {
+        cache.getGraph("site", "user", null).putComplete(1L, true, 0);
+        cache.getGraph("site", "someone", null).putComplete(1L, true, 0);
+
+        cache.update(null, event("sam.assessment.submit", "user", "site", "/assessment/1"));
+        Assert.assertNull(cache.getGraph("site", "user", null).isComplete(1L));
+        Assert.assertEquals(Boolean.TRUE, cache.getGraph("site", "someone", null).isComplete(1L));
+
+        // submitted without a user, e.g. by a job, forgets the site
+        cache.update(null, event("sam.assessment.submit", null, "site", "/assessment/1"));
+        Assert.assertNull(cache.getGraph("site", "someone", null).isComplete(1L));
+    }
+
+    @Test
+    public void updateRoutesSiteEvents() {
+        cache.getGraph("site", "user", null).putComplete(1L, true, 0);
+        cache.getGraph("other", "user", null).putComplete(2L, true, 0);
+
+        cache.update(null, event("realm.upd", "admin", null, "/realm//site/site/group/g1"));
+
+        Assert.assertNull(cache.getGraph("site", "user", null).isComplete(1L));
+        Assert.assertEquals(Boolean.TRUE, cache.getGraph("other", "user", null).isComplete(2L));
+    }
+
+    @Test
+    public void updateIgnoresOtherEvents() {
+        cache.getGraph("site", "user", null).putComplete(1L, true, 0);
+
+        cache.update(null, event("content.read", "user", "site", "/content/group/site/file"));
+        cache.update(null, "not an event");
+
+        Assert.assertEquals(Boolean.TRUE, cache.getGraph("site", "user", null).isComplete(1L));
+    }
+
+    // item 1 is on page 5, which page item 10 on page 4 links to, which page item 20 links to.
+    // item 2 is on page 6, which page item 30 links to
+    private Graph subpages() {
+        Graph graph = cache.getGraph("site", "user", null);
+        graph.addItem(1L, 5L);
+        graph.addItem(2L, 6L);
+        graph.addItem(10L, 4L);
+        graph.addDerived(10L, 5L);
+        graph.addDerived(20L, 4L);
+        graph.addDerived(30L, 6L);
+        for (long itemId : new long[] {1L, 2L, 10L, 20L, 30L}) {
+            graph.putComplete(itemId, true, graph.getVersion());
+        }
+        return graph;
+    }
+
+    private static Event event(String name, String userId, String context, String resource, boolean modify) {
+        Event event = event(name, userId, context, resource);
+        when(event.getModify()).thenReturn(modify);
+        return event;
+    }
+
+    private static Event event(String name, String userId, String context, String resource) {
+        Event event = mock(Event.class);
+        when(event.getEvent()).thenReturn(name);
+        when(event.getUserId()).thenReturn(userId);
+        when(event.getContext()).thenReturn(context);
+        when(event.getResource()).thenReturn(resource);
+        return event;
+    }
+}
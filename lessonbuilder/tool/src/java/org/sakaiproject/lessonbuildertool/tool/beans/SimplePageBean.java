@@ -79,6 +79,7 @@ import org.sakaiproject.lessonbuildertool.SimplePageQuestionResponse;
 import org.sakaiproject.lessonbuildertool.SimpleStudentPage;
 import org.sakaiproject.lessonbuildertool.api.LessonBuilderConstants;
 import org.sakaiproject.lessonbuildertool.api.LessonBuilderEvents;
+import org.sakaiproject.lessonbuildertool.api.LessonsCompletionCache;
 import org.sakaiproject.lessonbuildertool.cc.CartridgeLoader;
 import org.sakaiproject.lessonbuildertool.cc.Parser;
 import org.sakaiproject.lessonbuildertool.cc.PrintHandler;
@@ -474,6 +475,7 @@ public class SimplePageBean {
     @Setter private AuthzGroupService authzGroupService;
     @Getter @Setter private SimplePageToolDao simplePageToolDao;
     @Setter private LessonsAccess lessonsAccess;
+    @Setter private LessonsCompletionCache lessonsCompletionCache;
     @Setter private LessonBuilderAccessService lessonBuilderAccessService;
     @Getter @Setter private MessageLocator messageLocator;
     @Setter private HttpServletResponse httpServletResponse;
@@ -624,8 +626,13 @@ public class SimplePageBean {
 	private Map<Long, SimplePage> pageCache = new HashMap<> ();
 	private Map<Long, List<SimplePageItem>> itemsCache = new HashMap<> ();
 	private Map<String, SimplePageLogEntry> logCache = new HashMap<>();
+	// completion and visibility are kept per user and site across requests by lessonsCompletionCache.
+	// these keep them for this request too, as results are only stored there if nothing changed since
+	// completionVersion, and are all there is in beans made without it, e.g. by LessonsAccess
 	private Map<Long, Boolean> completeCache = new HashMap<>();
 	private Map<Long, Boolean> visibleCache = new HashMap<>();
+	private LessonsCompletionCache.Graph completionGraph = null;
+	private long completionVersion;
 	// this one needs to be global
 	static MemoryService memoryService = (MemoryService)org.sakaiproject.component.cover.ComponentManager.get("org.sakaiproject.memory.api.MemoryService");
 	private static Cache<String, Object> groupCache = memoryService.getCache("org.sakaiproject.lessonbuildertool.tool.beans.SimplePageBean.groupCache");  // itemId => grouplist
@@ -2613,6 +2620,7 @@ public class SimplePageBean {
     // so access can inject the siteid
 	public void setCurrentSiteId(String siteId) {       
 		currentSiteId = siteId;
+		completionGraph = null;
 	}
 
     // recall that code typically operates on a "current page." See below for
@@ -5438,6 +5446,68 @@ public class SimplePageBean {
 	    	currentUserId = userDirectoryService.getCurrentUser().getId();
 	    return currentUserId;
 	}
+
+	private LessonsCompletionCache.Graph getCompletionGraph() {
+	    if (completionGraph == null && lessonsCompletionCache != null) {
+		// what is visible depends on the role, so a swapped role gets a graph of its own
+		completionGraph = lessonsCompletionCache.getGraph(getCurrentSiteId(), getCurrentUserId(), securityService.getUserEffectiveRole());
+		completionVersion = completionGraph.getVersion();
+	    }
+	    return completionGraph;
+	}
+
+	private Boolean getCachedComplete(long itemId) {
+	    Boolean ret = completeCache.get(itemId);
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    return ret == null && graph != null ? graph.isComplete(itemId) : ret;
+	}
+
+	private void putCachedComplete(long itemId, boolean complete) {
+	    completeCache.put(itemId, complete);
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    if (graph != null)
+		graph.putComplete(itemId, complete, completionVersion);
+	}
+
+	private Boolean getCachedVisible(long itemId) {
+	    Boolean ret = visibleCache.get(itemId);
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    return ret == null && graph != null ? graph.isVisible(itemId) : ret;
+	}
+
+	private void putCachedVisible(long itemId, boolean visible) {
+	    visibleCache.put(itemId, visible);
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    if (graph != null)
+		graph.putVisible(itemId, visible, completionVersion);
+	}
+
+    // an item's completion is forgotten with the page items above it, so note which page it is on
+	private void addCompletionItem(SimplePageItem item) {
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    if (graph != null)
+		graph.addItem(item.getId(), item.getPageId());
+	}
+
+    // a page item is complete when the items on the page it links to are, so it has to be forgotten
+    // whenever any of them is
+	private void addDerivedCompletion(SimplePageItem item) {
+	    LessonsCompletionCache.Graph graph = getCompletionGraph();
+	    if (graph != null) {
+		graph.addItem(item.getId(), item.getPageId());
+		graph.addDerived(item.getId(), Long.parseLong(item.getSakaiId()));
+	    }
+	}
+
+    // our own log entry write completed the item differently. The DAO passes it on once it commits,
+    // but the rest of this request has to see it now, and store what it finds with the new version
+	private void forgetCompletion(long itemId) {
+	    completeCache.clear();
+	    if (getCompletionGraph() != null) {
+		lessonsCompletionCache.itemChanged(getCurrentUserId(), itemId);
+		completionVersion = completionGraph.getVersion();
+	    }
+	}
 	    
     // page is complete, update gradebook entry if any
     // note that if the user has never gone to a page, the gradebook item will be missing.
@@ -5525,9 +5595,11 @@ public class SimplePageBean {
 
 			saveItem(entry);
 			logCache.put(itemId + "-" + studentPageId, entry);
+			forgetCompletion(itemId);
 		} else {
+			boolean wasComplete = entry.isComplete();
+			boolean wasDummy = entry.getDummy();
 			if (path != null && studentPageId == null) {
-				boolean wasComplete = entry.isComplete();
 				boolean complete = isPageComplete(itemId);
 				entry.setComplete(complete);
 				entry.setPath(path);
@@ -5552,6 +5624,10 @@ public class SimplePageBean {
 			}
 
 			update(entry);
+			if (entry.isComplete() != wasComplete || entry.getDummy() != wasDummy) {
+				simplePageToolDao.logEntryCompletionChanged(entry);
+				forgetCompletion(itemId);
+			}
 		}
 
 		//SimplePageItem i = findItem(itemId);
@@ -5616,7 +5692,7 @@ public class SimplePageBean {
 		if (testpriv && canSeeAll()) {
 		    return true;
 		}
-		Boolean ret = visibleCache.get(item.getId());
+		Boolean ret = getCachedVisible(item.getId());
 		if (ret != null) {
 		    return (boolean)ret;
 		}
@@ -5743,13 +5819,13 @@ public class SimplePageBean {
 		    // underlying entity missing. Normally don't show it. But if it's required
 		    // we have to. Can't do group test if there's nothing to test, so return true here
 		    // basically you can't group restrict an item until it exists
-		    visibleCache.put(item.getId(), item.isRequired());
+		    putCachedVisible(item.getId(), item.isRequired());
 		    return item.isRequired();
 		}
 
 		if (itemGroups == null || itemGroups.isEmpty()) {
 		    // this includes items for which for which visibility doesn't apply
-		    visibleCache.put(item.getId(), true);
+		    putCachedVisible(item.getId(), true);
 		    return true;
 		}
 
@@ -5757,12 +5833,12 @@ public class SimplePageBean {
 
 		for (String group: itemGroups) {
 			if (myGroups.contains(group)) {
-				visibleCache.put(item.getId(), true);
+				putCachedVisible(item.getId(), true);
 				return true;
 			}
 		}
 
-		visibleCache.put(item.getId(), false);
+		putCachedVisible(item.getId(), false);
 
 		return false;
 	}
@@ -5791,73 +5867,75 @@ public class SimplePageBean {
 			return true;
 		} 
 		Long itemId = item.getId();
-		Boolean cached = completeCache.get(itemId);
+		Boolean cached = getCachedComplete(itemId);
 		if (cached != null)
 		    return (boolean)cached;
+		addCompletionItem(item);
 		if (item.getType() == SimplePageItem.RESOURCE || item.getType() == SimplePageItem.URL || item.getType() == SimplePageItem.BLTI) {
 			// Resource. Completed if viewed.
 			if (hasLogEntry(item.getId())) {
-				completeCache.put(itemId, true);
+				putCachedComplete(itemId, true);
 				return true;
 			} else {
-				completeCache.put(itemId, false);
+				putCachedComplete(itemId, false);
 				return false;
 			}
 		} else if (item.getType() == SimplePageItem.PAGE) {
+			addDerivedCompletion(item);
 			SimplePageLogEntry entry = getLogEntry(item.getId());
 			if (entry == null || entry.getDummy()) {
-				completeCache.put(itemId, false);
+				putCachedComplete(itemId, false);
 				return false;
 			} else if (entry.isComplete()) {
-				completeCache.put(itemId, true);
+				putCachedComplete(itemId, true);
 				return true;
 			} else {
 			        boolean apic = arePageItemsComplete(Long.parseLong(item.getSakaiId())); 
-				completeCache.put(itemId, apic);
+				putCachedComplete(itemId, apic);
 				return apic;
 			}
 		} else if (item.getType() == SimplePageItem.ASSIGNMENT) {
 			try {
 				if (item.getSakaiId().equals(SimplePageItem.DUMMY)) {
-				    completeCache.put(itemId, false);
+				    putCachedComplete(itemId, false);
 				    return false;
 				}
 				LessonEntity assignment = assignmentEntity.getEntity(item.getSakaiId());
 				if (assignment == null) {
-				    completeCache.put(itemId, false);
+				    putCachedComplete(itemId, false);
 				    return false;
 				}
 				LessonSubmission submission = assignment.getSubmission(getCurrentUserId());
 
 				if (assignment.getSubmissionType() != AssignmentEntity.NON_ELECTRONIC_ASSIGNMENT_SUBMISSION
 						&& (submission == null || BooleanUtils.isNotTrue(submission.getUserSubmission()))) {
-				    completeCache.put(itemId, false);
+				    putCachedComplete(itemId, false);
 				    return false;
 				}
 
 				int type = assignment.getTypeOfGrade();
 
 				if (!item.getSubrequirement()) {
-					completeCache.put(itemId, true);
+					putCachedComplete(itemId, true);
 					return true;
 				} else if (submission.getGradeString() != null) {
 				    // assume that assignments always use string grade. this may change
 					boolean ret = isAssignmentComplete(type, assignment, submission, item.getRequirementText());
-					completeCache.put(itemId, ret);
+					putCachedComplete(itemId, ret);
 					return ret;
 				} else {
-					completeCache.put(itemId, false);
+					putCachedComplete(itemId, false);
 					return false;
 				}
 			} catch (Exception e) {
 				log.error(e.getMessage(), e);
-				completeCache.put(itemId, false);
+				putCachedComplete(itemId, false);
 				return false;
 			}
 		} else if (item.getType() == SimplePageItem.FORUM) {
 			try {
 				if (item.getSakaiId().equals(SimplePageItem.DUMMY)) {
-					completeCache.put(itemId, false);
+					putCachedComplete(itemId, false);
 					return false;
 				}
 				User user = userDirectoryService.getUser(getCurrentUserId());
@@ -5866,52 +5944,52 @@ public class SimplePageBean {
 					return false;
 				// for the moment don't find grade. just see if they submitted
 				if (forum.getSubmissionCount(user.getId()) > 0) {
-					completeCache.put(itemId, true);
+					putCachedComplete(itemId, true);
 					return true;
 				} else {
-					completeCache.put(itemId, false);
+					putCachedComplete(itemId, false);
 					return false;
 				}
 			} catch (Exception e) {
 			    log.error(e.getMessage(), e);
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 		} else if (item.getType() == SimplePageItem.ASSESSMENT) {
 			if (item.getSakaiId().equals(SimplePageItem.DUMMY)) {
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 			LessonEntity quiz = quizEntity.getEntity(item.getSakaiId(),this);
 			if (quiz == null) {
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 			User user;
 			try {
 			    user = userDirectoryService.getUser(getCurrentUserId());
 			} catch (Exception ignore) {
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 
 			LessonSubmission submission = quiz.getSubmission(user.getId());
 
 			if (submission == null) {
-				completeCache.put(itemId, false);
+				putCachedComplete(itemId, false);
 				return false;
 			} else if (!item.getSubrequirement()) {
 				// All that was required was that the user submit the test
-				completeCache.put(itemId, true);
+				putCachedComplete(itemId, true);
 				return true;
 			} else {
 				Double grade = submission.getGrade();
 			    // 1.99999 should match 2, so do a bit of rounding up
 			    if ((grade + 0.0001d) >= Double.valueOf(item.getRequirementText())) {
-			    	completeCache.put(itemId, true);
+			    	putCachedComplete(itemId, true);
 			    	return true;
 			    } else {
-			    	completeCache.put(itemId, false);
+			    	putCachedComplete(itemId, false);
 			    	return false;
 			    }
 			}
@@ -5927,10 +6005,10 @@ public class SimplePageBean {
 			    }
 			}
 			if (found) {
-			    completeCache.put(itemId, true);
+			    putCachedComplete(itemId, true);
 			    return true;
 			} else {
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 		} else if (item.getType() == SimplePageItem.STUDENT_CONTENT) {
@@ -5939,39 +6017,39 @@ public class SimplePageBean {
 			SimpleStudentPage student = findStudentPage(item);
 
 			if (student != null && ! student.isDeleted()) {
-			    completeCache.put(itemId, true);
+			    putCachedComplete(itemId, true);
 			    return true;
 			} else {
-			    completeCache.put(itemId, false);
+			    putCachedComplete(itemId, false);
 			    return false;
 			}
 		} else if (item.getType() == SimplePageItem.TEXT || item.getType() == SimplePageItem.MULTIMEDIA) {
 			// In order to be considered "complete", these items
 			// only have to be viewed. If this code is reached,
 			// we know that that the page has already been viewed.
-			completeCache.put(itemId, true);
+			putCachedComplete(itemId, true);
 			return true;
 		} else if (item.getType() == SimplePageItem.QUESTION) {
 			SimplePageQuestionResponse response = simplePageToolDao.findQuestionResponse(item.getId(), getCurrentUserId());
 			if(response != null) {
-				completeCache.put(itemId, true);
+				putCachedComplete(itemId, true);
 				return true;
 			}else {
-				completeCache.put(itemId, false);
+				putCachedComplete(itemId, false);
 				return false;
 			}
 		} else if (item.getType() == SimplePageItem.PEEREVAL){
 			SimplePagePeerEval peerEval = simplePageToolDao.findPeerEval(item.getId());
 			boolean result = peerEval == null;
-				completeCache.put(itemId, result);
+				putCachedComplete(itemId, result);
 				return result;
 		} else if (item.getType() == SimplePageItem.CHECKLIST) {
 			// Simply viewing will complete at this time
-			completeCache.put(itemId, true);
+			putCachedComplete(itemId, true);
 			return true;
 		}
 		else {
-			completeCache.put(itemId, false);
+			putCachedComplete(itemId, false);
 			return false;
 		}
 	}
@@ -6059,8 +6137,9 @@ public class SimplePageBean {
     // the recursive call to isItemComplete for subpages has some issues. isItemComplete will
     // use the completeCache, which may be set by isitemcomplete without doing a full recursive
     // scan. We are again depending upon the fact that the first check is done here, which does
-    // the necessary recursion. The cache is request-scope. If it were longer-lived we'd have
-    // a problem.
+    // the necessary recursion. The cache now outlives the request, which is safe because page
+    // items are marked derived: a change to any item on the pages below them forgets them, so
+    // the next track does the full check again.
 
     // alreadySeen is needed in case there's a loop in the page structure. This is uncommon but
     // possible
@@ -6112,7 +6191,8 @@ public class SimplePageBean {
 		}
 
 		// All of them were complete.
-		completeCache.put(itemId, true);
+		addDerivedCompletion(findItem(itemId));
+		putCachedComplete(itemId, true);
 		return true;
 	}
 
@@ -206,6 +206,10 @@ public class DbMailArchiveService extends BaseMailArchiveService
 			super(m_cTableName, "CHANNEL_ID", m_rTableName, "MESSAGE_ID", "CHANNEL_ID", "MESSAGE_DATE", "OWNER", "DRAFT",
 					"PUBVIEW", FIELDS, SEARCH_FIELDS, m_locksInDb, "channel", "message", user, sqlService);
 			m_locksAreInTable = false;
+
+			// the message selection filter's date and pubview restrictions are answered by indexed columns
+			setResourceTableFilterField(FILTER_DATE, "MESSAGE_DATE");
+			setResourceTableFilterField(FILTER_PUBVIEW, "PUBVIEW");
 		} // DbStorage
         
 		/* matchXml - Optionaly do a pre-de-serialize match
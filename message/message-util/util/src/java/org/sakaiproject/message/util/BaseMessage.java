@@ -77,6 +77,8 @@ import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.id.api.IdManager;
 import org.sakaiproject.javax.Filter;
 import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.javax.Restriction;
+import org.sakaiproject.javax.Search;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.lti.api.LTIService;
 import org.sakaiproject.memory.api.MemoryService;
@@ -138,6 +140,12 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 	private static final String SCHED_INV_UUID = "schInvUuid";
 	//private static final String SCHINV_DELETE_EVENT = "schInv.delete";
 
+	/** Search restriction properties of the selection filter, which a storage may declare as indexed columns; draftsFor
+	 *  (drafts only from this owner) spans two columns, so it is always left to the filter's accept(). */
+	protected static final String FILTER_DATE = "date";
+	protected static final String FILTER_PUBVIEW = "pubview";
+	protected static final String FILTER_DRAFTS_FOR = "draftsFor";
+
 	private Cache<String, List<Message>> messagesCache;
 
 	/**********************************************************************************************************************************************************************************************************************************************************
@@ -4456,7 +4464,11 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 
 	} // MessagePermissionFilter
 
-	protected class MessageSelectionFilter implements Filter
+	/**
+	 * Selects messages by date, pubview and drafts. It carries the same selection as Search restrictions, so a storage
+	 * that declares columns for them can apply it in the select.
+	 */
+	protected class MessageSelectionFilter extends Search implements Filter
 	{
 		protected Time m_afterDate = null;
 
@@ -4469,6 +4481,10 @@ public abstract class BaseMessage implements MessageService, DoubleStorageUser
 			m_afterDate = afterDate;
 			m_draftsForId = draftsForId;
 			m_pubViewOnly = pubViewOnly;
+
+			if (afterDate != null) addRestriction(new Restriction(FILTER_DATE, afterDate, Restriction.GREATER));
+			if (pubViewOnly) addRestriction(new Restriction(FILTER_PUBVIEW, Boolean.TRUE));
+			if (draftsForId != null && !"*".equals(draftsForId)) addRestriction(new Restriction(FILTER_DRAFTS_FOR, draftsForId));
 		}
 
 		/**
@@ -2986,6 +2986,10 @@ public class MessageForumStatisticsBean {
 				Map studentIdFunctionMap;
 				studentIdFunctionMap = gradingService.getViewableStudentsForItemForUser(userUid, gradebookUid, siteId, assignment.getId());
 				List<GradeDefinition> grades = gradingService.getGradesForStudentsForItem(gradebookUid, gradebookUid, assignment.getId(), new ArrayList(studentIdFunctionMap.keySet()));
+				if (gradingService.isGradebookGroupEnabled(siteId)) {
+					// each student is looked up below to check their group
+					userDirectoryService.queueUsers(studentIdFunctionMap.keySet());
+				}
 				//add grade values to return map
 				String decSeparator = formattedText.getDecimalSeparator();
 				for(GradeDefinition gradeDef : grades) {
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -408,6 +409,14 @@ public interface PortalService
 	 */
 	void syncUserSitesWithPortalNav(final String userId);
 
+	/**
+	 * Register a listener to be told when a user's pinned or recent sites are changed on this server,
+	 * so anything built from them can be dropped. The listener is called once the change is committed.
+	 *
+	 * @param listener called with the id of the user whose sites changed
+	 */
+	void addNavigationChangeListener(Consumer<String> listener);
+
 	/**
 	 * Register a Sub Page Nav provider for a given tool
 	 * There can be only one registered provider per tool, re-registering a tool will replace the
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.handlers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A size bounded cache of static portal content, shared by all request threads. Each entry holds the content, a gzip copy when that is
+ * smaller, and a strong ETag, all computed once when the file is loaded. Entries are only checked against the file again after the
+ * check interval, so a hit does no file I/O. The entries are kept in least recently used order, so eviction only walks the entries it
+ * removes.
+ */
+@Slf4j
+public class StaticContentCache implements StaticContentCacheMBean
+{
+	/** gzip copies are only kept if they save at least this fraction of the content. */
+	private static final double MIN_GZIP_SAVING = 0.1;
+
+	/** Access ordered, guarded by itself. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+		{
+			// a put can push the size over by more than one entry, so trim from the least recently used end here; the map is already trimmed
+			Iterator<Entry> it = values().iterator();
+			while (size > maxBytes && it.hasNext())
+			{
+				size -= it.next().size();
+				it.remove();
+			}
+			return false;
+		}
+	};
+
+	/** Bytes held by the entries, guarded by entries. */
+	private long size;
+
+	private final long maxBytes;
+
+	private final long checkMillis;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder notModified = new LongAdder();
+
+	private final LongAdder bytesSent = new LongAdder();
+
+	private final LongAdder bytesSaved = new LongAdder();
+
+	/**
+	 * @param maxBytes
+	 *        The most content (including gzip copies) to hold.
+	 * @param checkMillis
+	 *        How long an entry is served before the file's last modified time is checked again.
+	 */
+	public StaticContentCache(long maxBytes, long checkMillis)
+	{
+		this.maxBytes = maxBytes;
+		this.checkMillis = checkMillis;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, unless already registered.
+	 */
+	public void register()
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("org.sakaiproject:name=PortalStaticContentCache"));
+		}
+		catch (InstanceAlreadyExistsException e)
+		{
+			log.debug("Static content cache metrics already registered");
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to register static content cache metrics: {}", e.toString());
+		}
+	}
+
+	/**
+	 * @param path
+	 *        The path of the content.
+	 * @return The entry for the path, or null if not cached.
+	 */
+	public Entry get(String path)
+	{
+		synchronized (entries)
+		{
+			return entries.get(path);
+		}
+	}
+
+	/**
+	 * @param entry
+	 *        A cached entry.
+	 * @return true if the entry was checked against its file recently enough to be served without checking again.
+	 */
+	public boolean isFresh(Entry entry)
+	{
+		return System.currentTimeMillis() - entry.verified < checkMillis;
+	}
+
+	/**
+	 * Note that an entry has just been checked against its file and is unchanged.
+	 */
+	public void verified(Entry entry)
+	{
+		entry.verified = System.currentTimeMillis();
+	}
+
+	/**
+	 * Count a request that could not be served from the cache.
+	 */
+	public void miss()
+	{
+		misses.increment();
+	}
+
+	/**
+	 * Cache content, replacing any earlier entry for the path, and evicting the least recently used entries to stay within the size limit.
+	 *
+	 * @return The new entry.
+	 */
+	public Entry put(String path, byte[] content, String contentType, long lastModified)
+	{
+		Entry entry = new Entry(path, content, gzip(content), contentType, lastModified, etag(content));
+		synchronized (entries)
+		{
+			Entry old = entries.remove(path);
+			size += entry.size() - (old != null ? old.size() : 0);
+			entries.put(path, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Count an entry served.
+	 *
+	 * @param entry
+	 *        The entry.
+	 * @param hit
+	 *        true if the entry was served as cached, false if it was just loaded.
+	 * @param gzipped
+	 *        true if the gzip copy was sent.
+	 * @param sent
+	 *        false if only a 304 was sent.
+	 */
+	public void served(Entry entry, boolean hit, boolean gzipped, boolean sent)
+	{
+		if (hit) hits.increment();
+		if (!sent)
+		{
+			notModified.increment();
+			bytesSaved.add(gzipped ? entry.gzip.length : entry.content.length);
+		}
+		else if (gzipped)
+		{
+			bytesSent.add(entry.gzip.length);
+			bytesSaved.add(entry.content.length - entry.gzip.length);
+		}
+		else
+		{
+			bytesSent.add(entry.content.length);
+		}
+	}
+
+	private static byte[] gzip(byte[] content)
+	{
+		try
+		{
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(content.length / 3 + 64);
+			try (GZIPOutputStream out = new GZIPOutputStream(buf))
+			{
+				out.write(content);
+			}
+			byte[] gzip = buf.toByteArray();
+			return gzip.length <= content.length * (1 - MIN_GZIP_SAVING) ? gzip : null;
+		}
+		catch (IOException e)
+		{
+			log.debug("Failed to gzip static content: {}", e.toString());
+			return null;
+		}
+	}
+
+	private static String etag(byte[] content)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			return "\"" + Integer.toHexString(new String(content, StandardCharsets.ISO_8859_1).hashCode()) + "-" + content.length + "\"";
+		}
+	}
+
+	public int getEntryCount()
+	{
+		synchronized (entries)
+		{
+			return entries.size();
+		}
+	}
+
+	public long getSizeBytes()
+	{
+		synchronized (entries)
+		{
+			return size;
+		}
+	}
+
+	public long getMaxSizeBytes()
+	{
+		return maxBytes;
+	}
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	public double getHitRate()
+	{
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public long getNotModified()
+	{
+		return notModified.sum();
+	}
+
+	public long getBytesSent()
+	{
+		return bytesSent.sum();
+	}
+
+	public long getBytesSaved()
+	{
+		return bytesSaved.sum();
+	}
+
+	public void clear()
+	{
+		synchronized (entries)
+		{
+			entries.clear();
+			size = 0;
+		}
+	}
+
+	/**
+	 * One cached file.
+	 */
+	public static class Entry
+	{
+		final String path;
+
+		final byte[] content;
+
+		/** The content gzipped, null if that did not make it usefully smaller. */
+		final byte[] gzip;
+
+		final String contentType;
+
+		final long lastModified;
+
+		/** Strong ETag of the content; the gzip copy uses it with a -gz suffix. */
+		final String etag;
+
+		final String gzipEtag;
+
+		volatile long verified;
+
+		Entry(String path, byte[] content, byte[] gzip, String contentType, long lastModified, String etag)
+		{
+			this.path = path;
+			this.content = content;
+			this.gzip = gzip;
+			this.contentType = contentType;
+			this.lastModified = lastModified;
+			this.etag = etag;
+			this.gzipEtag = etag.substring(0, etag.length() - 1) + "-gz\"";
+			this.verified = System.currentTimeMillis();
+		}
+
+		long size()
+		{
+			return content.length + (gzip != null ? gzip.length : 0);
+		}
+	}
+}
@@ -34,6 +34,8 @@ import java.util.zip.ZipEntry;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.portal.util.URLUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -55,10 +57,14 @@ public abstract class StaticHandler extends BasePortalHandler
 	public static final int MAX_SIZE_KB = 100;
 	private Properties contentTypes = null;
 
-	private static final ThreadLocal<StaticCache[]> staticCacheHolder = new ThreadLocal<>();
+	/** One cache for every request thread and every static handler. */
+	private static StaticContentCache sharedCache;
+
+	protected final StaticContentCache staticCache;
 
 	public StaticHandler()
 	{
+		staticCache = getSharedCache();
 		contentTypes = new Properties();
 		InputStream stream = null;
 		try
@@ -86,6 +92,28 @@ public abstract class StaticHandler extends BasePortalHandler
 
 	}
 
+	/**
+	 * @return the static content cache, created from portal.static.cache.size (MB, default 32) and portal.static.cache.check
+	 *         (seconds between checks of a cached file against the file, default 60) on first use.
+	 */
+	private static synchronized StaticContentCache getSharedCache()
+	{
+		if (sharedCache == null)
+		{
+			ServerConfigurationService serverConfigurationService = ComponentManager.get(ServerConfigurationService.class);
+			int sizeMb = 32;
+			int checkSeconds = 60;
+			if (serverConfigurationService != null)
+			{
+				sizeMb = serverConfigurationService.getInt("portal.static.cache.size", sizeMb);
+				checkSeconds = serverConfigurationService.getInt("portal.static.cache.check", checkSeconds);
+			}
+			sharedCache = new StaticContentCache(sizeMb * 1024L * 1024L, checkSeconds * 1000L);
+			sharedCache.register();
+		}
+		return sharedCache;
+	}
+
 	/**
 	 * serve a registered static file
 	 * 
@@ -99,96 +127,67 @@ public abstract class StaticHandler extends BasePortalHandler
 	{
 		try
 		{
-			StaticCache[] staticCache = staticCacheHolder.get();
-			if (staticCache == null)
-			{
-				staticCache = new StaticCache[100];
-				staticCacheHolder.set(staticCache);
-			}
 			String path = URLUtils.getSafePathInfo(req);
-			if (path.indexOf("..") >= 0)
+			if (path == null || path.indexOf("..") >= 0)
 			{
 				res.sendError(404);
 				return;
 			}
-			InputStream inputStream;
+
+			// a recently checked entry is served without touching the file
+			StaticContentCache.Entry entry = staticCache.get(path);
+			if (entry != null && staticCache.isFresh(entry))
+			{
+				sendContent(req, res, entry, true);
+				return;
+			}
+
 			String filename = path.substring(path.lastIndexOf("/"));
 			long lastModified = -1;
 			long length = -1;
+			URL url = null;
+			File file = null;
 			String realPath = servletContext.getRealPath(path);
 			if (realPath == null) {
 				// We not uncompressing the webapps.
-				URL url = servletContext.getResource(path);
-				inputStream = url.openStream();
-				if (url != null) {
-					try {
-						ZipEntry zipEntry = ((JarURLConnection)url.openConnection()).getJarEntry();
-						lastModified = zipEntry.getLastModifiedTime().toMillis();
-						length = zipEntry.getSize();
-					} catch (ClassCastException cce) {
-						// Can't get extra data, but should all work.
-						log.debug("We don't seem to be a JAR either.", cce);
-					}
-				} else {
+				url = servletContext.getResource(path);
+				if (url == null) {
 					res.sendError(404);
 					return;
 				}
+				try {
+					ZipEntry zipEntry = ((JarURLConnection)url.openConnection()).getJarEntry();
+					lastModified = zipEntry.getLastModifiedTime().toMillis();
+					length = zipEntry.getSize();
+				} catch (ClassCastException cce) {
+					// Can't get extra data, but should all work.
+					log.debug("We don't seem to be a JAR either.", cce);
+				}
 			} else {
-				File f = new File(realPath);
-				inputStream = new FileInputStream(f);
-				lastModified = f.lastModified();
-				length = f.length();
+				file = new File(realPath);
+				if (!file.isFile()) {
+					res.sendError(404);
+					return;
+				}
+				lastModified = file.lastModified();
+				length = file.length();
 			}
-			if (length >= 0 && length < MAX_SIZE_KB * 1024)
+
+			// If we don't have a good last modified time it's cached until evicted
+			if (entry != null && lastModified <= entry.lastModified)
 			{
-				for (int i = 0; i < staticCache.length; i++)
-				{
-					StaticCache sc = staticCache[i];
-					if (sc != null && path.equals(sc.path))
-					{
-						// If we don't have a good last modified time it's cached forever
-						if (lastModified > sc.lastModified)
-						{
-							sc.buffer = loadFileBuffer(inputStream, (int)length);
-							sc.path = path;
-							sc.lastModified = lastModified;
-							sc.contenttype = getContentType(filename);
-							sc.added = System.currentTimeMillis();
-						}
-						// send the output
-						sendContent(res, sc);
-						return;
-					}
-				}
-				// not found in cache, find the oldest or null and evict
-				// this is thread Safe, since the cache is per thread.
-				StaticCache sc = null;
-				for (int i = 1; i < staticCache.length; i++)
-				{
-					StaticCache current = staticCache[i];
-					if (sc == null)
-					{
-						sc = current;
-					}
-					if (current == null)
-					{
-						sc = new StaticCache();
-						staticCache[i] = sc;
-						break;
-					}
-					if (sc.added < current.added)
-					{
-						sc = current;
-					}
-				}
-				sc.buffer = loadFileBuffer(inputStream, (int)length);
-				sc.path = path;
-				sc.lastModified = lastModified;
-				sc.contenttype = getContentType(filename);
-				sc.added = System.currentTimeMillis();
-				sendContent(res, sc);
+				staticCache.verified(entry);
+				sendContent(req, res, entry, true);
 				return;
+			}
 
+			staticCache.miss();
+			InputStream inputStream = (file != null) ? new FileInputStream(file) : url.openStream();
+			if (length >= 0 && length < MAX_SIZE_KB * 1024)
+			{
+				entry = staticCache.put(path, loadFileBuffer(inputStream, (int)length), getContentType(filename), lastModified);
+				sendContent(req, res, entry, false);
+				return;
 			}
 			else
 			{
@@ -209,26 +208,6 @@ public abstract class StaticHandler extends BasePortalHandler
 
 	}
 
-	/**
-	 * a simple static cache holder
-	 * 
-	 * @author ieb
-	 */
-	protected class StaticCache
-	{
-
-		public Object path;
-
-		public long added;
-
-		public byte[] buffer;
-
-		public long lastModified;
-
-		public String contenttype;
-
-	}
-
 	/**
 	 * send the static content from the file
 	 * 
@@ -319,21 +298,92 @@ public abstract class StaticHandler extends BasePortalHandler
 	}
 
 	/**
-	 * send the content from the static cache.
+	 * send the content from the static cache, gzipped if the client accepts that, or just a 304 if the client's copy is current.
 	 * 
+	 * @param req
 	 * @param res
-	 * @param sc
+	 * @param entry
+	 * @param hit true if the entry was served as cached rather than just loaded.
 	 * @throws IOException
 	 */
-	void sendContent(HttpServletResponse res, StaticCache sc) throws IOException
+	void sendContent(HttpServletRequest req, HttpServletResponse res, StaticContentCache.Entry entry, boolean hit) throws IOException
+	{
+		boolean gzip = entry.gzip != null && acceptsGzip(req.getHeader("Accept-Encoding"));
+		String etag = gzip ? entry.gzipEtag : entry.etag;
+		if (entry.gzip != null) {
+			res.addHeader("Vary", "Accept-Encoding");
+		}
+		res.setHeader("ETag", etag);
+		if (entry.lastModified > 0) {
+			res.setDateHeader("Last-Modified", entry.lastModified);
+		}
+		if (isNotModified(req, etag, entry.lastModified)) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			staticCache.served(entry, hit, gzip, false);
+			return;
+		}
+
+		if (entry.contentType != null) {
+			res.setContentType(entry.contentType);
+		}
+		byte[] body = gzip ? entry.gzip : entry.content;
+		if (gzip) {
+			res.setHeader("Content-Encoding", "gzip");
+		}
+		res.setContentLength(body.length);
+		res.getOutputStream().write(body);
+		staticCache.served(entry, hit, gzip, true);
+	}
+
+	/**
+	 * @param acceptEncoding The Accept-Encoding request header.
+	 * @return true if gzip is acceptable, and not refused with q=0.
+	 */
+	static boolean acceptsGzip(String acceptEncoding)
 	{
-		if (sc.contenttype != null) {
-			res.setContentType(sc.contenttype);
+		if (acceptEncoding == null) return false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] params = coding.trim().split(";");
+			String name = params[0].trim();
+			if (!"gzip".equalsIgnoreCase(name) && !"*".equals(name)) continue;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						if (Double.parseDouble(param.substring(2)) <= 0) return false;
+					} catch (NumberFormatException e) {
+						return false;
+					}
+				}
+			}
+			return true;
 		}
-		res.addDateHeader("Last-Modified", sc.lastModified);
-		res.setContentLength(sc.buffer.length);
-		res.getOutputStream().write(sc.buffer);
+		return false;
+	}
 
+	/**
+	 * @return true if the request's If-None-Match names the etag, or, without If-None-Match, If-Modified-Since is no earlier than lastModified.
+	 */
+	static boolean isNotModified(HttpServletRequest req, String etag, long lastModified)
+	{
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if ("*".equals(tag) || etag.equals(tag)) return true;
+			}
+			return false;
+		}
+		if (lastModified > 0) {
+			try {
+				long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+				return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+		return false;
 	}
 
 }
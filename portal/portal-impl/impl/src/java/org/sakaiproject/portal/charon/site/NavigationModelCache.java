@@ -0,0 +1,304 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.site;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.entity.api.Entity;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.PreferencesService;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches each user's navigation model (home, pinned and recent sites with their pages) so the portal only rebuilds it
+ * when something it was built from changes. Models are dropped when one of their sites or its realm is updated, when the
+ * user's preferences change, when the user's pinned or recent sites change, and in any case after the time to live.
+ */
+@Slf4j
+public class NavigationModelCache implements NavigationModelCacheMBean, Observer
+{
+	private static final String SITE_ROOT = SiteService.REFERENCE_ROOT + Entity.SEPARATOR;
+
+	private static final String REALM_ROOT = AuthzGroupService.REFERENCE_ROOT + Entity.SEPARATOR;
+
+	private static final String PREFS_ROOT = PreferencesService.REFERENCE_ROOT + Entity.SEPARATOR;
+
+	private final Map<String, NavigationModel> models = new ConcurrentHashMap<>();
+
+	/** Bumped by every invalidation, so a model built while one happened is not cached. */
+	private final AtomicLong generation = new AtomicLong();
+
+	private final long ttlMillis;
+
+	private final int maxEntries;
+
+	private final LongAdder served = new LongAdder();
+
+	private final LongAdder rebuilt = new LongAdder();
+
+	private final LongAdder invalidated = new LongAdder();
+
+	/**
+	 * @param ttlMillis
+	 *        The longest a model is served before it is rebuilt anyway.
+	 * @param maxEntries
+	 *        The most models to hold.
+	 */
+	public NavigationModelCache(long ttlMillis, int maxEntries)
+	{
+		this.ttlMillis = ttlMillis;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server, unless already registered.
+	 */
+	public void register()
+	{
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("org.sakaiproject:name=PortalNavigationModelCache"));
+		} catch (InstanceAlreadyExistsException e) {
+			log.debug("Navigation model cache metrics already registered");
+		} catch (Exception e) {
+			log.warn("Failed to register navigation model cache metrics: {}", e.toString());
+		}
+	}
+
+	/**
+	 * @param key
+	 *        The user, role swap and locale the model is for.
+	 * @param builder
+	 *        Builds the model if there is no current one.
+	 * @return The cached model, or a newly built one.
+	 */
+	public NavigationModel get(String key, Supplier<NavigationModel> builder)
+	{
+		NavigationModel model = models.get(key);
+		if (model != null && System.currentTimeMillis() - model.built < ttlMillis) {
+			served.increment();
+			return model;
+		}
+
+		long started = generation.get();
+		model = builder.get();
+		rebuilt.increment();
+		if (generation.get() == started) {
+			models.put(key, model);
+			if (models.size() > maxEntries) {
+				evict();
+			}
+		}
+		return model;
+	}
+
+	private void evict()
+	{
+		long now = System.currentTimeMillis();
+		models.values().removeIf(m -> now - m.built >= ttlMillis);
+		while (models.size() > maxEntries) {
+			NavigationModel oldest = null;
+			for (NavigationModel m : models.values()) {
+				if (oldest == null || m.built < oldest.built) {
+					oldest = m;
+				}
+			}
+			if (oldest == null) break;
+			models.values().remove(oldest);
+		}
+	}
+
+	/**
+	 * Drop every model of a user.
+	 */
+	public void invalidateUser(String userId)
+	{
+		generation.incrementAndGet();
+		remove(models.values().stream().filter(m -> m.userId.equals(userId)).collect(Collectors.toList()));
+	}
+
+	/**
+	 * Drop every model that shows a site.
+	 */
+	public void invalidateSite(String siteId)
+	{
+		generation.incrementAndGet();
+		remove(models.values().stream().filter(m -> m.siteIds.contains(siteId)).collect(Collectors.toList()));
+	}
+
+	private void remove(Collection<NavigationModel> dropped)
+	{
+		for (NavigationModel model : dropped) {
+			if (models.values().remove(model)) {
+				invalidated.increment();
+			}
+		}
+	}
+
+	@Override
+	public void update(Observable observable, Object o)
+	{
+		if (!(o instanceof Event)) return;
+
+		Event event = (Event) o;
+		String resource = event.getResource();
+		if (resource == null) return;
+
+		switch (event.getEvent()) {
+			case SiteService.SECURE_UPDATE_SITE:
+			case SiteService.SECURE_UPDATE_SITE_MEMBERSHIP:
+			case SiteService.SECURE_UPDATE_GROUP_MEMBERSHIP:
+			case SiteService.SECURE_REMOVE_SITE:
+			case SiteService.SOFT_DELETE_SITE:
+			case SiteService.EVENT_SITE_PUBLISH:
+			case SiteService.EVENT_SITE_UNPUBLISH: {
+				String siteId = siteId(resource);
+				if (siteId != null) invalidateSite(siteId);
+				break;
+			}
+			case AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP:
+			case AuthzGroupService.SECURE_REMOVE_AUTHZ_GROUP: {
+				String siteId = resource.startsWith(REALM_ROOT) ? siteId(resource.substring(REALM_ROOT.length())) : null;
+				if (siteId != null) {
+					invalidateSite(siteId);
+				} else {
+					// a template or other shared realm can change what anyone sees
+					clear();
+				}
+				break;
+			}
+			case PreferencesService.SECURE_EDIT_PREFS: {
+				if (resource.startsWith(PREFS_ROOT)) invalidateUser(resource.substring(PREFS_ROOT.length()));
+				break;
+			}
+			default:
+		}
+	}
+
+	/**
+	 * @return The site id from a site reference, or a reference to something in a site, or null if it is not one.
+	 */
+	static String siteId(String reference)
+	{
+		if (!reference.startsWith(SITE_ROOT)) return null;
+		int end = reference.indexOf(Entity.SEPARATOR, SITE_ROOT.length());
+		String siteId = end < 0 ? reference.substring(SITE_ROOT.length()) : reference.substring(SITE_ROOT.length(), end);
+		return siteId.isEmpty() ? null : siteId;
+	}
+
+	@Override
+	public int getEntryCount()
+	{
+		return models.size();
+	}
+
+	@Override
+	public long getServed()
+	{
+		return served.sum();
+	}
+
+	@Override
+	public long getRebuilt()
+	{
+		return rebuilt.sum();
+	}
+
+	@Override
+	public long getInvalidated()
+	{
+		return invalidated.sum();
+	}
+
+	@Override
+	public double getHitRate()
+	{
+		long s = served.sum();
+		long total = s + rebuilt.sum();
+		return total == 0 ? 0 : (double) s / total;
+	}
+
+	@Override
+	public void clear()
+	{
+		generation.incrementAndGet();
+		invalidated.add(models.size());
+		models.clear();
+	}
+
+	/**
+	 * One user's navigation, built without reference to the current site. The site maps are shared by every request that
+	 * is served the model, so must be copied before the current site is marked.
+	 */
+	public static final class NavigationModel
+	{
+		final String userId;
+
+		final Map<String, Object> homeSite;
+
+		final List<Map<String, Object>> pinnedSites;
+
+		final List<Map<String, Object>> recentSites;
+
+		final List<String> pinnedSiteIds;
+
+		final List<String> recentSiteIds;
+
+		final List<String> excludedSiteIds;
+
+		/** Every site the model shows. */
+		final Set<String> siteIds;
+
+		final long built = System.currentTimeMillis();
+
+		NavigationModel(String userId, Map<String, Object> homeSite, List<Map<String, Object>> pinnedSites, List<Map<String, Object>> recentSites,
+				Collection<String> pinnedSiteIds, Collection<String> recentSiteIds, Collection<String> excludedSiteIds)
+		{
+			this.userId = userId;
+			this.homeSite = homeSite != null ? Collections.unmodifiableMap(homeSite) : null;
+			this.pinnedSites = pinnedSites.stream().map(Collections::unmodifiableMap).collect(Collectors.toUnmodifiableList());
+			this.recentSites = recentSites.stream().map(Collections::unmodifiableMap).collect(Collectors.toUnmodifiableList());
+			this.pinnedSiteIds = Collections.unmodifiableList(new ArrayList<>(pinnedSiteIds));
+			this.recentSiteIds = Collections.unmodifiableList(new ArrayList<>(recentSiteIds));
+			this.excludedSiteIds = Collections.unmodifiableList(new ArrayList<>(excludedSiteIds));
+
+			Set<String> ids = new HashSet<>(this.pinnedSiteIds);
+			ids.addAll(this.recentSiteIds);
+			ids.addAll(this.excludedSiteIds);
+			if (homeSite != null && homeSite.get("id") != null) ids.add((String) homeSite.get("id"));
+			this.siteIds = Collections.unmodifiableSet(ids);
+		}
+	}
+}
@@ -72,6 +72,7 @@ import org.sakaiproject.entity.api.Reference;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.entity.api.Summary;
 import org.sakaiproject.entity.api.EntityManager;
+import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.portal.api.Portal;
@@ -80,6 +81,7 @@ import org.sakaiproject.portal.api.PortalSiteHelper;
 import org.sakaiproject.portal.api.SiteNeighbourhoodService;
 import org.sakaiproject.portal.api.SiteView;
 import org.sakaiproject.portal.api.SiteView.View;
+import org.sakaiproject.portal.charon.site.NavigationModelCache.NavigationModel;
 import org.sakaiproject.portal.util.ToolUtils;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.Site;
@@ -153,6 +155,8 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 	private final ToolManager toolManager;
 	private final UserDirectoryService userDirectoryService;
 
+	private final NavigationModelCache navigationCache;
+
 	private boolean lookForPageAliases;
 	private Portal portal;
 
@@ -174,6 +178,15 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 		threadLocalManager = ComponentManager.get(ThreadLocalManager.class);
 		toolManager = ComponentManager.get(ToolManager.class);
 		userDirectoryService = ComponentManager.get(UserDirectoryService.class);
+
+		// the navigation cache is dropped for anything that changes what a user's nav shows
+		int ttl = serverConfigurationService.getInt("portal.nav.cache.ttl", 300);
+		int size = serverConfigurationService.getInt("portal.nav.cache.size", 10000);
+		navigationCache = new NavigationModelCache(ttl * 1000L, size);
+		EventTrackingService eventTrackingService = ComponentManager.get(EventTrackingService.class);
+		if (eventTrackingService != null) eventTrackingService.addObserver(navigationCache);
+		if (portalService != null) portalService.addNavigationChangeListener(navigationCache::invalidateUser);
+		navigationCache.register();
 	}
 
 	/* (non-Javadoc)
@@ -465,46 +478,35 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 
 		Map<String, Object> contextSites = new HashMap<>();
 		if (loggedIn) {
-            // Put Home site in context
 			String userId = sessionManager.getCurrentSessionUserId();
-			contextSites.put("homeSite", getSiteMap(getSite(siteService.getUserSiteId(userId)), currentSiteId, userId,false, false, true, null));
-
-			List<String> excludedSiteIds = getExcludedSiteIds(userId);
-			// Get pinned sites, excluded sites never appear in the pinned list including current site
-            Collection<String> pinnedSiteIds = portalService.getPinnedSites(userId);
-            Collection<Site> pinnedSites = pinnedSiteIds.stream()
-					.filter(Predicate.not(excludedSiteIds::contains))
-					.map(this::getSite)
-					.filter(Objects::nonNull)
-					.collect(Collectors.toList());
-            List<Map<String, Object>> pinnedSiteMaps = getSiteMaps(pinnedSites, currentSiteId, userId,true, false, true);
-            contextSites.put("pinnedSites", pinnedSiteMaps);
+			String cacheKey = userId + "/" + StringUtils.defaultString(securityService.getUserEffectiveRole()) + "/" + rb.getLocale();
+			NavigationModel model = navigationCache.get(cacheKey, () -> buildNavigationModel(userId));
 
-			// Get most recent sites
-			Collection<String> recentSiteIds = portalService.getRecentSites(userId);
 			// The current site is added to recent sites, except when it:
 			// is in recents, is in pinned, is excluded, is a user site
-			if (!recentSiteIds.contains(currentSiteId)
-					&& !pinnedSiteIds.contains(currentSiteId)
-					&& !excludedSiteIds.contains(currentSiteId)
+			if (!model.recentSiteIds.contains(currentSiteId)
+					&& !model.pinnedSiteIds.contains(currentSiteId)
+					&& !model.excludedSiteIds.contains(currentSiteId)
 					&& !siteService.isUserSite(currentSiteId)) {
 				portalService.addRecentSite(userId, currentSiteId);
-				recentSiteIds = portalService.getRecentSites(userId);
+				// adding it dropped the cached model, so this builds one with the site in recents
+				model = navigationCache.get(cacheKey, () -> buildNavigationModel(userId));
 			}
 
-			Collection<String> filteredRecentSiteIds = recentSiteIds.stream()
-					.filter(Predicate.not(pinnedSiteIds::contains))
-					.filter(Predicate.not(excludedSiteIds::contains))
-					.collect(Collectors.toSet());
+			// Put Home site in context
+			contextSites.put("homeSite", markCurrentSite(model.homeSite, currentSiteId));
+
+			List<Map<String, Object>> pinnedSiteMaps = model.pinnedSites.stream()
+					.map(m -> markCurrentSite(m, currentSiteId))
+					.collect(Collectors.toList());
+			contextSites.put("pinnedSites", pinnedSiteMaps);
 
-			Collection<Site> recentSites = filteredRecentSiteIds.stream()
-					.map(this::getSite)
-					.filter(Objects::nonNull)
+			List<Map<String, Object>> recentSitesMaps = model.recentSites.stream()
+					.map(m -> markCurrentSite(m, currentSiteId))
 					.collect(Collectors.toList());
-            List<Map<String, Object>> recentSitesMaps = getSiteMaps(recentSites, currentSiteId, userId, false, false, true);
 
 			// If the current site is excluded it should appear in recent as hidden
-			if (excludedSiteIds.contains(currentSiteId)) {
+			if (model.excludedSiteIds.contains(currentSiteId)) {
 				recentSitesMaps.add(getSiteMap(getSite(currentSiteId), currentSiteId, userId, false, true, true, null));
 			}
             contextSites.put("recentSites", recentSitesMaps);
@@ -525,6 +527,55 @@ public class PortalSiteHelperImpl implements PortalSiteHelper
 		return contextSites;
 	}
 
+	/**
+	 * Build a user's home, pinned and recent site maps without marking a current site, for the navigation cache.
+	 */
+	private NavigationModel buildNavigationModel(String userId) {
+
+		Map<String, Object> homeSite = getSiteMap(getSite(siteService.getUserSiteId(userId)), null, userId, false, false, true, null);
+
+		List<String> excludedSiteIds = getExcludedSiteIds(userId);
+		// Get pinned sites, excluded sites never appear in the pinned list including current site
+		Collection<String> pinnedSiteIds = portalService.getPinnedSites(userId);
+		Collection<Site> pinnedSites = pinnedSiteIds.stream()
+				.filter(Predicate.not(excludedSiteIds::contains))
+				.map(this::getSite)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		List<Map<String, Object>> pinnedSiteMaps = getSiteMaps(pinnedSites, null, userId, true, false, true);
+
+		// Get most recent sites
+		Collection<String> recentSiteIds = portalService.getRecentSites(userId);
+		Collection<Site> recentSites = recentSiteIds.stream()
+				.filter(Predicate.not(pinnedSiteIds::contains))
+				.filter(Predicate.not(excludedSiteIds::contains))
+				.collect(Collectors.toSet()).stream()
+				.map(this::getSite)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		List<Map<String, Object>> recentSiteMaps = getSiteMaps(recentSites, null, userId, false, false, true);
+
+		return new NavigationModel(userId, homeSite, pinnedSiteMaps, recentSiteMaps, pinnedSiteIds, recentSiteIds, excludedSiteIds);
+	}
+
+	/**
+	 * @return a copy of a cached site map with the current site marked.
+	 */
+	private static Map<String, Object> markCurrentSite(Map<String, Object> siteMap, String currentSiteId) {
+
+		Map<String, Object> marked = new HashMap<>(siteMap);
+		marked.put("isCurrent", Objects.equals(siteMap.get("id"), currentSiteId));
+		marked.put("currentSiteId", currentSiteId);
+		return marked;
+	}
+
+	/**
+	 * @return the cache of users' navigation models.
+	 */
+	public NavigationModelCache getNavigationCache() {
+		return navigationCache;
+	}
+
 	public List<Map> getSitesInContext(String context, String userId)
 	{
 		return null;
@@ -23,8 +23,16 @@ package org.sakaiproject.portal.charon.handlers;
 
 import static org.mockito.Mockito.mockStatic;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
 
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -65,4 +73,90 @@ public class StaticHandlerTest {
         // Check trailing don't don't break things.
         Assert.assertEquals("application/octet-stream", staticHandler.getContentType(new File("file.that.ends.with.dot.").getName()));
     }
+
+    @Test
+    public void testAcceptsGzip() {
+        Assert.assertTrue(StaticHandler.acceptsGzip("gzip, deflate, br"));
+        Assert.assertTrue(StaticHandler.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+        Assert.assertTrue(StaticHandler.acceptsGzip("*"));
+        Assert.assertFalse(StaticHandler.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(StaticHandler.acceptsGzip("deflate, br"));
+        Assert.assertFalse(StaticHandler.acceptsGzip(null));
+    }
+
+    @Test
+    public void testServesGzipAndNotModifiedFromCache() throws Exception {
+        File script = File.createTempFile("static", ".js");
+        script.deleteOnExit();
+        StringBuilder js = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            js.append("function f").append(i).append("() { return ").append(i).append("; }\n");
+        }
+        Files.write(script.toPath(), js.toString().getBytes(StandardCharsets.UTF_8));
+
+        String path = "/scripts/" + script.getName();
+        ServletContext servletContext = Mockito.mock(ServletContext.class);
+        Mockito.when(servletContext.getRealPath(path)).thenReturn(script.getAbsolutePath());
+        staticHandler.setServletContext(servletContext);
+
+        // first request loads the file and gets the gzip copy
+        HttpServletRequest req = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(req.getPathInfo()).thenReturn(path);
+        Mockito.when(req.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+        HttpServletResponse res = Mockito.mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Mockito.when(res.getOutputStream()).thenReturn(outputStream(body));
+        staticHandler.doStatic(req, res, new String[0]);
+
+        Mockito.verify(res).setHeader("Content-Encoding", "gzip");
+        Mockito.verify(res).setContentType("text/javascript");
+        Assert.assertEquals(js.toString(), new String(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())).readAllBytes(), StandardCharsets.UTF_8));
+        StaticContentCache.Entry entry = staticHandler.staticCache.get(path);
+        Assert.assertNotNull(entry);
+        Mockito.verify(res).setHeader("ETag", entry.gzipEtag);
+
+        // a client with that copy gets a 304 without the file being read
+        Assert.assertTrue(script.delete());
+        long hits = staticHandler.staticCache.getHits();
+        HttpServletRequest again = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(again.getPathInfo()).thenReturn(path);
+        Mockito.when(again.getHeader("Accept-Encoding")).thenReturn("gzip");
+        Mockito.when(again.getHeader("If-None-Match")).thenReturn(entry.gzipEtag);
+        HttpServletResponse notModified = Mockito.mock(HttpServletResponse.class);
+        staticHandler.doStatic(again, notModified, new String[0]);
+
+        Mockito.verify(notModified).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        Mockito.verify(notModified, Mockito.never()).getOutputStream();
+        Assert.assertEquals(hits + 1, staticHandler.staticCache.getHits());
+
+        // and a client without gzip gets the content as is
+        HttpServletRequest plain = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(plain.getPathInfo()).thenReturn(path);
+        HttpServletResponse plainRes = Mockito.mock(HttpServletResponse.class);
+        ByteArrayOutputStream plainBody = new ByteArrayOutputStream();
+        Mockito.when(plainRes.getOutputStream()).thenReturn(outputStream(plainBody));
+        staticHandler.doStatic(plain, plainRes, new String[0]);
+
+        Mockito.verify(plainRes, Mockito.never()).setHeader("Content-Encoding", "gzip");
+        Mockito.verify(plainRes).setHeader("ETag", entry.etag);
+        Assert.assertEquals(js.toString(), new String(plainBody.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private ServletOutputStream outputStream(ByteArrayOutputStream out) {
+        return new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+    }
 }
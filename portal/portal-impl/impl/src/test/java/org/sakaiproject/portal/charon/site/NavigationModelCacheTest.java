@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.portal.charon.site;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.portal.charon.site.NavigationModelCache.NavigationModel;
+import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.PreferencesService;
+
+public class NavigationModelCacheTest {
+
+	private NavigationModelCache cache;
+	private AtomicInteger builds;
+
+	@Before
+	public void setUp() {
+		cache = new NavigationModelCache(60000L, 100);
+		builds = new AtomicInteger();
+	}
+
+	private NavigationModel build(String userId, String... recentSiteIds) {
+		builds.incrementAndGet();
+		Map<String, Object> home = new HashMap<>();
+		home.put("id", "~" + userId);
+		return new NavigationModel(userId, home, Collections.singletonList(siteMap("pinned")), Collections.emptyList(),
+				List.of("pinned"), List.of(recentSiteIds), Collections.emptyList());
+	}
+
+	private Map<String, Object> siteMap(String siteId) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("id", siteId);
+		return m;
+	}
+
+	private Event event(String name, String resource) {
+		Event event = mock(Event.class);
+		when(event.getEvent()).thenReturn(name);
+		when(event.getResource()).thenReturn(resource);
+		return event;
+	}
+
+	@Test
+	public void testServedUntilInvalidated() {
+		NavigationModel first = cache.get("u1//en", () -> build("u1", "recent"));
+		Assert.assertSame(first, cache.get("u1//en", () -> build("u1", "recent")));
+		Assert.assertEquals(1, builds.get());
+		Assert.assertEquals(1, cache.getServed());
+		Assert.assertEquals(1, cache.getRebuilt());
+
+		// pinned or recent sites changed for another user
+		cache.invalidateUser("u2");
+		Assert.assertSame(first, cache.get("u1//en", () -> build("u1", "recent")));
+
+		cache.invalidateUser("u1");
+		Assert.assertNotSame(first, cache.get("u1//en", () -> build("u1", "recent")));
+		Assert.assertEquals(2, builds.get());
+		Assert.assertEquals(1, cache.getInvalidated());
+	}
+
+	@Test
+	public void testSiteAndRealmEvents() {
+		cache.get("u1//en", () -> build("u1", "recent"));
+		cache.get("u2//en", () -> build("u2", "other"));
+
+		// visits don't change the navigation
+		cache.update(null, event("pres.begin", "/presence/recent-presence"));
+		Assert.assertEquals(2, cache.getEntryCount());
+
+		cache.update(null, event(SiteService.SECURE_UPDATE_SITE, "/site/recent"));
+		Assert.assertEquals(1, cache.getEntryCount());
+
+		cache.update(null, event(AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP, "/realm//site/other/group/g1"));
+		Assert.assertEquals(0, cache.getEntryCount());
+
+		cache.get("u1//en", () -> build("u1", "recent"));
+		cache.get("u2//en", () -> build("u2", "other"));
+		cache.update(null, event(PreferencesService.SECURE_EDIT_PREFS, "/prefs/u2"));
+		Assert.assertEquals(1, cache.getEntryCount());
+
+		// a template realm can change anyone's navigation
+		cache.update(null, event(AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP, "/realm/!site.template"));
+		Assert.assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testModelBuiltDuringInvalidationIsNotCached() {
+		cache.get("u1//en", () -> {
+			NavigationModel model = build("u1", "recent");
+			cache.invalidateUser("u1");
+			return model;
+		});
+		Assert.assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testSizeAndTtlLimits() {
+		NavigationModelCache small = new NavigationModelCache(60000L, 2);
+		small.get("a", () -> build("a"));
+		small.get("b", () -> build("b"));
+		small.get("c", () -> build("c"));
+		Assert.assertEquals(2, small.getEntryCount());
+
+		NavigationModelCache expiring = new NavigationModelCache(0L, 10);
+		expiring.get("a", () -> build("a"));
+		expiring.get("a", () -> build("a"));
+		Assert.assertEquals(0, expiring.getServed());
+		Assert.assertEquals(2, expiring.getRebuilt());
+	}
+
+	@Test
+	public void testSiteId() {
+		Assert.assertEquals("abc", NavigationModelCache.siteId("/site/abc"));
+		Assert.assertEquals("abc", NavigationModelCache.siteId("/site/abc/group/g1"));
+		Assert.assertNull(NavigationModelCache.siteId("/site/"));
+		Assert.assertNull(NavigationModelCache.siteId("/user/abc"));
+	}
+}
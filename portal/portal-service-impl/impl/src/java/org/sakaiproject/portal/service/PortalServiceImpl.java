@@ -37,6 +37,8 @@ import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -93,6 +95,8 @@ import org.sakaiproject.user.api.Preferences;
 import org.sakaiproject.user.api.PreferencesService;
 import org.sakaiproject.user.api.UserDirectoryService;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -124,6 +128,7 @@ public class PortalServiceImpl implements PortalService, Observer
 	private Map<String, Portal> portals = new ConcurrentHashMap<>();
 	private Map<String, PortalRenderEngine> renderEngines = new ConcurrentHashMap<>();
 	private Collection<PortalSubPageNavProvider> portalSubPageNavProviders;
+	private final List<Consumer<String>> navigationChangeListeners = new CopyOnWriteArrayList<>();
 
 	public static final int DEFAULT_MAX_RECENT_SITES = 3;
 
@@ -227,11 +232,13 @@ public class PortalServiceImpl implements PortalService, Observer
 					pinnedUserIds.forEach(userId -> {
 						if (!siteUsers.contains(userId)) {
 							pinnedSiteRepository.deleteByUserIdAndSiteId(userId, event.getContext());
+							navigationChanged(userId);
 						}
 					});
 					recentUserIds.forEach(userId -> {
 						if (!siteUsers.contains(userId)) {
 							recentSiteRepository.deleteByUserIdAndSiteId(userId, event.getContext());
+							navigationChanged(userId);
 						}
 					});
 					siteUsers.forEach(userId -> {
@@ -822,6 +829,7 @@ public class PortalServiceImpl implements PortalService, Observer
 		pin.setPosition(position);
 		pin.setHasBeenUnpinned(!isPinned);
 		pinnedSiteRepository.save(pin);
+		navigationChanged(userId);
 
 		if (!isPinned) {
 			addRecentSite(userId, siteId);
@@ -850,6 +858,7 @@ public class PortalServiceImpl implements PortalService, Observer
 		}
 
 		pinnedSiteRepository.deleteByUserIdAndSiteId(userId, siteId);
+		navigationChanged(userId);
 
 		List<PinnedSite> pinnedSites = pinnedSiteRepository.findByUserIdOrderByPosition(userId);
 		for (int i = 0; i < pinnedSites.size(); i++) {
@@ -890,6 +899,7 @@ public class PortalServiceImpl implements PortalService, Observer
 			pin.setHasBeenUnpinned(false);
 			pinnedSiteRepository.save(pin);
 		});
+		navigationChanged(userId);
 	}
 
 	@Transactional
@@ -923,6 +933,7 @@ public class PortalServiceImpl implements PortalService, Observer
 				pinnedSiteRepository.save(pin);
 			}
 		}
+		navigationChanged(userId);
 	}
 
 	@Override
@@ -997,6 +1008,7 @@ public class PortalServiceImpl implements PortalService, Observer
 		recentSite.setSiteId(siteId);
 		recentSite.setCreated(Instant.now());
 		recentSiteRepository.save(recentSite);
+		navigationChanged(userId);
 	}
 
 	@Transactional
@@ -1007,6 +1019,7 @@ public class PortalServiceImpl implements PortalService, Observer
 
 		pinnedSiteRepository.deleteByUserIdAndSiteIds(userId, siteIds);
 		recentSiteRepository.deleteByUserIdAndSiteIds(userId, siteIds);
+		navigationChanged(userId);
 	}
 
 	@Transactional
@@ -1016,6 +1029,41 @@ public class PortalServiceImpl implements PortalService, Observer
 		if (StringUtils.isAnyBlank(userId, siteId)) return;
 
 		recentSiteRepository.deleteByUserIdAndSiteId(userId, siteId);
+		navigationChanged(userId);
+	}
+
+	@Override
+	public void addNavigationChangeListener(Consumer<String> listener) {
+		if (listener != null) navigationChangeListeners.add(listener);
+	}
+
+	/**
+	 * Tell the navigation change listeners that a user's pinned or recent sites changed. Inside a transaction
+	 * they are told when it completes, so they don't reload the old rows before the commit.
+	 */
+	private void navigationChanged(String userId) {
+		if (navigationChangeListeners.isEmpty()) return;
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					notifyNavigationChangeListeners(userId);
+				}
+			});
+		} else {
+			notifyNavigationChangeListeners(userId);
+		}
+	}
+
+	private void notifyNavigationChangeListeners(String userId) {
+		for (Consumer<String> listener : navigationChangeListeners) {
+			try {
+				listener.accept(userId);
+			} catch (Exception e) {
+				log.warn("Navigation change listener failed for user [{}], {}", userId, e.toString());
+			}
+		}
 	}
 
 	@Override
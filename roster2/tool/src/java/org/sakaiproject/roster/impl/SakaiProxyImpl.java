@@ -585,6 +585,15 @@ public class SakaiProxyImpl implements SakaiProxy, Observer {
 
         log.debug("membership.size(): {}", filtered.size());
 
+        boolean viewEmail = isAllowed(currentUserId, RosterFunctions.ROSTER_FUNCTION_VIEWEMAIL, site.getReference());
+        if (viewEmail) {
+            // the members without an email are looked up below, one at a time
+            userDirectoryService.queueUsers(filtered.stream()
+                    .filter(m -> StringUtils.isEmpty(m.getEmail()))
+                    .map(RosterMember::getUserId)
+                    .collect(Collectors.toSet()));
+        }
+
         //remove duplicates. Yes, its a Set but there can be dupes because its storing objects and from multiple groups.
         Set<String> check = new HashSet<>();
         List<RosterMember> cleanedMembers = new ArrayList<>();
@@ -593,7 +602,7 @@ public class SakaiProxyImpl implements SakaiProxy, Observer {
                 cleanedMembers.add(m);
 
                 // Now strip out any unauthorised info
-                if (!isAllowed(currentUserId, RosterFunctions.ROSTER_FUNCTION_VIEWEMAIL, site.getReference())) {
+                if (!viewEmail) {
                     m.setEmail(null);
                 } else {
                     if (StringUtils.isEmpty(m.getEmail())) {
@@ -1181,6 +1181,7 @@ public class DeliveryBean implements Serializable {
 			  timedAG.setLatencyBuffer(0);
 			  timedAG.setTransactionBuffer(0);
 			  timedAG.setBufferedExpirationDate(timedAG.getExpirationDate());
+			  queue.update(timedAG);
 			  String confirmation =
 				  adata.getAssessmentGradingId() +
 				  "-" +
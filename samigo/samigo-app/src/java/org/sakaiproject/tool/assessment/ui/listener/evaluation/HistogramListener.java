@@ -53,8 +53,6 @@ import org.sakaiproject.section.api.coursemanagement.EnrollmentRecord;
 import org.sakaiproject.tool.assessment.api.SamigoApiFactory;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedItemData;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData;
-import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingComparatorByScoreAndUniqueIdentifier;
-import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
 import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
 import org.sakaiproject.tool.assessment.data.ifc.assessment.AnswerIfc;
 import org.sakaiproject.tool.assessment.data.ifc.assessment.AssessmentIfc;
@@ -69,6 +67,8 @@ import org.sakaiproject.tool.assessment.facade.AgentFacade;
 import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
 import org.sakaiproject.tool.assessment.services.GradingService;
 import org.sakaiproject.tool.assessment.services.PublishedItemService;
+import org.sakaiproject.tool.assessment.services.assessment.ItemAnalysisService;
+import org.sakaiproject.tool.assessment.services.assessment.ItemAnalysisStatistics;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.shared.api.assessment.SecureDeliveryServiceAPI;
 import org.sakaiproject.tool.assessment.shared.api.assessment.SecureDeliveryServiceAPI.Phase;
@@ -248,13 +248,8 @@ public class HistogramListener
 		  histogramScores.setHasNav(ContextUtil.lookupParam("hasNav"));
 
 		  delegate = new GradingService();
-		  List<AssessmentGradingData> allscores = delegate.getTotalScores(publishedId, which);
-          //set the ItemGradingData manually here. or we cannot
-          //retrieve it later.
-          for(AssessmentGradingData agd: allscores){
-          	agd.setItemGradingSet(delegate.getItemGradingSet(String.valueOf(agd.getAssessmentGradingId())));
-          }
-          if (allscores.isEmpty()) {
+		  ItemAnalysisStatistics statistics = ItemAnalysisService.getInstance().getStatistics(pub, which);
+          if (statistics.getCount() == 0) {
 			// Similar case in Bug 1537, but clicking Statistics link instead of assignment title.
 			// Therefore, redirect the the same page.
 			delivery.setOutcome("reviewAssessmentError");
@@ -271,47 +266,26 @@ public class HistogramListener
 		  
  		  // get the Map of all users(keyed on userid) belong to the selected sections 
 		  // now we only include scores of users belong to the selected sections
-		  Map<String, EnrollmentRecord> useridMap = null;
-		  List<AssessmentGradingData> scores = new ArrayList<>();
 		  // only do section filter if it's published to authenticated users
-		  if (totalScores.getReleaseToAnonymous()) {
-			  scores.addAll(allscores);
-		  }
-		  else {
-			  useridMap = totalScores.getUserIdMap(callerName, siteId);
-              for (AssessmentGradingData data : allscores) {
-                  String agentid = data.getAgentId();
-                  if (useridMap.containsKey(agentid)) {
-                      scores.add(data);
-                  }
-              }
+		  if (!totalScores.getReleaseToAnonymous()) {
+			  Map<String, EnrollmentRecord> useridMap = totalScores.getUserIdMap(callerName, siteId);
+			  statistics = statistics.select(useridMap.keySet());
 		  }
 
-		  if (scores.isEmpty()) {
+		  if (statistics.getCount() == 0) {
 			  log.info("Students who have submitted may have been removed from this site");
 			  return false;
 		  }
 		  
-		  // here scores contain AssessmentGradingData 
-		  Map assessmentMap = getAssessmentStatisticsMap(scores);
+		  Map assessmentMap = getAssessmentStatisticsMap(statistics);
 
 		  /*
 		   * find students in upper and lower quartiles 
 		   * of assessment scores
 		   */ 
-		  List<AssessmentGradingData> submissionsSortedForDiscrim = new ArrayList<>(scores);
-		  boolean anonymous = Boolean.parseBoolean(totalScores.getAnonymous());
-		  submissionsSortedForDiscrim.sort(new AssessmentGradingComparatorByScoreAndUniqueIdentifier(anonymous));
-		  int numSubmissions = scores.size();
-		  //int percent27 = ((numSubmissions*10*27/100)+5)/10; // rounded
-		  int percent27 = numSubmissions*27/100; // rounded down
-		  if (percent27 == 0) percent27 = 1;
-		  for (int i=0; i<percent27; i++) {
-			  histogramScores.addToLowerQuartileStudents(((AssessmentGradingData)
-					  submissionsSortedForDiscrim.get(i)).getAgentId());
-			  histogramScores.addToUpperQuartileStudents(((AssessmentGradingData)
-					  submissionsSortedForDiscrim.get(numSubmissions-1-i)).getAgentId());
-		  }
+		  int numSubmissions = statistics.getCount();
+		  statistics.getLowerGroup().forEach(histogramScores::addToLowerQuartileStudents);
+		  statistics.getUpperGroup().forEach(histogramScores::addToUpperQuartileStudents);
 		  
 			if (actionString != null && actionString.equals("reviewAssessment")){
 				   if (AssessmentIfc.RETRACT_FOR_EDIT_STATUS.equals(pub.getStatus())) {
@@ -365,38 +339,8 @@ public class HistogramListener
 			  String poolName = null;
 			  String poolNameFixed = null;
 			  
-			  Map itemScoresMap = delegate.getItemScores(Long.valueOf(publishedId), Long.valueOf(0), which);
-			  Map itemScores = new HashMap();
-			  			  
-			  if (totalScores.getReleaseToAnonymous()) {
-				  // skip section filter if it's published to anonymous users
-				  itemScores.putAll(itemScoresMap);
-			  }
-			  else {
-				  if (useridMap == null) {
-					  useridMap = totalScores.getUserIdMap(callerName, siteId);
-				  }
-
-				  for (Iterator it = itemScoresMap.entrySet().iterator(); it.hasNext();) {
-					  Map.Entry entry = (Map.Entry) it.next();
-					  Long itemId = (Long) entry.getKey();
-					  List itemScoresList = (List) entry.getValue();
-
-					  List filteredItemScoresList = new ArrayList();
-					  Iterator itemScoresIter = itemScoresList.iterator();
-					  // get the Map of all users(keyed on userid) belong to the
-					  // selected sections
-
-					  while (itemScoresIter.hasNext()) {
-						  ItemGradingData idata = (ItemGradingData) itemScoresIter.next();
-						  String agentid = idata.getAgentId();
-						  if (useridMap.containsKey(agentid)) {
-							  filteredItemScoresList.add(idata);
-						  }
-					  }
-					  itemScores.put(itemId, filteredItemScoresList);
-				  }
-			  }
+			  // the statistics only count the selected sections already
+			  Map<Long, List<ItemGradingData>> itemScores = statistics.getItemGradings();
 
 			  // Iterate through the assessment parts
 			  while (partsIter.hasNext()) {
@@ -524,7 +468,7 @@ public class HistogramListener
 					  questionScores.setN(String.valueOf(numSubmissions));
 
 					  //for each question (item) in the published assessment's current part/section
-					  determineResults(pub, questionScores, (List) itemScores.get(item.getItemId()));
+					  determineResults(pub, questionScores, itemScores.get(item.getItemId()), statistics);
 					  questionScores.setTotalScore(item.getScore().toString());
 
 					  questionScores.setItemId(item.getItemId());
@@ -537,73 +481,19 @@ public class HistogramListener
 						  questionScores.setDiscrimination("0.0");
 					  }
 					  else {
-                          int percent27ForThisQuestion = percent27;
-                          Set<String> upperQuartileStudents = histogramScores.getUpperQuartileStudents().keySet();
-                          Set<String> lowerQuartileStudents = histogramScores.getLowerQuartileStudents().keySet();
-                          if(isRandompart){
-                          	//we need to calculate the 27% upper and lower
-                            //per question for the people that actually answered
-                            //this question.
-                            upperQuartileStudents = new HashSet<String>();
-                            lowerQuartileStudents = new HashSet<String>();
-                            percent27ForThisQuestion = questionScores.getNumResponses()*27/100;
-                            if (percent27ForThisQuestion == 0) percent27ForThisQuestion = 1;
-                            if(questionScores.getNumResponses() != 0){
-                                //need to only get gradings for students that answered this question
-                                List<AssessmentGradingData> filteredGradings =
-                            		filterGradingData(submissionsSortedForDiscrim, questionScores.getItemId());
-                                
-                                // SAM-2228: loop control issues because of unsynchronized collection access
-                                int filteredGradingsSize = filteredGradings.size();
-                                percent27ForThisQuestion = filteredGradingsSize*27/100;
-                                
-                                for (int i = 0; i < percent27ForThisQuestion; i++) {
-                                    lowerQuartileStudents.add(((AssessmentGradingData)
-                                	filteredGradings.get(i)).getAgentId());
-                                    //
-                                    upperQuartileStudents.add(((AssessmentGradingData)
-                                    filteredGradings.get(filteredGradingsSize-1-i)).getAgentId());
-                                }
-                             }
-                          }
-						  if(questionScores.getNumResponses() != 0){
-                              int numStudentsWithAllCorrectFromUpperQuartile = 0;
-                              int numStudentsWithAllCorrectFromLowerQuartile = 0;
-                              Iterator studentsIter = studentsWithAllCorrect.iterator();
-                              while (studentsIter.hasNext()) {
-							  String agentId = (String) studentsIter.next();
-							  if (upperQuartileStudents.contains(agentId)) {
-								  numStudentsWithAllCorrectFromUpperQuartile++;
-							  }
-							  if (lowerQuartileStudents.contains(agentId)) {
-								  numStudentsWithAllCorrectFromLowerQuartile++;
-							  }
-                              }
-						  
-                              double percentCorrectFromUpperQuartileStudents =
-							  ((double) numStudentsWithAllCorrectFromUpperQuartile / 
-									  (double) percent27ForThisQuestion) * 100d;
-
-                              double percentCorrectFromLowerQuartileStudents =
-							  ((double) numStudentsWithAllCorrectFromLowerQuartile / 
-									  (double) percent27ForThisQuestion) * 100d;
-
+						  // for a random part the 27% upper and lower groups are formed per question,
+						  // from the people that actually answered this question
+						  ItemAnalysisStatistics.Discrimination discrimination = questionScores.getNumResponses() != 0
+								  ? statistics.getDiscrimination(item.getItemId(), isRandompart, studentsWithAllCorrect) : null;
+						  if (discrimination != null) {
                               questionScores.setPercentCorrectFromUpperQuartileStudents(
-								  Integer.toString((int) percentCorrectFromUpperQuartileStudents));
+								  Integer.toString((int) (discrimination.getUpperShare() * 100d)));
                               questionScores.setPercentCorrectFromLowerQuartileStudents(
-								  Integer.toString((int) percentCorrectFromLowerQuartileStudents));
-                                                  
-                                                    double discrimination = ((double)numStudentsWithAllCorrectFromUpperQuartile -
-								  (double)numStudentsWithAllCorrectFromLowerQuartile)/(double)percent27ForThisQuestion ;
+								  Integer.toString((int) (discrimination.getLowerShare() * 100d)));
 
                               // round to 2 decimals
-                              if (discrimination > 999999 || discrimination < -999999) {
-							  questionScores.setDiscrimination("NaN");
-                              }
-                              else {
-							  discrimination = ((int) (discrimination*100.00d)) / 100.00d;
-							  questionScores.setDiscrimination(Double.toString(discrimination));
-                              }
+                              double index = ((int) (discrimination.getIndex() * 100.00d)) / 100.00d;
+                              questionScores.setDiscrimination(Double.toString(index));
                           }else{
                               questionScores.setPercentCorrectFromUpperQuartileStudents(rb.getString("na"));
                               questionScores.setPercentCorrectFromLowerQuartileStudents(rb.getString("na"));
@@ -815,7 +705,8 @@ public class HistogramListener
    * @param qbean
    * @param itemScores
    */
-  private void determineResults(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores)
+  private void determineResults(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean, List<ItemGradingData> itemScores,
+    ItemAnalysisStatistics statistics)
   {
     if (itemScores == null)
       itemScores = new ArrayList<ItemGradingData>();
@@ -860,11 +751,11 @@ public class HistogramListener
         qbean.getQuestionType().equals(TypeIfc.CALCULATED_QUESTION.toString()) || // CALCULATED_QUESTION
         qbean.getQuestionType().equals(TypeIfc.IMAGEMAP_QUESTION.toString()) || // IMAGEMAP_QUESTION
     	qbean.getQuestionType().equals(TypeIfc.MATRIX_CHOICES_SURVEY.toString()))  // matrix survey 
-      doAnswerStatistics(pub, qbean, itemScores);
+      doAnswerStatistics(pub, qbean, itemScores, statistics);
     if (qbean.getQuestionType().equals(TypeIfc.ESSAY_QUESTION.toString()) || // essay
         qbean.getQuestionType().equals(TypeIfc.FILE_UPLOAD.toString()) || // file upload
         qbean.getQuestionType().equals(TypeIfc.AUDIO_RECORDING.toString())) // audio recording
-      doScoreStatistics(qbean, itemScores);
+      doScoreStatistics(qbean, itemScores, statistics.getItem(qbean.getItemId()));
 
   }
 
@@ -877,7 +768,7 @@ public class HistogramListener
    * @param scores
    */
   private void doAnswerStatistics(PublishedAssessmentIfc pub, HistogramQuestionScoresBean qbean,
-    List<ItemGradingData> scores)
+    List<ItemGradingData> scores, ItemAnalysisStatistics statistics)
   {
 	
 //    Don't return here. This will cause questions to be displayed inconsistently on the stats page
@@ -951,7 +842,7 @@ public class HistogramListener
     }
    
     if (StringUtils.equalsAny(qbean.getQuestionType(), TypeIfc.MULTIPLE_CHOICE.toString(), TypeIfc.MULTIPLE_CORRECT_SINGLE_SELECTION.toString(), TypeIfc.MULTIPLE_CHOICE_SURVEY.toString(), TypeIfc.TRUE_FALSE.toString())) {
-      getTFMCScores(publishedAnswerHash, scores, qbean, answers);
+      getTFMCScores(publishedAnswerHash, scores, qbean, answers, statistics.getItem(qbean.getItemId()));
     } else if (StringUtils.equalsAny(qbean.getQuestionType(), TypeIfc.MULTIPLE_CORRECT.toString(), TypeIfc.FILL_IN_BLANK.toString(), TypeIfc.FILL_IN_NUMERIC.toString())) {
       getFIBMCMCScores(publishedItemHash, publishedAnswerHash, scores, qbean, answers, item);
     } else if (qbean.getQuestionType().equals(TypeIfc.MATCHING.toString())) {
@@ -968,16 +859,14 @@ public class HistogramListener
 
     long attemptCount = Optional.ofNullable(qbean.getN()).map(Long::valueOf).orElse(0L);
     long correctCount = Optional.ofNullable(qbean.getStudentsWithAllCorrect()).map(Set::size).orElse(0);
-    long blankCount = Optional.ofNullable(qbean.getNumberOfStudentsWithZeroAnswers()).orElse(0);
-    long totalCount = attemptCount + blankCount;
     long incorrectCount = attemptCount - correctCount;
 
-    // Ideally totalCount should not be 0, if it happens we should handle it to avoid division by 0
-    if (totalCount > 0) {
-        int difficulty = calcDifficulty(totalCount, incorrectCount, blankCount);
-        qbean.setDifficulty(difficulty);
+    // the share of the submissions with a grading for the item whose student is not among the correct ones above
+    double difficulty = statistics.getDifficulty(qbean.getItemId(), qbean.getStudentsWithAllCorrect());
+    if (!Double.isNaN(difficulty)) {
+        qbean.setDifficulty(BigDecimal.valueOf(difficulty * 100).setScale(0, RoundingMode.HALF_UP).intValue());
     } else {
-        log.warn("attemptCount is 0 for item with id=[{}], title=[{}], type=[{}]",
+        log.warn("no submission has a grading for item with id=[{}], title=[{}], type=[{}]",
                 qbean.getItemId(), qbean.getTitle(), qbean.getQuestionType());
     }
 
@@ -1632,23 +1521,25 @@ public class HistogramListener
 							.toString((int) (((double) correctresponses / (double) qbean.getNumResponses()) * 100)));
 	}
 
-  private void getTFMCScores(Map publishedAnswerHash, List scores, HistogramQuestionScoresBean qbean, List answers) {
+  private void getTFMCScores(Map publishedAnswerHash, List scores, HistogramQuestionScoresBean qbean, List answers,
+		ItemAnalysisStatistics.ItemAggregate itemAggregate) {
 		Map texts = new HashMap();
 		Map results = new HashMap();
 		Map sequenceMap = new HashMap();
 
 		if (answers != null) {
+			Map<Long, Long> answerFrequencies = itemAggregate != null ? itemAggregate.getAnswerFrequencies() : Collections.emptyMap();
 			Iterator iter = answers.iterator();
 		
-			// create the lookup maps
+			// create the lookup maps, with the number of responses for each answer
 			while (iter.hasNext()) {
 				AnswerIfc answer = (AnswerIfc) iter.next();
 				texts.put(answer.getId(), answer);
-				results.put(answer.getId(), Integer.valueOf(0));
+				results.put(answer.getId(), Integer.valueOf(answerFrequencies.getOrDefault(answer.getId(), 0L).intValue()));
 				sequenceMap.put(answer.getSequence(), answer.getId());
 			}
 	
-			// find the number of responses (ItemGradingData) for each answer
+			// find the students who responded, and who chose a correct answer
 			iter = scores.iterator();
 			while (iter.hasNext()) {
 				ItemGradingData data = (ItemGradingData) iter.next();
@@ -1657,28 +1548,6 @@ public class HistogramListener
 						.getPublishedAnswerId());
 	
 				if (answer != null) {
-					// found a response
-					Integer num = null;
-					// num is a counter
-					try {
-						// we found a response, now get existing count from the
-						// hashmap
-						num = (Integer) results.get(answer.getId());
-	
-					} catch (Exception e) {
-						log.warn("No results for " + answer.getId());
-						log.error(e.getMessage(), e);
-					}
-					if (num == null)
-						num = Integer.valueOf(0);
-	
-					// we found a response, and got the existing num , now update
-					// one
-					// check here for the other bug about non-autograded items
-					// having 1 even with no responses
-					results.put(answer.getId(), Integer.valueOf(num.intValue() + 1));
-					
-					
 					// this should work because for tf/mc(single)
 					// questions, there should be at most 
 					// one submitted answer per student/assessment
@@ -2246,10 +2115,10 @@ public class HistogramListener
 	  qbean.setNumResponses(numStudentRespondedMap.size());
   }	
 
-  private void doScoreStatistics(HistogramQuestionScoresBean qbean, List scores)
+  private void doScoreStatistics(HistogramQuestionScoresBean qbean, List scores, ItemAnalysisStatistics.ItemAggregate itemAggregate)
   {
     // here scores contain ItemGradingData
-    Map assessmentMap = getAssessmentStatisticsMap(scores);
+    Map assessmentMap = getItemStatisticsMap(scores, itemAggregate);
 
     // test to see if it gets back empty map
     if (assessmentMap.isEmpty())
@@ -2301,37 +2170,45 @@ public class HistogramListener
 	}
   }
 
-  private Map getAssessmentStatisticsMap(List scoreList)
+  private Map getAssessmentStatisticsMap(ItemAnalysisStatistics statistics)
   {
     // this function is used to calculate stats for an entire assessment
-    // or for a non-autograded question
-    // depending on data's instanceof 
+    List<Double> doubles = new ArrayList<>();
+    for (ItemAnalysisStatistics.Submission submission : statistics.getSubmissionsByScore()) {
+      Double finalScore = submission.getFinalScore();
+      doubles.add(finalScore != null ? finalScore : 0d);
+    }
+    return getStatisticsMap(doubles, doubles.size(), statistics.getMean(), statistics.getStandardDeviation());
+  }
 
+  private Map getItemStatisticsMap(List scoreList, ItemAnalysisStatistics.ItemAggregate itemAggregate)
+  {
+    // this function is used to calculate stats for a non-autograded question
     Iterator iter = scoreList.iterator();
     List<Double> doubles = new ArrayList<>();
     while (iter.hasNext())
     {
-      Object data = iter.next();
-      if (data instanceof AssessmentGradingData) {
-    	  Double finalScore = ((AssessmentGradingData) data).getFinalScore();
-    	  if (finalScore == null) {
-    		  finalScore = Double.valueOf("0");
-    	  }
-        doubles.add(finalScore);
-      }
-      else
-      {
-        double autoScore = (double) 0.0;
-        if (((ItemGradingData) data).getAutoScore() != null)
-          autoScore = ((ItemGradingData) data).getAutoScore().doubleValue();
-        double overrideScore = (double) 0.0;
-        if (((ItemGradingData) data).getOverrideScore() != null)
-          overrideScore =
-            ((ItemGradingData) data).getOverrideScore().doubleValue();
-        doubles.add(Double.valueOf(autoScore + overrideScore));
-      }
+      ItemGradingData data = (ItemGradingData) iter.next();
+      double autoScore = (double) 0.0;
+      if (data.getAutoScore() != null)
+        autoScore = data.getAutoScore().doubleValue();
+      double overrideScore = (double) 0.0;
+      if (data.getOverrideScore() != null)
+        overrideScore = data.getOverrideScore().doubleValue();
+      doubles.add(Double.valueOf(autoScore + overrideScore));
     }
 
+    if (itemAggregate == null)
+      return getStatisticsMap(doubles, scoreList.size(), null, null);
+    return getStatisticsMap(doubles, scoreList.size(), itemAggregate.getMean(), itemAggregate.getStandardDeviation());
+  }
+
+  /**
+   * @param mean the mean kept by the item analysis statistics, or null to calculate it
+   * @param standardDeviation the standard deviation kept by the item analysis statistics, or null to calculate it
+   */
+  private Map getStatisticsMap(List<Double> doubles, int numResponses, Double mean, Double standardDeviation)
+  {
     if (doubles.isEmpty())
       doubles.add(new Double(0.0));
 
@@ -2350,14 +2227,15 @@ public class HistogramListener
     double min = scores[0];
     double max = scores[scores.length - 1];
     double total = calTotal(scores);
-    double mean = calMean(scores, total);
+    if (mean == null)
+      mean = calMean(scores, total);
     int interval = 0;
     interval = calInterval(min, max); // SAM-2409
     int[] numStudents = calNumStudents(scores, min, max, interval);
    
     statMap.put("maxScore", castingNum(max,2));
     statMap.put("interval", Integer.valueOf(interval));
-    statMap.put("numResponses", Integer.valueOf(scoreList.size()));
+    statMap.put("numResponses", Integer.valueOf(numResponses));
     // statMap.put("numResponses", Integer.valueOf(scores.length));
 
     statMap.put("totalScore",castingNum(total,2));
@@ -2369,12 +2247,13 @@ public class HistogramListener
     statMap.put("numStudentCollection", numStudents);
     statMap.put(
       "rangeCollection", calRange(numStudents, min, max, interval));
-    double standardDeviation = calStandDev(scores, mean);
+    if (standardDeviation == null)
+      standardDeviation = calStandDev(scores, mean);
     statMap.put("standDev", castingNum(standardDeviation, 2));
     statMap.put("skewnessCoefficient", castingNum(calcSkewnessCoefficient(mean, median, standardDeviation), 2));
     //NEW
     //statMap.put("columnHeight", calColumnHeight(numStudents));
-    statMap.put("columnHeight", calColumnHeight(numStudents,scoreList.size()));
+    statMap.put("columnHeight", calColumnHeight(numStudents,numResponses));
   
     statMap.put("arrayLength", Integer.valueOf(numStudents.length));
     statMap.put(
@@ -2507,21 +2386,6 @@ public class HistogramListener
     return (3 * (mean - median)) / standardDeviation;
   }
 
-  //               incorrect + blank
-  // difficulty = ------------------- * 100
-  //                       total
-  private int calcDifficulty(long totalCount, long incorrectCount, long blankCount) {
-    // Can not calculate difficulty with totalCount smaller than 1
-    if (totalCount <= 0) {
-        return -1;
-    }
-
-    return BigDecimal.valueOf(incorrectCount + blankCount)
-      .multiply(BigDecimal.valueOf(100L))
-      .divide(BigDecimal.valueOf(totalCount), 0, RoundingMode.HALF_UP)
-      .intValue();
-  }
-
   /**
    * Calculate the interval to use for histograms.
    *
@@ -3117,18 +2981,5 @@ public class HistogramListener
 		});
 	}
 
-	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, Long itemId) {
-        List<AssessmentGradingData> submissionsForItemSortedForDiscrim = new ArrayList<AssessmentGradingData>();
-        for(AssessmentGradingData agd: submissionsSortedForDiscrim){
-            Set<ItemGradingData> itemGradings = agd.getItemGradingSet();
-            for(ItemGradingData igd: itemGradings){
-                if(igd.getPublishedItemId().equals(itemId)){
-                    submissionsForItemSortedForDiscrim.add(agd);
-                    break;
-                }
-            }
-        }
-        return submissionsForItemSortedForDiscrim;
-    }
 
 }
@@ -21,49 +21,54 @@
 
 package org.sakaiproject.tool.assessment.ui.queue.delivery;
 
-import java.util.Collection;
+import java.util.Date;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.ResourceBundle;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.sakaiproject.component.cover.ServerConfigurationService;
-import org.sakaiproject.event.cover.EventTrackingService;
-import org.sakaiproject.event.cover.NotificationService;
-import org.sakaiproject.samigo.util.SamigoConstants;
-import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.thread_local.cover.ThreadLocalManager;
+import org.sakaiproject.tool.assessment.data.dao.grading.TimedAttemptData;
+import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
+import org.sakaiproject.tool.assessment.facade.TimedAttemptFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.services.PersistenceService;
+import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.ui.model.delivery.TimedAssessmentGradingModel;
 
 /**
  * <p>Title: TimedAssessmentQueue</p>
- * <p>Description: A queue of assessment timers executed in a pool of threads</p>
+ * <p>Description: A queue of assessment timers executed in a pool of threads. Each timer runs when its assessment
+ * expires rather than on a fixed rate, and the expiration is saved so that another server, or this one after a
+ * restart, can submit the assessment if the timer is lost.</p>
  */
 @Slf4j
 public class TimedAssessmentQueue { 
 
-  private ConcurrentHashMap queue;
-  private HashMap<Long, ScheduledFuture<?>> tasks;
-  private ScheduledThreadPoolExecutor threadPool;
+  private ConcurrentHashMap<Long, TimedAssessmentGradingModel> queue;
+  private TimedAssessmentScheduler scheduler;
+  private String serverId;
+  private int recoveryGrace;
 
   private static class Loader {
     static final TimedAssessmentQueue INSTANCE = new TimedAssessmentQueue();
   }
 
   private TimedAssessmentQueue() { 
-    queue = new ConcurrentHashMap();
-    tasks = new HashMap();
+    queue = new ConcurrentHashMap<>();
     // Get any custom thread count, or default to 4
     int threads = ServerConfigurationService.getInt("samigo.timerThreadCount", 4);
     log.info( "SAMIGO_TIMED_ASSESSMENT:QUEUE:INIT: THREADS:" + threads + " (Set property 'samigo.timerThreadCount' to adjust.)");
-    threadPool = new ScheduledThreadPoolExecutor(threads);
-    // Set the default removal policy so we don't leak memory with finished tasks
-    threadPool.setRemoveOnCancelPolicy(true);
+    scheduler = new TimedAssessmentScheduler(threads, TimedAssessmentRunnable::new);
+    serverId = ServerConfigurationService.getServerId();
+
+    // Look for saved timers whose assessment expired more than recoveryGrace seconds ago and were never submitted.
+    // The grace must be longer than the latency and transaction buffers, so that a server that is still running a
+    // timer always gets to submit and remove it first.
+    recoveryGrace = ServerConfigurationService.getInt("samigo.timerRecoveryGrace", 120);
+    int recoveryInterval = ServerConfigurationService.getInt("samigo.timerRecoveryInterval", 60);
+    if (recoveryInterval > 0) {
+      scheduler.scheduleWithFixedDelay(this::recover, recoveryInterval);
+    }
   } 
 
 
@@ -78,10 +83,9 @@ public class TimedAssessmentQueue {
           // Add grading data to the queue
           queue.put(timedAG.getAssessmentGradingId(),timedAG);
           try {
-              // Repeat the task until stopped or an exception is thrown
-              // Store the resulting ScheduledFuture for the task
-              // delay=0s, every 3s 
-              tasks.put(timedAG.getAssessmentGradingId(), threadPool.scheduleAtFixedRate(new TimedAssessmentRunnable(timedAG.getAssessmentGradingId()), 0, 3000, TimeUnit.MILLISECONDS)); 
+              save(timedAG);
+              // Run the task when the assessment expires
+              scheduleNext(timedAG.getAssessmentGradingId());
               log.info( "SAMIGO_TIMED_ASSESSMENT:QUEUE:NEWTIMER:SUCCESS ID:" + timedAG.getAssessmentGradingId());
           } catch (Exception ex) {
               log.error("SAMIGO_TIMED_ASSESSMENT:QUEUE:NEWTIMER:FAILED ID:" + timedAG.getAssessmentGradingId() + " Exception:" + ex);
@@ -89,6 +93,13 @@ public class TimedAssessmentQueue {
   }
 
 
+  // Pick up a change to the expiration or buffers of a timed assessment already in the queue
+  public void update(TimedAssessmentGradingModel timedAG){
+    save(timedAG);
+    scheduleNext(timedAG.getAssessmentGradingId());
+  }
+
+
   // Remove a timed assessment from the queue
   public void remove(TimedAssessmentGradingModel timedAG){
           remove(timedAG.getAssessmentGradingId());
@@ -98,17 +109,81 @@ public class TimedAssessmentQueue {
   // Remove a timed assessment from the queue
   public void remove(long timedAG){
     log.info("SAMIGO_TIMED_ASSESSMENT:QUEUE:REMOVE ID:" + timedAG);
-    // Stop the task and remove it
-    tasks.get(timedAG).cancel(true);
-    tasks.remove(timedAG);
-    // Remove the grading data from the queue
+    // Remove the grading data from the queue, then stop the task
     queue.remove(timedAG);
+    scheduler.cancel(timedAG);
+    try {
+      PersistenceService.getInstance().getTimedAttemptFacadeQueries().removeTimedAttempt(timedAG);
+    } catch (Exception ex) {
+      log.warn("SAMIGO_TIMED_ASSESSMENT:QUEUE:REMOVE:FAILED ID:{} - {}", timedAG, ex.toString());
+    }
   }
 
 
   // Get assessment data from the queue
   public TimedAssessmentGradingModel get(long assessmentGradingId){
-    return (TimedAssessmentGradingModel)queue.get(assessmentGradingId);
+    return queue.get(assessmentGradingId);
+  }
+
+
+  // Schedule the next run of the task for a timed assessment, if it is still in the queue
+  void scheduleNext(long assessmentGradingId){
+    scheduler.schedule(assessmentGradingId, () -> {
+      TimedAssessmentGradingModel timedAG = queue.get(assessmentGradingId);
+      if (timedAG == null) {
+        return -1L;
+      }
+      long bufferedExpirationTime = timedAG.getBufferedExpirationDate().getTime();
+      // The task acts once the time is strictly past: it submits after the latency buffer, then removes the
+      // assessment after the transaction buffer
+      if (timedAG.isSubmittedForGrade()) {
+        return bufferedExpirationTime + timedAG.getTransactionBuffer() * 1000L + 1;
+      }
+      return bufferedExpirationTime + 1;
+    });
+  }
+
+
+  private void save(TimedAssessmentGradingModel timedAG){
+    try {
+      PublishedAssessmentFacade publishedAssessment = timedAG.getPublishedAssessment();
+      TimedAttemptData timedAttempt = new TimedAttemptData(timedAG.getAssessmentGradingId(),
+          publishedAssessment != null ? publishedAssessment.getPublishedAssessmentId() : null,
+          timedAG.getTimeLimit(), timedAG.getExpirationDate(), timedAG.getTimerId(), serverId, null);
+      PersistenceService.getInstance().getTimedAttemptFacadeQueries().saveTimedAttempt(timedAttempt);
+    } catch (Exception ex) {
+      log.warn("SAMIGO_TIMED_ASSESSMENT:QUEUE:SAVE:FAILED ID:{} - {}", timedAG.getAssessmentGradingId(), ex.toString());
+    }
+  }
+
+
+  // Take over the saved timers that nobody ran, e.g. because the server that started them was restarted or left the cluster
+  private void recover(){
+    try {
+      TimedAttemptFacadeQueriesAPI timedAttemptFacadeQueries = PersistenceService.getInstance().getTimedAttemptFacadeQueries();
+      Date expiredBefore = new Date(System.currentTimeMillis() - recoveryGrace * 1000L);
+      for (TimedAttemptData timedAttempt : timedAttemptFacadeQueries.getTimedAttemptsExpiredBefore(expiredBefore)) {
+        Long id = timedAttempt.getAssessmentGradingId();
+        if (queue.containsKey(id) || !timedAttemptFacadeQueries.claimTimedAttempt(id, timedAttempt.getServerId(), serverId)) {
+          continue;
+        }
+
+        PublishedAssessmentFacade publishedAssessment = null;
+        if (timedAttempt.getPublishedAssessmentId() != null) {
+          publishedAssessment = new PublishedAssessmentService().getPublishedAssessment(timedAttempt.getPublishedAssessmentId().toString());
+        }
+        // begins at the saved expiration with no time left, so the task submits it once the latency buffer is past
+        TimedAssessmentGradingModel timedAG = new TimedAssessmentGradingModel(id, timedAttempt.getTimeLimit(), 0,
+            timedAttempt.getExpirationDate(), timedAttempt.getExpirationDate(), false, timedAttempt.getTimerId(), publishedAssessment);
+        log.info("SAMIGO_TIMED_ASSESSMENT:QUEUE:RECOVER ID:{} from_server:{}", id, timedAttempt.getServerId());
+        queue.put(id, timedAG);
+        scheduleNext(id);
+      }
+    } catch (Exception ex) {
+      log.warn("SAMIGO_TIMED_ASSESSMENT:QUEUE:RECOVER:FAILED - {}", ex.toString());
+    } finally {
+      ThreadLocalManager.clear();
+    }
   }
 
 }
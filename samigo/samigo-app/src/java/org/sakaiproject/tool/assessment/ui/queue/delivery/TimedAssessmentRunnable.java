@@ -82,6 +82,9 @@ public class TimedAssessmentRunnable implements Runnable {
   public void run(){
     try {
       TimedAssessmentGradingModel timedAG = this.queue.get(this.timedAGId);
+      if (timedAG == null) { // removed from the queue since this run was scheduled
+        return;
+      }
       String serverName = serverConfigurationService.getServerName();
 
       boolean submitted = timedAG.isSubmittedForGrade();
@@ -117,6 +120,7 @@ public class TimedAssessmentRunnable implements Runnable {
               // Allow student to take the assessment with their extended time
               log.info("SAMIGO_TIMED_ASSESSMENT:LATE_EXCEPTION ID:{} user_id:{} attempt_after_due_date", this.timedAGId, ag.getAgentId());
               timedAG.setNewTimeLimit(extendedTime);
+              this.queue.update(timedAG);
               return;
             }
           }
@@ -129,6 +133,7 @@ public class TimedAssessmentRunnable implements Runnable {
           if (extendedTime != null && extendedTime > timedAG.getTimeLimit()) {
             log.info("SAMIGO_TIMED_ASSESSMENT:EXTENDED ID:{} old_limit:{}, extended_time:{}", this.timedAGId, timedAG.getTimeLimit(), extendedTime);
             timedAG.setNewTimeLimit(extendedTime);
+            this.queue.update(timedAG);
             return;
           }
 
@@ -235,6 +240,8 @@ public class TimedAssessmentRunnable implements Runnable {
     } finally {
       usageSessionService.logout();
       threadLocalManager.clear();
+      // run again when the assessment expires or, once submitted, when it can be removed
+      this.queue.scheduleNext(this.timedAGId);
     }
   }
 
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.assessment.ui.queue.delivery;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Title: TimedAssessmentScheduler</p>
+ * <p>Description: Runs the task of each timed assessment once, at the time the assessment next needs looking at.
+ * Waiting tasks are kept in the executor's queue ordered by that time, so a thread only wakes up when an
+ * assessment is due rather than polling every assessment's clock.</p>
+ */
+public class TimedAssessmentScheduler {
+
+  private final ConcurrentHashMap<Long, ScheduledFuture<?>> tasks;
+  private final ScheduledThreadPoolExecutor threadPool;
+  private final LongFunction<Runnable> taskFactory;
+
+  public TimedAssessmentScheduler(int threads, LongFunction<Runnable> taskFactory) {
+    this.tasks = new ConcurrentHashMap<>();
+    this.threadPool = new ScheduledThreadPoolExecutor(threads);
+    // Cancelled tasks are replaced on every deadline change, so don't leave them in the queue until they are due
+    this.threadPool.setRemoveOnCancelPolicy(true);
+    this.taskFactory = taskFactory;
+  }
+
+
+  // Run the task for an assessment at the time given by runAt, replacing any run already scheduled for it.
+  // runAt is evaluated while no other thread can schedule or cancel the same assessment; a negative time
+  // means the assessment doesn't need a run any more.
+  public void schedule(long id, LongSupplier runAt) {
+    tasks.compute(id, (key, previous) -> {
+      if (previous != null) {
+        previous.cancel(false);
+      }
+      long time = runAt.getAsLong();
+      if (time < 0) {
+        return null;
+      }
+      long delay = Math.max(time - System.currentTimeMillis(), 0L);
+      return threadPool.schedule(taskFactory.apply(id), delay, TimeUnit.MILLISECONDS);
+    });
+  }
+
+
+  // Stop any run scheduled for an assessment. A run already in progress is left to finish.
+  public void cancel(long id) {
+    ScheduledFuture<?> task = tasks.remove(id);
+    if (task != null) {
+      task.cancel(false);
+    }
+  }
+
+
+  // Run a housekeeping task on the same threads, every period seconds
+  public void scheduleWithFixedDelay(Runnable task, long period) {
+    threadPool.scheduleWithFixedDelay(task, period, period, TimeUnit.SECONDS);
+  }
+
+
+  // Number of assessments with a run scheduled
+  public int size() {
+    return tasks.size();
+  }
+
+
+  public void shutdown() {
+    threadPool.shutdownNow();
+  }
+
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.assessment.ui.queue.delivery;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimedAssessmentSchedulerTest {
+
+  private static final int ATTEMPTS = 10000;
+
+  private AtomicIntegerArray runs;
+  private AtomicInteger early;
+  private ConcurrentHashMap<Long, Long> deadlines;
+  private CountDownLatch done;
+  private TimedAssessmentScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    runs = new AtomicIntegerArray(ATTEMPTS);
+    early = new AtomicInteger();
+    deadlines = new ConcurrentHashMap<>();
+    done = new CountDownLatch(ATTEMPTS);
+    scheduler = new TimedAssessmentScheduler(4, id -> () -> {
+      // allow for the granularity of the wall clock, the executor times on System.nanoTime
+      if (System.currentTimeMillis() < deadlines.get(id) - 5) {
+        early.incrementAndGet();
+      }
+      runs.incrementAndGet((int) id);
+      done.countDown();
+    });
+  }
+
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void testEachAttemptRunsOnceAtItsDeadline() throws Exception {
+    long now = System.currentTimeMillis();
+
+    // 10k attempts started from many request threads at once, expiring over the next two seconds
+    ExecutorService requests = Executors.newFixedThreadPool(16);
+    for (int i = 0; i < ATTEMPTS; i++) {
+      final long id = i;
+      final long deadline = now + 500 + (i * 1500L / ATTEMPTS);
+      requests.execute(() -> {
+        deadlines.put(id, deadline);
+        scheduler.schedule(id, () -> deadline);
+      });
+    }
+    requests.shutdown();
+    Assert.assertTrue(requests.awaitTermination(30, TimeUnit.SECONDS));
+
+    Assert.assertTrue("not every attempt ran", done.await(30, TimeUnit.SECONDS));
+    // give any duplicate run the chance to show up
+    Thread.sleep(200);
+
+    for (int i = 0; i < ATTEMPTS; i++) {
+      Assert.assertEquals("runs of attempt " + i, 1, runs.get(i));
+    }
+    Assert.assertEquals(0, early.get());
+  }
+
+  @Test
+  public void testRescheduleAndCancel() throws Exception {
+    long now = System.currentTimeMillis();
+
+    // moved earlier, then later again: runs once at the last time
+    deadlines.put(1L, now + 300);
+    scheduler.schedule(1L, () -> now + 100);
+    scheduler.schedule(1L, () -> now + 300);
+
+    // cancelled before it is due
+    deadlines.put(2L, now + 100);
+    scheduler.schedule(2L, () -> now + 100);
+    scheduler.cancel(2L);
+
+    // no longer needs a run
+    deadlines.put(3L, now);
+    scheduler.schedule(3L, () -> -1L);
+
+    Assert.assertEquals(1, scheduler.size());
+    Thread.sleep(600);
+
+    Assert.assertEquals(1, runs.get(1));
+    Assert.assertEquals(0, runs.get(2));
+    Assert.assertEquals(0, runs.get(3));
+    Assert.assertEquals(0, early.get());
+  }
+
+}
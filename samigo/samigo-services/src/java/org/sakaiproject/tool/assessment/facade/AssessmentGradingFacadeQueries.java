@@ -238,6 +238,19 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
         return getHibernateTemplate().execute(hcb);
     }
 
+    public Object[] getSubmissionSummary(final Long publishedId) {
+        final HibernateCallback<Object[]> hcb = session -> {
+            Query q = session.createQuery(
+                    "select count(a.assessmentGradingId), max(a.submittedDate), max(a.gradedDate), sum(a.finalScore) " +
+                    "from AssessmentGradingData a where a.publishedAssessmentId = :id and a.forGrade = :forgrade and a.status > :status");
+            q.setParameter("id", publishedId);
+            q.setParameter("forgrade", true);
+            q.setParameter("status", AssessmentGradingData.REMOVED);
+            return (Object[]) q.uniqueResult();
+        };
+        return getHibernateTemplate().execute(hcb);
+    }
+
     public List<AssessmentGradingData> getAllAssessmentGradingData(final Long publishedId) {
         final HibernateCallback<List<AssessmentGradingData>> hcb = session -> {
             Query q = session.createQuery(
@@ -52,6 +52,14 @@ public interface AssessmentGradingFacadeQueriesAPI
    * @return
    */
   public List getAllSubmissions(String publishedId);
+
+  /**
+   * Summarizes the submissions that are flagged for grading, so that statistics kept over them can tell
+   * whether they changed
+   * @param publishedId the published assesment id
+   * @return the number of submissions, their latest submitted and graded dates and the sum of their final scores
+   */
+  public Object[] getSubmissionSummary(Long publishedId);
   
   public List getAllAssessmentGradingData(Long publishedId);
 
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.query.Query;
+import org.sakaiproject.tool.assessment.data.dao.grading.TimedAttemptData;
+import org.springframework.orm.hibernate5.HibernateCallback;
+import org.springframework.orm.hibernate5.support.HibernateDaoSupport;
+
+import java.util.Date;
+import java.util.List;
+
+@Slf4j
+public class TimedAttemptFacadeQueries extends HibernateDaoSupport implements TimedAttemptFacadeQueriesAPI {
+
+  public void saveTimedAttempt(TimedAttemptData timedAttempt) {
+    timedAttempt.setLastModifiedDate(new Date());
+    getHibernateTemplate().saveOrUpdate(timedAttempt);
+  }
+
+  public void removeTimedAttempt(Long assessmentGradingId) {
+    TimedAttemptData timedAttempt = getHibernateTemplate().get(TimedAttemptData.class, assessmentGradingId);
+    if (timedAttempt != null) {
+      getHibernateTemplate().delete(timedAttempt);
+    }
+  }
+
+  public List<TimedAttemptData> getTimedAttemptsExpiredBefore(final Date expirationDate) {
+
+    HibernateCallback<List<TimedAttemptData>> hcb = session -> {
+      Query q = session.getNamedQuery(QUERY_GET_TIMED_ATTEMPTS_EXPIRED_BEFORE);
+      q.setParameter("expirationDate", expirationDate);
+      return q.list();
+    };
+
+    return getHibernateTemplate().execute(hcb);
+  }
+
+  public boolean claimTimedAttempt(final Long assessmentGradingId, final String previousServerId, final String serverId) {
+
+    HibernateCallback<Integer> hcb = session -> {
+      Query q = session.getNamedQuery(QUERY_CLAIM_TIMED_ATTEMPT);
+      q.setParameter("serverId", serverId);
+      q.setParameter("lastModifiedDate", new Date());
+      q.setParameter("assessmentGradingId", assessmentGradingId);
+      q.setParameter("previousServerId", previousServerId);
+      return q.executeUpdate();
+    };
+
+    return getHibernateTemplate().execute(hcb) == 1;
+  }
+
+}
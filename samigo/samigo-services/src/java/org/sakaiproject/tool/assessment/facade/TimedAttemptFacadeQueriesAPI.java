@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.facade;
+
+import java.util.Date;
+import java.util.List;
+
+import org.sakaiproject.tool.assessment.data.dao.grading.TimedAttemptData;
+
+public interface TimedAttemptFacadeQueriesAPI {
+
+	String QUERY_GET_TIMED_ATTEMPTS_EXPIRED_BEFORE = "getTimedAttemptsExpiredBefore";
+	String QUERY_CLAIM_TIMED_ATTEMPT = "claimTimedAttempt";
+
+  /**
+   * Save the deadline of a timed attempt, replacing any saved before
+   * @param timedAttempt the attempt
+  */
+  public void saveTimedAttempt(TimedAttemptData timedAttempt);
+
+  /**
+   * Forget the deadline of a timed attempt that was submitted or abandoned
+   * @param assessmentGradingId id of the attempt
+  */
+  public void removeTimedAttempt(Long assessmentGradingId);
+
+  /**
+   * Retrieve the timed attempts whose time was up before the given date, earliest first
+   * @param expirationDate
+   * @return
+  */
+  public List<TimedAttemptData> getTimedAttemptsExpiredBefore(Date expirationDate);
+
+  /**
+   * Take over a timed attempt from the server that was looking after it. Only one server succeeds if several try at once.
+   * @param assessmentGradingId id of the attempt
+   * @param previousServerId the server that was looking after it
+   * @param serverId the server taking it over
+   * @return true if this server now looks after the attempt
+  */
+  public boolean claimTimedAttempt(Long assessmentGradingId, String previousServerId, String serverId);
+
+}
@@ -91,8 +91,10 @@ import org.sakaiproject.tool.assessment.facade.TypeFacadeQueriesAPI;
 import org.sakaiproject.tool.assessment.integration.context.IntegrationContextFactory;
 import org.sakaiproject.tool.assessment.integration.helper.ifc.GradebookServiceHelper;
 import org.sakaiproject.tool.assessment.services.assessment.EventLogService;
+import org.sakaiproject.tool.assessment.services.assessment.ItemAnalysisService;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.util.ExtendedTimeDeliveryService;
+import org.sakaiproject.tool.assessment.util.SamigoCompiledExpression;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionError;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionParser;
 import org.sakaiproject.tool.assessment.util.comparator.ImageMapGradingItemComparator;
@@ -172,6 +174,17 @@ public class GradingService
   @Getter @Setter
   private LinkedHashMap<String, String> mainvariablesWithValues = new LinkedHashMap<String, String>();
   private static final int MAX_ERROR_TRIES = 100;
+
+  // CALCULATED_QUESTION formulas compiled by processCompiledFormulaIntoValue(), least recently used dropped first.
+  // An empty value marks a formula that can only be evaluated as substituted text.
+  private static final int COMPILED_FORMULA_CACHE_SIZE = 2000;
+  private static final Map<String, Optional<SamigoCompiledExpression>> COMPILED_FORMULAS = Collections.synchronizedMap(
+          new LinkedHashMap<String, Optional<SamigoCompiledExpression>>(16, 0.75f, true) {
+              @Override
+              protected boolean removeEldestEntry(Map.Entry<String, Optional<SamigoCompiledExpression>> eldest) {
+                  return size() > COMPILED_FORMULA_CACHE_SIZE;
+              }
+          });
 	  
   /**
    * Get all scores for a published assessment from the back end.
@@ -688,6 +701,7 @@ public class GradingService
     try {
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveItemGrading(item);
+      ItemAnalysisService.getInstance().gradingChanged(item.getAssessmentGradingId());
     } catch (Exception e) {
         log.error(e.getMessage(), e);
     }
@@ -718,6 +732,7 @@ public class GradingService
       // to reload assessment again
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveOrUpdateAssessmentGrading(assessment);
+      ItemAnalysisService.getInstance().gradingChanged(assessment);
     } catch (Exception e) {
         log.error(e.getMessage(), e);
     }
@@ -736,6 +751,7 @@ public class GradingService
       log.debug("before persist to db: size = " + size);
       try {
     	  PersistenceService.getInstance().getAssessmentGradingFacadeQueries().saveOrUpdateAssessmentGrading(assessment);
+    	  ItemAnalysisService.getInstance().gradingChanged(assessment);
       } catch (Exception e) {
           log.error(e.getMessage(), e);
       }
@@ -2468,6 +2484,8 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
     try {
       PersistenceService.getInstance().
         getAssessmentGradingFacadeQueries().saveOrUpdateAll(c);
+      c.stream().map(ItemGradingData::getAssessmentGradingId).distinct()
+          .forEach(ItemAnalysisService.getInstance()::gradingChanged);
     } catch (Exception e) {
         log.error(e.getMessage(), e);
     }
@@ -2789,6 +2807,7 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
   public void removeAssessmentGradingData(AssessmentGradingData data) {
 	  try {
 		  PersistenceService.getInstance().getAssessmentGradingFacadeQueries().removeAssessmentGradingData(data);
+		  ItemAnalysisService.getInstance().gradingChanged(data);
 	  } catch (Exception e) {
 		  log.error("Exception thrown from removeAssessmentGradingData", e);
 	  }
@@ -3175,10 +3194,13 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
           String answerData = getAnswerData(longFormula); // returns just tolerance and precision
           int decimalPlaces = getAnswerDecimalPlaces(answerData);
           
-          String substitutedFormula = replaceMappedVariablesWithNumbers(formula,variables);
-          substitutedFormula = checkingEmptyGlobalVariables(substitutedFormula, variables, globalVariables);
+          String formulaValue = processCompiledFormulaIntoValue(item.getItemId(), formula, variables, globalVariables, decimalPlaces);
+          if (formulaValue == null) {
+              String substitutedFormula = replaceMappedVariablesWithNumbers(formula,variables);
+              substitutedFormula = checkingEmptyGlobalVariables(substitutedFormula, variables, globalVariables);
 
-          String formulaValue = processFormulaIntoValue(substitutedFormula, decimalPlaces);
+              formulaValue = processFormulaIntoValue(substitutedFormula, decimalPlaces);
+          }
           values.put(i + 1, formulaValue + answerData); // later answerData will be used for scoring
           solutionVariables.put(formulaName, formulaValue + answerData); // later answerData will be used for scoring
       }
@@ -3580,6 +3602,71 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
       return value;
   }
 
+  /**
+   * CALCULATED_QUESTION
+   * Evaluates a formula the way processFormulaIntoValue() evaluates it once its variables have been substituted,
+   * but parses the formula text only the first time it is seen for an item. Later calls bind the variable values
+   * to the cached expression, so regrading an item for many students doesn't parse its formulas for every student.
+   * @param itemId the item the formula belongs to
+   * @param formula the formula with its variables, e.g. {a}+{b}
+   * @param variables the variable values to evaluate the formula for
+   * @param globalVariables the formulas of the global variables of the item, by name
+   * @param decimalPlaces number of decimals to include in the final output
+   * @return the value of the formula, or null if it must be evaluated with processFormulaIntoValue() instead,
+   * which then reports any calculation error
+   */
+  public String processCompiledFormulaIntoValue(Long itemId, String formula, Map<String, String> variables, Map<String, String> globalVariables, int decimalPlaces) {
+      if (StringUtils.isEmpty(formula) || variables == null) {
+          return null;
+      }
+      if (decimalPlaces < 0) {
+          decimalPlaces = 0;
+      }
+
+      List<String> variableNames = new ArrayList<>(new TreeSet<>(variables.keySet()));
+      String key = itemId + "\n" + formula + "\n" + variableNames + "\n" + globalVariables;
+      Optional<SamigoCompiledExpression> compiled = COMPILED_FORMULAS.get(key);
+      if (compiled == null) {
+          compiled = Optional.ofNullable(compileFormula(formula, variableNames, globalVariables));
+          COMPILED_FORMULAS.put(key, compiled);
+      }
+      if (!compiled.isPresent()) {
+          return null;
+      }
+
+      try {
+          String numericString = compiled.get().evaluate(variables, decimalPlaces + 1);
+          return this.isAnswerValid(numericString) ? toScientificNotation(numericString, decimalPlaces) : null;
+      } catch (SamigoExpressionError e) {
+          log.debug("Could not evaluate compiled formula {} for item {}: {}", formula, itemId, e.toString());
+          return null;
+      }
+  }
+
+  /**
+   * CALCULATED_QUESTION
+   * Substitutes every variable of a formula with the argument standing for it, expands its global variables and
+   * compiles the result.
+   * @return the compiled formula or null if the formula can't be compiled
+   */
+  private SamigoCompiledExpression compileFormula(String formula, List<String> variableNames, Map<String, String> globalVariables) {
+      Map<String, String> arguments = new HashMap<>();
+      for (int i = 0; i < variableNames.size(); i++) {
+          arguments.put(variableNames.get(i), OPEN_PARENTHESIS + SamigoCompiledExpression.argumentName(i) + CLOSE_PARENTHESIS);
+      }
+      try {
+          String template = replaceMappedVariablesWithNumbers(formula, arguments);
+          template = checkingEmptyGlobalVariables(template, arguments, globalVariables);
+          if (!SamigoCompiledExpression.isCompilable(template)) {
+              return null;
+          }
+          return SamigoCompiledExpression.compile(checkExpression(cleanFormula(template)), variableNames);
+      } catch (RuntimeException e) {
+          log.debug("Could not compile formula {}: {}", formula, e.toString());
+          return null;
+      }
+  }
+
   /**
    * Cleans up formula text so that whitespaces are normalized or removed
    * @param formula formula with variables or without
@@ -63,6 +63,8 @@ public class PersistenceService{
 	private SebValidationFacadeQueriesAPI sebValidationFacadeQueries;
 	@Getter @Setter
 	private StatisticsFacadeQueriesAPI statisticsFacadeQueries;
+	@Getter @Setter
+	private TimedAttemptFacadeQueriesAPI timedAttemptFacadeQueries;
 
 	public static PersistenceService getInstance(){
 	    return (PersistenceService)ComponentManager.get("PersistenceService");
@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services.assessment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.EvaluationModelIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemDataIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
+import org.sakaiproject.tool.assessment.data.ifc.assessment.SectionDataIfc;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.services.PersistenceService;
+import org.sakaiproject.tool.assessment.services.assessment.ItemAnalysisStatistics.Submission;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the item analysis statistics of the most recently viewed published assessments up to date as their
+ * submissions are graded, so the statistics pages don't load and recount every submission on each visit.
+ * <p>
+ * GradingService reports each submission it saves. Those are reloaded on their own the next time the statistics
+ * are read. A one row summary of the submissions in the database is compared with the statistics on every read,
+ * so submissions graded on another server, or through a path that does not report them, cause a full reload
+ * instead of stale figures.
+ * <p>
+ * Only copies of the submissions are kept, never the Hibernate objects they are loaded from.
+ */
+@Slf4j
+public class ItemAnalysisService {
+
+    private static final ItemAnalysisService INSTANCE = new ItemAnalysisService(null);
+
+    private final AssessmentGradingFacadeQueriesAPI facadeQueries;
+    private final Map<Long, Tracked> tracked = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true));
+    private int maxTracked = -1;
+
+    ItemAnalysisService(AssessmentGradingFacadeQueriesAPI facadeQueries) {
+        this.facadeQueries = facadeQueries;
+    }
+
+    public static ItemAnalysisService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the statistics of the submissions that a scoring option counts, loading them the first time
+     * @param pub the published assessment
+     * @param which the scoring option, as used by GradingService.getTotalScores()
+     * @return a copy of the statistics, which the caller may read without it changing
+     */
+    public ItemAnalysisStatistics getStatistics(PublishedAssessmentIfc pub, String which) {
+        Long publishedId = pub.getPublishedAssessmentId();
+        Tracked assessment = tracked.get(publishedId);
+        if (assessment == null) {
+            assessment = new Tracked(publishedId);
+            tracked.put(publishedId, assessment);
+            trim();
+        }
+        synchronized (assessment) {
+            assessment.refresh(getItemPoints(pub));
+            return assessment.getView(which).copy();
+        }
+    }
+
+    /**
+     * Marks a submission as changed, if the statistics of its published assessment are kept
+     */
+    public void gradingChanged(AssessmentGradingData grading) {
+        if (grading == null || grading.getAssessmentGradingId() == null) {
+            return;
+        }
+        Tracked assessment = grading.getPublishedAssessmentId() != null ? tracked.get(grading.getPublishedAssessmentId()) : null;
+        if (assessment != null) {
+            assessment.changed.add(grading.getAssessmentGradingId());
+        } else {
+            gradingChanged(grading.getAssessmentGradingId());
+        }
+    }
+
+    /**
+     * Marks a submission as changed, if it is counted in any of the statistics kept
+     */
+    public void gradingChanged(Long assessmentGradingId) {
+        if (assessmentGradingId == null) {
+            return;
+        }
+        synchronized (tracked) {
+            for (Tracked assessment : tracked.values()) {
+                if (assessment.gradings.containsKey(assessmentGradingId)) {
+                    assessment.changed.add(assessmentGradingId);
+                }
+            }
+        }
+    }
+
+    private void trim() {
+        if (maxTracked < 0) {
+            maxTracked = ServerConfigurationService.getInt("samigo.itemAnalysis.cacheSize", 20);
+        }
+        synchronized (tracked) {
+            Iterator<Long> ids = tracked.keySet().iterator();
+            while (tracked.size() > maxTracked && ids.hasNext()) {
+                ids.next();
+                ids.remove();
+            }
+        }
+    }
+
+    private AssessmentGradingFacadeQueriesAPI getFacadeQueries() {
+        return facadeQueries != null ? facadeQueries : PersistenceService.getInstance().getAssessmentGradingFacadeQueries();
+    }
+
+    private static Map<Long, Double> getItemPoints(PublishedAssessmentIfc pub) {
+        Map<Long, Double> points = new HashMap<>();
+        for (Object section : pub.getSectionArray()) {
+            for (Object item : ((SectionDataIfc) section).getItemArray()) {
+                points.put(((ItemDataIfc) item).getItemId(), ((ItemDataIfc) item).getScore());
+            }
+        }
+        return points;
+    }
+
+    /**
+     * The submissions of one published assessment that are flagged for grading, and the statistics of each
+     * scoring option that has been read
+     */
+    private class Tracked {
+
+        private final Long publishedId;
+        private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+        private final Map<Long, Submission> gradings = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> gradingsByAgent = new HashMap<>();
+        private final Map<String, ItemAnalysisStatistics> views = new HashMap<>();
+        private Map<Long, Double> itemPoints;
+        private boolean loaded;
+
+        private Tracked(Long publishedId) {
+            this.publishedId = publishedId;
+        }
+
+        private void refresh(Map<Long, Double> points) {
+            if (!loaded || !points.equals(itemPoints)) {
+                itemPoints = points;
+                load();
+                return;
+            }
+
+            Set<Long> changedIds = new HashSet<>(changed);
+            changed.removeAll(changedIds);
+            for (Long id : changedIds) {
+                reload(id);
+            }
+
+            if (!matches(getFacadeQueries().getSubmissionSummary(publishedId))) {
+                log.debug("Submissions of published assessment {} changed elsewhere, reloading its statistics", publishedId);
+                load();
+            }
+        }
+
+        private void load() {
+            changed.clear();
+            gradings.clear();
+            gradingsByAgent.clear();
+            views.clear();
+
+            List<AssessmentGradingData> submissions = getFacadeQueries().getAllSubmissions(publishedId.toString());
+            Map<Long, List<ItemGradingData>> itemGradings = new HashMap<>();
+            if (!submissions.isEmpty()) {
+                for (List<ItemGradingData> list : getFacadeQueries().getItemScores(0L, submissions, false).values()) {
+                    for (ItemGradingData itemGrading : list) {
+                        itemGradings.computeIfAbsent(itemGrading.getAssessmentGradingId(), id -> new ArrayList<>()).add(itemGrading);
+                    }
+                }
+            }
+            for (AssessmentGradingData grading : submissions) {
+                put(new Submission(grading, itemGradings.getOrDefault(grading.getAssessmentGradingId(), Collections.emptyList())));
+            }
+            loaded = true;
+            log.debug("Loaded {} submissions of published assessment {}", submissions.size(), publishedId);
+        }
+
+        private void reload(Long id) {
+            AssessmentGradingData grading = null;
+            try {
+                grading = getFacadeQueries().load(id, false);
+            } catch (Exception e) {
+                log.debug("Submission {} could not be loaded, it no longer counts: {}", id, e.toString());
+            }
+
+            Submission previous = gradings.remove(id);
+            if (previous != null) {
+                gradingsByAgent.getOrDefault(previous.getAgentId(), Collections.emptySet()).remove(id);
+                updateAgent(previous.getAgentId());
+            }
+            if (grading != null && Boolean.TRUE.equals(grading.getForGrade()) && grading.getStatus() != null
+                    && grading.getStatus() > AssessmentGradingData.REMOVED && publishedId.equals(grading.getPublishedAssessmentId())) {
+                put(new Submission(grading, grading.getItemGradingSet()));
+            }
+        }
+
+        private void put(Submission grading) {
+            gradings.put(grading.getAssessmentGradingId(), grading);
+            gradingsByAgent.computeIfAbsent(grading.getAgentId(), a -> new HashSet<>()).add(grading.getAssessmentGradingId());
+            updateAgent(grading.getAgentId());
+        }
+
+        private void updateAgent(String agentId) {
+            for (Map.Entry<String, ItemAnalysisStatistics> view : views.entrySet()) {
+                update(view.getKey(), view.getValue(), agentId);
+            }
+        }
+
+        /**
+         * Makes the statistics of a scoring option count exactly the submissions of an agent it selects
+         */
+        private void update(String which, ItemAnalysisStatistics statistics, String agentId) {
+            Set<Long> ids = gradingsByAgent.getOrDefault(agentId, Collections.emptySet());
+            List<Submission> agentGradings = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                agentGradings.add(gradings.get(id));
+            }
+            Collection<Submission> selected = select(which, agentGradings);
+            for (Submission grading : agentGradings) {
+                if (!selected.contains(grading)) {
+                    statistics.remove(grading.getAssessmentGradingId());
+                }
+            }
+            for (Submission grading : selected) {
+                statistics.add(grading);
+            }
+        }
+
+        private ItemAnalysisStatistics getView(String which) {
+            if (which == null) {
+                return new ItemAnalysisStatistics();
+            }
+            ItemAnalysisStatistics statistics = views.get(which);
+            if (statistics == null) {
+                statistics = new ItemAnalysisStatistics();
+                for (String agentId : gradingsByAgent.keySet()) {
+                    update(which, statistics, agentId);
+                }
+                views.put(which, statistics);
+            }
+            return statistics;
+        }
+
+        private boolean matches(Object[] summary) {
+            if (summary == null) {
+                return gradings.isEmpty();
+            }
+            long count = summary[0] != null ? ((Number) summary[0]).longValue() : 0;
+            double sum = summary[3] != null ? ((Number) summary[3]).doubleValue() : 0;
+
+            Date lastSubmitted = null;
+            Date lastGraded = null;
+            double ownSum = 0;
+            for (Submission grading : gradings.values()) {
+                lastSubmitted = latest(lastSubmitted, grading.getSubmittedDate());
+                lastGraded = latest(lastGraded, grading.getGradedDate());
+                ownSum += grading.getFinalScore() != null ? grading.getFinalScore() : 0;
+            }
+            return count == gradings.size()
+                    && sameTime(lastSubmitted, (Date) summary[1])
+                    && sameTime(lastGraded, (Date) summary[2])
+                    && Math.abs(sum - ownSum) <= 1e-6 * Math.max(1, Math.abs(sum));
+        }
+    }
+
+    /**
+     * Selects the submissions of one agent that a scoring option counts, the way
+     * AssessmentGradingFacadeQueries.getTotalScores() does
+     */
+    static Collection<Submission> select(String which, List<Submission> agentGradings) {
+        if (agentGradings.isEmpty()
+                || EvaluationModelIfc.ALL_SCORE.toString().equals(which) || EvaluationModelIfc.AVERAGE_SCORE.toString().equals(which)) {
+            return agentGradings;
+        }
+        Comparator<Submission> bySubmitted = Comparator.comparing(Submission::getSubmittedDate,
+                Comparator.nullsFirst(Comparator.<Date>naturalOrder()));
+        Comparator<Submission> order = EvaluationModelIfc.LAST_SCORE.toString().equals(which)
+                ? bySubmitted
+                : Comparator.comparing(Submission::getFinalScore, Comparator.nullsFirst(Comparator.<Double>naturalOrder()))
+                        .thenComparing(bySubmitted);
+        return Collections.singletonList(Collections.max(agentGradings,
+                order.thenComparing(Submission::getAssessmentGradingId)));
+    }
+
+    private static Date latest(Date a, Date b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.getTime() >= b.getTime() ? a : b;
+    }
+
+    private static boolean sameTime(Date a, Date b) {
+        return a == null ? b == null : b != null && a.getTime() == b.getTime();
+    }
+}
@@ -0,0 +1,470 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services.assessment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.collections4.comparators.NullComparator;
+import org.apache.commons.lang3.StringUtils;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Running statistics over the submissions of one published assessment that one scoring option (highest, last or
+ * all submissions) counts. Submissions are added and removed one at a time, so a changed submission only costs
+ * its own item gradings, and reading the statistics never goes back to the database.
+ * <p>
+ * Submissions are kept as immutable copies of the fields the statistics page reads, never as the Hibernate
+ * objects they were loaded from, so they can be shared between requests.
+ */
+public class ItemAnalysisStatistics {
+
+    // Submissions with the same score are ordered by id, as the statistics page does for anonymous assessments
+    private static final Comparator<Entry> BY_SCORE = Comparator.comparingDouble((Entry e) -> e.score)
+            .thenComparing(e -> e.submission.getAssessmentGradingId());
+
+    // The order AssessmentGradingFacadeQueries.getItemScores() returns item gradings in
+    private static final Comparator<ItemGrading> ITEM_GRADING_ORDER = Comparator
+            .comparing(ItemGrading::getAgentId, Comparator.nullsLast(Comparator.<String>naturalOrder()))
+            .thenComparing(ItemGrading::getSubmittedDate, Comparator.nullsLast(Comparator.<Date>reverseOrder()));
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> byScore = new TreeSet<>(BY_SCORE);
+    private final Map<Long, ItemAggregate> items = new HashMap<>();
+    private double sum;
+    private double sumOfSquares;
+
+    /**
+     * Adds a submission, replacing the one with the same id if it was already counted
+     */
+    public synchronized void add(Submission submission) {
+        remove(submission.getAssessmentGradingId());
+
+        Map<Long, ItemResponse> responses = new HashMap<>();
+        for (ItemGrading itemGrading : submission.getItemGradings()) {
+            ItemResponse response = responses.computeIfAbsent(itemGrading.getPublishedItemId(), id -> new ItemResponse());
+            response.score += score(itemGrading.getAutoScore()) + score(itemGrading.getOverrideScore());
+            if (itemGrading.getPublishedAnswerId() != null) {
+                response.answered = true;
+                response.answerIds.add(itemGrading.getPublishedAnswerId());
+            } else if (StringUtils.isNotBlank(itemGrading.getAnswerText())) {
+                response.answered = true;
+            }
+        }
+        add(new Entry(score(submission.getFinalScore()), submission, responses));
+    }
+
+    private void add(Entry entry) {
+        for (Map.Entry<Long, ItemResponse> response : entry.responses.entrySet()) {
+            items.computeIfAbsent(response.getKey(), ItemAggregate::new).add(response.getValue(), 1);
+        }
+        entries.put(entry.submission.getAssessmentGradingId(), entry);
+        byScore.add(entry);
+        sum += entry.score;
+        sumOfSquares += entry.score * entry.score;
+    }
+
+    /**
+     * @return false if the submission was not counted
+     */
+    public synchronized boolean remove(Long assessmentGradingId) {
+        Entry entry = entries.remove(assessmentGradingId);
+        if (entry == null) {
+            return false;
+        }
+        byScore.remove(entry);
+        sum -= entry.score;
+        sumOfSquares -= entry.score * entry.score;
+        for (Map.Entry<Long, ItemResponse> response : entry.responses.entrySet()) {
+            ItemAggregate item = items.get(response.getKey());
+            item.add(response.getValue(), -1);
+            if (item.submissions == 0) {
+                items.remove(response.getKey());
+            }
+        }
+        return true;
+    }
+
+    public synchronized boolean contains(Long assessmentGradingId) {
+        return entries.containsKey(assessmentGradingId);
+    }
+
+    /**
+     * @return a copy that later changes to these statistics don't show in
+     */
+    public synchronized ItemAnalysisStatistics copy() {
+        return select(null);
+    }
+
+    /**
+     * @param agentIds the agents whose submissions are kept, or null to keep all of them
+     * @return a copy that only counts the submissions of some agents, e.g. the members of the selected sections
+     */
+    public synchronized ItemAnalysisStatistics select(Collection<String> agentIds) {
+        ItemAnalysisStatistics selected = new ItemAnalysisStatistics();
+        for (Entry entry : entries.values()) {
+            if (agentIds == null || agentIds.contains(entry.submission.getAgentId())) {
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized double getMean() {
+        return entries.isEmpty() ? 0 : sum / entries.size();
+    }
+
+    /**
+     * @return the sample standard deviation of the final scores, NaN with fewer than two submissions
+     */
+    public synchronized double getStandardDeviation() {
+        return standardDeviation(entries.size(), sum, sumOfSquares);
+    }
+
+    /**
+     * @return the counted submissions, lowest final score first
+     */
+    public synchronized List<Submission> getSubmissionsByScore() {
+        List<Submission> submissions = new ArrayList<>(byScore.size());
+        for (Entry entry : byScore) {
+            submissions.add(entry.submission);
+        }
+        return submissions;
+    }
+
+    /**
+     * @return the agents of the lowest scoring 27% of the submissions, at least one
+     */
+    public synchronized List<String> getLowerGroup() {
+        List<String> agents = new ArrayList<>();
+        for (Entry entry : byScore) {
+            if (agents.size() == groupSize(entries.size())) break;
+            agents.add(entry.submission.getAgentId());
+        }
+        return agents;
+    }
+
+    /**
+     * @return the agents of the highest scoring 27% of the submissions, at least one
+     */
+    public synchronized List<String> getUpperGroup() {
+        List<String> agents = new ArrayList<>();
+        for (Entry entry : byScore.descendingSet()) {
+            if (agents.size() == groupSize(entries.size())) break;
+            agents.add(entry.submission.getAgentId());
+        }
+        return agents;
+    }
+
+    /**
+     * Copies the item gradings of the counted submissions, so the caller gets its own objects to read
+     * @return the item gradings by published item id, in the order AssessmentGradingFacadeQueries.getItemScores()
+     * returns them
+     */
+    public synchronized Map<Long, List<ItemGradingData>> getItemGradings() {
+        List<ItemGrading> all = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            all.addAll(entry.submission.getItemGradings());
+        }
+        all.sort(ITEM_GRADING_ORDER);
+
+        Map<Long, List<ItemGradingData>> byItem = new LinkedHashMap<>();
+        for (ItemGrading itemGrading : all) {
+            byItem.computeIfAbsent(itemGrading.getPublishedItemId(), id -> new ArrayList<>()).add(itemGrading.toItemGradingData());
+        }
+        NullComparator<Long> byAnswer = new NullComparator<>();
+        byItem.values().forEach(list -> list.sort((i1, i2) -> byAnswer.compare(i1.getPublishedAnswerId(), i2.getPublishedAnswerId())));
+        return byItem;
+    }
+
+    /**
+     * @return the running aggregates of an item, or null if no counted submission has a grading for it
+     */
+    public synchronized ItemAggregate getItem(Long itemId) {
+        ItemAggregate item = items.get(itemId);
+        return item != null ? item.copy() : null;
+    }
+
+    /**
+     * @param correctAgents the agents that answered the item correctly by its answer key, as the statistics page
+     * counts them for each question type
+     * @return the share of the submissions with a grading for the item whose agent did not answer it correctly,
+     * or NaN if no submission has one
+     */
+    public synchronized double getDifficulty(Long itemId, Set<String> correctAgents) {
+        long submissions = 0;
+        long correct = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.responses.containsKey(itemId)) {
+                submissions++;
+                if (entry.isCorrect(correctAgents)) correct++;
+            }
+        }
+        return submissions == 0 ? Double.NaN : (double) (submissions - correct) / submissions;
+    }
+
+    /**
+     * Counts the submissions that answered an item correctly in the upper and the lower 27% of the submissions
+     * @param randomDraw whether the item was drawn at random, so only the submissions with a grading for it form
+     * the groups
+     * @param correctAgents the agents that answered the item correctly by its answer key
+     * @return the counts, or null if no submission forms the groups
+     */
+    public synchronized Discrimination getDiscrimination(Long itemId, boolean randomDraw, Set<String> correctAgents) {
+        List<Entry> ranked = new ArrayList<>(byScore.size());
+        for (Entry entry : byScore) {
+            if (!randomDraw || entry.responses.containsKey(itemId)) {
+                ranked.add(entry);
+            }
+        }
+        if (ranked.isEmpty()) {
+            return null;
+        }
+        int size = groupSize(ranked.size());
+        int lower = 0;
+        int upper = 0;
+        for (int i = 0; i < size; i++) {
+            if (ranked.get(i).isCorrect(correctAgents)) lower++;
+            if (ranked.get(ranked.size() - 1 - i).isCorrect(correctAgents)) upper++;
+        }
+        return new Discrimination(size, upper, lower);
+    }
+
+    private static int groupSize(int count) {
+        int size = count * 27 / 100;
+        return size == 0 ? 1 : size;
+    }
+
+    private static double standardDeviation(long n, double sum, double sumOfSquares) {
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, (sumOfSquares - n * mean * mean) / (n - 1)));
+    }
+
+    private static double score(Double score) {
+        return score != null ? score : 0d;
+    }
+
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final double score;
+        private final Submission submission;
+        private final Map<Long, ItemResponse> responses;
+
+        private boolean isCorrect(Set<String> correctAgents) {
+            return correctAgents != null && correctAgents.contains(submission.getAgentId());
+        }
+    }
+
+    private static class ItemResponse {
+        private double score;
+        private boolean answered;
+        private final Set<Long> answerIds = new HashSet<>();
+    }
+
+    /**
+     * The fields of a submission that the statistics read
+     */
+    @Getter
+    public static final class Submission {
+        private final Long assessmentGradingId;
+        private final String agentId;
+        private final Double finalScore;
+        private final Date submittedDate;
+        private final Date gradedDate;
+        private final List<ItemGrading> itemGradings;
+
+        /**
+         * @param grading the submission
+         * @param itemGradings all the item gradings of the submission
+         */
+        public Submission(AssessmentGradingData grading, Collection<ItemGradingData> itemGradings) {
+            assessmentGradingId = grading.getAssessmentGradingId();
+            agentId = grading.getAgentId();
+            finalScore = grading.getFinalScore();
+            submittedDate = copy(grading.getSubmittedDate());
+            gradedDate = copy(grading.getGradedDate());
+            List<ItemGrading> copies = new ArrayList<>(itemGradings.size());
+            for (ItemGradingData itemGrading : itemGradings) {
+                copies.add(new ItemGrading(itemGrading));
+            }
+            this.itemGradings = Collections.unmodifiableList(copies);
+        }
+
+        public Date getSubmittedDate() {
+            return copy(submittedDate);
+        }
+
+        public Date getGradedDate() {
+            return copy(gradedDate);
+        }
+    }
+
+    /**
+     * The fields of an item grading that the statistics page reads
+     */
+    @Getter
+    public static final class ItemGrading {
+        private final Long itemGradingId;
+        private final Long assessmentGradingId;
+        private final String agentId;
+        private final Long publishedItemId;
+        private final Long publishedItemTextId;
+        private final Long publishedAnswerId;
+        private final String answerText;
+        private final Double autoScore;
+        private final Double overrideScore;
+        private final Boolean isCorrect;
+        private final Date submittedDate;
+
+        private ItemGrading(ItemGradingData itemGrading) {
+            itemGradingId = itemGrading.getItemGradingId();
+            assessmentGradingId = itemGrading.getAssessmentGradingId();
+            agentId = itemGrading.getAgentId();
+            publishedItemId = itemGrading.getPublishedItemId();
+            publishedItemTextId = itemGrading.getPublishedItemTextId();
+            publishedAnswerId = itemGrading.getPublishedAnswerId();
+            answerText = itemGrading.getAnswerText();
+            autoScore = itemGrading.getAutoScore();
+            overrideScore = itemGrading.getOverrideScore();
+            isCorrect = itemGrading.getIsCorrect();
+            submittedDate = copy(itemGrading.getSubmittedDate());
+        }
+
+        public Date getSubmittedDate() {
+            return copy(submittedDate);
+        }
+
+        private ItemGradingData toItemGradingData() {
+            ItemGradingData itemGrading = new ItemGradingData(itemGradingId, assessmentGradingId);
+            itemGrading.setAgentId(agentId);
+            itemGrading.setPublishedItemId(publishedItemId);
+            itemGrading.setPublishedItemTextId(publishedItemTextId);
+            itemGrading.setPublishedAnswerId(publishedAnswerId);
+            itemGrading.setAnswerText(answerText);
+            itemGrading.setAutoScore(autoScore);
+            itemGrading.setOverrideScore(overrideScore);
+            itemGrading.setIsCorrect(isCorrect);
+            itemGrading.setSubmittedDate(copy(submittedDate));
+            return itemGrading;
+        }
+    }
+
+    /**
+     * How many submissions in the upper and in the lower 27% answered an item correctly
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Discrimination {
+        private final int groupSize;
+        private final int upperCorrect;
+        private final int lowerCorrect;
+
+        public double getUpperShare() {
+            return (double) upperCorrect / groupSize;
+        }
+
+        public double getLowerShare() {
+            return (double) lowerCorrect / groupSize;
+        }
+
+        public double getIndex() {
+            return (double) (upperCorrect - lowerCorrect) / groupSize;
+        }
+    }
+
+    /**
+     * Running aggregates of one item over the counted submissions that have a grading for it
+     */
+    @Getter
+    public static class ItemAggregate {
+        private final Long itemId;
+        private long submissions;
+        private long responses;
+        private long blanks;
+        private double sum;
+        private double sumOfSquares;
+        private final Map<Long, Long> answerFrequencies = new HashMap<>();
+
+        private ItemAggregate(Long itemId) {
+            this.itemId = itemId;
+        }
+
+        private void add(ItemResponse response, int sign) {
+            submissions += sign;
+            if (response.answered) {
+                responses += sign;
+            } else {
+                blanks += sign;
+            }
+            sum += sign * response.score;
+            sumOfSquares += sign * response.score * response.score;
+            for (Long answerId : response.answerIds) {
+                answerFrequencies.merge(answerId, (long) sign, (a, b) -> a + b == 0 ? null : a + b);
+            }
+        }
+
+        private ItemAggregate copy() {
+            ItemAggregate copy = new ItemAggregate(itemId);
+            copy.submissions = submissions;
+            copy.responses = responses;
+            copy.blanks = blanks;
+            copy.sum = sum;
+            copy.sumOfSquares = sumOfSquares;
+            copy.answerFrequencies.putAll(answerFrequencies);
+            return copy;
+        }
+
+        public double getMean() {
+            return submissions == 0 ? 0 : sum / submissions;
+        }
+
+        /**
+         * @return the sample standard deviation of the item scores, NaN with fewer than two submissions
+         */
+        public double getStandardDeviation() {
+            return standardDeviation(submissions, sum, sumOfSquares);
+        }
+
+        public Map<Long, Long> getAnswerFrequencies() {
+            return Collections.unmodifiableMap(answerFrequencies);
+        }
+    }
+}
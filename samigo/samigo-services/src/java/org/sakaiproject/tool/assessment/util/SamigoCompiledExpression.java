@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.tool.assessment.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mariuszgromada.math.mxparser.Argument;
+import org.mariuszgromada.math.mxparser.Expression;
+import org.mariuszgromada.math.mxparser.mXparser;
+
+/**
+ * A calculated question formula parsed once by mxParser, with its variables bound as mxParser arguments.
+ * Each set of variable values is then evaluated against the same expression tree instead of writing the
+ * values into the formula text and parsing it again, giving the same result SamigoExpressionParser gives
+ * for the substituted text.
+ */
+public class SamigoCompiledExpression
+{
+
+  public static final String ARGUMENT_PREFIX = "samigoVar";
+
+  private static final Pattern ARGUMENT_PATTERN = Pattern.compile("\\((" + ARGUMENT_PREFIX + "(\\d+))\\)");
+  private static final Pattern FACTORIAL_PATTERN = Pattern.compile("(?i)factorial");
+
+  private final Expression expression;
+  private final Argument[] arguments;
+  private final String[] variableNames;
+  private final boolean scientific;
+
+  private SamigoCompiledExpression(final String normalized, final List<Argument> arguments, final List<String> variableNames)
+  {
+    this.arguments = arguments.toArray(new Argument[0]);
+    this.variableNames = variableNames.toArray(new String[0]);
+    this.expression = new Expression(normalized, this.arguments);
+    this.scientific = normalized.contains("E");
+  }
+
+  /**
+   * the name of the argument standing for the variable with the given index
+   */
+  public static String argumentName(final int index)
+  {
+    return ARGUMENT_PREFIX + index;
+  }
+
+  /**
+   * Checks a formula in which every variable has been replaced by "(" + argumentName(index) + ")", before any
+   * other rewriting of its text. The parentheses make the template read exactly like a substituted number, so
+   * implicit multiplication and negative values behave the same, except in the cases rejected here.
+   * @return false if the formula can only be evaluated as substituted text
+   */
+  public static boolean isCompilable(final String template)
+  {
+    // factorial(n) is only rewritten for literal numbers
+    if (StringUtils.isBlank(template) || FACTORIAL_PATTERN.matcher(template).find()) {
+      return false;
+    }
+    Matcher matcher = ARGUMENT_PATTERN.matcher(template);
+    while (matcher.find()) {
+      // a value written next to a name, a decimal point or a factorial, e.g. {x}pi, 2.{x} or 3!{x}, reads differently as text
+      if (isNameChar(template, matcher.start() - 1) || isNameChar(template, matcher.end())
+          || (matcher.start() > 0 && template.charAt(matcher.start() - 1) == '!')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compiles a formula that passed isCompilable() and has been cleaned up for evaluation.
+   * @param template the formula with its variables replaced by their arguments
+   * @param variableNames the name of the variable each argument stands for, by argument index
+   * @return the compiled formula, or null if the formula can only be evaluated as substituted text
+   */
+  public static SamigoCompiledExpression compile(final String template, final List<String> variableNames)
+  {
+    if (!isCompilable(template)) {
+      return null;
+    }
+
+    List<Argument> arguments = new ArrayList<>();
+    List<String> boundNames = new ArrayList<>();
+    Matcher matcher = ARGUMENT_PATTERN.matcher(template);
+    while (matcher.find()) {
+      int index = Integer.parseInt(matcher.group(2));
+      if (index >= variableNames.size()) {
+        return null;
+      }
+      if (!boundNames.contains(variableNames.get(index))) {
+        arguments.add(new Argument(matcher.group(1), 0));
+        boundNames.add(variableNames.get(index));
+      }
+    }
+
+    mXparser.setEpsilon(1.0E-99);
+    return new SamigoCompiledExpression(SamigoExpressionParser.normalize(template), arguments, boundNames);
+  }
+
+  /**
+   * evaluates the formula for the given variable values
+   * @param variables variable values keyed by variable name, as they would be written into the formula
+   * @param decimals as for SamigoExpressionParser.parse(String, int)
+   * @return the same value SamigoExpressionParser.parse(String, int) returns for the substituted formula
+   */
+  public synchronized String evaluate(final Map<String, String> variables, final int decimals) throws SamigoExpressionError
+  {
+    boolean scientificValues = scientific;
+    for (int i = 0; i < arguments.length; i++) {
+      String value = variables.get(variableNames[i]);
+      if (value == null) {
+        throw new SamigoExpressionError(103, variableNames[i]);
+      }
+      try {
+        arguments[i].setArgumentValue(Double.parseDouble(value));
+      } catch (NumberFormatException nfe) {
+        throw new SamigoExpressionError(103, variableNames[i]);
+      }
+      scientificValues |= value.contains("E");
+    }
+    return SamigoExpressionParser.calculate(expression, scientificValues, decimals);
+  }
+
+  private static boolean isNameChar(final String text, final int index)
+  {
+    if (index < 0 || index >= text.length()) {
+      return false;
+    }
+    char c = text.charAt(index);
+    return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+  }
+}
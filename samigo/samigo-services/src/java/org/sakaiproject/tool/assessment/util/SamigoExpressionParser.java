@@ -67,52 +67,8 @@ public class SamigoExpressionParser
   {
     try
     {
-      expr = new_expr.trim();
-      // mxParser doesn't understand log(e) they do understand ln(e)
-      // mxParser wants "pi" not "PI"
-      final int cnt = oldSamigoParserVars.length;
-      for (int i = 0; i < cnt; i++) {
-    	  // Only match whole words, e.g., don't do a PI/pi replace on a variable called "applePies"
-    	  expr = expr.replaceAll("\\b" + oldSamigoParserVars[i] + "\\b", newSamigoParserVars[i]);
-      }
-
-      // Also look for the factorial pattern
-      expr = expr.replaceAll(OLD_FACTORIAL_PATTERN, NEW_FACTORIAL_PATTERN);
-
-      ans = BigDecimal.valueOf(0.0);
-      String stringCalculate = "";
-
-      Expression e = null;
-      try {
-          e = new Expression(expr);
-          if (expr.contains("E")) {
-              mXparser.disableCanonicalRounding();
-              mXparser.disableUlpRounding();
-              mXparser.disableAlmostIntRounding();
-          }
-          double d = e.calculate();
-          ans = new BigDecimal(d, MathContext.DECIMAL64);
-
-          String s = Double.toString(d);
-          if (s.contains("E")) {
-              stringCalculate = doubleToBigDecimal(d);
-          } else {
-              stringCalculate = ans.toPlainString();
-          }
-      }
-      catch (NumberFormatException nfe) {
-          String errorMessage = e != null ? e.getErrorMessage() : expr;
-          throw new SamigoExpressionError(401, errorMessage);
-      }
-      finally {
-          mXparser.enableCanonicalRounding();
-          mXparser.enableUlpRounding();
-          mXparser.enableAlmostIntRounding();
-      }
-
-      GradingService service = new GradingService();
-      // Increase the value of decimals by 1 to avoid rounding errors
-      ans_str = service.toScientificNotation(ans.toPlainString(), stringCalculate, decimals + 1);
+      expr = normalize(new_expr);
+      ans_str = calculate(new Expression(expr), expr.contains("E"), decimals);
 
       // add the answer to memory as variable "Ans"
       user_var.put("ANS", new BigDecimal(ans_str));
@@ -126,14 +82,69 @@ public class SamigoExpressionParser
     return ans_str;
   }
 
-  private String doubleToBigDecimal(double num) {
+  /**
+   * Rewrites an expression written for the old Samigo parser into one mxParser understands
+   */
+  public static String normalize(final String new_expr)
+  {
+    String normalized = new_expr.trim();
+    // mxParser doesn't understand log(e) they do understand ln(e)
+    // mxParser wants "pi" not "PI"
+    final int cnt = oldSamigoParserVars.length;
+    for (int i = 0; i < cnt; i++) {
+  	  // Only match whole words, e.g., don't do a PI/pi replace on a variable called "applePies"
+  	  normalized = normalized.replaceAll("\\b" + oldSamigoParserVars[i] + "\\b", newSamigoParserVars[i]);
+    }
+
+    // Also look for the factorial pattern
+    return normalized.replaceAll(OLD_FACTORIAL_PATTERN, NEW_FACTORIAL_PATTERN);
+  }
+
+  /**
+   * calculates a parsed expression and formats the result the way parse() returns it
+   * @param scientific true if the expression text contains numbers in E notation, mxParser must not round those
+   */
+  static String calculate(final Expression e, final boolean scientific, final int decimals) throws SamigoExpressionError
+  {
+    BigDecimal ans;
+    String stringCalculate;
+    try {
+        if (scientific) {
+            mXparser.disableCanonicalRounding();
+            mXparser.disableUlpRounding();
+            mXparser.disableAlmostIntRounding();
+        }
+        double d = e.calculate();
+        ans = new BigDecimal(d, MathContext.DECIMAL64);
+
+        String s = Double.toString(d);
+        if (s.contains("E")) {
+            stringCalculate = doubleToBigDecimal(d);
+        } else {
+            stringCalculate = ans.toPlainString();
+        }
+    }
+    catch (NumberFormatException nfe) {
+        throw new SamigoExpressionError(401, e.getErrorMessage());
+    }
+    finally {
+        mXparser.enableCanonicalRounding();
+        mXparser.enableUlpRounding();
+        mXparser.enableAlmostIntRounding();
+    }
+
+    GradingService service = new GradingService();
+    // Increase the value of decimals by 1 to avoid rounding errors
+    return service.toScientificNotation(ans.toPlainString(), stringCalculate, decimals + 1);
+  }
+
+  private static String doubleToBigDecimal(double num) {
     BigDecimal bd = new BigDecimal(num, MathContext.DECIMAL64).setScale(0, RoundingMode.HALF_UP);
     return bd.toPlainString();
   }
 
 /// private data
   private String expr;          /// holds the expression
-  private BigDecimal ans;           /// holds the result of the expression
   private String ans_str;       /// holds a string containing the result
                                 /// of the expression
 
@@ -22,6 +22,7 @@
 package org.sakaiproject.tool.assessment.services;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -875,4 +876,61 @@ public class GradingServiceTest {
         Assert.assertNotNull(result);
         Assert.assertEquals("123.01", result);
     }
+
+    @Test
+    public void testCompiledFormulaMatchesSubstitutedFormula() throws SamigoExpressionError {
+        Map<String, String> globalVariables = new LinkedHashMap<>();
+        globalVariables.put("sum", "{a} + {b}");
+        globalVariables.put("twice", "@sum@ * 2");
+
+        String[] formulas = {
+            "{a} + {b}",
+            "{a}{b} - 3{c}",
+            "({a} - {b}){c}",
+            "{a}^2 + -{b}",
+            "SQRT(ABS({a})) * PI",
+            "{a}--{b}",
+            "@twice@ / {c}",
+            "log10(abs({c}) + 1) + sin({a})",
+        };
+        String[][] values = {
+            {"3", "7", "2"},
+            {"-3", "7", "-2"},
+            {"0.25", "-1.5", "12"},
+            {"1.5E-7", "2E5", "3"},
+            {"-4.125", "0", "1E11"},
+        };
+
+        for (String formula : formulas) {
+            for (String[] value : values) {
+                Map<String, String> variables = new HashMap<>();
+                variables.put("a", value[0]);
+                variables.put("b", value[1]);
+                variables.put("c", value[2]);
+
+                String substituted = gradingService.replaceMappedVariablesWithNumbers(formula, variables);
+                substituted = gradingService.checkingEmptyGlobalVariables(substituted, variables, globalVariables);
+                String expected = gradingService.processFormulaIntoValue(substituted, 3);
+
+                String compiled = gradingService.processCompiledFormulaIntoValue(1L, formula, variables, globalVariables, 3);
+                Assert.assertEquals(formula + " " + variables, expected, compiled);
+            }
+        }
+    }
+
+    @Test
+    public void testCompiledFormulaFallsBackToSubstitutedFormula() {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("x", "4");
+
+        // only literal numbers are rewritten for factorial(n)
+        Assert.assertNull(gradingService.processCompiledFormulaIntoValue(2L, "factorial({x})", variables, new HashMap<>(), 0));
+        // "2.4" as text, not 2 * 0.4
+        Assert.assertNull(gradingService.processCompiledFormulaIntoValue(2L, "2.{x}", variables, new HashMap<>(), 0));
+        // division by zero is reported by processFormulaIntoValue()
+        variables.put("x", "0");
+        Assert.assertNull(gradingService.processCompiledFormulaIntoValue(2L, "1/{x}", variables, new HashMap<>(), 0));
+        variables.put("x", "2");
+        Assert.assertEquals("1", gradingService.processCompiledFormulaIntoValue(2L, "2/{x}", variables, new HashMap<>(), 0));
+    }
 }
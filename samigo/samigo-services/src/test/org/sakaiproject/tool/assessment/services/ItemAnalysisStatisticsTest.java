@@ -0,0 +1,250 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.tool.assessment.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.data.dao.grading.ItemGradingData;
+import org.sakaiproject.tool.assessment.services.assessment.ItemAnalysisStatistics;
+
+public class ItemAnalysisStatisticsTest {
+
+    private static final Long ITEM_1 = 1L;
+    private static final Long ITEM_2 = 2L;
+    private static final double DELTA = 1e-9;
+
+    private ItemAnalysisStatistics statistics;
+    private long nextItemGradingId = 1;
+
+    @Before
+    public void setUp() {
+        statistics = new ItemAnalysisStatistics();
+    }
+
+    @Test
+    public void meanAndStandardDeviation() {
+        add(10L, "a", 1d, 100L, 0d);
+        add(11L, "b", 0d, 101L, 1d);
+        add(12L, "c", 1d, 100L, 2d);
+
+        assertEquals(3, statistics.getCount());
+        assertEquals(5d / 3, statistics.getMean(), DELTA);
+        assertEquals(Math.sqrt(4d / 3), statistics.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    public void standardDeviationNeedsTwoSubmissions() {
+        add(10L, "a", 1d, 100L, 2d);
+        assertTrue(Double.isNaN(statistics.getStandardDeviation()));
+    }
+
+    @Test
+    public void addingAgainReplacesTheSubmission() {
+        add(10L, "a", 0d, 101L, 0d);
+        add(10L, "a", 1d, 100L, 2d);
+
+        assertEquals(1, statistics.getCount());
+        assertEquals(3d, statistics.getMean(), DELTA);
+        assertEquals(1, statistics.getItem(ITEM_1).getSubmissions());
+        assertEquals(Long.valueOf(1), statistics.getItem(ITEM_1).getAnswerFrequencies().get(100L));
+        assertNull(statistics.getItem(ITEM_1).getAnswerFrequencies().get(101L));
+    }
+
+    @Test
+    public void removeUndoesAdd() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, null, 1d);
+
+        assertTrue(statistics.remove(11L));
+        assertFalse(statistics.remove(11L));
+        assertFalse(statistics.contains(11L));
+        assertEquals(1, statistics.getCount());
+        assertEquals(3d, statistics.getMean(), DELTA);
+        assertEquals(0, statistics.getItem(ITEM_1).getBlanks());
+
+        assertTrue(statistics.remove(10L));
+        assertEquals(0, statistics.getCount());
+        assertNull(statistics.getItem(ITEM_1));
+    }
+
+    @Test
+    public void submissionsAndGroupsAreOrderedByScore() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, 101L, 0d);
+        add(12L, "c", 1d, 100L, 0d);
+        add(13L, "d", 0d, null, 1d);
+
+        List<String> agents = statistics.getSubmissionsByScore().stream()
+                .map(ItemAnalysisStatistics.Submission::getAgentId).collect(Collectors.toList());
+        assertEquals(Arrays.asList("b", "c", "d", "a"), agents);
+        assertEquals(Arrays.asList("b"), statistics.getLowerGroup());
+        assertEquals(Arrays.asList("a"), statistics.getUpperGroup());
+    }
+
+    @Test
+    public void difficultyAndDiscrimination() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, 101L, 0d);
+        add(12L, "c", 1d, 100L, 0d);
+        add(13L, "d", 0d, null, 1d);
+
+        // correct is by the answer key, as the page counts it, not by the points scored
+        Set<String> item1Correct = new HashSet<>(Arrays.asList("a", "c"));
+        Set<String> item2Correct = new HashSet<>(Arrays.asList("a", "d"));
+        assertEquals(0.5, statistics.getDifficulty(ITEM_1, item1Correct), DELTA);
+        assertEquals(0.5, statistics.getDifficulty(ITEM_2, item2Correct), DELTA);
+        assertEquals(1d, statistics.getDifficulty(ITEM_2, null), DELTA);
+        assertEquals(1d, statistics.getDiscrimination(ITEM_1, false, item1Correct).getIndex(), DELTA);
+        assertEquals(1d, statistics.getDiscrimination(ITEM_2, false, item2Correct).getIndex(), DELTA);
+        assertEquals(-1d, statistics.getDiscrimination(ITEM_2, false, Collections.singleton("b")).getIndex(), DELTA);
+        assertTrue(Double.isNaN(statistics.getDifficulty(3L, item1Correct)));
+    }
+
+    @Test
+    public void discriminationOfARandomDrawUsesTheSubmissionsThatDrewTheItem() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, 101L, 0d);
+        add(12L, "c", 1d, 100L, 0d);
+        add(13L, "d", 0d, null, 1d);
+        addWithoutItem2(14L, "e", 5d);
+
+        Set<String> correct = Collections.singleton("a");
+        ItemAnalysisStatistics.Discrimination drawn = statistics.getDiscrimination(ITEM_2, true, correct);
+        assertEquals(1, drawn.getGroupSize());
+        assertEquals(1, drawn.getUpperCorrect());
+        assertEquals(0, drawn.getLowerCorrect());
+        assertEquals(1d, drawn.getIndex(), DELTA);
+
+        ItemAnalysisStatistics.Discrimination all = statistics.getDiscrimination(ITEM_2, false, correct);
+        assertEquals(1, all.getGroupSize());
+        assertEquals(0, all.getUpperCorrect());
+        assertEquals(0d, all.getIndex(), DELTA);
+
+        assertNull(statistics.getDiscrimination(3L, true, correct));
+    }
+
+    @Test
+    public void selectOnlyCountsTheGivenAgents() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, 101L, 0d);
+        add(12L, "c", 1d, 100L, 0d);
+
+        ItemAnalysisStatistics selected = statistics.select(Arrays.asList("a", "c"));
+        assertEquals(2, selected.getCount());
+        assertEquals(2d, selected.getMean(), DELTA);
+        assertEquals(Long.valueOf(2), selected.getItem(ITEM_1).getAnswerFrequencies().get(100L));
+        assertNull(selected.getItem(ITEM_1).getAnswerFrequencies().get(101L));
+        assertEquals(3, statistics.getCount());
+
+        ItemAnalysisStatistics copy = statistics.copy();
+        statistics.remove(10L);
+        assertEquals(3, copy.getCount());
+        assertTrue(copy.contains(10L));
+    }
+
+    @Test
+    public void submissionsAreCopied() {
+        AssessmentGradingData grading = grading(10L, "a", 1d);
+        ItemGradingData itemGrading = itemGrading(10L, "a", ITEM_1, 1d, 100L);
+        statistics.add(new ItemAnalysisStatistics.Submission(grading, Arrays.asList(itemGrading)));
+
+        grading.setFinalScore(0d);
+        itemGrading.setPublishedAnswerId(101L);
+        assertEquals(1d, statistics.getMean(), DELTA);
+        assertEquals(Long.valueOf(100), statistics.getItemGradings().get(ITEM_1).get(0).getPublishedAnswerId());
+
+        ItemGradingData read = statistics.getItemGradings().get(ITEM_1).get(0);
+        assertNotSame(itemGrading, read);
+        assertNotSame(read, statistics.getItemGradings().get(ITEM_1).get(0));
+    }
+
+    @Test
+    public void itemAggregates() {
+        add(10L, "a", 1d, 100L, 2d);
+        add(11L, "b", 0d, 101L, 0d);
+        add(12L, "c", 1d, 100L, 0d);
+        add(13L, "d", 0d, null, 1d);
+
+        ItemAnalysisStatistics.ItemAggregate item = statistics.getItem(ITEM_1);
+        assertEquals(4, item.getSubmissions());
+        assertEquals(3, item.getResponses());
+        assertEquals(1, item.getBlanks());
+        assertEquals(0.5, item.getMean(), DELTA);
+        assertEquals(Math.sqrt(1d / 3), item.getStandardDeviation(), DELTA);
+        assertEquals(Long.valueOf(2), item.getAnswerFrequencies().get(100L));
+        assertEquals(Long.valueOf(1), item.getAnswerFrequencies().get(101L));
+    }
+
+    @Test
+    public void itemGradingsAreGroupedByItemAndOrderedByAnswer() {
+        add(10L, "b", 1d, 100L, 2d);
+        add(11L, "a", 0d, 101L, 0d);
+
+        Map<Long, List<ItemGradingData>> itemGradings = statistics.getItemGradings();
+        assertEquals(2, itemGradings.size());
+        assertEquals(Arrays.asList("b", "a"), itemGradings.get(ITEM_1).stream()
+                .map(ItemGradingData::getAgentId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("a", "b"), itemGradings.get(ITEM_2).stream()
+                .map(ItemGradingData::getAgentId).collect(Collectors.toList()));
+    }
+
+    private void add(Long assessmentGradingId, String agentId, Double item1Score, Long item1AnswerId, Double item2Score) {
+        statistics.add(new ItemAnalysisStatistics.Submission(grading(assessmentGradingId, agentId, item1Score + item2Score), Arrays.asList(
+                itemGrading(assessmentGradingId, agentId, ITEM_1, item1Score, item1AnswerId),
+                itemGrading(assessmentGradingId, agentId, ITEM_2, item2Score, 200L))));
+    }
+
+    private void addWithoutItem2(Long assessmentGradingId, String agentId, Double finalScore) {
+        statistics.add(new ItemAnalysisStatistics.Submission(grading(assessmentGradingId, agentId, finalScore), Arrays.asList(
+                itemGrading(assessmentGradingId, agentId, ITEM_1, 1d, 100L))));
+    }
+
+    private AssessmentGradingData grading(Long assessmentGradingId, String agentId, Double finalScore) {
+        AssessmentGradingData grading = new AssessmentGradingData();
+        grading.setAssessmentGradingId(assessmentGradingId);
+        grading.setAgentId(agentId);
+        grading.setSubmittedDate(new Date());
+        grading.setFinalScore(finalScore);
+        return grading;
+    }
+
+    private ItemGradingData itemGrading(Long assessmentGradingId, String agentId, Long itemId, Double score, Long answerId) {
+        ItemGradingData itemGrading = new ItemGradingData();
+        itemGrading.setItemGradingId(nextItemGradingId++);
+        itemGrading.setAssessmentGradingId(assessmentGradingId);
+        itemGrading.setAgentId(agentId);
+        itemGrading.setPublishedItemId(itemId);
+        itemGrading.setAutoScore(score);
+        itemGrading.setPublishedAnswerId(answerId);
+        return itemGrading;
+    }
+}
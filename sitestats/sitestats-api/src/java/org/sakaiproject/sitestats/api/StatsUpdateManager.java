@@ -135,6 +135,20 @@ public interface StatsUpdateManager {
 	public Date getEventDateFromLatestJobRun() throws Exception;
 	
 	
+	// -----------------------------------------------------------------------
+	// --- Rollups methods ---------------------------------------------------
+	// -----------------------------------------------------------------------
+	/**
+	 * Roll the daily event, resource and presence stats up into the weekly and monthly stats used to answer reports
+	 * on long date ranges. Only weeks and months that have ended are rolled up and, if events are collected by the
+	 * quartz job, only up to the day of the last event it processed.
+	 * This method is called by the default quartz job implementation after collecting events.
+	 * @param from The first day whose stats changed since the last roll up, or null to carry on from the last roll up
+	 * @return True if the rollups were successfully updated.
+	 */
+	public boolean updateRollups(Date from);
+	
+	
 	// -----------------------------------------------------------------------
 	// --- Metrics methods ---------------------------------------------------
 	// -----------------------------------------------------------------------
@@ -33,4 +33,12 @@ public interface StatsUpdateManagerMXBean {
     double getNumberOfEventsGeneratedPerSec();
 
     long getAverageTimeInEventProcessingPerEvent();
+
+    String getAggregateFlushMode();
+
+    long getTotalRowsFlushed();
+
+    long getTotalTimeInFlush();
+
+    double getNumberOfRowsFlushedPerSec();
 }
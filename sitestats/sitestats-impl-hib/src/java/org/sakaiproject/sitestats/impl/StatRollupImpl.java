@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * A weekly or monthly total of the daily event, resource or presence stats, mapped once per table with an entity name
+ * such as <code>EventStatWeek</code>. Each table only maps the columns of the stats it adds up. The date is the one of
+ * the earliest daily row added up, which is always inside the week or month.
+ */
+@Data
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@NoArgsConstructor
+public class StatRollupImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @EqualsAndHashCode.Include
+    private long id;
+    private String siteId;
+    private String userId;
+    private String eventId;
+    private String resourceRef;
+    private String resourceAction;
+    private Date date;
+    private long count;
+    private long duration;
+}
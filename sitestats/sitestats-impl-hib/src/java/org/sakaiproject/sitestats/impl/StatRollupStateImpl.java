@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far the weekly and monthly rollups have been built: every week and month ending on or before
+ * {@link #rolledUpTo} is rolled up.
+ */
+@Data
+@NoArgsConstructor
+public class StatRollupStateImpl implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private Date rolledUpTo;
+}
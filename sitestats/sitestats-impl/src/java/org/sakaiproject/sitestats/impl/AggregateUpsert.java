@@ -0,0 +1,301 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.HSQLDialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.Oracle8iDialect;
+import org.sakaiproject.sitestats.api.EventStat;
+import org.sakaiproject.sitestats.api.LessonBuilderStat;
+import org.sakaiproject.sitestats.api.ResourceStat;
+import org.sakaiproject.sitestats.api.ServerStat;
+import org.sakaiproject.sitestats.api.SiteActivity;
+import org.sakaiproject.sitestats.api.SiteVisits;
+import org.sakaiproject.sitestats.api.UserStat;
+
+/**
+ * Writes the consolidated deltas of one aggregate table with one upsert statement per row, sent as JDBC batches,
+ * instead of loading each existing row through Hibernate and saving it back.
+ * <ul>
+ * <li>Oracle and HSQL: MERGE, adding the deltas to the matched row or inserting a new one.</li>
+ * <li>MySQL: the aggregate tables have no unique key for INSERT ... ON DUPLICATE KEY UPDATE to act on, so a batch of
+ * UPDATEs adds the deltas and a batch of INSERTs writes the rows no UPDATE matched.</li>
+ * </ul>
+ * Without a unique key, older installs can hold several rows for the same keys. The deltas are only added to the one
+ * with the lowest ID, as the Hibernate path only loaded and updated one of them.
+ */
+public class AggregateUpsert<T> {
+
+	public static final String	VENDOR_MYSQL	= "mysql";
+	public static final String	VENDOR_ORACLE	= "oracle";
+	public static final String	VENDOR_HSQL		= "hsql";
+
+	private static final int	BATCH_SIZE		= 500;
+
+	public static final AggregateUpsert<EventStat> EVENT_STATS = new AggregateUpsert<>("SST_EVENTS", "SST_EVENTS_ID",
+			Arrays.asList(
+					Column.key("SITE_ID", "VARCHAR(99)", EventStat::getSiteId),
+					Column.key("EVENT_ID", "VARCHAR(32)", EventStat::getEventId),
+					Column.key("USER_ID", "VARCHAR(99)", EventStat::getUserId),
+					Column.key("EVENT_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("EVENT_COUNT", EventStat::getCount)));
+
+	public static final AggregateUpsert<ResourceStat> RESOURCE_STATS = new AggregateUpsert<>("SST_RESOURCES", "SST_RESOURCES_ID",
+			Arrays.asList(
+					Column.key("SITE_ID", "VARCHAR(99)", ResourceStat::getSiteId),
+					Column.key("RESOURCE_REF", "VARCHAR(255)", ResourceStat::getResourceRef),
+					Column.key("RESOURCE_ACTION", "VARCHAR(12)", ResourceStat::getResourceAction),
+					Column.key("USER_ID", "VARCHAR(99)", ResourceStat::getUserId),
+					Column.key("RESOURCE_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("RESOURCE_COUNT", ResourceStat::getCount)));
+
+	public static final AggregateUpsert<LessonBuilderStat> LESSON_BUILDER_STATS = new AggregateUpsert<>("SST_LESSONBUILDER", "SST_LESSONBUILDER_ID",
+			Arrays.asList(
+					Column.key("SITE_ID", "VARCHAR(99)", LessonBuilderStat::getSiteId),
+					Column.key("PAGE_REF", "VARCHAR(255)", LessonBuilderStat::getPageRef),
+					Column.key("PAGE_ACTION", "VARCHAR(12)", LessonBuilderStat::getPageAction),
+					Column.key("USER_ID", "VARCHAR(99)", LessonBuilderStat::getUserId),
+					Column.key("PAGE_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.insert("PAGE_ID", "BIGINT", LessonBuilderStat::getPageId),
+					Column.add("PAGE_COUNT", LessonBuilderStat::getCount)));
+
+	public static final AggregateUpsert<SiteActivity> SITE_ACTIVITY = new AggregateUpsert<>("SST_SITEACTIVITY", "SST_SITEACTIVITY_ID",
+			Arrays.asList(
+					Column.key("SITE_ID", "VARCHAR(99)", SiteActivity::getSiteId),
+					Column.key("EVENT_ID", "VARCHAR(32)", SiteActivity::getEventId),
+					Column.key("ACTIVITY_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("ACTIVITY_COUNT", SiteActivity::getCount)));
+
+	public static final AggregateUpsert<SiteVisits> SITE_VISITS = new AggregateUpsert<>("SST_SITEVISITS", "SST_SITEVISITS_ID",
+			Arrays.asList(
+					Column.key("SITE_ID", "VARCHAR(99)", SiteVisits::getSiteId),
+					Column.key("VISITS_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("TOTAL_VISITS", SiteVisits::getTotalVisits),
+					Column.set("TOTAL_UNIQUE", "BIGINT", SiteVisits::getTotalUnique)));
+
+	public static final AggregateUpsert<ServerStat> SERVER_STATS = new AggregateUpsert<>("SST_SERVERSTATS", "SST_SERVERSTATS_ID",
+			Arrays.asList(
+					Column.key("EVENT_ID", "VARCHAR(32)", ServerStat::getEventId),
+					Column.key("ACTIVITY_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("ACTIVITY_COUNT", ServerStat::getCount)));
+
+	public static final AggregateUpsert<UserStat> USER_STATS = new AggregateUpsert<>("SST_USERSTATS", "SST_USERSTATS_ID",
+			Arrays.asList(
+					Column.key("USER_ID", "VARCHAR(99)", UserStat::getUserId),
+					Column.key("LOGIN_DATE", "DATE", e -> sqlDate(e.getDate())),
+					Column.add("LOGIN_COUNT", UserStat::getCount)));
+
+	private final String			table;
+	private final String			sequence;
+	private final List<Column<T>>	columns;
+
+	private AggregateUpsert(String table, String sequence, List<Column<T>> columns) {
+		this.table = table;
+		this.sequence = sequence;
+		this.columns = columns;
+	}
+
+	/**
+	 * @return the vendor of the upsert statements to use with the dialect, or null if there are none for it
+	 */
+	public static String vendorOf(Dialect dialect) {
+		if (dialect instanceof MySQLDialect) {
+			return VENDOR_MYSQL;
+		} else if (dialect instanceof Oracle8iDialect) {
+			return VENDOR_ORACLE;
+		} else if (dialect instanceof HSQLDialect) {
+			return VENDOR_HSQL;
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the deltas of the rows to the table
+	 * @param connection the connection of the current transaction
+	 * @param vendor one of the VENDOR_ constants
+	 * @param rows the consolidated rows, in the order to write them
+	 */
+	public void write(Connection connection, String vendor, List<T> rows) throws SQLException {
+		for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+			List<T> batch = rows.subList(from, Math.min(from + BATCH_SIZE, rows.size()));
+			if (VENDOR_MYSQL.equals(vendor)) {
+				int[] counts = executeBatch(connection, updateSql(), batch, updateColumns());
+				List<T> missing = new ArrayList<>();
+				for (int i = 0; i < counts.length; i++) {
+					if (counts[i] == 0) {
+						missing.add(batch.get(i));
+					} else if (counts[i] == Statement.SUCCESS_NO_INFO) {
+						throw new SQLException("The driver did not report the rows matched by: " + updateSql());
+					}
+				}
+				if (!missing.isEmpty()) {
+					executeBatch(connection, insertSql(), missing, insertColumns());
+				}
+			} else if (VENDOR_ORACLE.equals(vendor) || VENDOR_HSQL.equals(vendor)) {
+				executeBatch(connection, mergeSql(vendor), batch, columns);
+			} else {
+				throw new IllegalArgumentException("No upsert statements for vendor: " + vendor);
+			}
+		}
+	}
+
+	/**
+	 * @return the update counts of the statements of the batch
+	 */
+	private int[] executeBatch(Connection connection, String sql, List<T> rows, List<Column<T>> parameters) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (T row : rows) {
+				int i = 1;
+				for (Column<T> column : parameters) {
+					statement.setObject(i++, column.value.apply(row));
+				}
+				statement.addBatch();
+			}
+			return statement.executeBatch();
+		}
+	}
+
+	/**
+	 * @return the parameters of the UPDATE statement: the changed columns then the keys
+	 */
+	private List<Column<T>> updateColumns() {
+		List<Column<T>> parameters = columns(Kind.ADD, Kind.SET);
+		parameters.addAll(columns(Kind.KEY));
+		return parameters;
+	}
+
+	private List<Column<T>> insertColumns() {
+		return columns(Kind.KEY, Kind.INSERT, Kind.ADD, Kind.SET);
+	}
+
+	String updateSql() {
+		return "UPDATE " + table
+				+ " SET " + columns(Kind.ADD, Kind.SET).stream().map(c -> c.kind == Kind.ADD ? c.name + " = " + c.name + " + ?" : c.name + " = ?").collect(Collectors.joining(", "))
+				+ " WHERE " + columns(Kind.KEY).stream().map(c -> c.name + " = ?").collect(Collectors.joining(" AND "))
+				+ " ORDER BY ID LIMIT 1";
+	}
+
+	String insertSql() {
+		List<Column<T>> insert = insertColumns();
+		return "INSERT INTO " + table
+				+ " (" + insert.stream().map(c -> c.name).collect(Collectors.joining(", ")) + ")"
+				+ " VALUES (" + insert.stream().map(c -> "?").collect(Collectors.joining(", ")) + ")";
+	}
+
+	/**
+	 * @return a MERGE taking its parameters in column order, matching only the row of the keys with the lowest ID
+	 */
+	String mergeSql(String vendor) {
+		String values;
+		if (VENDOR_ORACLE.equals(vendor)) {
+			values = "(SELECT " + columns.stream().map(c -> "? " + c.name).collect(Collectors.joining(", ")) + " FROM DUAL) v";
+		} else {
+			// HSQL needs the type of each parameter of a derived table
+			values = "(VALUES(" + columns.stream().map(c -> "CAST(? AS " + c.type + ")").collect(Collectors.joining(", ")) + "))"
+					+ " AS v(" + columns.stream().map(c -> c.name).collect(Collectors.joining(", ")) + ")";
+		}
+		String rowId = "(SELECT MIN(r.ID) FROM " + table + " r WHERE "
+				+ columns(Kind.KEY).stream().map(c -> "r." + c.name + " = v." + c.name).collect(Collectors.joining(" AND ")) + ")";
+		String source = "(SELECT " + columns.stream().map(c -> "v." + c.name).collect(Collectors.joining(", ")) + ", " + rowId + " MIN_ID"
+				+ " FROM " + values + ") s";
+		List<Column<T>> insert = insertColumns();
+		String insertNames = insert.stream().map(c -> c.name).collect(Collectors.joining(", "));
+		String insertValues = insert.stream().map(c -> "s." + c.name).collect(Collectors.joining(", "));
+		if (VENDOR_ORACLE.equals(vendor)) {
+			// the id is generated by a sequence, as it is for the Hibernate mapping
+			insertNames = "ID, " + insertNames;
+			insertValues = sequence + ".NEXTVAL, " + insertValues;
+		}
+		return "MERGE INTO " + table + " t USING " + source
+				+ " ON (t.ID = s.MIN_ID)"
+				+ " WHEN MATCHED THEN UPDATE SET " + columns(Kind.ADD, Kind.SET).stream()
+						.map(c -> c.kind == Kind.ADD ? "t." + c.name + " = t." + c.name + " + s." + c.name : "t." + c.name + " = s." + c.name)
+						.collect(Collectors.joining(", "))
+				+ " WHEN NOT MATCHED THEN INSERT (" + insertNames + ") VALUES (" + insertValues + ")";
+	}
+
+	/**
+	 * @return the columns of the kinds, grouped by kind in the order given
+	 */
+	private List<Column<T>> columns(Kind... kinds) {
+		List<Column<T>> rv = new ArrayList<>();
+		for (Kind kind : kinds) {
+			for (Column<T> column : columns) {
+				if (column.kind == kind) {
+					rv.add(column);
+				}
+			}
+		}
+		return rv;
+	}
+
+	private static java.sql.Date sqlDate(Date date) {
+		return date == null ? null : new java.sql.Date(date.getTime());
+	}
+
+	private enum Kind {
+		/** Identifies the row */
+		KEY,
+		/** Only written when the row is inserted */
+		INSERT,
+		/** Added to the existing value */
+		ADD,
+		/** Replaces the existing value */
+		SET
+	}
+
+	private static class Column<T> {
+		private final String				name;
+		private final String				type;
+		private final Kind					kind;
+		private final Function<T, Object>	value;
+
+		private Column(String name, String type, Kind kind, Function<T, Object> value) {
+			this.name = name;
+			this.type = type;
+			this.kind = kind;
+			this.value = value;
+		}
+
+		private static <T> Column<T> key(String name, String type, Function<T, Object> value) {
+			return new Column<>(name, type, Kind.KEY, value);
+		}
+
+		private static <T> Column<T> insert(String name, String type, Function<T, Object> value) {
+			return new Column<>(name, type, Kind.INSERT, value);
+		}
+
+		private static <T> Column<T> add(String name, Function<T, Object> value) {
+			return new Column<>(name, "BIGINT", Kind.ADD, value);
+		}
+
+		private static <T> Column<T> set(String name, String type, Function<T, Object> value) {
+			return new Column<>(name, type, Kind.SET, value);
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.sakaiproject.sitestats.api.EventStat;
+import org.sakaiproject.sitestats.api.LessonBuilderStat;
+import org.sakaiproject.sitestats.api.ResourceStat;
+import org.sakaiproject.sitestats.api.ServerStat;
+import org.sakaiproject.sitestats.api.SiteActivity;
+import org.sakaiproject.sitestats.api.SiteVisits;
+import org.sakaiproject.sitestats.api.UserStat;
+import org.sakaiproject.sitestats.api.event.detailed.DetailedEvent;
+
+/**
+ * One generation of the events consolidated between two database updates: a counter per aggregate row, keyed by the
+ * columns that identify the row. Events are counted from any thread without locking. The update swaps in a new
+ * generation and seals the old one, which waits for the counts already in progress, before reading it.
+ */
+class ConsolidatedEvents {
+
+	private final Map<Key, LongAdder>							events			= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							activity		= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							resources		= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							lessonBuilder	= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							visits			= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							serverStats		= new ConcurrentHashMap<>();
+	private final Map<Key, LongAdder>							userStats		= new ConcurrentHashMap<>();
+	private final Map<SitePresenceKey, SitePresenceRecord>		presences		= new ConcurrentHashMap<>();
+	private final Queue<DetailedEvent>							detailedEvents	= new ConcurrentLinkedQueue<>();
+
+	/** Canonical instances of the ids in the keys, so each id is kept once and keys compare by reference */
+	private final Map<String, String>							ids				= new ConcurrentHashMap<>();
+
+	/** Threads counting events in this generation */
+	private final AtomicInteger									writers			= new AtomicInteger();
+	private volatile boolean									sealed			= false;
+
+	/**
+	 * Starts counting an event in this generation.
+	 * @return false if the generation has been sealed, the event must be counted in the next one
+	 */
+	boolean enter() {
+		writers.incrementAndGet();
+		if(sealed) {
+			writers.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/** Finishes counting an event started with {@link #enter()}. */
+	void exit() {
+		writers.decrementAndGet();
+	}
+
+	/** Stops counting events in this generation, waiting for the ones in progress. */
+	void seal() {
+		sealed = true;
+		while(writers.get() > 0) {
+			Thread.onSpinWait();
+		}
+	}
+
+	boolean isEmpty() {
+		return events.isEmpty() && activity.isEmpty() && resources.isEmpty() && lessonBuilder.isEmpty()
+				&& visits.isEmpty() && serverStats.isEmpty() && userStats.isEmpty()
+				&& presences.isEmpty() && detailedEvents.isEmpty();
+	}
+
+	// ################################################################
+	// Counting
+	// ################################################################
+	void countEvent(String siteId, String userId, String eventId, long day) {
+		count(events, new Key(id(siteId), id(userId), id(eventId), null, 0, day));
+	}
+
+	void countActivity(String siteId, String eventId, long day) {
+		count(activity, new Key(id(siteId), null, id(eventId), null, 0, day));
+	}
+
+	void countResource(String siteId, String userId, String resourceRef, String resourceAction, long day) {
+		count(resources, new Key(id(siteId), id(userId), id(resourceAction), resourceRef, 0, day));
+	}
+
+	void countLessonBuilder(String siteId, String userId, String pageRef, long pageId, String pageAction, long day) {
+		count(lessonBuilder, new Key(id(siteId), id(userId), id(pageAction), pageRef, pageId, day));
+	}
+
+	void countVisit(String siteId, long day) {
+		count(visits, new Key(id(siteId), null, null, null, 0, day));
+	}
+
+	void countServerEvent(String eventId, long day) {
+		count(serverStats, new Key(null, null, id(eventId), null, 0, day));
+	}
+
+	void countUserLogin(String userId, long day) {
+		count(userStats, new Key(null, id(userId), null, null, 0, day));
+	}
+
+	void addDetailedEvent(DetailedEvent detailedEvent) {
+		detailedEvents.add(detailedEvent);
+	}
+
+	Map<SitePresenceKey, SitePresenceRecord> getPresences() {
+		return presences;
+	}
+
+	private static void count(Map<Key, LongAdder> counters, Key key) {
+		LongAdder counter = counters.get(key);
+		if(counter == null) {
+			counter = counters.computeIfAbsent(key, k -> new LongAdder());
+		}
+		counter.increment();
+	}
+
+	private String id(String id) {
+		if(id == null) return null;
+		String canonical = ids.putIfAbsent(id, id);
+		return canonical != null ? canonical : id;
+	}
+
+	// ################################################################
+	// Reading a sealed generation
+	// ################################################################
+	List<EventStat> getEventStats() {
+		return toStats(events, EventStatImpl::new, (s, k) -> {
+			s.setSiteId(k.siteId);
+			s.setUserId(k.userId);
+			s.setEventId(k.eventId);
+		}, EventStat::setDate, EventStat::setCount);
+	}
+
+	List<SiteActivity> getSiteActivity() {
+		return toStats(activity, SiteActivityImpl::new, (s, k) -> {
+			s.setSiteId(k.siteId);
+			s.setEventId(k.eventId);
+		}, SiteActivity::setDate, SiteActivity::setCount);
+	}
+
+	List<ResourceStat> getResourceStats() {
+		return toStats(resources, ResourceStatImpl::new, (s, k) -> {
+			s.setSiteId(k.siteId);
+			s.setUserId(k.userId);
+			s.setResourceRef(k.ref);
+			s.setResourceAction(k.eventId);
+		}, ResourceStat::setDate, ResourceStat::setCount);
+	}
+
+	List<LessonBuilderStat> getLessonBuilderStats() {
+		return toStats(lessonBuilder, LessonBuilderStatImpl::new, (s, k) -> {
+			s.setSiteId(k.siteId);
+			s.setUserId(k.userId);
+			s.setPageRef(k.ref);
+			s.setPageId(k.pageId);
+			s.setPageAction(k.eventId);
+		}, LessonBuilderStat::setDate, LessonBuilderStat::setCount);
+	}
+
+	/** @return the visits of each site and day, without their unique visits */
+	List<SiteVisits> getSiteVisits() {
+		return toStats(visits, SiteVisitsImpl::new, (s, k) -> s.setSiteId(k.siteId), SiteVisits::setDate, SiteVisits::setTotalVisits);
+	}
+
+	List<ServerStat> getServerStats() {
+		return toStats(serverStats, ServerStatImpl::new, (s, k) -> s.setEventId(k.eventId), ServerStat::setDate, ServerStat::setCount);
+	}
+
+	List<UserStat> getUserStats() {
+		return toStats(userStats, UserStatImpl::new, (s, k) -> s.setUserId(k.userId), UserStat::setDate, UserStat::setCount);
+	}
+
+	List<DetailedEvent> getDetailedEvents() {
+		return new ArrayList<>(detailedEvents);
+	}
+
+	private static <S> List<S> toStats(Map<Key, LongAdder> counters, Supplier<S> factory, BiConsumer<S, Key> ids,
+			BiConsumer<S, Date> date, CountSetter<S> count) {
+		List<S> stats = new ArrayList<>(counters.size());
+		counters.forEach((key, counter) -> {
+			S stat = factory.get();
+			ids.accept(stat, key);
+			date.accept(stat, new Date(key.day));
+			count.set(stat, counter.sum());
+			stats.add(stat);
+		});
+		return stats;
+	}
+
+	@FunctionalInterface
+	private interface CountSetter<S> {
+		void set(S stat, long count);
+	}
+
+	/**
+	 * The columns identifying an aggregate row. Aggregates leave the columns they don't have null; actions are kept in
+	 * {@link #eventId}.
+	 */
+	static final class Key {
+		final String	siteId;
+		final String	userId;
+		final String	eventId;
+		final String	ref;
+		final long		pageId;
+		final long		day;
+		private final int hash;
+
+		Key(String siteId, String userId, String eventId, String ref, long pageId, long day) {
+			this.siteId = siteId;
+			this.userId = userId;
+			this.eventId = eventId;
+			this.ref = ref;
+			this.pageId = pageId;
+			this.day = day;
+			int h = Objects.hashCode(siteId);
+			h = 31 * h + Objects.hashCode(userId);
+			h = 31 * h + Objects.hashCode(eventId);
+			h = 31 * h + Objects.hashCode(ref);
+			h = 31 * h + Long.hashCode(pageId);
+			this.hash = 31 * h + Long.hashCode(day);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(this == o) return true;
+			if(!(o instanceof Key)) return false;
+			Key k = (Key) o;
+			return hash == k.hash && day == k.day && pageId == k.pageId
+					&& Objects.equals(siteId, k.siteId) && Objects.equals(userId, k.userId)
+					&& Objects.equals(eventId, k.eventId) && Objects.equals(ref, k.ref);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
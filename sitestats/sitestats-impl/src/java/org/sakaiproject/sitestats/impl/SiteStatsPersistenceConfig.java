@@ -108,7 +108,8 @@ public class SiteStatsPersistenceConfig {
                 "org/sakaiproject/sitestats/impl/hbm/JobRunImpl.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/ReportDef.hbm.xml",
                 "org/sakaiproject/sitestats/impl/hbm/ServerStat.hbm.xml",
-                "org/sakaiproject/sitestats/impl/hbm/UserStat.hbm.xml"
+                "org/sakaiproject/sitestats/impl/hbm/UserStat.hbm.xml",
+                "org/sakaiproject/sitestats/impl/hbm/StatRollupImpl.hbm.xml"
         };
     }
 
@@ -192,6 +192,9 @@ public class StatsAggregateJobImpl implements StatefulJob {
 			log.error("Summary: job run failed", e);
 		}
 
+		// roll the days collected up into the weekly and monthly stats
+		statsUpdateManager.updateRollups(null);
+
 		// finish		
 		log.info("Finishing job: " + jobName);
 	}
@@ -492,6 +495,9 @@ public class StatsAggregateJobImpl implements StatefulJob {
 				throw new Exception(returnMessage);
 			}
 			
+			// weeks and months already rolled up may have new stats
+			statsUpdateManager.updateRollups(initialDate);
+			
 		}catch(SQLException e){
 			log.error("Unable to collect past site events", e);
 		}catch(Exception e){
@@ -23,21 +23,27 @@ import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.apache.commons.digester.Digester;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Session;
 import org.hibernate.criterion.Expression;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.query.Query;
@@ -1116,54 +1122,36 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 		
 		// DO IT!
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null) {
-                q.setParameter("siteid", siteId);
-            }
-            if(events != null) {
-                if(events.isEmpty()) {
-                    events.add("");
+            List<Object[]> records = listStats(session, sqlBuilder, hql, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null) {
+                    q.setParameter("siteid", siteId);
                 }
-                q.setParameterList("events", events);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
+                if(events != null) {
+                    if(events.isEmpty()) {
+                        events.add("");
                     }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+                    q.setParameterList("events", events);
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0) {
-                q.setParameterList("anonymousEvents", anonymousEvents);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getEventStats(): {}", q.getQueryString());
-            List<Object[]> records = q.list();
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
+                    }else{
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+                    }
+                }
+                if(columnMap.containsKey(StatsSqlBuilder.C_USER) && anonymousEvents != null && anonymousEvents.size() > 0) {
+                    q.setParameterList("anonymousEvents", anonymousEvents);
+                }
+            }, "getEventStats()");
             List<Stat> results = new ArrayList<>();
             Set<String> siteUserIds = null;
             if(inverseUserSelection)
@@ -1409,45 +1397,27 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 		
 		// DO IT!
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null) {
-                q.setParameter("siteid", siteId);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
+            List<Object[]> records = listStats(session, sqlBuilder, hql, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null) {
+                    q.setParameter("siteid", siteId);
+                }
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
+                    }else{
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                     }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getPresenceStats(): " + q.getQueryString());
-            List<Object[]> records = q.list();
+            }, "getPresenceStats()");
             List<Stat> results = new ArrayList<Stat>();
             Set<String> siteUserIds = null;
             if(inverseUserSelection)
@@ -1671,64 +1641,46 @@ public class StatsManagerImpl extends HibernateDaoSupport implements StatsManage
 		final Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
 
 		HibernateCallback<List<Stat>> hcb = session -> {
-            Query q = session.createQuery(hql);
-            if(siteId != null){
-                q.setParameter("siteid", siteId);
-            }
-            if(userIds != null && !userIds.isEmpty()) {
-                if(userIds.size() <= 1000) {
-                    q.setParameterList("users", userIds);
-                }else{
-                    int nUsers = userIds.size();
-                    int blockId = 0, startIndex = 0;
-                    int blocks = (int) (nUsers / 1000);
-                    blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
-                    for(int i=0; i<blocks-1; i++) {
-                        q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
-                        blockId++;
-                        startIndex += 1000;
-                    }
-                    q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
+            List<Object[]> records = listStats(session, sqlBuilder, hql, iDate, fDate, page, maxResults, q -> {
+                if(siteId != null){
+                    q.setParameter("siteid", siteId);
                 }
-            }
-            if(resourceAction != null)
-                q.setParameter("action", resourceAction);
-            if(resourceIds != null && !resourceIds.isEmpty()) {
-                List<String> simpleResourceIds = new ArrayList<String>();
-                List<String> wildcardResourceIds = new ArrayList<String>();
-                for(String rId : resourceIds) {
-                    if(rId.endsWith("/")) {
-                        wildcardResourceIds.add(rId + "%");
+                if(userIds != null && !userIds.isEmpty()) {
+                    if(userIds.size() <= 1000) {
+                        q.setParameterList("users", userIds);
                     }else{
-                        simpleResourceIds.add(rId);
+                        int nUsers = userIds.size();
+                        int blockId = 0, startIndex = 0;
+                        int blocks = (int) (nUsers / 1000);
+                        blocks = (blocks*1000 == nUsers) ? blocks : blocks+1;
+                        for(int i=0; i<blocks-1; i++) {
+                            q.setParameterList("users"+blockId, userIds.subList(startIndex, startIndex+1000));
+                            blockId++;
+                            startIndex += 1000;
+                        }
+                        q.setParameterList("users"+blockId, userIds.subList(startIndex, nUsers));
                     }
                 }
-                if(simpleResourceIds.size() > 0) {
-                    q.setParameterList("resources", resourceIds);
-                }
-                for(int i=0; i<wildcardResourceIds.size(); i++) {
-                    q.setParameter("resource"+i, wildcardResourceIds.get(i));
+                if(resourceAction != null)
+                    q.setParameter("action", resourceAction);
+                if(resourceIds != null && !resourceIds.isEmpty()) {
+                    List<String> simpleResourceIds = new ArrayList<String>();
+                    List<String> wildcardResourceIds = new ArrayList<String>();
+                    for(String rId : resourceIds) {
+                        if(rId.endsWith("/")) {
+                            wildcardResourceIds.add(rId + "%");
+                        }else{
+                            simpleResourceIds.add(rId);
+                        }
+                    }
+                    if(simpleResourceIds.size() > 0) {
+                        q.setParameterList("resources", resourceIds);
+                    }
+                    for(int i=0; i<wildcardResourceIds.size(); i++) {
+                        q.setParameter("resource"+i, wildcardResourceIds.get(i));
+                    }
                 }
-            }
-            if(iDate != null)
-                q.setParameter("idate", iDate, DateType.INSTANCE);
-            if(fDate != null){
-                // adjust final date
-                Calendar c = Calendar.getInstance();
-                c.setTime(fDate);
-                c.add(Calendar.DAY_OF_YEAR, 1);
-                Date fDate2 = c.getTime();
-                q.setParameter("fdate", fDate2, DateType.INSTANCE);
-            }
-            if(page != null){
-                q.setFirstResult(page.getFirst() - 1);
-                q.setMaxResults(page.getLast() - page.getFirst() + 1);
-            }
-            if(maxResults > 0) {
-                q.setMaxResults(maxResults);
-            }
-            log.debug("getResourceStats(): " + q.getQueryString());
-            List<Object[]> records = q.list();
+            }, "getResourceStats()");
             List<Stat> results = new ArrayList<>();
             Set<String> siteUserIds = null;
             if(inverseUserSelection){
@@ -2312,6 +2264,201 @@ if (log.isDebugEnabled()) {
 	}
 	
 	
+	// ################################################################
+	//  Rollup query planning
+	// ################################################################
+	/**
+	 * Lists the rows of an event, resource or presence query. When weekly and monthly rollups are available the date
+	 * range is split by {@link StatsRollups#plan}, so whole weeks and months are read from the rollups and only the
+	 * days around them from the daily stats, and the rows read for each part are added up, sorted and paged here.
+	 * Each part is sorted by the db and only read as far as the page needs, see {@link #listSegments}.
+	 * @param hql the query on the daily stats
+	 * @param parameters binds the query parameters other than the dates
+	 */
+	private List<Object[]> listStats(Session session, StatsSqlBuilder sqlBuilder, String hql,
+			Date iDate, Date fDate, PagingPosition page, int maxResults, Consumer<Query> parameters, String caller) {
+		List<StatsRollups.Segment> plan = null;
+		if(sqlBuilder.isRollupEligible()) {
+			StatRollupStateImpl state = session.get(StatRollupStateImpl.class, StatsRollups.STATE_ID);
+			if(state != null) {
+				plan = StatsRollups.plan(StatsRollups.toLocalDate(iDate), StatsRollups.toLocalDate(fDate).plusDays(1),
+						StatsRollups.toLocalDate(state.getRolledUpTo()));
+			}
+		}
+		if(plan == null || (plan.size() == 1 && plan.get(0).period == StatsRollups.Period.DAY)) {
+			Query q = session.createQuery(hql);
+			parameters.accept(q);
+			if(iDate != null)
+				q.setParameter("idate", iDate, DateType.INSTANCE);
+			if(fDate != null){
+				// adjust final date
+				Calendar c = Calendar.getInstance();
+				c.setTime(fDate);
+				c.add(Calendar.DAY_OF_YEAR, 1);
+				Date fDate2 = c.getTime();
+				q.setParameter("fdate", fDate2, DateType.INSTANCE);
+			}
+			if(page != null){
+				q.setFirstResult(page.getFirst() - 1);
+				q.setMaxResults(page.getLast() - page.getFirst() + 1);
+			}
+			if(maxResults > 0) {
+				q.setMaxResults(maxResults);
+			}
+			log.debug("{}: {}", caller, q.getQueryString());
+			return q.list();
+		}
+
+		// a single week or month range is sorted and paged by the db, as a daily one
+		if(plan.size() == 1) {
+			StatsRollups.Segment segment = plan.get(0);
+			Query q = session.createQuery(sqlBuilder.getHQL(segment.period, true));
+			parameters.accept(q);
+			q.setParameter("idate", StatsRollups.toDate(segment.from), DateType.INSTANCE);
+			q.setParameter("fdate", StatsRollups.toDate(segment.to), DateType.INSTANCE);
+			if(page != null){
+				q.setFirstResult(page.getFirst() - 1);
+				q.setMaxResults(page.getLast() - page.getFirst() + 1);
+			}
+			if(maxResults > 0) {
+				q.setMaxResults(maxResults);
+			}
+			log.debug("{}: {}", caller, q.getQueryString());
+			return q.list();
+		}
+
+		int first = page != null ? Math.max(0, page.getFirst() - 1) : 0;
+		int max = maxResults > 0 ? maxResults : page != null ? page.getLast() - page.getFirst() + 1 : 0;
+		List<Object[]> records = listSegments(session, sqlBuilder, plan, max > 0 ? first + max : 0, parameters, caller);
+		if(first >= records.size()) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(records.subList(first, max > 0 ? Math.min(records.size(), first + max) : records.size()));
+	}
+
+	/**
+	 * Reads the parts of a rollup plan and adds up the rows of the same group. Each part is sorted by the db as
+	 * {@link StatsSqlBuilder#getRowComparator()} sorts the added up rows, and read only as far as needed:
+	 * <ul>
+	 * <li>sorted by the grouped columns, a group among the first rows is also among the first rows of every part
+	 * it is in, so each part is cut to that many rows</li>
+	 * <li>sorted by a total, largest first, the parts are read further until the first rows are known: a group
+	 * not read from a part can add at most the smallest total read from it, so the rows are settled once those
+	 * bounds can't move another group ahead of them</li>
+	 * <li>sorted by a total smallest first, where a group missing from a part adds nothing, or when anonymous
+	 * events fold several users into one row, every row is read</li>
+	 * </ul>
+	 * @param wanted the number of first rows needed, 0 for all of them
+	 * @return at least the first <code>wanted</code> rows, sorted
+	 */
+	private List<Object[]> listSegments(Session session, StatsSqlBuilder sqlBuilder, List<StatsRollups.Segment> plan,
+			int wanted, Consumer<Query> parameters, String caller) {
+		Map<Integer,Integer> columnMap = sqlBuilder.getHQLColumnMap();
+		List<Integer> totals = new ArrayList<>();
+		if(columnMap.containsKey(StatsSqlBuilder.C_TOTAL)) totals.add(columnMap.get(StatsSqlBuilder.C_TOTAL));
+		if(columnMap.containsKey(StatsSqlBuilder.C_DURATION)) totals.add(columnMap.get(StatsSqlBuilder.C_DURATION));
+		int totalIx = sqlBuilder.isSortedByTotal() ? columnMap.get(sqlBuilder.getSortColumn()) : -1;
+		if(totalIx >= 0 && sqlBuilder.isSortAscending() || !sqlBuilder.isSegmentPageable()) {
+			wanted = 0;
+		}
+		int limit = wanted;
+		while(true) {
+			Map<List<Object>, Object[]> rows = new LinkedHashMap<>();
+			Map<List<Object>, boolean[]> readFrom = new HashMap<>();
+			// the most a group not read from a part may still have in it, 0 if the part was read to the end
+			long[] bounds = new long[plan.size()];
+			for(int s = 0; s < plan.size(); s++) {
+				StatsRollups.Segment segment = plan.get(s);
+				Query q = session.createQuery(sqlBuilder.getSegmentHQL(segment.period));
+				parameters.accept(q);
+				q.setParameter("idate", StatsRollups.toDate(segment.from), DateType.INSTANCE);
+				q.setParameter("fdate", StatsRollups.toDate(segment.to), DateType.INSTANCE);
+				if(limit > 0) {
+					q.setMaxResults(limit);
+				}
+				log.debug("{}: {}", caller, q.getQueryString());
+				List<Object[]> records = q.list();
+				if(totalIx >= 0 && limit > 0 && records.size() == limit) {
+					bounds[s] = toLong(records.get(records.size() - 1)[totalIx]);
+				}
+				for(Object[] record : records) {
+					List<Object> key = new ArrayList<>(record.length);
+					for(int i=0; i<record.length; i++) {
+						key.add(totals.contains(i) ? null : record[i]);
+					}
+					Object[] row = rows.putIfAbsent(key, record);
+					if(row != null) {
+						for(int ix : totals) {
+							row[ix] = addTotals(row[ix], record[ix]);
+						}
+					}
+					readFrom.computeIfAbsent(key, k -> new boolean[plan.size()])[s] = true;
+				}
+			}
+
+			List<Object[]> records = new ArrayList<>(rows.values());
+			records.sort(sqlBuilder.getRowComparator());
+			if(totalIx < 0 || isSettled(records, rows, readFrom, bounds, wanted, totalIx)) {
+				return records;
+			}
+			limit *= 4;
+		}
+	}
+
+	/**
+	 * @param bounds the most a group may have in each part where it was not read
+	 * @return true if the first <code>wanted</code> rows, sorted by their total largest first, were read from every
+	 * part that may hold more of them, and no other group, read or not, can reach their smallest total
+	 */
+	private static boolean isSettled(List<Object[]> records, Map<List<Object>, Object[]> rows, Map<List<Object>, boolean[]> readFrom,
+			long[] bounds, int wanted, int totalIx) {
+		long unread = 0;
+		for(long bound : bounds) {
+			unread += bound;
+		}
+		if(unread == 0) {
+			return true;
+		}
+		if(records.size() < wanted) {
+			return false;
+		}
+		Map<Object[], Long> missing = new IdentityHashMap<>();
+		for(Map.Entry<List<Object>, Object[]> row : rows.entrySet()) {
+			boolean[] read = readFrom.get(row.getKey());
+			long bound = 0;
+			for(int s = 0; s < bounds.length; s++) {
+				if(!read[s]) bound += bounds[s];
+			}
+			missing.put(row.getValue(), bound);
+		}
+		for(int i = 0; i < wanted; i++) {
+			if(missing.get(records.get(i)) > 0) {
+				return false;
+			}
+		}
+		long last = toLong(records.get(wanted - 1)[totalIx]);
+		if(unread >= last) {
+			return false;
+		}
+		for(int i = wanted; i < records.size(); i++) {
+			if(toLong(records.get(i)[totalIx]) + missing.get(records.get(i)) >= last) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long toLong(Object total) {
+		return total != null ? ((Number) total).longValue() : 0;
+	}
+
+	private static Object addTotals(Object a, Object b) {
+		if(a == null) return b;
+		if(b == null) return a;
+		return ((Number) a).longValue() + ((Number) b).longValue();
+	}
+	
+	
 	// ################################################################
 	//  Statistics SQL builder class
 	// ################################################################
@@ -2333,7 +2480,15 @@ if (log.isDebugEnabled()) {
 		public static final Integer		C_PAGE_ACTION	    = 14;
 		public static final Integer		C_PAGE_ID	    	= 15;
 
+		/** How a query is sorted: not at all, by the sort field, or as the parts of a rollup plan are */
+		private static final int		NOT_SORTED			= 0;
+		private static final int		SORT_BY				= 1;
+		private static final int		SEGMENT_SORT_BY		= 2;
+
 		private Map<Integer, Integer>	columnMap;
+
+		/** The select expression of each column, so rows can be ordered by any of them */
+		private Map<Integer, String>	columnExpressions;
 		
 		private String					dbVendor;
 
@@ -2367,6 +2522,7 @@ if (log.isDebugEnabled()) {
 				final boolean inverseUserSelection,
 				final String sortBy, final boolean sortAscending) {
 			this.columnMap = new HashMap<Integer, Integer>();
+			this.columnExpressions = new HashMap<Integer, String>();
 			this.dbVendor = dbVendor;
 			this.queryType = queryType;
 			if(totalsBy == null) {
@@ -2426,15 +2582,157 @@ if (log.isDebugEnabled()) {
 		}
 		
 		public String getHQL() {
+			return getHQL(StatsRollups.Period.DAY, true);
+		}
+		
+		/**
+		 * @param period the stats to read, daily or rolled up by week or month
+		 * @param sorted false to leave the 'order by' clause out
+		 */
+		public String getHQL(StatsRollups.Period period, boolean sorted) {
+			return getHQL(period, sorted ? SORT_BY : NOT_SORTED);
+		}
+
+		/**
+		 * @param period the stats to read, daily or rolled up by week or month
+		 * @return the query for one part of a rollup plan, sorted as {@link #getRowComparator()} sorts the rows
+		 */
+		public String getSegmentHQL(StatsRollups.Period period) {
+			return getHQL(period, SEGMENT_SORT_BY);
+		}
+
+		private String getHQL(StatsRollups.Period period, int sort) {
 			StringBuilder hql = new StringBuilder();
 			hql.append(getSelectClause());
-			hql.append(getFromClause());
+			if(period == StatsRollups.Period.DAY) {
+				hql.append(getFromClause());
+			}else{
+				hql.append("from ").append(StatsRollups.Rollup.of(queryType).getEntity(period)).append(" as s ");
+			}
 			hql.append(getWhereClause());
 			hql.append(getGroupByClause());
-			hql.append(getSortByClause());
+			if(sort == SORT_BY) {
+				hql.append(getSortByClause());
+			}else if(sort == SEGMENT_SORT_BY) {
+				hql.append(getSegmentSortByClause());
+			}
 			return hql.toString();
 		}
 		
+		/**
+		 * @return true if the query can read weekly and monthly rollups: it has both dates, and reads totals
+		 * that add up across days
+		 */
+		public boolean isRollupEligible() {
+			return StatsRollups.Rollup.of(queryType) != null
+					&& iDate != null && fDate != null
+					&& !inverseUserSelection
+					&& !totalsBy.contains(T_DATE) && !totalsBy.contains(T_LASTDATE)
+					&& !totalsBy.contains(T_VISITS) && !totalsBy.contains(T_UNIQUEVISITS);
+		}
+		
+		/**
+		 * @return the order of the rows of a rollup eligible query: by the sort column, then by the columns the rows are
+		 * grouped by, so rows that tie on the sort column keep the same order on every page
+		 */
+		public Comparator<Object[]> getRowComparator() {
+			Comparator<Object[]> comparator = (a, b) -> 0;
+			Integer sortColumn = getSortColumn();
+			if(sortColumn != null) {
+				final int ix = columnMap.get(sortColumn);
+				Comparator<Object[]> bySortColumn = (a, b) -> compare(a[ix], b[ix]);
+				comparator = sortAscending ? bySortColumn : bySortColumn.reversed();
+			}
+			for(Integer column : getKeyColumns()) {
+				final int ix = columnMap.get(column);
+				comparator = comparator.thenComparing((a, b) -> compare(a[ix], b[ix]));
+			}
+			return comparator;
+		}
+
+		/**
+		 * @return true if the parts of a rollup plan can be sorted and cut to a page by the db: every row is one
+		 * group of each part, which is not so when anonymous events put the users of several groups under '-'
+		 */
+		public boolean isSegmentPageable() {
+			return !(queryType == Q_TYPE_EVENT && totalsBy.contains(T_USER) && anonymousEvents != null && anonymousEvents.size() > 0);
+		}
+
+		/**
+		 * @return true if the rows are sorted by an added up column, so where a row goes depends on every part of a
+		 * rollup plan
+		 */
+		public boolean isSortedByTotal() {
+			Integer sortColumn = getSortColumn();
+			return C_TOTAL.equals(sortColumn) || C_DURATION.equals(sortColumn);
+		}
+
+		public boolean isSortAscending() {
+			return sortAscending;
+		}
+
+		/** @return the column of the sort field, or null if unsorted or the column is not read */
+		private Integer getSortColumn() {
+			if(sortBy == null) {
+				return null;
+			}
+			Integer column = null;
+			if(sortBy.equals(T_SITE)) {
+				column = C_SITE;
+			}else if(sortBy.equals(T_USER)) {
+				column = C_USER;
+			}else if(sortBy.equals(T_EVENT) || sortBy.equals(T_TOOL)) {
+				column = columnMap.containsKey(C_EVENT) ? C_EVENT : C_TOOL;
+			}else if(sortBy.equals(T_RESOURCE)) {
+				column = C_RESOURCE;
+			}else if(sortBy.equals(T_RESOURCE_ACTION)) {
+				column = C_RESOURCE_ACTION;
+			}else if(sortBy.equals(T_PAGE)) {
+				column = C_PAGE;
+			}else if(sortBy.equals(T_PAGE_ACTION)) {
+				column = C_PAGE_ACTION;
+			}else if(sortBy.equals(T_DATE) || sortBy.equals(T_LASTDATE)) {
+				column = C_DATE;
+			}else if(sortBy.equals(T_TOTAL)) {
+				column = C_TOTAL;
+			}else if(sortBy.equals(T_DURATION)) {
+				column = C_DURATION;
+			}else if(sortBy.equals(T_VISITS)) {
+				column = C_VISITS;
+			}else if(sortBy.equals(T_UNIQUEVISITS)) {
+				column = C_UNIQUEVISITS;
+			}
+			return column != null && columnMap.containsKey(column) ? column : null;
+		}
+
+		/** @return the columns the rows are grouped by, in select order */
+		private List<Integer> getKeyColumns() {
+			List<Integer> columns = new ArrayList<Integer>(columnMap.keySet());
+			columns.removeAll(Arrays.asList(C_TOTAL, C_DURATION, C_VISITS, C_UNIQUEVISITS));
+			columns.sort(Comparator.comparing(columnMap::get));
+			return columns;
+		}
+
+		private String getSegmentSortByClause() {
+			List<String> sortFields = new ArrayList<String>();
+			Integer sortColumn = getSortColumn();
+			if(sortColumn != null) {
+				sortFields.add(columnExpressions.get(sortColumn) + (sortAscending ? " ASC" : " DESC"));
+			}
+			for(Integer column : getKeyColumns()) {
+				sortFields.add(columnExpressions.get(column) + " ASC");
+			}
+			return sortFields.isEmpty() ? "" : "order by " + String.join(", ", sortFields) + " ";
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static int compare(Object a, Object b) {
+			if(a == b) return 0;
+			if(a == null) return -1;
+			if(b == null) return 1;
+			return ((Comparable<Object>) a).compareTo(b);
+		}
+		
 		public Map<Integer, Integer> getHQLColumnMap() {
 			return columnMap;
 		}
@@ -2557,6 +2855,11 @@ if (log.isDebugEnabled()) {
 				columnMap.put(C_USER, columnIndex++);
 			}
 			
+			for(Map.Entry<Integer, Integer> column : columnMap.entrySet()) {
+				String field = selectFields.get(column.getValue());
+				columnExpressions.put(column.getKey(), field.substring(0, field.lastIndexOf(" as ")));
+			}
+
 			// build 'select' clause
 			_hql.append("select ");
 			for(int i=0; i<selectFields.size() - 1; i++) {
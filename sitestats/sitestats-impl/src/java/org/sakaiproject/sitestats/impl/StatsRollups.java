@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.sakaiproject.sitestats.api.StatsManager;
+
+/**
+ * The weekly and monthly rollups of the daily event, resource and presence stats, and the plans that answer a date
+ * range from them.
+ * <p>
+ * Weeks start on Monday but are cut at month boundaries, so every week lies in one month and a month adds up its
+ * weeks. A rollup row keeps the date of the earliest daily row it adds up, which lies inside its week or month, so
+ * rollups are selected with the same date conditions as the daily rows and can still be grouped by month and year.
+ * </p>
+ */
+class StatsRollups {
+
+	/** Id of the SST_ROLLUP_STATE row */
+	static final String STATE_ID = "sitestats";
+
+	enum Period { DAY, WEEK, MONTH }
+
+	/** The daily stats that are rolled up, with the columns each rollup groups by and the column it adds up */
+	enum Rollup {
+		EVENTS("EventStatImpl", "EventStat", "s.siteId, s.userId, s.eventId", "count"),
+		RESOURCES("ResourceStatImpl", "ResourceStat", "s.siteId, s.userId, s.resourceRef, s.resourceAction", "count"),
+		PRESENCES("SitePresenceImpl", "SitePresence", "s.siteId, s.userId", "duration");
+
+		private final String daily;
+		private final String prefix;
+		private final String columns;
+		private final String total;
+
+		Rollup(String daily, String prefix, String columns, String total) {
+			this.daily = daily;
+			this.prefix = prefix;
+			this.columns = columns;
+			this.total = total;
+		}
+
+		/** @return the rollup of a {@link StatsManager} query type, or null if it has none */
+		static Rollup of(int queryType) {
+			switch(queryType) {
+				case StatsManager.Q_TYPE_EVENT:		return EVENTS;
+				case StatsManager.Q_TYPE_RESOURCE:	return RESOURCES;
+				case StatsManager.Q_TYPE_PRESENCE:	return PRESENCES;
+				default:							return null;
+			}
+		}
+
+		/** @return the entity holding the stats of a period */
+		String getEntity(Period period) {
+			switch(period) {
+				case WEEK:	return prefix + "Week";
+				case MONTH:	return prefix + "Month";
+				default:	return daily;
+			}
+		}
+
+		String getDeleteHQL(Period period) {
+			return "delete from " + getEntity(period) + " s where s.date >= :from and s.date < :to";
+		}
+
+		/** Weeks add up days, months add up weeks. */
+		String getInsertHQL(Period period) {
+			return "insert into " + getEntity(period) + " (" + columns.replace("s.", "") + ", date, " + total + ") "
+					+ "select " + columns + ", min(s.date), sum(s." + total + ") "
+					+ "from " + getEntity(period == Period.MONTH ? Period.WEEK : Period.DAY) + " as s "
+					+ "where s.date >= :from and s.date < :to "
+					+ "group by " + columns;
+		}
+
+		String getMinDateHQL() {
+			return "select min(s.date) from " + daily + " as s";
+		}
+	}
+
+	/** The days from {@link #from} up to, but not including, {@link #to}, all read from the stats of one period */
+	static final class Segment {
+		final Period	period;
+		final LocalDate	from;
+		LocalDate		to;
+
+		Segment(Period period, LocalDate from, LocalDate to) {
+			this.period = period;
+			this.from = from;
+			this.to = to;
+		}
+	}
+
+	private StatsRollups() {
+	}
+
+	/** @return the first day of the week or month of a day */
+	static LocalDate start(Period period, LocalDate day) {
+		switch(period) {
+			case MONTH:
+				return day.withDayOfMonth(1);
+			case WEEK:
+				LocalDate monday = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+				LocalDate first = day.withDayOfMonth(1);
+				return monday.isBefore(first) ? first : monday;
+			default:
+				return day;
+		}
+	}
+
+	/** @return the day after the week or month starting on a day */
+	static LocalDate end(Period period, LocalDate start) {
+		switch(period) {
+			case MONTH:
+				return start.plusMonths(1);
+			case WEEK:
+				LocalDate monday = start.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+				LocalDate first = start.withDayOfMonth(1).plusMonths(1);
+				return monday.isAfter(first) ? first : monday;
+			default:
+				return start.plusDays(1);
+		}
+	}
+
+	/**
+	 * @return the first days of the weeks or months that have days from <code>from</code> on and end on or before
+	 *         <code>to</code>
+	 */
+	static List<LocalDate> buckets(Period period, LocalDate from, LocalDate to) {
+		List<LocalDate> buckets = new ArrayList<>();
+		for(LocalDate start = start(period, from); !end(period, start).isAfter(to); start = end(period, start)) {
+			buckets.add(start);
+		}
+		return buckets;
+	}
+
+	/**
+	 * Splits a date range into the segments to read from each period: whole months and weeks rolled up before
+	 * <code>rolledUpTo</code> come from the rollups, the days around them from the daily stats. Neighbouring buckets
+	 * of the same period are read together, so a range needs at most five queries.
+	 * @param from the first day of the range
+	 * @param to the day after the range
+	 * @param rolledUpTo the day the rollups end at, or null if there are none
+	 */
+	static List<Segment> plan(LocalDate from, LocalDate to, LocalDate rolledUpTo) {
+		LocalDate limit = rolledUpTo == null || rolledUpTo.isAfter(to) ? to : rolledUpTo;
+		List<Segment> plan = new ArrayList<>();
+		LocalDate day = from;
+		while(day.isBefore(to)) {
+			Period period = Period.DAY;
+			for(Period coarse : new Period[] {Period.MONTH, Period.WEEK}) {
+				if(start(coarse, day).equals(day) && !end(coarse, day).isAfter(limit)) {
+					period = coarse;
+					break;
+				}
+			}
+			LocalDate end = end(period, day);
+			Segment last = plan.isEmpty() ? null : plan.get(plan.size() - 1);
+			if(last != null && last.period == period) {
+				last.to = end;
+			}else{
+				plan.add(new Segment(period, day, end));
+			}
+			day = end;
+		}
+		return plan;
+	}
+
+	static LocalDate toLocalDate(Date date) {
+		return Instant.ofEpochMilli(date.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+
+	static Date toDate(LocalDate day) {
+		return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
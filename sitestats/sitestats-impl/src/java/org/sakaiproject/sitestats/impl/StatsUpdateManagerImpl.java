@@ -16,6 +16,7 @@
 package org.sakaiproject.sitestats.impl;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -30,7 +31,10 @@ import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Optional;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -43,10 +47,13 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
+import org.hibernate.LockOptions;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.query.Query;
+import org.hibernate.type.DateType;
 import org.hibernate.type.StringType;
 import org.sakaiproject.alias.api.AliasService;
 import org.sakaiproject.component.cover.ComponentManager;
@@ -100,6 +107,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Getter @Setter private boolean		collectAdminEvents					= false;
 	@Getter @Setter private boolean		collectEventsForSiteWithToolOnly	= false;
 	@Getter @Setter private boolean		collectDetailedEvents				= false;
+	@Getter @Setter private boolean		bulkUpsertEnabled					= true;
+	@Getter @Setter private boolean		rollupsEnabled						= true;
 	@Setter private TransactionTemplate	transactionTemplate;
 
 	/** Sakai services */
@@ -112,32 +121,34 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	@Setter private EventTrackingService	eventTrackingService;
 
 	/** Collect Thread and Semaphore */
-	private List<Event>	collectThreadQueue		= new ArrayList<>();
-	private Object		collectThreadSemaphore	= new Object();
-	private boolean		collectThreadRunning	= false;
-
-	/** Collect thread queue maps */
-	private Map<String, EventStat>					eventStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ResourceStat>				resourceStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteActivity>				activityMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, SiteVisits>					visitsMap				= Collections.synchronizedMap(new HashMap<>());
-	private Map<SitePresenceKey, SitePresenceRecord>presencesMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, ServerStat>					serverStatMap			= Collections.synchronizedMap(new HashMap<>());
-	private Map<String, UserStat>					userStatMap				= Collections.synchronizedMap(new HashMap<>());
-
-	private Map<String, String>	lessonPageCreateEventMap	= new HashMap<>();
-	private List<DetailedEvent>	detailedEvents				= Collections.synchronizedList(new ArrayList<>());
+	private final Queue<Event>	collectThreadQueue		= new ConcurrentLinkedQueue<>();
+	private final LongAdder		collectThreadQueueSize	= new LongAdder();
+	private Object				collectThreadSemaphore	= new Object();
+	private boolean				collectThreadRunning	= false;
+
+	/** Events consolidated since the last db update, swapped for a new generation by each update */
+	private volatile ConsolidatedEvents	consolidatedEvents	= new ConsolidatedEvents();
+
+	private Map<String, String>	lessonPageCreateEventMap	= new ConcurrentHashMap<>();
+
+	/** The day of the last event consolidated, as its first and last millisecond */
+	private volatile long[]		lastDay		= { 1, 0 };
+
+	/** The day the collect thread last rolled the stats up, the aggregate job that would do it does not run alongside it */
+	private LocalDate			lastRollupDay;
 
 	private boolean				initialized	= false;
-	private final ReentrantLock	lock		= new ReentrantLock();
+
+	/** Database vendor the aggregates are upserted for, null to update them row by row */
+	private String				upsertVendor;
 
 	/** Metrics */
 	private boolean			isIdle						= true;
 	@Getter private long	totalEventsProcessed		= 0;
 	@Getter private long	totalTimeInEventProcessing	= 0;
 	@Getter private long	resetTime					= System.currentTimeMillis();
+	@Getter private long	totalRowsFlushed			= 0;
+	@Getter private long	totalTimeInFlush			= 0;
 
 	// ################################################################
 	// Spring related methods
@@ -173,6 +184,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		buff.append(", collect administrator events: ").append(collectAdminEvents);
 		buff.append(", collect events only for sites with SiteStats: ").append(collectEventsForSiteWithToolOnly);
 		buff.append(", collect detailed events: ").append(collectDetailedEvents);
+		if(bulkUpsertEnabled) {
+			try{
+				upsertVendor = AggregateUpsert.vendorOf(getSessionFactory().unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect());
+			}catch(Exception e){
+				log.warn("Unable to determine the database dialect, aggregates will be updated row by row", e);
+			}
+		}
+		buff.append(", aggregate flush: ").append(getAggregateFlushMode());
+		buff.append(", weekly and monthly rollups: ").append(rollupsEnabled);
 		logger.info(buff.toString());
 		
 		initialized = true;
@@ -322,12 +342,104 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		return r;
 	}
 	
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.StatsUpdateManager#updateRollups(java.util.Date)
+	 */
+	public boolean updateRollups(final Date from) {
+		LocalDate end = LocalDate.now();
+		if(!collectThreadEnabled) {
+			// the job may not have collected all the events of the days after its last one
+			try{
+				Date lastEventDate = getEventDateFromLatestJobRun();
+				if(lastEventDate != null && StatsRollups.toLocalDate(lastEventDate).isBefore(end)) {
+					end = StatsRollups.toLocalDate(lastEventDate);
+				}
+			}catch(Exception e){
+				log.warn("Unable to read the last job run, rolling stats up to today: {}", e.getMessage());
+			}
+		}
+		final LocalDate to = end;
+
+		long startTime = System.currentTimeMillis();
+		try{
+			Integer buckets = getHibernateTemplate().execute(session -> {
+				// the collect thread of every node and the job may all roll up, the first one does it and the rest find it done
+				StatRollupStateImpl state = session.get(StatRollupStateImpl.class, StatsRollups.STATE_ID, LockOptions.UPGRADE);
+				if(!rollupsEnabled) {
+					// rollups that are no longer updated must not be read
+					if(state != null) {
+						session.delete(state);
+					}
+					return 0;
+				}
+				LocalDate start;
+				if(state != null) {
+					LocalDate rolledUpTo = StatsRollups.toLocalDate(state.getRolledUpTo());
+					if(from == null && !to.isAfter(rolledUpTo)) {
+						return 0;
+					}
+					// events collected late may still have been added to the last day rolled up
+					start = rolledUpTo.minusDays(1);
+				}else{
+					state = new StatRollupStateImpl();
+					state.setId(StatsRollups.STATE_ID);
+					start = getFirstStatsDay(session, to);
+				}
+				if(from != null && StatsRollups.toLocalDate(from).isBefore(start)) {
+					start = StatsRollups.toLocalDate(from);
+				}
+
+				int count = 0;
+				for(StatsRollups.Rollup rollup : StatsRollups.Rollup.values()) {
+					// weeks first, months add them up
+					for(StatsRollups.Period period : new StatsRollups.Period[] {StatsRollups.Period.WEEK, StatsRollups.Period.MONTH}) {
+						for(LocalDate bucket : StatsRollups.buckets(period, start, to)) {
+							Date bucketFrom = StatsRollups.toDate(bucket);
+							Date bucketTo = StatsRollups.toDate(StatsRollups.end(period, bucket));
+							session.createQuery(rollup.getDeleteHQL(period))
+									.setParameter("from", bucketFrom, DateType.INSTANCE)
+									.setParameter("to", bucketTo, DateType.INSTANCE)
+									.executeUpdate();
+							session.createQuery(rollup.getInsertHQL(period))
+									.setParameter("from", bucketFrom, DateType.INSTANCE)
+									.setParameter("to", bucketTo, DateType.INSTANCE)
+									.executeUpdate();
+							count++;
+						}
+					}
+				}
+				state.setRolledUpTo(StatsRollups.toDate(to));
+				session.saveOrUpdate(state);
+				return count;
+			});
+			if(buckets > 0) {
+				log.info("Rolled up {} weeks and months of stats up to {} in {} ms", buckets, to, System.currentTimeMillis() - startTime);
+			}
+			return true;
+		}catch(DataAccessException dae){
+			log.error("Unable to roll up stats: {}", dae.getMessage(), dae);
+		}
+		return false;
+	}
+
+	/** @return the day of the oldest daily stats rolled up, or <code>to</code> if there are none before it */
+	private LocalDate getFirstStatsDay(Session session, LocalDate to) {
+		LocalDate first = to;
+		for(StatsRollups.Rollup rollup : StatsRollups.Rollup.values()) {
+			Date date = (Date) session.createQuery(rollup.getMinDateHQL()).uniqueResult();
+			if(date != null && StatsRollups.toLocalDate(date).isBefore(first)) {
+				first = StatsRollups.toLocalDate(date);
+			}
+		}
+		return first;
+	}
+	
 	
 	// ################################################################
 	// Metrics related methods
 	// ################################################################	
 	public int getQueueSize() {
-		return collectThreadQueue.size();
+		return (int) collectThreadQueueSize.sum();
 	}
 	
 	public boolean isIdle() {
@@ -337,6 +449,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	public void resetMetrics() {
 		totalEventsProcessed = 0;
 		totalTimeInEventProcessing = 0;
+		totalRowsFlushed = 0;
+		totalTimeInFlush = 0;
 		resetTime = System.currentTimeMillis();
 	}
 
@@ -373,6 +487,20 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		}
 	}
 	
+	@Override
+	public String getAggregateFlushMode() {
+		return upsertVendor != null ? "bulk upsert (" + upsertVendor + ")" : "row by row";
+	}
+
+	@Override
+	public double getNumberOfRowsFlushedPerSec() {
+		if(totalTimeInFlush > 0) {
+			return Util.round((double)totalRowsFlushed / ((double)totalTimeInFlush/1000), 3);
+		}else{
+			return Util.round((double)totalRowsFlushed / 0.001, 3); // => will assume 1ms instead of 0ms
+		}
+	}
+
 	public String getMetricsSummary(boolean compact) {
 		StringBuilder sb = new StringBuilder();
 		if(!compact) {
@@ -384,6 +512,10 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("\t\tNumber of events processed per sec: ").append(getNumberOfEventsProcessedPerSec()).append("\n");
 			sb.append("\t\tNumber of events genereated in Sakai per sec: ").append(getNumberOfEventsGeneratedPerSec()).append("\n");
 			sb.append("\t\tAverage time spent in event processing per event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms\n");
+			sb.append("\t\tAggregate flush mode: ").append(getAggregateFlushMode()).append("\n");
+			sb.append("\t\tNumber of aggregate rows flushed: ").append(getTotalRowsFlushed()).append("\n");
+			sb.append("\t\tTotal time spent flushing aggregates: ").append(getTotalTimeInFlush()).append(" ms\n");
+			sb.append("\t\tNumber of aggregate rows flushed per sec: ").append(getNumberOfRowsFlushedPerSec()).append("\n");
 			sb.append("\t\tEvent queue size: ").append(getQueueSize()).append("\n");
 			sb.append("\t\tIdle: ").append(isIdle());
 		}else{
@@ -392,6 +524,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			sb.append("Time spent processing events: ").append(getTotalTimeInEventProcessing()).append(" ms, ");
 			sb.append("#Events processed/sec: ").append(getNumberOfEventsProcessedPerSec()).append(", ");
 			sb.append("Avg. Time/event: ").append(getAverageTimeInEventProcessingPerEvent()).append(" ms, ");
+			sb.append("Flush: ").append(getAggregateFlushMode()).append(", ");
+			sb.append("#Rows flushed/sec: ").append(getNumberOfRowsFlushedPerSec()).append(", ");
 			sb.append("Event queue size: ").append(getQueueSize()).append(", ");
 			sb.append("Idle: ").append(isIdle());
 		}
@@ -410,6 +544,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			Event e = (Event) o;
 			Event eventWithPreciseDate = buildEvent(getToday(), e.getEvent(), e.getResource(), e.getContext(), e.getUserId(), e.getSessionId());
 			collectThreadQueue.add(eventWithPreciseDate);
+			collectThreadQueueSize.increment();
 		}
 	}
 	
@@ -421,16 +556,16 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				// do update job
 				isIdle = false;
 				long startTime = System.currentTimeMillis();
-				int eventCount = collectThreadQueue.size();
-				if(eventCount > 0) {
-					//long startTime2 = System.currentTimeMillis();
-					while(collectThreadQueue.size() > 0){
-						preProcessEvent(collectThreadQueue.remove(0));
-					}
-					//long endTime2 = System.currentTimeMillis();
-					//log.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime2-startTime2) + " ms");
+				Event event;
+				while((event = collectThreadQueue.poll()) != null){
+					collectThreadQueueSize.decrement();
+					preProcessEvent(event);
 				}
 				transactionTemplate.execute(status -> doUpdateConsolidatedEvents());
+				LocalDate today = LocalDate.now();
+				if(!today.equals(lastRollupDay) && Boolean.TRUE.equals(transactionTemplate.execute(status -> updateRollups(null)))) {
+					lastRollupDay = today;
+				}
 				isIdle = true;
 				totalTimeInEventProcessing += (System.currentTimeMillis() - startTime);
 
@@ -585,210 +720,144 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(eventId == null)
 			return;
 
-		Date date = getTruncatedDate(dateTime);
-		// update		
-		if(isRegisteredEvent(eventId) && !StatsManager.SITEVISITEND_EVENTID.equals(eventId)){
-
-			// add to eventStatMap
-			String key = userId+siteId+eventId+date;
-			synchronized(eventStatMap){
-				EventStat e1 = eventStatMap.get(key);
-				if(e1 == null){
-					e1 = new EventStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setEventId(eventId);
-					e1.setDate(date);
-				}
-				e1.setCount(e1.getCount() + 1);
-				eventStatMap.put(key, e1);
-			}
+		long day = getDay(dateTime);
 
-			if (collectDetailedEvents) {
-				DetailedEvent de = new DetailedEventImpl();
-				de.setEventDate(dateTime);
-				de.setEventId(eventId);
-				de.setUserId(userId);
-				de.setSiteId(siteId);
-				de.setEventRef(resourceRef);
-				detailedEvents.add(de);
-			}
-
-			if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
-				// add to activityMap
-				String key2 = siteId+date+eventId;
-				synchronized(activityMap){
-					SiteActivity e2 = activityMap.get(key2);
-					if(e2 == null){
-						e2 = new SiteActivityImpl();
-						e2.setSiteId(siteId);
-						e2.setDate(date);
-						e2.setEventId(eventId);
-					}
-					e2.setCount(e2.getCount() + 1);
-					activityMap.put(key2, e2);
-				}
-			}
-		}	
-
-		if(eventId.startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
-			// add to resourceStatMap
-			String resourceAction = null;
-			try{
-				resourceAction = eventId.split("\\.")[1];
-			}catch(ArrayIndexOutOfBoundsException ex){
-				resourceAction = eventId;
-			}
-			String key = userId+siteId+resourceRef+resourceAction+date;
-			synchronized(resourceStatMap){
-				ResourceStat e1 = resourceStatMap.get(key);
-				if(e1 == null){
-					e1 = new ResourceStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setResourceRef(resourceRef);
-					e1.setResourceAction(resourceAction);
-					e1.setDate(date);
-				}
-				e1.setCount(e1.getCount() + 1);
-				resourceStatMap.put(key, e1);
-			}
-		} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
+		// lessons page reads may need the db to find the page creator, look them up before counting
+		long pageId = 0;
+		String lessonBuilderAction = null;
+		if(!eventId.startsWith(StatsManager.RESOURCE_EVENTID_PREFIX) && eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
 			String[] resourceParts = resourceRef.split("/");
 			if (resourceParts.length > 3) {
 				//The references are something like "/lessonbuilder/page/4" the id is in the fourth position
-				long pageId = Long.parseLong(resourceParts[3]);
-				String lessonBuilderAction = null;
-				try {
-					//The events are something like "lessonbuilder.page.create" the action is in the third position
-					lessonBuilderAction = eventId.split("\\.")[2];
-				} catch (ArrayIndexOutOfBoundsException ex){
-					lessonBuilderAction = eventId;
-				}
-
-				String key = userId + siteId + lessonBuilderAction + pageId + date;
+				pageId = Long.parseLong(resourceParts[3]);
+				lessonBuilderAction = getLessonBuilderAction(eventId, resourceRef, userId, siteId);
+			}
+		}
 
-				if ("create".equals(lessonBuilderAction)) {
-					// We cache create events so we can ignore read events from page creators
-					lessonPageCreateEventMap.put(resourceRef, userId);
+		ConsolidatedEvents events = enterConsolidation();
+		try{
+			// update
+			if(isRegisteredEvent(eventId) && !StatsManager.SITEVISITEND_EVENTID.equals(eventId)){
+				events.countEvent(siteId, userId, eventId, day);
+
+				if (collectDetailedEvents) {
+					DetailedEvent de = new DetailedEventImpl();
+					de.setEventDate(dateTime);
+					de.setEventId(eventId);
+					de.setUserId(userId);
+					de.setSiteId(siteId);
+					de.setEventRef(resourceRef);
+					events.addDetailedEvent(de);
 				}
 
-				if ("read".equals(lessonBuilderAction)) {
-					// The user reading this is the creator, don't stash the read
-					// event. If we did, every page would be read at creation time.
-
-					// See if the create event was cached for this page
-					String creatorUserId = lessonPageCreateEventMap.get(resourceRef);
-
-					if (creatorUserId == null) {
-						// It wasn't. Look it up in the db.
-						final String hql = "select s.userId "
-							+ "from LessonBuilderStatImpl as s "
-							+ "where s.siteId = :siteid "
-							+ "and s.pageAction = :pageAction "
-							+ "and s.pageRef = :pageRef ";
-
-						final String finalPageRef = resourceRef;
-
-						// New files
-						HibernateCallback<List<String>> hcb1 = session -> {
-                            Query q = session.createQuery(hql);
-                            q.setParameter("siteid", siteId, StringType.INSTANCE);
-                            q.setParameter("pageAction", "create", StringType.INSTANCE);
-                            q.setParameter("pageRef", finalPageRef, StringType.INSTANCE);
-                            return q.list();
-                        };
-
-						List<String> creatorUserIds = getHibernateTemplate().execute(hcb1);
-
-						if (creatorUserIds.size() > 0) {
-							creatorUserId = creatorUserIds.get(0);
-							lessonPageCreateEventMap.put(resourceRef, creatorUserId);
-							if (creatorUserIds.size() > 1) {
-								log.warn("Multiple create events for page reference: " + resourceRef);
-							}
-						}
-					}
-
-					if (creatorUserId == null || !creatorUserId.equals(userId)) {
-						addToLessonBuilderStatMap(key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
-					}
-				} else {
-					addToLessonBuilderStatMap(key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
+				if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
+					events.countActivity(siteId, eventId, day);
 				}
 			}
-		} else if(StatsManager.SITEVISIT_EVENTID.equals(eventId)){
-			String visitsKey = siteId + date;
-			SitePresenceKey sitePresenceKey = SitePresenceKey.builder().siteId(siteId).userId(userId).sessionId(sessionId).build();
-			lock.lock();
-			try{
-				// Populate visits map
-				SiteVisits e1 = visitsMap.get(visitsKey);
-				if(e1 == null){
-					e1 = new SiteVisitsImpl();
-					e1.setSiteId(siteId);
-					e1.setDate(date);
+
+			if(eventId.startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
+				String resourceAction = null;
+				try{
+					resourceAction = eventId.split("\\.")[1];
+				}catch(ArrayIndexOutOfBoundsException ex){
+					resourceAction = eventId;
+				}
+				events.countResource(siteId, userId, resourceRef, resourceAction, day);
+			} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
+				if (lessonBuilderAction != null) {
+					events.countLessonBuilder(siteId, userId, resourceRef, pageId, lessonBuilderAction, day);
 				}
-				e1.setTotalVisits(e1.getTotalVisits() + 1);
-				// unique visits are determined when updating to db:
-				//	 --> e1.setTotalUnique(totalUnique);
-				visitsMap.put(visitsKey, e1);
-				// place entry on map so we can update unique visits later
-				UniqueVisitsKey keyUniqueVisits = new UniqueVisitsKey(siteId, date);
-				uniqueVisitsMap.put(keyUniqueVisits, Integer.valueOf(1));
+			} else if(StatsManager.SITEVISIT_EVENTID.equals(eventId)){
+				// unique visits are determined when updating to db
+				events.countVisit(siteId, day);
 
 				// Populate presence map with begin events
 				if(statsManager.getEnableSitePresences()) {
+					SitePresenceKey sitePresenceKey = SitePresenceKey.builder().siteId(siteId).userId(userId).sessionId(sessionId).build();
 					SitePresenceRecord beginningPresence = SitePresenceRecord.builder()
 							.siteId(siteId)
 							.userId(userId)
 							.begin(dateTime.toInstant())
 							.build();
-					presencesMap.put(sitePresenceKey, beginningPresence);
+					events.getPresences().put(sitePresenceKey, beginningPresence);
 				}
-			}finally{
-				lock.unlock();
-			}
-		}else if(StatsManager.SITEVISITEND_EVENTID.equals(eventId) && statsManager.getEnableSitePresences()){
-			// site presence ended
-			SitePresenceKey sitePresenceKey = SitePresenceKey.builder().siteId(siteId).userId(userId).sessionId(sessionId).build();
-			lock.lock();
-			try{
-				// Populate presence map with end events
-				SitePresenceRecord existingPresence = presencesMap.get(sitePresenceKey);
-				if(existingPresence != null) {
-					existingPresence.setEnd(dateTime.toInstant());
-				} else {
-					SitePresenceRecord endingPresence = SitePresenceRecord.builder()
+			}else if(StatsManager.SITEVISITEND_EVENTID.equals(eventId) && statsManager.getEnableSitePresences()){
+				// site presence ended
+				SitePresenceKey sitePresenceKey = SitePresenceKey.builder().siteId(siteId).userId(userId).sessionId(sessionId).build();
+				events.getPresences().compute(sitePresenceKey, (key, existingPresence) -> {
+					if(existingPresence != null) {
+						existingPresence.setEnd(dateTime.toInstant());
+						return existingPresence;
+					}
+					return SitePresenceRecord.builder()
 							.siteId(siteId)
 							.userId(userId)
 							.end(dateTime.toInstant())
 							.build();
-					presencesMap.put(sitePresenceKey, endingPresence);
-				}
-			}finally{
-				lock.unlock();
+				});
 			}
+		}finally{
+			events.exit();
 		}
-		
 	}
 
-	private void addToLessonBuilderStatMap(String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
-
-		synchronized (lessonBuilderStatMap) {
-			LessonBuilderStat e1 = lessonBuilderStatMap.get(key);
-			if (e1 == null) {
-				e1 = new LessonBuilderStatImpl();
-				e1.setUserId(userId);
-				e1.setSiteId(siteId);
-				e1.setPageRef(pageRef);
-				e1.setPageId(pageId);
-				e1.setPageAction(action);
-				e1.setDate(date);
+	/**
+	 * @return the action of a lessons event, or null if it is a page read by the page creator
+	 */
+	private String getLessonBuilderAction(String eventId, String resourceRef, String userId, String siteId) {
+		String lessonBuilderAction = null;
+		try {
+			//The events are something like "lessonbuilder.page.create" the action is in the third position
+			lessonBuilderAction = eventId.split("\\.")[2];
+		} catch (ArrayIndexOutOfBoundsException ex){
+			lessonBuilderAction = eventId;
+		}
+
+		if ("create".equals(lessonBuilderAction)) {
+			// We cache create events so we can ignore read events from page creators
+			lessonPageCreateEventMap.put(resourceRef, userId);
+		}
+
+		if ("read".equals(lessonBuilderAction)) {
+			// The user reading this is the creator, don't stash the read
+			// event. If we did, every page would be read at creation time.
+
+			// See if the create event was cached for this page
+			String creatorUserId = lessonPageCreateEventMap.get(resourceRef);
+
+			if (creatorUserId == null) {
+				// It wasn't. Look it up in the db.
+				final String hql = "select s.userId "
+					+ "from LessonBuilderStatImpl as s "
+					+ "where s.siteId = :siteid "
+					+ "and s.pageAction = :pageAction "
+					+ "and s.pageRef = :pageRef ";
+
+				// New files
+				HibernateCallback<List<String>> hcb1 = session -> {
+                    Query q = session.createQuery(hql);
+                    q.setParameter("siteid", siteId, StringType.INSTANCE);
+                    q.setParameter("pageAction", "create", StringType.INSTANCE);
+                    q.setParameter("pageRef", resourceRef, StringType.INSTANCE);
+                    return q.list();
+                };
+
+				List<String> creatorUserIds = getHibernateTemplate().execute(hcb1);
+
+				if (creatorUserIds.size() > 0) {
+					creatorUserId = creatorUserIds.get(0);
+					lessonPageCreateEventMap.put(resourceRef, creatorUserId);
+					if (creatorUserIds.size() > 1) {
+						log.warn("Multiple create events for page reference: " + resourceRef);
+					}
+				}
+			}
+
+			if (creatorUserId != null && creatorUserId.equals(userId)) {
+				return null;
 			}
-			e1.setCount(e1.getCount() + 1);
-			lessonBuilderStatMap.put(key, e1);
 		}
+		return lessonBuilderAction;
 	}
 
 	protected boolean isRegisteredEvent(String eventId) {
@@ -797,160 +866,100 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	
 	//STAT-299 consolidate a server event
 	private void consolidateServerEvent(Date dateTime, String eventId) {
-		
-		Date date = getTruncatedDate(dateTime);
-				
-		// add to serverStatMap
-		String key = eventId+date;
-		synchronized(serverStatMap){
-			ServerStat s = serverStatMap.get(key);
-			if(s == null){
-				s = new ServerStatImpl();
-				s.setEventId(eventId);
-				s.setDate(date);
-			}
-			s.setCount(s.getCount() + 1);
-			serverStatMap.put(key, s);
+		long day = getDay(dateTime);
+		ConsolidatedEvents events = enterConsolidation();
+		try{
+			events.countServerEvent(eventId, day);
+		}finally{
+			events.exit();
 		}
-		
 	}
 	
 	//STAT-299 consolidate a user event
 	private void consolidateUserEvent(Date dateTime, String userId) {
-		
-		Date date = getTruncatedDate(dateTime);
-				
-		// add to userStatMap
-		String key = userId+date;
-		synchronized(userStatMap){
-			UserStat s = userStatMap.get(key);
-			if(s == null){
-				s = new UserStatImpl();
-				s.setUserId(userId);
-				s.setDate(date);
+		long day = getDay(dateTime);
+		ConsolidatedEvents events = enterConsolidation();
+		try{
+			events.countUserLogin(userId, day);
+		}finally{
+			events.exit();
+		}
+	}
+
+	/**
+	 * @return the generation of consolidated events to count an event in, which must be exited once counted
+	 */
+	private ConsolidatedEvents enterConsolidation() {
+		while(true) {
+			ConsolidatedEvents events = consolidatedEvents;
+			if(events.enter()) {
+				return events;
 			}
-			s.setCount(s.getCount() + 1);
-			userStatMap.put(key, s);
+			// sealed by an update in progress, which has already swapped in the next generation
 		}
-		
 	}
 	
 
 	// ################################################################
 	// Db update methods
 	// ################################################################	
-	@SuppressWarnings("unchecked")
 	private synchronized boolean doUpdateConsolidatedEvents() {
 		long startTime = System.currentTimeMillis();
-		if(eventStatMap.size() > 0 || resourceStatMap.size() > 0
-				|| activityMap.size() > 0 || uniqueVisitsMap.size() > 0 
-				|| visitsMap.size() > 0 || presencesMap.size() > 0
-				|| serverStatMap.size() > 0 || userStatMap.size() > 0 || detailedEvents.size() > 0) {
+		if(!consolidatedEvents.isEmpty()) {
+			// swap generations: events counted from now on go to the next update
+			ConsolidatedEvents events = consolidatedEvents;
+			consolidatedEvents = new ConsolidatedEvents();
+			events.seal();
 
 		    try {
+				long flushStart = System.currentTimeMillis();
 				getHibernateTemplate().execute(session -> {
                     // do: EventStat
-                    if(eventStatMap.size() > 0) {
-                        Collection<EventStat> tmp1 = null;
-                        synchronized(eventStatMap){
-                            tmp1 = eventStatMap.values();
-                            eventStatMap = Collections.synchronizedMap(new HashMap<String, EventStat>());
-                        }
-                        doUpdateEventStatObjects(session, tmp1);
-                    }
+                    doUpdateEventStatObjects(session, events.getEventStats());
 
                     // do: DetailedEvents
-                    if (detailedEvents.size() > 0) {
-                        List<DetailedEvent> detailedEventsCopy;
-                        synchronized(detailedEvents) {
-                            detailedEventsCopy = detailedEvents;
-                            detailedEvents = Collections.synchronizedList(new ArrayList<>());
-                        }
-                        doSaveDetailedEvents(session, detailedEventsCopy);
-                    }
+                    doSaveDetailedEvents(session, events.getDetailedEvents());
 
                     // do: ResourceStat
-                    if(resourceStatMap.size() > 0) {
-                        Collection<ResourceStat> tmp2 = null;
-                        synchronized(resourceStatMap){
-                            tmp2 = resourceStatMap.values();
-                            resourceStatMap = Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-                        }
-                        doUpdateResourceStatObjects(session, tmp2);
-                    }
+                    doUpdateResourceStatObjects(session, events.getResourceStats());
 
                     // do: Lessons ResourceStat
-                    if (lessonBuilderStatMap.size() > 0) {
-                        Collection<LessonBuilderStat> tmp3 = null;
-                        synchronized (lessonBuilderStatMap) {
-                            tmp3 = lessonBuilderStatMap.values();
-                            lessonBuilderStatMap = Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-                        }
-                        doUpdateLessonBuilderStatObjects(session, tmp3);
-                    }
+                    doUpdateLessonBuilderStatObjects(session, events.getLessonBuilderStats());
 
                     // do: SiteActivity
-                    if(activityMap.size() > 0) {
-                        Collection<SiteActivity> tmp3 = null;
-                        synchronized(activityMap){
-                            tmp3 = activityMap.values();
-                            activityMap = Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-                        }
-                        doUpdateSiteActivityObjects(session, tmp3);
-                    }
+                    doUpdateSiteActivityObjects(session, events.getSiteActivity());
 
                     // do: SiteVisits
-                    if(uniqueVisitsMap.size() > 0 || visitsMap.size() > 0) {
+                    List<SiteVisits> visits = events.getSiteVisits();
+                    if(!visits.isEmpty()) {
                         // determine unique visits for event related sites
-                        Map<UniqueVisitsKey, Integer> tmp4;
-                        synchronized(uniqueVisitsMap){
-                            tmp4 = uniqueVisitsMap;
-                            uniqueVisitsMap = Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-                        }
-                        tmp4 = doGetSiteUniqueVisits(session, tmp4);
-
-                        // do: SiteVisits
-                        if(visitsMap.size() > 0) {
-                            Collection<SiteVisits> tmp5 = null;
-                            synchronized(visitsMap){
-                                tmp5 = visitsMap.values();
-                                visitsMap = Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-                            }
-                            doUpdateSiteVisitsObjects(session, tmp5, tmp4);
+                        Map<UniqueVisitsKey, Integer> uniqueVisits = new HashMap<>();
+                        for(SiteVisits v : visits) {
+                            uniqueVisits.put(new UniqueVisitsKey(v.getSiteId(), v.getDate()), 1);
                         }
+                        uniqueVisits = doGetSiteUniqueVisits(session, uniqueVisits);
+                        doUpdateSiteVisitsObjects(session, visits, uniqueVisits);
                     }
 
                     // do: SitePresences
-                    if(presencesMap.size() > 0) {
-                        Collection<SitePresenceRecord> tmp6 = null;
-                        synchronized(presencesMap){
-                            tmp6 = presencesMap.values();
-                            presencesMap = Collections.synchronizedMap(new HashMap<SitePresenceKey, SitePresenceRecord>());
-                        }
-                        doUpdateSitePresencesObjects(session, tmp6);
+                    if(!events.getPresences().isEmpty()) {
+                        doUpdateSitePresencesObjects(session, events.getPresences().values());
                     }
 
                     // do: ServerStats
-                    if(serverStatMap.size() > 0) {
-                        Collection<ServerStat> tmp7 = null;
-                        synchronized(serverStatMap){
-                            tmp7 = serverStatMap.values();
-                            serverStatMap = Collections.synchronizedMap(new HashMap<String, ServerStat>());
-                        }
-                        doUpdateServerStatObjects(session, tmp7);
-                    }
+                    doUpdateServerStatObjects(session, events.getServerStats());
 
                     // do: UserStats
-                    if(userStatMap.size() > 0) {
-                        Collection<UserStat> tmp8 = null;
-                        synchronized(userStatMap){
-                            tmp8 = userStatMap.values();
-                            userStatMap = Collections.synchronizedMap(new HashMap<String, UserStat>());
-                        }
-                        doUpdateUserStatObjects(session, tmp8);
+                    doUpdateUserStatObjects(session, events.getUserStats());
+
+                    if(upsertVendor != null) {
+                        // aggregates already in the session were written around it
+                        session.flush();
+                        session.clear();
                     }
                     return null;
             	});
+				totalTimeInFlush += System.currentTimeMillis() - flushStart;
 			} catch(DataAccessException dae) {
 				return false;
 			}
@@ -964,6 +973,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<EventStat> objects = new ArrayList<>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.EVENT_STATS, objects, e -> StringUtils.isNotBlank(e.getSiteId()));
+			return;
+		}
 		Iterator<EventStat> i = objects.iterator();
 		
 		while(i.hasNext()){
@@ -1009,6 +1023,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		}
 	}
 
+	private <T> void doUpsert(Session session, AggregateUpsert<T> upsert, List<T> objects, Predicate<T> filter) {
+		List<T> rows = objects.stream().filter(filter).collect(Collectors.toList());
+		if(rows.isEmpty()) return;
+		session.doWork(connection -> upsert.write(connection, upsertVendor, rows));
+	}
+
 	private void doSaveDetailedEvents(Session session, List<DetailedEvent> events) {
 		for (DetailedEvent de : events) {
 			if (StringUtils.isNotBlank(de.getSiteId())) {
@@ -1021,6 +1041,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<ResourceStat> objects = new ArrayList<ResourceStat>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.RESOURCE_STATS, objects, e -> StringUtils.isNotBlank(e.getSiteId()));
+			return;
+		}
 		Iterator<ResourceStat> i = objects.iterator();
 		while(i.hasNext()){
 			ResourceStat eUpdate = i.next();
@@ -1070,6 +1095,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if (o == null) return;
 		List<LessonBuilderStat> objects = new ArrayList<LessonBuilderStat>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.LESSON_BUILDER_STATS, objects, e -> StringUtils.isNotBlank(e.getSiteId()));
+			return;
+		}
 		Iterator<LessonBuilderStat> i = objects.iterator();
 		while (i.hasNext()) {
 			LessonBuilderStat eUpdate = i.next();
@@ -1119,6 +1149,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<SiteActivity> objects = new ArrayList<SiteActivity>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.SITE_ACTIVITY, objects, e -> StringUtils.isNotBlank(e.getSiteId()));
+			return;
+		}
 		Iterator<SiteActivity> i = objects.iterator();
 		while(i.hasNext()){
 			SiteActivity eUpdate = i.next();
@@ -1166,6 +1201,16 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<SiteVisits> objects = new ArrayList<SiteVisits>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			// the unique visits replace the stored ones, the visits are added to them
+			for(SiteVisits eUpdate : objects) {
+				Integer mapUV = map.get(new UniqueVisitsKey(eUpdate.getSiteId(), eUpdate.getDate()));
+				eUpdate.setTotalUnique(mapUV == null? 1 : mapUV.longValue());
+			}
+			doUpsert(session, AggregateUpsert.SITE_VISITS, objects, e -> StringUtils.isNotBlank(e.getSiteId()));
+			return;
+		}
 		Iterator<SiteVisits> i = objects.iterator();
 		while(i.hasNext()){
 			SiteVisits eUpdate = i.next();
@@ -1214,6 +1259,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<ServerStat> objects = new ArrayList<ServerStat>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.SERVER_STATS, objects, e -> true);
+			return;
+		}
 		Iterator<ServerStat> i = objects.iterator();
 		while(i.hasNext()){
 			ServerStat eUpdate = i.next();
@@ -1257,6 +1307,11 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<UserStat> objects = new ArrayList<UserStat>(o);
 		Collections.sort(objects);
+		totalRowsFlushed += objects.size();
+		if(upsertVendor != null) {
+			doUpsert(session, AggregateUpsert.USER_STATS, objects, e -> StringUtils.isNotBlank(e.getUserId()));
+			return;
+		}
 		Iterator<UserStat> i = objects.iterator();
 		while(i.hasNext()){
 			UserStat eUpdate = i.next();
@@ -1659,7 +1714,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################
 	// Utility methods
 	// ################################################################	
-	private synchronized boolean isValidEvent(Event e) {
+	private boolean isValidEvent(Event e) {
 		if(e.getEvent().startsWith(StatsManager.RESOURCE_EVENTID_PREFIX)){
 			String ref = e.getResource();	
 			if(ref.trim().equals("")) return false;			
@@ -1831,14 +1886,26 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		return e.getResource() != null && e.getResource().startsWith("/site/~");
 	}
 	
-	private Date getTruncatedDate(Date date) {
-		if(date == null) return null;
+	/**
+	 * @return the start of the day of a date, in milliseconds
+	 */
+	private long getDay(Date date) {
+		long time = date.getTime();
+		// events mostly fall on the same day as the previous one
+		long[] day = lastDay;
+		if(time >= day[0] && time <= day[1]) {
+			return day[0];
+		}
 		Calendar c = Calendar.getInstance();
 		c.setTime(date);
 		c.set(Calendar.HOUR_OF_DAY, 0);
 		c.set(Calendar.MINUTE, 0);
 		c.set(Calendar.SECOND, 0);
-		return c.getTime();
+		c.set(Calendar.MILLISECOND, 0);
+		long start = c.getTimeInMillis();
+		c.add(Calendar.DAY_OF_MONTH, 1);
+		lastDay = new long[] { start, c.getTimeInMillis() - 1 };
+		return start;
 	}
 
 	private static class UniqueVisitsKey {
@@ -31,11 +31,13 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Set;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
@@ -707,6 +709,7 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 		}
 
 		// Fill the spreadsheet cells
+		queueUsers(statsObjects);
 		Iterator<Stat> i = statsObjects.iterator();
 		while (i.hasNext()){
 			HSSFRow row = sheet.createRow(sheet.getLastRowNum() + 1);
@@ -913,6 +916,7 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 		sb.append("\n");
 
 		// Add the data
+		queueUsers(statsObjects);
 		Iterator<Stat> i = statsObjects.iterator();
 		while (i.hasNext()){
 			Stat se = i.next();
@@ -1186,6 +1190,20 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 		return sb;
 	}
 	
+	/**
+	 * Queues the users of the report rows, as they are looked up one row at a time.
+	 */
+	private void queueUsers(List<Stat> statsObjects) {
+		Set<String> userIds = new HashSet<>();
+		for (Stat s : statsObjects) {
+			String userId = s.getUserId();
+			if (userId != null && !("-").equals(userId) && !EventTrackingService.UNKNOWN_USER.equals(userId)) {
+				userIds.add(userId);
+			}
+		}
+		userDirectoryService.queueUsers(userIds);
+	}
+
 	private String getUserDisplayId(String userId) {
 		String userEid = null;		
 		if (userId != null) {
@@ -1551,6 +1569,7 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 			}else if(report.getReportDefinition().getReportParams().getWho().equals(ReportManager.WHO_CUSTOM)){
 				// users
 				List<String> list = report.getReportDefinition().getReportParams().getWhoUserIds();
+				userDirectoryService.queueUsers(list);
 				StringBuilder buff = new StringBuilder();
 				for(int i=0; i<list.size() - 1; i++){
 					String userId = list.get(i);
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sakaiproject.sitestats.api.SiteVisits;
+import org.sakaiproject.sitestats.api.UserStat;
+import org.sakaiproject.sitestats.test.CustomHsqlDialect;
+import org.sakaiproject.sitestats.test.DB;
+import org.sakaiproject.sitestats.test.SiteStatsTestConfiguration;
+import org.sakaiproject.sitestats.test.data.FakeData;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@ContextConfiguration(classes = {SiteStatsTestConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@Transactional(transactionManager = "org.sakaiproject.sitestats.SiteStatsTransactionManager")
+public class AggregateUpsertTest extends AbstractTransactionalJUnit4SpringContextTests {
+
+	@Resource(name = "org.sakaiproject.sitestats.test.DB")
+	private DB db;
+
+	private Date today;
+
+	@Before
+	public void onSetUp() {
+		db.deleteAll();
+		today = Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+
+	@Test
+	public void testVendorOf() {
+		assertEquals(AggregateUpsert.VENDOR_HSQL, AggregateUpsert.vendorOf(new CustomHsqlDialect()));
+	}
+
+	@Test
+	public void testMySqlStatements() {
+		assertEquals("UPDATE SST_USERSTATS SET LOGIN_COUNT = LOGIN_COUNT + ? WHERE USER_ID = ? AND LOGIN_DATE = ? ORDER BY ID LIMIT 1",
+				AggregateUpsert.USER_STATS.updateSql());
+		assertEquals("INSERT INTO SST_USERSTATS (USER_ID, LOGIN_DATE, LOGIN_COUNT) VALUES (?, ?, ?)",
+				AggregateUpsert.USER_STATS.insertSql());
+		assertEquals("UPDATE SST_SITEVISITS SET TOTAL_VISITS = TOTAL_VISITS + ?, TOTAL_UNIQUE = ? WHERE SITE_ID = ? AND VISITS_DATE = ? ORDER BY ID LIMIT 1",
+				AggregateUpsert.SITE_VISITS.updateSql());
+	}
+
+	@Test
+	public void testOracleMerge() {
+		assertEquals("MERGE INTO SST_USERSTATS t USING (SELECT v.USER_ID, v.LOGIN_DATE, v.LOGIN_COUNT,"
+				+ " (SELECT MIN(r.ID) FROM SST_USERSTATS r WHERE r.USER_ID = v.USER_ID AND r.LOGIN_DATE = v.LOGIN_DATE) MIN_ID"
+				+ " FROM (SELECT ? USER_ID, ? LOGIN_DATE, ? LOGIN_COUNT FROM DUAL) v) s ON (t.ID = s.MIN_ID)"
+				+ " WHEN MATCHED THEN UPDATE SET t.LOGIN_COUNT = t.LOGIN_COUNT + s.LOGIN_COUNT"
+				+ " WHEN NOT MATCHED THEN INSERT (ID, USER_ID, LOGIN_DATE, LOGIN_COUNT) VALUES (SST_USERSTATS_ID.NEXTVAL, s.USER_ID, s.LOGIN_DATE, s.LOGIN_COUNT)",
+				AggregateUpsert.USER_STATS.mergeSql(AggregateUpsert.VENDOR_ORACLE));
+	}
+
+	@Test
+	public void testHsqlMerge() {
+		assertEquals("MERGE INTO SST_USERSTATS t USING (SELECT v.USER_ID, v.LOGIN_DATE, v.LOGIN_COUNT,"
+				+ " (SELECT MIN(r.ID) FROM SST_USERSTATS r WHERE r.USER_ID = v.USER_ID AND r.LOGIN_DATE = v.LOGIN_DATE) MIN_ID"
+				+ " FROM (VALUES(CAST(? AS VARCHAR(99)), CAST(? AS DATE), CAST(? AS BIGINT))) AS v(USER_ID, LOGIN_DATE, LOGIN_COUNT)) s ON (t.ID = s.MIN_ID)"
+				+ " WHEN MATCHED THEN UPDATE SET t.LOGIN_COUNT = t.LOGIN_COUNT + s.LOGIN_COUNT"
+				+ " WHEN NOT MATCHED THEN INSERT (USER_ID, LOGIN_DATE, LOGIN_COUNT) VALUES (s.USER_ID, s.LOGIN_DATE, s.LOGIN_COUNT)",
+				AggregateUpsert.USER_STATS.mergeSql(AggregateUpsert.VENDOR_HSQL));
+	}
+
+	@Test
+	public void testHsqlMergeAddsToOneOfTheDuplicates() {
+		db.insertObject(userStat(FakeData.USER_A_ID, 1));
+		db.insertObject(userStat(FakeData.USER_A_ID, 2));
+
+		db.doWork(connection -> AggregateUpsert.USER_STATS.write(connection, AggregateUpsert.VENDOR_HSQL,
+				Arrays.asList(userStat(FakeData.USER_A_ID, 5), userStat(FakeData.USER_B_ID, 3))));
+
+		assertEquals(Arrays.asList(6L, 2L), counts("SELECT LOGIN_COUNT FROM SST_USERSTATS WHERE USER_ID = ? ORDER BY ID", FakeData.USER_A_ID));
+		assertEquals(Arrays.asList(3L), counts("SELECT LOGIN_COUNT FROM SST_USERSTATS WHERE USER_ID = ? ORDER BY ID", FakeData.USER_B_ID));
+	}
+
+	@Test
+	public void testHsqlMergeReplacesTheSetColumns() {
+		db.insertObject(siteVisits(10, 4));
+
+		db.doWork(connection -> AggregateUpsert.SITE_VISITS.write(connection, AggregateUpsert.VENDOR_HSQL,
+				Arrays.asList(siteVisits(3, 5))));
+
+		assertEquals(Arrays.asList(13L), counts("SELECT TOTAL_VISITS FROM SST_SITEVISITS WHERE SITE_ID = ?", FakeData.SITE_A_ID));
+		assertEquals(Arrays.asList(5L), counts("SELECT TOTAL_UNIQUE FROM SST_SITEVISITS WHERE SITE_ID = ?", FakeData.SITE_A_ID));
+	}
+
+	private List<Long> counts(String sql, String param) {
+		List<Long> counts = new ArrayList<>();
+		db.doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setString(1, param);
+				try (ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						counts.add(rs.getLong(1));
+					}
+				}
+			}
+		});
+		return counts;
+	}
+
+	private UserStat userStat(String userId, long count) {
+		UserStatImpl stat = new UserStatImpl();
+		stat.setUserId(userId);
+		stat.setDate(today);
+		stat.setCount(count);
+		return stat;
+	}
+
+	private SiteVisits siteVisits(long totalVisits, long totalUnique) {
+		SiteVisitsImpl visits = new SiteVisitsImpl();
+		visits.setSiteId(FakeData.SITE_A_ID);
+		visits.setDate(today);
+		visits.setTotalVisits(totalVisits);
+		visits.setTotalUnique(totalUnique);
+		return visits;
+	}
+}
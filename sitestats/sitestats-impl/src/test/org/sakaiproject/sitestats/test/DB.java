@@ -24,6 +24,7 @@ import java.util.List;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 
+import org.hibernate.jdbc.Work;
 import org.sakaiproject.sitestats.impl.DetailedEventImpl;
 import org.sakaiproject.sitestats.impl.EventStatImpl;
 import org.sakaiproject.sitestats.impl.LessonBuilderStatImpl;
@@ -72,6 +73,17 @@ public class DB extends HibernateDaoSupport {
         return results;
 	}
 	
+	/**
+	 * Flushes the session and runs the work on its connection
+	 */
+	public void doWork(final Work work) {
+		getHibernateTemplate().execute(session -> {
+			session.flush();
+			session.doWork(work);
+			return null;
+		});
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> void deleteAllForClass(final Class<T> classz) {
         try {
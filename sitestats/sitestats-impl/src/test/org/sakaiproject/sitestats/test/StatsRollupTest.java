@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sakaiproject.javax.PagingPosition;
+import org.sakaiproject.sitestats.api.ResourceStat;
+import org.sakaiproject.sitestats.api.SitePresence;
+import org.sakaiproject.sitestats.api.Stat;
+import org.sakaiproject.sitestats.api.StatsManager;
+import org.sakaiproject.sitestats.api.StatsUpdateManager;
+import org.sakaiproject.sitestats.impl.ResourceStatImpl;
+import org.sakaiproject.sitestats.impl.SitePresenceImpl;
+import org.sakaiproject.sitestats.impl.StatsUpdateManagerImpl;
+import org.sakaiproject.sitestats.test.data.FakeData;
+import org.springframework.aop.framework.Advised;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+@ContextConfiguration(classes = {SiteStatsTestConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@Transactional(transactionManager = "org.sakaiproject.sitestats.SiteStatsTransactionManager")
+public class StatsRollupTest extends AbstractTransactionalJUnit4SpringContextTests {
+
+	private static final int		DAYS		= 100;
+	private static final String		RESOURCE	= "/content/group/" + FakeData.SITE_A_ID + "/file.txt";
+
+	@Resource(name = "org.sakaiproject.sitestats.test.DB")
+	private DB db;
+	@Resource(name = "org.sakaiproject.sitestats.api.StatsManager")
+	private StatsManager statsManager;
+	@Resource(name = "org.sakaiproject.sitestats.api.StatsUpdateManager")
+	private StatsUpdateManager statsUpdateManager;
+
+	private LocalDate today;
+
+	@Before
+	public void onSetUp() throws Exception {
+		db.deleteAll();
+		today = LocalDate.now();
+		// user A is present 10 minutes and reads the file once every day, user B twice as much
+		for(int i = 0; i <= DAYS; i++) {
+			LocalDate day = today.minusDays(i);
+			db.insertObject(presence(FakeData.USER_A_ID, day, 10));
+			db.insertObject(presence(FakeData.USER_B_ID, day, 20));
+			db.insertObject(resource(FakeData.USER_A_ID, day, 1));
+			db.insertObject(resource(FakeData.USER_B_ID, day, 2));
+		}
+	}
+
+	@Test
+	public void testPresenceRollups() {
+		assertTrue(statsUpdateManager.updateRollups(null));
+
+		Date iDate = date(today.minusDays(90));
+		Date fDate = date(today);
+		List<Stat> stats = getPresenceStats(iDate, fDate, null);
+		assertEquals(2, stats.size());
+		assertEquals(FakeData.USER_B_ID, stats.get(0).getUserId());
+		assertEquals(91 * 20, ((SitePresence) stats.get(0)).getDuration());
+		assertEquals(FakeData.USER_A_ID, stats.get(1).getUserId());
+		assertEquals(91 * 10, ((SitePresence) stats.get(1)).getDuration());
+
+		// sorted and paged across the days, weeks and months read
+		stats = getPresenceStats(iDate, fDate, new PagingPosition(2, 2));
+		assertEquals(1, stats.size());
+		assertEquals(FakeData.USER_A_ID, stats.get(0).getUserId());
+
+		// a month that ended is read from its rollup, until it is rolled up again
+		LocalDate rolledUp = today.minusDays(60).withDayOfMonth(15);
+		db.insertObject(presence(FakeData.USER_A_ID, rolledUp, 5));
+		stats = getPresenceStats(iDate, fDate, null);
+		assertEquals(91 * 10, ((SitePresence) stats.get(1)).getDuration());
+		assertTrue(statsUpdateManager.updateRollups(date(rolledUp)));
+		stats = getPresenceStats(iDate, fDate, null);
+		assertEquals(91 * 10 + 5, ((SitePresence) stats.get(1)).getDuration());
+	}
+
+	@Test
+	public void testResourceRollups() {
+		assertTrue(statsUpdateManager.updateRollups(null));
+
+		LocalDate from = today.minusDays(DAYS);
+		List<Stat> stats = statsManager.getResourceStats(FakeData.SITE_A_ID, null, null,
+				date(from), date(today), null, false, null,
+				Arrays.asList(StatsManager.T_RESOURCE, StatsManager.T_DATEMONTH), null, false, 0);
+		int months = (int) from.withDayOfMonth(1).until(today.withDayOfMonth(1)).toTotalMonths() + 1;
+		assertEquals(months, stats.size());
+		long total = 0;
+		for(Stat stat : stats) {
+			assertEquals(RESOURCE, ((ResourceStat) stat).getResourceRef());
+			total += stat.getCount();
+		}
+		assertEquals((DAYS + 1) * 3, total);
+	}
+
+	@Test
+	public void testRollupsDisabled() throws Exception {
+		StatsUpdateManagerImpl statsUpdateManagerImpl = (StatsUpdateManagerImpl) ((Advised) statsUpdateManager).getTargetSource().getTarget();
+		assertTrue(statsUpdateManager.updateRollups(null));
+		statsUpdateManagerImpl.setRollupsEnabled(false);
+		try {
+			assertTrue(statsUpdateManager.updateRollups(null));
+			// without rollups the stats added later are read from the daily stats
+			LocalDate day = today.minusDays(60).withDayOfMonth(15);
+			db.insertObject(presence(FakeData.USER_A_ID, day, 5));
+			List<Stat> stats = getPresenceStats(date(today.minusDays(90)), date(today), null);
+			assertEquals(91 * 10 + 5, ((SitePresence) stats.get(1)).getDuration());
+		} finally {
+			statsUpdateManagerImpl.setRollupsEnabled(true);
+		}
+	}
+
+	@Test
+	public void testRollupsPaged() throws Exception {
+		// users who lead in the last days, in the weeks or in the months read, so no part alone gives the order
+		for(int i = 0; i <= DAYS; i++) {
+			LocalDate day = today.minusDays(i);
+			db.insertObject(presence("steady", day, 16));
+			db.insertObject(presence("early", day, i > 40 ? 40 : 1));
+			db.insertObject(presence("late", day, i < 5 ? 300 : 3));
+			db.insertObject(presence("weekly", day, day.getDayOfWeek().getValue() == 1 ? 80 : 2));
+		}
+		assertTrue(statsUpdateManager.updateRollups(null));
+		Date iDate = date(today.minusDays(90));
+		Date fDate = date(today);
+
+		StatsUpdateManagerImpl statsUpdateManagerImpl = (StatsUpdateManagerImpl) ((Advised) statsUpdateManager).getTargetSource().getTarget();
+		List<Stat> byDuration, byUser;
+		statsUpdateManagerImpl.setRollupsEnabled(false);
+		try {
+			byDuration = getPresenceStats(iDate, fDate, null, StatsManager.T_DURATION);
+			byUser = getPresenceStats(iDate, fDate, null, StatsManager.T_USER);
+		} finally {
+			statsUpdateManagerImpl.setRollupsEnabled(true);
+		}
+		assertEquals(6, byDuration.size());
+		for(int i = 1; i <= byDuration.size(); i++) {
+			List<Stat> stats = getPresenceStats(iDate, fDate, new PagingPosition(i, i), StatsManager.T_DURATION);
+			assertEquals(1, stats.size());
+			assertEquals(byDuration.get(i - 1).getUserId(), stats.get(0).getUserId());
+			assertEquals(((SitePresence) byDuration.get(i - 1)).getDuration(), ((SitePresence) stats.get(0)).getDuration());
+			stats = getPresenceStats(iDate, fDate, new PagingPosition(i, i), StatsManager.T_USER);
+			assertEquals(1, stats.size());
+			assertEquals(byUser.get(i - 1).getUserId(), stats.get(0).getUserId());
+			assertEquals(((SitePresence) byUser.get(i - 1)).getDuration(), ((SitePresence) stats.get(0)).getDuration());
+		}
+	}
+
+	private List<Stat> getPresenceStats(Date iDate, Date fDate, PagingPosition page) {
+		return getPresenceStats(iDate, fDate, page, StatsManager.T_DURATION);
+	}
+
+	private List<Stat> getPresenceStats(Date iDate, Date fDate, PagingPosition page, String sortBy) {
+		return statsManager.getPresenceStats(FakeData.SITE_A_ID, iDate, fDate, null, false, page,
+				Arrays.asList(StatsManager.T_SITE, StatsManager.T_USER), sortBy, false, 0);
+	}
+
+	private static SitePresenceImpl presence(String userId, LocalDate day, long duration) {
+		SitePresenceImpl presence = new SitePresenceImpl();
+		presence.setSiteId(FakeData.SITE_A_ID);
+		presence.setUserId(userId);
+		presence.setDate(date(day));
+		presence.setDuration(duration);
+		return presence;
+	}
+
+	private static ResourceStatImpl resource(String userId, LocalDate day, long count) {
+		ResourceStatImpl resource = new ResourceStatImpl();
+		resource.setSiteId(FakeData.SITE_A_ID);
+		resource.setUserId(userId);
+		resource.setResourceRef(RESOURCE);
+		resource.setResourceAction("read");
+		resource.setDate(date(day));
+		resource.setCount(count);
+		return resource;
+	}
+
+	private static Date date(LocalDate day) {
+		return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2003-2026 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.sitestats.test.perf;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.sitestats.api.StatsUpdateManager;
+import org.sakaiproject.sitestats.impl.CustomEventImpl;
+import org.sakaiproject.sitestats.impl.StatsUpdateManagerImpl;
+import org.sakaiproject.sitestats.test.SiteStatsTestConfiguration;
+import org.springframework.aop.framework.Advised;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Replays a captured SAKAI_EVENT stream through the event consolidation, to measure how it copes with many threads
+ * posting events at once. {@link #testObservers()} posts the stream from several request threads while the collect
+ * thread consolidates and updates the db. {@link #testCollectors()} consolidates it from several threads directly.
+ * </p><p>
+ * As with {@link StatsUpdateManagerTestPerf} the bundled data only checks that this still runs. To replay a real
+ * stream load SAKAI_EVENT and SAKAI_SESSION from a production export into a local database, configure it in
+ * <code>hibernate.properties</code> and comment out the @Sql annotation.
+ * </p>
+ */
+@ContextConfiguration(classes = {SiteStatsTestConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@Slf4j
+@Sql("/update-manager-perf.sql")
+@Transactional(transactionManager = "org.sakaiproject.sitestats.SiteStatsTransactionManager")
+public class EventConsolidationTestPerf extends AbstractTransactionalJUnit4SpringContextTests {
+
+	private static final int THREADS = 8;
+	private static final int REPLAYS = 10;
+
+	@Resource(name = "org.sakaiproject.springframework.orm.hibernate.GlobalSessionFactory")
+	private SessionFactory sessionFactory;
+	@Resource(name = "org.sakaiproject.sitestats.api.StatsUpdateManager")
+	private StatsUpdateManager statsUpdateManager;
+
+	private StatsUpdateManagerImpl statsUpdateManagerImpl;
+	private List<Event> events;
+
+	@Before
+	public void setUp() throws Exception {
+		statsUpdateManagerImpl = (StatsUpdateManagerImpl) ((Advised) statsUpdateManager).getTargetSource().getTarget();
+		statsUpdateManager.setCollectEventsForSiteWithToolOnly(false);
+		statsUpdateManager.resetMetrics();
+
+		NativeQuery query = sessionFactory.getCurrentSession().createSQLQuery(
+				"SELECT e.event_date, e.event, e.ref, e.context, s.session_user, e.session_id " +
+				"FROM SAKAI_EVENT e " +
+				"LEFT JOIN SAKAI_SESSION s ON e.session_id = s.session_id ORDER BY e.event_date ASC LIMIT 400000"
+		);
+		query.setReadOnly(true);
+		events = new ArrayList<>();
+		for (Object result : query.list()) {
+			Object[] row = (Object[]) result;
+			events.add(new CustomEventImpl((Date) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4], (String) row[5]));
+		}
+		log.info("Replaying {} events {} times from {} threads", events.size(), REPLAYS, THREADS);
+	}
+
+	@Test
+	public void testObservers() throws InterruptedException {
+		statsUpdateManager.setCollectThreadEnabled(true);
+		try {
+			long elapsed = replay(event -> statsUpdateManagerImpl.update(null, event));
+			log.info("Observers posted {} events/sec", rate(elapsed));
+
+			long waitUntil = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+			while (!statsUpdateManager.isIdle() && System.currentTimeMillis() < waitUntil) {
+				Thread.sleep(250);
+			}
+			Assert.assertEquals(0, statsUpdateManager.getQueueSize());
+			log.info(statsUpdateManager.getMetricsSummary(false));
+		} finally {
+			statsUpdateManager.setCollectThreadEnabled(false);
+		}
+	}
+
+	@Test
+	public void testCollectors() throws InterruptedException {
+		statsUpdateManager.setCollectThreadEnabled(false);
+		long elapsed = replay(event -> statsUpdateManager.collectEvent(event));
+		log.info("Collectors consolidated {} events/sec", rate(elapsed));
+		log.info(statsUpdateManager.getMetricsSummary(false));
+	}
+
+	/**
+	 * Posts the whole stream {@link #REPLAYS} times from each of {@link #THREADS} threads.
+	 * @return the time taken, in milliseconds
+	 */
+	private long replay(EventSink sink) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (int r = 0; r < REPLAYS; r++) {
+						for (Event event : events) {
+							sink.post(event);
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}, "replay-" + t);
+			thread.start();
+		}
+		long startTime = System.currentTimeMillis();
+		start.countDown();
+		done.await();
+		return Math.max(1, System.currentTimeMillis() - startTime);
+	}
+
+	private String rate(long elapsed) {
+		return String.format("%.2f", (double) events.size() * REPLAYS * THREADS / elapsed * 1000);
+	}
+
+	@FunctionalInterface
+	private interface EventSink {
+		void post(Event event);
+	}
+}
@@ -25,6 +25,8 @@ import java.text.RuleBasedCollator;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.wicket.extensions.markup.html.repeater.data.sort.SortOrder;
@@ -134,6 +136,9 @@ public class ReportsDataProvider extends SortableSearchableDataProvider {
 	}	
 
 	public void sortReport() {
+		// the sort and the user columns look up the users of the rows one at a time
+		Locator.getFacade().getUserDirectoryService().queueUsers(report.getReportData().stream()
+				.map(Stat::getUserId).filter(Objects::nonNull).collect(Collectors.toSet()));
 		Collections.sort(report.getReportData(), getReportDataComparator(getSort().getProperty().toString(),
 				getSort().isAscending(), Locator.getFacade().getStatsManager(),
 				Locator.getFacade().getEventRegistryService(), Locator.getFacade().getUserDirectoryService()));